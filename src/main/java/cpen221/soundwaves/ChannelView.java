@@ -0,0 +1,84 @@
+package cpen221.soundwaves;
+
+/**
+ * A read-only view of one channel of a {@link MultiChannelSoundWave}.
+ * The samples are not copied: sample t of the channel is read at
+ * {@code offset + t * stride} of the interleaved frames it was taken from.
+ * A view shows the samples of the wave at the time it was taken; later
+ * changes to the wave do not affect it.
+ */
+public final class ChannelView {
+
+    private final double[] frames;
+    private final int offset;
+    private final int stride;
+    private final int length;
+
+    // Representation Invariants:
+    //  0 <= offset, 0 < stride, length >= 0
+    //  offset + (length - 1) * stride < frames.length when length > 0
+    //  frames is never modified
+
+    // Abstraction Function:
+    //  represents the sequence frames[offset], frames[offset + stride], ...,
+    //  frames[offset + (length - 1) * stride]
+
+    ChannelView(double[] frames, int offset, int stride, int length) {
+        this.frames = frames;
+        this.offset = offset;
+        this.stride = stride;
+        this.length = length;
+    }
+
+    /**
+     * Gets the number of samples in the channel.
+     *
+     * @return the length of the channel.
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Gets one sample of the channel.
+     *
+     * @param t the index of the sample, in [0, length()).
+     * @return the sample at t.
+     */
+    public double get(int t) {
+        if (t < 0 || t >= length) {
+            throw new IndexOutOfBoundsException("sample " + t + " of " + length);
+        }
+        return frames[offset + t * stride];
+    }
+
+    /**
+     * Copies a range of the channel into an array.
+     *
+     * @param from    the first sample to copy, >= 0.
+     * @param dest    the array to copy into, is not null.
+     * @param destPos the position in dest of the first sample.
+     * @param count   the number of samples to copy, with from + count <= length().
+     *                <p>
+     *                Modifies dest.
+     */
+    public void copyTo(int from, double[] dest, int destPos, int count) {
+        if (from < 0 || count < 0 || from + count > length) {
+            throw new IndexOutOfBoundsException("samples [" + from + ", " + (from + count) + ") of " + length);
+        }
+        for (int i = 0, index = offset + from * stride; i < count; i++, index += stride) {
+            dest[destPos + i] = frames[index];
+        }
+    }
+
+    /**
+     * Copies the whole channel.
+     *
+     * @return a new array with the samples of the channel.
+     */
+    public double[] toArray() {
+        double[] samples = new double[length];
+        copyTo(0, samples, 0, length);
+        return samples;
+    }
+}
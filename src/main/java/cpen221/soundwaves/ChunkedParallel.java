@@ -0,0 +1,237 @@
+package cpen221.soundwaves;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs per-sample work over a range of sample indices in chunks, as the
+ * {@link ExecutionContext#current() current execution context} says. The
+ * range is cut into chunks of {@link ExecutionContext#getChunkSize()} samples,
+ * small enough that the chunk of each channel stays in a core's cache. The
+ * calling thread and up to parallelism - 1 tasks on the context's executor
+ * take chunks in turn until none are left. Ranges shorter than
+ * {@link #SEQUENTIAL_CUTOFF} run on the calling thread.
+ *
+ * <p>
+ * Reductions are done in two phases: every chunk fills its own slot of
+ * partial results, and the partials are then combined in chunk order on the
+ * calling thread. The result therefore does not depend on how the chunks were
+ * scheduled, and is the same from run to run.
+ * </p>
+ *
+ * <p>
+ * Work over costly items, such as transform frames or DFT bins, uses the
+ * overloads taking a grain: the number of items per chunk.
+ * </p>
+ */
+final class ChunkedParallel {
+
+    /**
+     * Sample ranges shorter than this run sequentially.
+     */
+    static final int SEQUENTIAL_CUTOFF = 1 << 17;
+
+    /**
+     * Work over the items [from, to) of one chunk.
+     */
+    @FunctionalInterface
+    interface ChunkAction {
+        void run(int from, int to);
+    }
+
+    /**
+     * Reduction over the items [from, to) of one chunk.
+     */
+    @FunctionalInterface
+    interface ChunkReducer {
+        /**
+         * @param from    the first item of the chunk.
+         * @param to      one past the last item of the chunk.
+         * @param partial the partial results of this chunk, all 0 at first.
+         *                <p>
+         *                Modifies partial.
+         */
+        void reduce(int from, int to, double[] partial);
+    }
+
+    private ChunkedParallel() {
+        // can not instantiate
+    }
+
+    /**
+     * Gets the number of samples per chunk of the current context.
+     *
+     * @return the chunk size used by the sample-range methods.
+     */
+    static int chunkSize() {
+        return ExecutionContext.current().getChunkSize();
+    }
+
+    /**
+     * Runs an action over every chunk of the samples [0, length).
+     *
+     * @param length the number of samples, >= 0.
+     * @param action the work for one chunk, is not null; chunks may run at the same time.
+     */
+    static void forEach(int length, ChunkAction action) {
+        ExecutionContext context = ExecutionContext.current();
+        if (length < SEQUENTIAL_CUTOFF) {
+            action.run(0, length);
+            return;
+        }
+        run(context, chunkCount(length, context.getChunkSize()), context.getChunkSize(), length, action);
+    }
+
+    /**
+     * Runs an action over costly items [0, count), grain items per chunk.
+     *
+     * @param count  the number of items, >= 0.
+     * @param grain  the number of items per chunk, >= 1.
+     * @param action the work for one chunk, is not null; chunks may run at the same time.
+     */
+    static void forEach(int count, int grain, ChunkAction action) {
+        run(ExecutionContext.current(), chunkCount(count, grain), grain, count, action);
+    }
+
+    /**
+     * Computes partial results for every chunk of the samples [0, length).
+     *
+     * @param length  the number of samples, >= 0.
+     * @param width   the number of partial results per chunk, >= 1.
+     * @param reducer the reduction of one chunk, is not null; chunks may run at the same time.
+     * @return the partial results, one array of width values per chunk, in chunk order.
+     */
+    static double[][] partials(int length, int width, ChunkReducer reducer) {
+        ExecutionContext context = ExecutionContext.current();
+        int chunkSize = context.getChunkSize();
+        double[][] partials = new double[Math.max(1, chunkCount(length, chunkSize))][width];
+        ChunkAction action = (from, to) -> reducer.reduce(from, to, partials[from / chunkSize]);
+        if (length < SEQUENTIAL_CUTOFF) {
+            for (int from = 0; from < length; from += chunkSize) {
+                action.run(from, Math.min(length, from + chunkSize));
+            }
+            return partials;
+        }
+        run(context, partials.length, chunkSize, length, action);
+        return partials;
+    }
+
+    /**
+     * Computes partial results for costly items [0, count), grain items per chunk.
+     *
+     * @param count   the number of items, >= 0.
+     * @param grain   the number of items per chunk, >= 1.
+     * @param width   the number of partial results per chunk, >= 1.
+     * @param reducer the reduction of one chunk, is not null; chunks may run at the same time.
+     * @return the partial results, one array of width values per chunk, in chunk order.
+     */
+    static double[][] partials(int count, int grain, int width, ChunkReducer reducer) {
+        double[][] partials = new double[Math.max(1, chunkCount(count, grain))][width];
+        run(ExecutionContext.current(), chunkCount(count, grain), grain, count,
+            (from, to) -> reducer.reduce(from, to, partials[from / grain]));
+        return partials;
+    }
+
+    /**
+     * Adds up partial results in chunk order.
+     *
+     * @param partials the partial results of a reduction.
+     * @return the sum of each partial result over all chunks.
+     */
+    static double[] sum(double[][] partials) {
+        double[] total = new double[partials[0].length];
+        for (double[] partial : partials) {
+            for (int i = 0; i < total.length; i++) {
+                total[i] += partial[i];
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Takes the largest of partial results.
+     *
+     * @param partials the partial results of a reduction.
+     * @return the largest value of each partial result over all chunks.
+     */
+    static double[] max(double[][] partials) {
+        double[] largest = partials[0].clone();
+        for (double[] partial : partials) {
+            for (int i = 0; i < largest.length; i++) {
+                largest[i] = Math.max(largest[i], partial[i]);
+            }
+        }
+        return largest;
+    }
+
+
+    //HELPER FUNCTIONS:
+
+    private static int chunkCount(int length, int chunkSize) {
+        return (int) ((length + (long) chunkSize - 1) / chunkSize);
+    }
+
+    /**
+     * Runs an action over chunks [0, chunks) of [0, length) with the calling thread
+     * and up to parallelism - 1 tasks of a context, and waits for all of them.
+     *
+     * @param context   the context, is not null.
+     * @param chunks    the number of chunks.
+     * @param chunkSize the number of items per chunk.
+     * @param length    the number of items.
+     * @param action    the work for one chunk, is not null.
+     * @throws IllegalStateException if the calling thread is interrupted while waiting.
+     */
+    private static void run(ExecutionContext context, int chunks, int chunkSize, int length, ChunkAction action) {
+        if (chunks <= 1 || context.getParallelism() == 1) {
+            for (int from = 0; from < length; from += chunkSize) {
+                action.run(from, Math.min(length, from + chunkSize));
+            }
+            return;
+        }
+
+        AtomicInteger next = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(chunks);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Runnable worker = context.bind(() -> {
+            for (int chunk = next.getAndIncrement(); chunk < chunks; chunk = next.getAndIncrement()) {
+                try {
+                    if (failure.get() == null) {
+                        int from = chunk * chunkSize;
+                        action.run(from, Math.min(length, from + chunkSize));
+                    }
+                } catch (RuntimeException | Error e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    done.countDown();
+                }
+            }
+        });
+
+        // helpers that start after the calling thread took every chunk find nothing left to do
+        for (int helper = 1; helper < Math.min(context.getParallelism(), chunks); helper++) {
+            try {
+                context.getExecutor().execute(worker);
+            } catch (RejectedExecutionException e) {
+                break;
+            }
+        }
+        worker.run();
+
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for chunks", e);
+        }
+        Throwable thrown = failure.get();
+        if (thrown instanceof RuntimeException) {
+            throw (RuntimeException) thrown;
+        }
+        if (thrown instanceof Error) {
+            throw (Error) thrown;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package cpen221.soundwaves;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p><strong>Overview.</strong>
+ * Decides which pairs of waves are at least as similar as a threshold while
+ * reading as few samples as possible. Each wave is compared first through its
+ * coarsest {@link WavePyramid} level (1/64 of the samples), where the sums of
+ * {@link SoundWave#similarity(SoundWave)} are estimated from the decimated
+ * channels. A pair whose estimate is below the threshold by more than a margin
+ * is rejected there; the others are checked again at the next finer level, and
+ * the survivors of level 1 are decided exactly with
+ * {@link SoundWave#similarityAtLeast(SoundWave, double)}.
+ * </p>
+ *
+ * <p>
+ * Coarse levels only see the low-frequency content of the waves, so the
+ * estimates are approximate and a wider margin trades speed for fewer wrongly
+ * rejected pairs. With a margin of 1.0 no pair is ever rejected early. A pair
+ * that is accepted is always checked exactly, so no dissimilar pair is reported.
+ * </p>
+ */
+public class CoarseToFineSimilarity {
+
+    /**
+     * Default margin, in units of similarity.
+     */
+    public static final double DEFAULT_MARGIN = 0.1;
+
+    private final double margin;
+
+    // Representation Invariants:
+    //  margin >= 0
+
+    // Abstraction Function:
+    //  represents the rule "reject a pair at a coarse level when its estimated
+    //  similarity is below the threshold minus margin"
+
+    /**
+     * Create an engine with the {@link #DEFAULT_MARGIN}.
+     */
+    public CoarseToFineSimilarity() {
+        this(DEFAULT_MARGIN);
+    }
+
+    /**
+     * Create an engine.
+     *
+     * @param margin how far below the threshold a coarse estimate may fall
+     *               before the pair is rejected, >= 0.
+     */
+    public CoarseToFineSimilarity(double margin) {
+        if (margin < 0) {
+            throw new IllegalArgumentException("margin must not be negative");
+        }
+        this.margin = margin;
+    }
+
+    /**
+     * Decides whether two waves are at least as similar as a threshold.
+     *
+     * @param wave      the first wave, is not null.
+     * @param other     the second wave, is not null.
+     * @param threshold the smallest similarity accepted.
+     * @return false if the pair was rejected at a coarse level, and
+     * {@code wave.similarityAtLeast(other, threshold)} otherwise.
+     */
+    public boolean atLeast(SoundWave wave, SoundWave other, double threshold) {
+        if (wave.getSampleRate() != other.getSampleRate()) {
+            return wave.similarityAtLeast(other, threshold);
+        }
+        WavePyramid first = WavePyramid.of(wave);
+        WavePyramid second = WavePyramid.of(other);
+        for (int level = WavePyramid.LEVELS; level >= 1; level--) {
+            if (estimate(first, second, level) < threshold - margin) {
+                return false;
+            }
+        }
+        return wave.similarityAtLeast(other, threshold);
+    }
+
+    /**
+     * Finds the waves of a library that are at least as similar to a query as a threshold.
+     *
+     * @param query     the wave to compare with, is not null.
+     * @param library   the waves to search, is not null and contains no null.
+     * @param threshold the smallest similarity accepted.
+     * @return the indices in library of the accepted waves, in increasing order.
+     */
+    public List<Integer> findSimilar(SoundWave query, List<? extends SoundWave> library, double threshold) {
+        List<Integer> similar = new ArrayList<>();
+        for (int i = 0; i < library.size(); i++) {
+            if (atLeast(query, library.get(i), threshold)) {
+                similar.add(i);
+            }
+        }
+        return similar;
+    }
+
+    /**
+     * Estimates the similarity of two waves from one level of their pyramids.
+     *
+     * @param first  the pyramid of the first wave, is not null.
+     * @param second the pyramid of the second wave, is not null.
+     * @param level  the level to read, in [1, WavePyramid.LEVELS].
+     * @return the similarity of the decimated waves, with their sums scaled
+     * up to the number of samples at full resolution.
+     */
+    static double estimate(WavePyramid first, WavePyramid second, int level) {
+        double[] sums = new double[3];
+        int length = Math.max(first.left(level).length, second.left(level).length);
+        SimilarityMath.accumulate(first.left(level), second.left(level), 0, length, sums);
+        SimilarityMath.accumulate(first.right(level), second.right(level), 0, length, sums);
+
+        double scale = length == 0 ? 1.0 : (double) Math.max(first.length(), second.length()) / length;
+        return SimilarityMath.similarity(scale * sums[0], scale * sums[1], scale * sums[2]);
+    }
+}
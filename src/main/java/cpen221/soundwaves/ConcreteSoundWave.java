@@ -1,6 +1,7 @@
 package cpen221.soundwaves;
 
 import cpen221.soundwaves.soundutils.FilterType;
+import cpen221.soundwaves.soundutils.PolyphaseResampler;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -51,8 +52,38 @@ public class ConcreteSoundWave implements SoundWave {
      */
     private double[] rightChannel;
 
+    /**
+     * Index in leftChannel and rightChannel of the first sample of this wave.
+     */
+    private int offset;
+
+    /**
+     * Number of samples in each channel of this wave.
+     */
+    private int length;
+
+    /**
+     * Number of samples per second in each channel.
+     */
+    private final int sampleRate;
+
+    /**
+     * Decimated copies of the channels, built on first use; null when not built yet.
+     */
+    private volatile WavePyramid pyramid;
+
+    /**
+     * Summary statistics of the channels, computed on first use; null when not computed yet.
+     */
+    private volatile WaveSummary summary;
+
     // Representation Invariants:
     //  both leftChannel and rightChannel must have the same length
+    //  0 <= offset and offset + length <= leftChannel.length
+    //  leftChannel and rightChannel are never modified in place, so slices may share them
+    //  sampleRate > 0
+    //  pyramid is null or the pyramid of the current channels
+    //  summary is null or the summary of the current channels
     //  all elements in leftChannel and rightChanel must represent valid audio samples from (-1 to 1)
     //  ConcreteSoundWave objects should be immutable after initialization.
 
@@ -60,6 +91,8 @@ public class ConcreteSoundWave implements SoundWave {
     //  ConcreteSoundWave object represents sound wave with separate left and right channels
     //  - leftChannel: an array of doubles representing audio samples in left channel
     //  - rightChannel: an array of doubles representing audio samples in right channel
+    //  - the wave is made of the samples [offset, offset + length) of both arrays
+    //  - sampleRate: the number of samples per second in each channel
 
     /**
      * Create an instance of {@code SoundWave} with specified amplitude values for
@@ -71,8 +104,40 @@ public class ConcreteSoundWave implements SoundWave {
      *                     Modifies this.
      */
     public ConcreteSoundWave(double[] leftChannel, double[] rightChannel) {
+        this(leftChannel, rightChannel, SAMPLES_PER_SECOND);
+    }
+
+    /**
+     * Create an instance of {@code SoundWave} with specified amplitude values for
+     * the left and right channel, sampled at a given rate.
+     *
+     * @param leftChannel  left channel. leftChannel is not null.
+     * @param rightChannel right channel. rightChannel is not null
+     * @param sampleRate   the number of samples per second in each channel, > 0.
+     *                     <p>
+     *                     Modifies this.
+     */
+    public ConcreteSoundWave(double[] leftChannel, double[] rightChannel, int sampleRate) {
+        if (sampleRate <= 0) {
+            throw new IllegalArgumentException("sampleRate must be positive");
+        }
+        this.leftChannel = leftChannel;
+        this.rightChannel = rightChannel;
+        this.offset = 0;
+        this.length = leftChannel.length;
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Create a view of the samples [offset, offset + length) of the given channels,
+     * which are shared and must never be modified.
+     */
+    private ConcreteSoundWave(double[] leftChannel, double[] rightChannel, int offset, int length, int sampleRate) {
         this.leftChannel = leftChannel;
         this.rightChannel = rightChannel;
+        this.offset = offset;
+        this.length = length;
+        this.sampleRate = sampleRate;
     }
 
 
@@ -83,8 +148,8 @@ public class ConcreteSoundWave implements SoundWave {
      */
     @Override
     public double[] getLeftChannel() {
-        double[] leftChannelInstance = new double[this.leftChannel.length];
-        System.arraycopy(this.leftChannel, 0, leftChannelInstance, 0, this.leftChannel.length);
+        double[] leftChannelInstance = new double[this.length];
+        System.arraycopy(this.leftChannel, this.offset, leftChannelInstance, 0, this.length);
         return leftChannelInstance;
     }
 
@@ -96,8 +161,8 @@ public class ConcreteSoundWave implements SoundWave {
      */
     @Override
     public double[] getRightChannel() {
-        double[] rightChannelInstance = new double[this.rightChannel.length];
-        System.arraycopy(this.rightChannel, 0, rightChannelInstance, 0, this.rightChannel.length);
+        double[] rightChannelInstance = new double[this.length];
+        System.arraycopy(this.rightChannel, this.offset, rightChannelInstance, 0, this.length);
         return rightChannelInstance;
     }
 
@@ -109,7 +174,50 @@ public class ConcreteSoundWave implements SoundWave {
      */
     @Override
     public double duration() {
-        return (this.leftChannel.length * (1.0 / SAMPLES_PER_SECOND));
+        return (this.length * (1.0 / sampleRate));
+    }
+
+
+    /**
+     * Gets the number of samples in each channel.
+     *
+     * @return the length of this wave, in samples.
+     */
+    @Override
+    public int getSampleCount() {
+        return length;
+    }
+
+
+    /**
+     * Gets the samples [startSample, endSample) of this wave as a new wave.
+     * The slice shares the samples of this wave instead of copying them:
+     * the samples are never changed in place, and {@link #append(double[], double[])}
+     * and {@link #scale(double)} give the wave they modify new arrays,
+     * so changes to either wave are not seen by the other.
+     *
+     * @param startSample the first sample of the slice, >= 0.
+     * @param endSample   one past the last sample, with startSample <= endSample <= getSampleCount().
+     * @return a view of the samples [startSample, endSample), at the sample rate of this wave.
+     */
+    @Override
+    public SoundWave slice(int startSample, int endSample) {
+        if (startSample < 0 || endSample < startSample || endSample > this.length) {
+            throw new IndexOutOfBoundsException("slice [" + startSample + ", " + endSample + ") of " + this.length);
+        }
+        return new ConcreteSoundWave(this.leftChannel, this.rightChannel, this.offset + startSample,
+            endSample - startSample, sampleRate);
+    }
+
+
+    /**
+     * Gets the sample rate of the sound wave.
+     *
+     * @return the number of samples per second in each channel.
+     */
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
     }
 
 
@@ -126,23 +234,28 @@ public class ConcreteSoundWave implements SoundWave {
     @Override
     public void append(double[] lchannel, double[] rchannel) {
 
-        double[] leftChannelAfter = new double[lchannel.length + this.leftChannel.length];
-        double[] rightChannelAfter = new double[rchannel.length + this.rightChannel.length];
+        double[] leftChannelAfter = new double[lchannel.length + this.length];
+        double[] rightChannelAfter = new double[rchannel.length + this.length];
 
-        System.arraycopy(this.leftChannel, 0, leftChannelAfter, 0, this.leftChannel.length);
-        System.arraycopy(this.rightChannel, 0, rightChannelAfter, 0, this.rightChannel.length);
+        System.arraycopy(this.leftChannel, this.offset, leftChannelAfter, 0, this.length);
+        System.arraycopy(this.rightChannel, this.offset, rightChannelAfter, 0, this.length);
 
-        System.arraycopy(lchannel, 0, leftChannelAfter, this.leftChannel.length, lchannel.length);
-        System.arraycopy(rchannel, 0, rightChannelAfter, this.rightChannel.length, rchannel.length);
+        System.arraycopy(lchannel, 0, leftChannelAfter, this.length, lchannel.length);
+        System.arraycopy(rchannel, 0, rightChannelAfter, this.length, rchannel.length);
 
         this.leftChannel = leftChannelAfter;
         this.rightChannel = rightChannelAfter;
+        this.offset = 0;
+        this.length = leftChannelAfter.length;
+        this.pyramid = null;
+        this.summary = null;
 
     }
 
 
     /**
      * Appends the given sound wave to the end of this wave.
+     * If the other wave has a different sample rate, it is resampled to the rate of this wave.
      *
      * @param other the sound wave to append to this wave.
      *              <p>
@@ -151,6 +264,7 @@ public class ConcreteSoundWave implements SoundWave {
     @Override
     public void append(SoundWave other) {
 
+        other = atSampleRate(other, sampleRate);
         double[] lchannel = other.getLeftChannel();
         double[] rchannel = other.getRightChannel();
 
@@ -162,37 +276,36 @@ public class ConcreteSoundWave implements SoundWave {
     /**
      * Creates a new wave by adding the given wave to this wave.
      *
+     * If the other wave has a different sample rate, it is resampled to the rate of this wave.
+     * The shorter wave is padded with silence, and each channel of the sum whose
+     * peak exceeds 1 is scaled back to a peak of 1. Large waves are added in
+     * chunks on several threads.
+     *
      * @param other the wave to add to this wave.
      *              other is not null.
-     * @return the new wave obtained by adding both waves.
+     * @return the new wave obtained by adding both waves, at the sample rate of this wave.
      */
     @Override
     public SoundWave add(SoundWave other) {
 
-        SoundWave otherWave;
-        SoundWave thisWave;
+        other = atSampleRate(other, sampleRate);
+        double[] otherLeft = other.getLeftChannel();
+        double[] otherRight = other.getRightChannel();
 
-        if (this.getLeftChannel().length > other.getLeftChannel().length) {
-            otherWave = makeSameSize(other, this);
-            thisWave = new ConcreteSoundWave(this.getLeftChannel(), this.getRightChannel());
-        } else if (this.getLeftChannel().length < other.getLeftChannel().length) {
-            thisWave = makeSameSize(this, other);
-            otherWave = new ConcreteSoundWave(other.getLeftChannel(), other.getRightChannel());
-        } else {
-            thisWave = new ConcreteSoundWave(this.getLeftChannel(), this.getRightChannel());
-            otherWave = new ConcreteSoundWave(other.getLeftChannel(), other.getRightChannel());
-        }
+        int sumLength = Math.max(this.length, otherLeft.length);
+        double[] newLChannel = new double[sumLength];
+        double[] newRChannel = new double[sumLength];
 
-        double[] newLChannel = new double[thisWave.getRightChannel().length];
-        double[] newRChannel = new double[thisWave.getRightChannel().length];
+        // the peaks are found while each chunk of the sum is still in cache
+        double[] peaks = ChunkedParallel.max(ChunkedParallel.partials(sumLength, 2, (from, to, partial) -> {
+            addRange(this.leftChannel, this.offset, this.length, otherLeft, newLChannel, from, to);
+            addRange(this.rightChannel, this.offset, this.length, otherRight, newRChannel, from, to);
+            partial[0] = peak(newLChannel, from, to);
+            partial[1] = peak(newRChannel, from, to);
+        }));
 
-        for (int t = 0; t < thisWave.getRightChannel().length; t++) {
-            newLChannel[t] = thisWave.getLeftChannel()[t] + otherWave.getLeftChannel()[t];
-            newRChannel[t] = thisWave.getRightChannel()[t] + otherWave.getRightChannel()[t];
-        }
-
-        SoundWave normalizedWave = normalize(new ConcreteSoundWave(newLChannel, newRChannel));
-        return new ConcreteSoundWave(normalizedWave.getLeftChannel(), normalizedWave.getRightChannel());
+        applyGains(newLChannel, newRChannel, normalizingGain(peaks[0]), normalizingGain(peaks[1]));
+        return new ConcreteSoundWave(newLChannel, newRChannel, sampleRate);
     }
 
 
@@ -206,28 +319,28 @@ public class ConcreteSoundWave implements SoundWave {
      */
     @Override
     public SoundWave addEcho(double delta, double alpha) {
-        double[] echoLChannel = new double[(int) (this.leftChannel.length + delta)];
-        double[] echoRChannel = new double[(int) (this.rightChannel.length + delta)];
+        double[] echoLChannel = new double[(int) (this.length + delta)];
+        double[] echoRChannel = new double[(int) (this.length + delta)];
 
 
         if (delta < 0) {
             for (int t = 0; t < echoRChannel.length; t++) {
-                echoRChannel[t] = this.leftChannel[t - (int) delta] * alpha;
-                echoLChannel[t] = this.rightChannel[t - (int) delta] * alpha;
+                echoRChannel[t] = this.leftChannel[this.offset + t - (int) delta] * alpha;
+                echoLChannel[t] = this.rightChannel[this.offset + t - (int) delta] * alpha;
             }
         } else {
             for (int t = 0; t < delta; t++) {
                 echoRChannel[t] = 0;
                 echoLChannel[t] = 0;
             }
-            for (int t = 0; t < this.leftChannel.length; t++) {
-                echoRChannel[t + (int) delta] = this.leftChannel[t] * alpha;
-                echoLChannel[t + (int) delta] = this.rightChannel[t] * alpha;
+            for (int t = 0; t < this.length; t++) {
+                echoRChannel[t + (int) delta] = this.leftChannel[this.offset + t] * alpha;
+                echoLChannel[t + (int) delta] = this.rightChannel[this.offset + t] * alpha;
             }
         }
 
-        SoundWave echoWave = new ConcreteSoundWave(echoLChannel, echoRChannel);
-        SoundWave wave = (new ConcreteSoundWave(this.getLeftChannel(), this.getRightChannel()));
+        SoundWave echoWave = new ConcreteSoundWave(echoLChannel, echoRChannel, sampleRate);
+        SoundWave wave = (new ConcreteSoundWave(this.getLeftChannel(), this.getRightChannel(), sampleRate));
         return wave.add(echoWave);
     }
 
@@ -243,18 +356,26 @@ public class ConcreteSoundWave implements SoundWave {
      */
     @Override
     public void scale(double scalingFactor) {
-        double[] copyLeft = Arrays.copyOf(getLeftChannel(), this.leftChannel.length);
-        double[] copyRight = Arrays.copyOf(getRightChannel(), this.rightChannel.length);
-
-        for (int t = 0; t < copyLeft.length; t++) {
-            copyLeft[t] *= scalingFactor;
-            copyRight[t] *= scalingFactor;
-        }
-
-        SoundWave newWave = normalize(new ConcreteSoundWave(copyLeft, copyRight));
+        // rounding is monotonic, so the peak of the scaled samples is the scaled peak
+        WaveSummary before = summary();
+        double leftGain = normalizingGain(before.getPeak(SpectralPeak.LEFT) * Math.abs(scalingFactor));
+        double rightGain = normalizingGain(before.getPeak(SpectralPeak.RIGHT) * Math.abs(scalingFactor));
+
+        double[] copyLeft = new double[this.length];
+        double[] copyRight = new double[this.length];
+
+        ChunkedParallel.forEach(copyLeft.length, (from, to) -> {
+            for (int t = from; t < to; t++) {
+                copyLeft[t] = this.leftChannel[this.offset + t] * scalingFactor * leftGain;
+                copyRight[t] = this.rightChannel[this.offset + t] * scalingFactor * rightGain;
+            }
+        });
 
-        this.leftChannel = newWave.getLeftChannel();
-        this.rightChannel = newWave.getRightChannel();
+        this.leftChannel = copyLeft;
+        this.rightChannel = copyRight;
+        this.offset = 0;
+        this.pyramid = null;
+        this.summary = null;
 
     }
 
@@ -267,28 +388,39 @@ public class ConcreteSoundWave implements SoundWave {
      * @return true if the other wave is contained in this after amplitude scaling,
      * and false if the other wave is not contained in this with any
      * possible amplitude scaling.
+     * <p>
+     * Blocks of this wave that are zero in both channels, found in its
+     * {@link #summary()}, are skipped wherever the scaling is 0.
      */
     @Override
     public boolean contains(SoundWave other) {
-        if (other.getLeftChannel().length > this.leftChannel.length) {
+        if (other.getSampleCount() > this.length) {
             return false;
         }
 
-        if (other.getLeftChannel().length == 0) {
+        if (other.getSampleCount() == 0) {
             return true;
         }
 
         double[] lchannel = other.getLeftChannel();
         double[] rchannel = other.getRightChannel();
+        WaveSummary silence = summary();
+        int block = WaveSummary.BLOCK_SIZE;
 
-        for (int startPoint = 0; startPoint <= (this.leftChannel.length - other.getLeftChannel().length); startPoint++) {
+        for (int startPoint = 0; startPoint <= (this.length - lchannel.length); startPoint++) {
 
             boolean contains = false;
-            double scaleFactor = Math.abs(this.rightChannel[startPoint] / rchannel[0]);
+            double scaleFactor = Math.abs(this.rightChannel[this.offset + startPoint] / rchannel[0]);
+            int end = startPoint + lchannel.length;
 
-            for (int t = startPoint; t < startPoint + lchannel.length; t++) {
+            for (int t = startPoint; t < end; t++) {
                 contains = true;
-                if (Math.abs(Math.abs(this.leftChannel[t] / lchannel[t - startPoint]) - scaleFactor) > SMALLEST_FLOATING_POINT_ERROR || Math.abs(this.rightChannel[t] / rchannel[t - startPoint] - scaleFactor) > SMALLEST_FLOATING_POINT_ERROR) {
+                // with a scaling of 0, samples that are 0 in both channels match any pattern
+                if (scaleFactor == 0.0 && (t == startPoint || t % block == 0) && silence.isSilentBlock(t / block)) {
+                    t = Math.min(end, (t / block + 1) * block) - 1;
+                    continue;
+                }
+                if (Math.abs(Math.abs(this.leftChannel[this.offset + t] / lchannel[t - startPoint]) - scaleFactor) > SMALLEST_FLOATING_POINT_ERROR || Math.abs(this.rightChannel[this.offset + t] / rchannel[t - startPoint] - scaleFactor) > SMALLEST_FLOATING_POINT_ERROR) {
                     contains = false;
                     break;
                 }
@@ -304,7 +436,12 @@ public class ConcreteSoundWave implements SoundWave {
     /**
      * Determine the similarity between this wave and another wave.
      * The similarity metric, gamma, is the sum of squares of
-     * instantaneous differences.
+     * instantaneous differences. If the other wave has a different sample
+     * rate, it is resampled to the rate of this wave first.
+     * <p>
+     * Blocks that are zero in both waves, found in their {@link #summary()
+     * summaries}, are skipped; the summary of a wave is computed by its first
+     * comparison and reused by later ones.
      *
      * @param other the wave to be compared for similarity.
      *              other is not null.
@@ -313,41 +450,38 @@ public class ConcreteSoundWave implements SoundWave {
     @Override
     public double similarity(SoundWave other) {
 
-        SoundWave otherWave;
-        SoundWave thisWave;
-
-        double bestGamma1 = 0.0;
-        double bestGamma2 = 0.0;
-        double gamma1;
-        double gamma2;
-
-        if (this.getLeftChannel().length > other.getLeftChannel().length) {
-            otherWave = makeSameSize(other, this);
-            thisWave = new ConcreteSoundWave(this.getLeftChannel(), this.getRightChannel());
-        } else if (this.getLeftChannel().length < other.getLeftChannel().length) {
-            thisWave = makeSameSize(this, other);
-            otherWave = new ConcreteSoundWave(other.getLeftChannel(), other.getRightChannel());
-        } else {
-            thisWave = new ConcreteSoundWave(this.getLeftChannel(), this.getRightChannel());
-            otherWave = new ConcreteSoundWave(other.getLeftChannel(), other.getRightChannel());
-        }
-
-        double[] betaArray = getBetaArray();
-
-        for (double beta : betaArray) {
-            gamma1 = this.gamma(thisWave.getLeftChannel(), thisWave.getRightChannel(), otherWave.getLeftChannel(), otherWave.getRightChannel(), beta);
-            gamma2 = this.gamma(otherWave.getLeftChannel(), otherWave.getRightChannel(), thisWave.getLeftChannel(), thisWave.getRightChannel(), beta);
+        // sum (a - beta * b)^2 for every beta follows from three sums, so the samples are read once
+        double[] sums = similaritySums(atSampleRate(other, sampleRate), Double.NEGATIVE_INFINITY);
+        return SimilarityMath.similarity(sums[0], sums[1], sums[2]);
+    }
 
-            if (gamma1 > bestGamma1) {
-                bestGamma1 = gamma1;
-            }
 
-            if (gamma2 > bestGamma2) {
-                bestGamma2 = gamma2;
+    /**
+     * Determine whether the similarity between this wave and another wave
+     * reaches a threshold, without necessarily reading every sample.
+     * The waves are compared block by block while an upper bound on the
+     * similarity is kept; as soon as the bound falls below the threshold, the
+     * answer is known to be false and the remaining samples are skipped.
+     *
+     * @param other     the wave to be compared for similarity.
+     *                  other is not null.
+     * @param threshold the smallest similarity accepted.
+     * @return true if {@code similarity(other) >= threshold}, and false otherwise.
+     */
+    @Override
+    public boolean similarityAtLeast(SoundWave other, double threshold) {
+
+        if (other instanceof ConcreteSoundWave && other.getSampleRate() == sampleRate) {
+            // |Sab| <= sqrt(Saa * Sbb), so the energies alone bound the similarity
+            double saa = summary().getEnergy();
+            double sbb = ((ConcreteSoundWave) other).summary().getEnergy();
+            double bound = SimilarityMath.upperBound(saa, Math.sqrt(saa * sbb), sbb);
+            if (bound * (1 + SMALLEST_FLOATING_POINT_ERROR) < threshold) {
+                return false;
             }
         }
-
-        return (bestGamma2 + bestGamma1) / 2.0;
+        double[] sums = similaritySums(atSampleRate(other, sampleRate), threshold);
+        return sums != null && SimilarityMath.similarity(sums[0], sums[1], sums[2]) >= threshold;
     }
 
 
@@ -376,6 +510,35 @@ public class ConcreteSoundWave implements SoundWave {
     }
 
 
+    /**
+     * Find the strongest peaks of the spectrum of this wave, using the fast
+     * Fourier transform. Peak frequencies are interpolated between bins.
+     *
+     * @param k the largest number of peaks to return, >= 0.
+     * @return up to k peaks from either channel, by decreasing magnitude,
+     * with their frequencies in Hz.
+     */
+    @Override
+    public List<SpectralPeak> spectralPeaks(int k) {
+        return SpectralAnalysis.peaks(this.leftChannel, this.rightChannel, this.offset, this.length, sampleRate, k);
+    }
+
+
+    /**
+     * Measure how strongly a single frequency is present in this wave,
+     * with the Goertzel algorithm.
+     *
+     * @param frequency the frequency, in Hz, >= 0.
+     * @return the estimated amplitude of a sinusoid at that frequency,
+     * the larger of the two channels.
+     */
+    @Override
+    public double amplitudeAt(double frequency) {
+        return Math.max(SpectralAnalysis.goertzel(this.leftChannel, this.offset, this.length, frequency, sampleRate),
+            SpectralAnalysis.goertzel(this.rightChannel, this.offset, this.length, frequency, sampleRate));
+    }
+
+
     /**
      * Filters this sound wave based on the filter type and the threshold frequencies specified.
      *
@@ -389,7 +552,7 @@ public class ConcreteSoundWave implements SoundWave {
         if (frequencies.length > 2) {
             throw new IllegalArgumentException("Can not enter more than two filters.");
         } else if (frequencies.length == 0) {
-            return new ConcreteSoundWave(this.getLeftChannel(), this.getRightChannel());
+            return new ConcreteSoundWave(this.getLeftChannel(), this.getRightChannel(), sampleRate);
         } else {
 
             List<Double> thresholds = new ArrayList<>();
@@ -419,7 +582,7 @@ public class ConcreteSoundWave implements SoundWave {
                         copyListToArray(rightChannelList, rightChannelArray);
                         copyListToArray(leftChannelList, leftChannelArray);
 
-                        filteredWave = new ConcreteSoundWave(leftChannelArray, rightChannelArray);
+                        filteredWave = new ConcreteSoundWave(leftChannelArray, rightChannelArray, sampleRate);
 
                     } else {
                         throw new IllegalArgumentException("Invalid frequencies for the given type");
@@ -436,7 +599,7 @@ public class ConcreteSoundWave implements SoundWave {
                         copyListToArray(rightChannelList, rightChannelArray);
                         copyListToArray(leftChannelList, leftChannelArray);
 
-                        filteredWave = new ConcreteSoundWave(leftChannelArray, rightChannelArray);
+                        filteredWave = new ConcreteSoundWave(leftChannelArray, rightChannelArray, sampleRate);
                     } else {
                         throw new IllegalArgumentException("Invalid frequencies for the given type");
                     }
@@ -452,7 +615,7 @@ public class ConcreteSoundWave implements SoundWave {
                         copyListToArray(rightChannelList, rightChannelArray);
                         copyListToArray(leftChannelList, leftChannelArray);
 
-                        filteredWave = new ConcreteSoundWave(leftChannelArray, rightChannelArray);
+                        filteredWave = new ConcreteSoundWave(leftChannelArray, rightChannelArray, sampleRate);
                     } else {
                         throw new IllegalArgumentException("Invalid frequencies for the given type");
                     }
@@ -490,6 +653,51 @@ public class ConcreteSoundWave implements SoundWave {
     */
 
 
+    /**
+     * Gets the decimated copies of this wave used for coarse comparisons,
+     * building them on first use. They are rebuilt after this wave changes.
+     *
+     * @return the pyramid of this wave.
+     */
+    WavePyramid pyramid() {
+        WavePyramid cached = pyramid;
+        if (cached == null) {
+            cached = WavePyramid.build(this);
+            pyramid = cached;
+        }
+        return cached;
+    }
+
+
+    /**
+     * Gets the peak, energy, RMS level, DC offset and block peaks of both
+     * channels, computing them on first use. They are computed again only
+     * after this wave changes, so repeated queries cost O(1).
+     *
+     * @return the summary of this wave.
+     */
+    public WaveSummary summary() {
+        WaveSummary cached = summary;
+        if (cached == null) {
+            cached = WaveSummary.of(leftChannel, rightChannel, offset, length);
+            summary = cached;
+        }
+        return cached;
+    }
+
+
+    /**
+     * Obtain the amplitude envelope of this wave, reading the samples in
+     * place rather than copying the channels.
+     *
+     * @return the envelope of this wave, which does not change if this wave does.
+     */
+    @Override
+    public Envelope envelope() {
+        return Envelope.of(leftChannel, rightChannel, offset, length, sampleRate);
+    }
+
+
     //HELPER FUNCTIONS:
 
     /**
@@ -497,122 +705,238 @@ public class ConcreteSoundWave implements SoundWave {
      * (i.e. performs a Fourier Transform to obtain the frequencies
      * of the sine waves composing the compound sound wave)
      *
+     * Every frequency costs a pass over the samples, so the frequencies are
+     * computed in chunks as the current {@link ExecutionContext} allows.
+     *
      * @param displacementArray the array corresponding to samples
      *                          on which the Fourier Transformation will be applied
      * @return array with fourier transformed frequencies
      */
     private ComplexNumber[] fourierTransform(double[] displacementArray) {
         double N = displacementArray.length;
-        ArrayList<ComplexNumber> frequencyList = new ArrayList<>();
+        ComplexNumber[] frequencyArray = new ComplexNumber[displacementArray.length];
         ComplexNumber euler = new ComplexNumber(0, 0);
-        for (int k = 0; k < N; k++) {
-            frequencyList.add(k, new ComplexNumber(0, 0));
-            for (int t = 0; t < N; t++) {
-                frequencyList.set(k, frequencyList.get(k).add(euler.eulerRepresentation((-1 * 2 * Math.PI * k * t) / N).multiply(displacementArray[t])));
+        // enough frequencies per chunk for about a chunk of sample work
+        int grain = Math.max(1, ChunkedParallel.chunkSize() / Math.max(1, displacementArray.length));
+        ChunkedParallel.forEach(frequencyArray.length, grain, (from, to) -> {
+            for (int k = from; k < to; k++) {
+                ComplexNumber frequency = new ComplexNumber(0, 0);
+                for (int t = 0; t < N; t++) {
+                    frequency = frequency.add(euler.eulerRepresentation((-1 * 2 * Math.PI * k * t) / N).multiply(displacementArray[t]));
+                }
+                frequencyArray[k] = frequency;
             }
-        }
-        ComplexNumber[] frequencyArray = new ComplexNumber[frequencyList.toArray().length];
-        for (int k = 0; k < frequencyList.toArray().length; k++) {
-            frequencyArray[k] = frequencyList.get(k);
-        }
+        });
         return frequencyArray;
     }
 
 
     /**
-     * Calculates gamma, the intermediate similarity metric for the two given sound waves.
+     * Computes the sums {Saa, Sab, Sbb} of this wave (a) and another wave (b)
+     * over both channels, chunk by chunk, giving up as soon as the similarity
+     * of the waves is known to be below a threshold. Without a threshold the
+     * chunks are summed in parallel; either way the per-chunk sums are added
+     * in the same order, so both give the same result.
      *
-     * @param leftChannelOne  the left channel of the first wave.
-     * @param rightChannelOne the left channel of the second wave.
-     * @param leftChannelTwo  the right channel of the first wave.
-     * @param rightChannelTwo the left channel of the second wave.
-     * @param beta            the factor by which the values of channels
-     *                        of the second wave are scaled.
-     *                        beta must be chosen to minimize gamma.
-     * @return gamma, the intermediate similarity metric between two waves.
+     * The samples of another {@code ConcreteSoundWave} are read in place, so
+     * comparing slices copies nothing, and blocks that are zero in both waves
+     * are skipped. Another wave that is copied into a {@code ConcreteSoundWave}
+     * is not summarized, since the summary would cost as much as the samples it skips.
+     *
+     * @param other     the other wave, at the sample rate of this wave.
+     * @param threshold the smallest similarity of interest.
+     * @return the sums, or null if the similarity is below threshold.
      */
-    private double gamma(double[] leftChannelOne, double[] rightChannelOne, double[] leftChannelTwo, double[] rightChannelTwo, double beta) {
-        return 1.0 / (1 + this.summator(rightChannelOne, rightChannelTwo, beta) + this.summator(leftChannelOne, leftChannelTwo, beta));
+    private double[] similaritySums(SoundWave other, double threshold) {
+        ConcreteSoundWave b = other instanceof ConcreteSoundWave
+            ? (ConcreteSoundWave) other
+            : new ConcreteSoundWave(other.getLeftChannel(), other.getRightChannel(), sampleRate);
+        int sumLength = Math.max(this.length, b.length);
+
+        ChunkedParallel.ChunkReducer sumsOfRange = (from, to, partial) -> {
+            SimilarityMath.accumulate(this.leftChannel, this.offset, this.length,
+                b.leftChannel, b.offset, b.length, from, to, partial);
+            SimilarityMath.accumulate(this.rightChannel, this.offset, this.length,
+                b.rightChannel, b.offset, b.length, from, to, partial);
+        };
+        // blocks that are zero in both waves add nothing, so they are skipped
+        WaveSummary mine = summary();
+        WaveSummary theirs = b == other ? b.summary() : null;
+        ChunkedParallel.ChunkReducer sumsOfChunk = mine == null || theirs == null
+            ? sumsOfRange
+            : (from, to, partial) -> {
+                int runStart = from;
+                for (int block = from / WaveSummary.BLOCK_SIZE; block * WaveSummary.BLOCK_SIZE < to; block++) {
+                    if (mine.isSilentBlock(block) && theirs.isSilentBlock(block)) {
+                        int start = Math.max(from, block * WaveSummary.BLOCK_SIZE);
+                        if (runStart < start) {
+                            sumsOfRange.reduce(runStart, start, partial);
+                        }
+                        runStart = Math.min(to, (block + 1) * WaveSummary.BLOCK_SIZE);
+                    }
+                }
+                if (runStart < to) {
+                    sumsOfRange.reduce(runStart, to, partial);
+                }
+            };
+        if (threshold == Double.NEGATIVE_INFINITY) {
+            return ChunkedParallel.sum(ChunkedParallel.partials(sumLength, 3, sumsOfChunk));
+        }
+
+        double[] sums = new double[3];
+        double[] partial = new double[3];
+        int chunkSize = ChunkedParallel.chunkSize();
+        for (int from = 0; from < sumLength; from += chunkSize) {
+            Arrays.fill(partial, 0.0);
+            sumsOfChunk.reduce(from, Math.min(sumLength, from + chunkSize), partial);
+            for (int i = 0; i < sums.length; i++) {
+                sums[i] += partial[i];
+            }
+            if (SimilarityMath.upperBound(sums[0], sums[1], sums[2]) < threshold) {
+                return null;
+            }
+        }
+        return sums;
     }
 
 
     /**
-     * Calculates the summation of square of the difference between
-     * corresponding values first and second channels, where the
-     * second channel values are scaled by beta.
+     * Converts a wave to a sample rate, only if it is not already at that rate.
      *
-     * @param channelOne the first channel of samples.
-     * @param channelTwo the second channel of samples.
-     * @param beta       the factor by which the values of channels
-     *                   of the second wave are scaled.
-     *                   beta must be chosen to minimize gamma.
-     * @return the summation of the squares of differences between the
-     * first channel values and second channel values scaled by beta.
+     * @param wave       the wave to convert, is not null.
+     * @param sampleRate the sample rate wanted, > 0.
+     * @return wave itself if it has the given sample rate, or a resampled copy otherwise.
      */
-    private double summator(double[] channelOne, double[] channelTwo, double beta) {
+    static SoundWave atSampleRate(SoundWave wave, int sampleRate) {
+        if (wave.getSampleRate() == sampleRate) {
+            return wave;
+        }
+        return new ConcreteSoundWave(
+            PolyphaseResampler.resample(wave.getLeftChannel(), wave.getSampleRate(), sampleRate),
+            PolyphaseResampler.resample(wave.getRightChannel(), wave.getSampleRate(), sampleRate),
+            sampleRate);
+    }
 
-        double summation = 0.0;
 
-        for (int t = 0; t < channelOne.length; t++) {
-            summation += Math.pow((channelOne[t] - beta * channelTwo[t]), 2);
+    /**
+     * Writes a[aOffset + t] + b[t] into dest[t] for t in [from, to), treating
+     * samples past the end of either channel as silence.
+     *
+     * @param a       the array holding a channel, is not null.
+     * @param aOffset the index in a of the first sample of the channel.
+     * @param aLength the number of samples in the channel.
+     * @param b       the same channel of another wave, is not null.
+     * @param dest    the sum, at least to samples long, is not null.
+     *                <p>
+     *                Modifies dest.
+     */
+    private static void addRange(double[] a, int aOffset, int aLength, double[] b, double[] dest, int from, int to) {
+        int common = Math.min(to, Math.min(aLength, b.length));
+        for (int t = from; t < common; t++) {
+            dest[t] = a[aOffset + t] + b[t];
+        }
+        for (int t = Math.max(from, common); t < to; t++) {
+            dest[t] = t < aLength ? a[aOffset + t] : b[t];
         }
-
-        return summation;
     }
 
 
     /**
-     * Creates a new wave with the same sample values as the smaller wave
-     * and zero valued samples at the end such that its duration
-     * is the same as the duration of the bigger wave.
+     * Finds the silent blocks of this wave, reading the samples in place.
      *
-     * @param smallWave the wave with the smaller duration.
-     * @param bigWave   the wave with the bigger duration.
-     * @return a new wave with the same sample values as the smaller wave
-     * and the same duration as the bigger wave.
+     * @param block     the number of samples per block, > 0.
+     * @param threshold the RMS level at or below which a block is silent.
+     * @return for every block in order, whether it is silent in both channels.
      */
-    private static SoundWave makeSameSize(SoundWave smallWave, SoundWave bigWave) {
-
-        SoundWave newSoundWave = new ConcreteSoundWave(smallWave.getLeftChannel(), smallWave.getRightChannel());
+    boolean[] silentBlocks(int block, double threshold) {
+        return SilenceAnalysis.silentBlocks(leftChannel, rightChannel, offset, length, block, threshold);
+    }
 
-        int diff = bigWave.getLeftChannel().length - smallWave.getLeftChannel().length;
-        newSoundWave.append(new double[diff], new double[diff]);
 
-        return new ConcreteSoundWave(newSoundWave.getLeftChannel(), newSoundWave.getRightChannel());
+    /**
+     * Adds this wave, scaled by a gain and delayed by a number of samples, to
+     * the samples [from, to) of a mix. The samples are read in place.
+     *
+     * @param mixLeft  the left channel of the mix, is not null.
+     * @param mixRight the right channel of the mix, as long as mixLeft, is not null.
+     * @param start    the sample of the mix at which this wave starts, >= 0.
+     * @param gain     the factor applied to every sample of this wave.
+     * @param from     the first sample of the mix to add to, >= 0.
+     * @param to       one past the last sample of the mix to add to, <= mixLeft.length.
+     *                 <p>
+     *                 Modifies mixLeft and mixRight.
+     */
+    void addTo(double[] mixLeft, double[] mixRight, int start, double gain, int from, int to) {
+        int begin = Math.max(from, start);
+        int end = Math.min(to, start + this.length);
+        int shift = this.offset - start;
+        for (int t = begin; t < end; t++) {
+            mixLeft[t] += gain * this.leftChannel[t + shift];
+            mixRight[t] += gain * this.rightChannel[t + shift];
+        }
     }
 
 
     /**
-     * Normalizes both channels of the given wave.
+     * Normalizes both channels in place: a channel whose peak exceeds 1 is
+     * scaled back to a peak of 1. The peaks are found with a two-phase
+     * parallel reduction, then the channels are scaled in chunks.
      *
-     * @param wave the wave to be normalized.
-     * @return the normalized wave.
+     * @param lchannel the left channel, is not null.
+     * @param rchannel the right channel, as long as lchannel, is not null.
+     *                 <p>
+     *                 Modifies lchannel and rchannel.
      */
-    private static SoundWave normalize(SoundWave wave) {
+    static void normalize(double[] lchannel, double[] rchannel) {
 
-        double[] lchannel = wave.getLeftChannel();
-        double[] rchannel = wave.getRightChannel();
+        double[] peaks = ChunkedParallel.max(ChunkedParallel.partials(lchannel.length, 2, (from, to, partial) -> {
+            partial[0] = peak(lchannel, from, to);
+            partial[1] = peak(rchannel, from, to);
+        }));
 
-        double maxLeft = Arrays.stream(lchannel).max().orElse(0.0);
-        double maxRight = Arrays.stream(rchannel).max().orElse(0.0);
+        applyGains(lchannel, rchannel, normalizingGain(peaks[0]), normalizingGain(peaks[1]));
+    }
 
-        double minLeft = Arrays.stream(lchannel).min().orElse(0.0);
-        double minRight = Arrays.stream(rchannel).min().orElse(0.0);
 
-        double left = Math.abs(Math.max(Math.abs(maxLeft), Math.abs(minLeft)));
-        double right = Math.abs(Math.max(Math.abs(maxRight), Math.abs(minRight)));
+    /**
+     * @return the largest |x| over samples [from, to) of a channel, 0 if there are none.
+     */
+    private static double peak(double[] channel, int from, int to) {
+        double peak = 0.0;
+        for (int t = from; t < to; t++) {
+            peak = Math.max(peak, Math.abs(channel[t]));
+        }
+        return peak;
+    }
 
-        SoundWave leftWave = new ConcreteSoundWave(lchannel, new double[rchannel.length]);
-        SoundWave rightWave = new ConcreteSoundWave(new double[lchannel.length], rchannel);
 
-        if (left > 1.0) {
-            leftWave.scale((1.0 / left));
-        }
-        if (right > 1.0) {
-            rightWave.scale((1.0 / right));
-        }
+    /**
+     * @return the gain that brings a channel with the given peak back to a peak
+     * of 1, or 1 if the peak does not exceed 1.
+     */
+    private static double normalizingGain(double peak) {
+        return peak > 1.0 ? 1.0 / peak : 1.0;
+    }
+
 
-        return new ConcreteSoundWave(leftWave.getLeftChannel(), rightWave.getRightChannel());
+    /**
+     * Multiplies both channels by their gains in chunks, unless both gains are 1.
+     *
+     * @param lchannel the left channel, is not null.
+     * @param rchannel the right channel, as long as lchannel, is not null.
+     *                 <p>
+     *                 Modifies lchannel and rchannel.
+     */
+    private static void applyGains(double[] lchannel, double[] rchannel, double leftGain, double rightGain) {
+        if (leftGain == 1.0 && rightGain == 1.0) {
+            return;
+        }
+        ChunkedParallel.forEach(lchannel.length, (from, to) -> {
+            for (int t = from; t < to; t++) {
+                lchannel[t] *= leftGain;
+                rchannel[t] *= rightGain;
+            }
+        });
     }
 
 
@@ -0,0 +1,305 @@
+package cpen221.soundwaves;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * <p><strong>Overview.</strong>
+ * A disk cache of decoded audio, keyed by the SHA-256 hash of the source file's
+ * contents. A hit is served by memory-mapping the stored samples with
+ * {@link SoundWaveStore#load(Path)} instead of decoding the source again.
+ * </p>
+ *
+ * <p><strong>Layout.</strong>
+ * The cache directory holds two subdirectories:
+ * <ul>
+ *     <li>{@code data/}, with one {@code <contentHash>.swv} file per decoded source; and</li>
+ *     <li>{@code keys/}, with one small file per source path recording the size,
+ *     modification time and content hash last seen for that path. When the size and
+ *     modification time still match, the content hash is reused without reading the source.</li>
+ * </ul>
+ * </p>
+ *
+ * <p><strong>Concurrency.</strong>
+ * Every file is written under a temporary name and then atomically renamed into
+ * place, so other processes sharing the directory only ever see complete entries.
+ * Two processes may decode the same source at the same time; the last rename wins
+ * and both results are identical.
+ * </p>
+ *
+ * <p><strong>Eviction.</strong>
+ * Hits refresh the modification time of the data file. When the data files exceed
+ * the byte budget, the least recently used ones are deleted.
+ * </p>
+ */
+public class DecodedAudioCache {
+
+    private static final String DATA_SUFFIX = ".swv";
+    private static final int HASH_BUFFER_SIZE = 1 << 16;
+
+    private final Path dataDirectory;
+    private final Path keyDirectory;
+    private final long maxBytes;
+
+    // Representation Invariants:
+    //  dataDirectory and keyDirectory exist
+    //  maxBytes > 0
+    //  every complete file in dataDirectory is named <contentHash>.swv and was written by SoundWaveStore
+
+    // Abstraction Function:
+    //  represents a map from source file contents to their decoded samples,
+    //  holding at most about maxBytes of samples.
+
+    /**
+     * Opens (and creates if needed) a cache in the given directory.
+     *
+     * @param directory the cache directory, is not null.
+     * @param maxBytes  the byte budget for decoded samples, > 0.
+     * @throws IllegalArgumentException if the directory can not be created.
+     */
+    public DecodedAudioCache(Path directory, long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive");
+        }
+        this.dataDirectory = directory.resolve("data");
+        this.keyDirectory = directory.resolve("keys");
+        this.maxBytes = maxBytes;
+        try {
+            Files.createDirectories(dataDirectory);
+            Files.createDirectories(keyDirectory);
+        } catch (IOException ioe) {
+            throw new IllegalArgumentException("could not create cache in '" + directory + "'", ioe);
+        }
+    }
+
+    /**
+     * Looks up the decoded samples of a source file.
+     *
+     * @param source the source audio file, is not null.
+     * @return the cached samples, or null if the source has not been cached.
+     * @throws IllegalArgumentException if the source can not be read.
+     */
+    public MappedSoundWave get(Path source) {
+        Path entry = dataFile(contentHash(source));
+        try {
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            return SoundWaveStore.load(entry);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | IllegalArgumentException e) {
+            // unreadable or corrupt entry: drop it and treat this as a miss
+            deleteQuietly(entry);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the decoded samples of a source file, then evicts least recently
+     * used entries until the cache fits its byte budget again.
+     *
+     * @param source the source audio file, is not null.
+     * @param wave   the decoded samples of source, is not null.
+     * @throws IllegalArgumentException if the source can not be read or the entry can not be written.
+     */
+    public void put(Path source, SoundWave wave) {
+        Path entry = dataFile(contentHash(source));
+        try {
+            Path temp = Files.createTempFile(dataDirectory, "entry", ".tmp");
+            try {
+                SoundWaveStore.write(wave, temp, SoundWaveStore.Encoding.PCM16);
+                moveAtomically(temp, entry);
+            } finally {
+                deleteQuietly(temp);
+            }
+        } catch (IOException ioe) {
+            throw new IllegalArgumentException("unable to cache '" + source + "'", ioe);
+        }
+        evict(entry);
+    }
+
+    /**
+     * Gets the total size of the cached samples.
+     *
+     * @return the size of all data files, in bytes.
+     */
+    public long sizeInBytes() {
+        long total = 0;
+        for (Path entry : dataFiles()) {
+            try {
+                total += Files.size(entry);
+            } catch (IOException e) {
+                // removed by another process
+            }
+        }
+        return total;
+    }
+
+
+    //HELPER FUNCTIONS:
+
+    /**
+     * Finds the content hash of a source file, reusing the recorded hash
+     * when the file's size and modification time have not changed.
+     *
+     * @param source the source audio file, is not null.
+     * @return the hex SHA-256 of the file contents.
+     * @throws IllegalArgumentException if the source can not be read.
+     */
+    private String contentHash(Path source) {
+        try {
+            long size = Files.size(source);
+            long modified = Files.getLastModifiedTime(source).toMillis();
+            Path keyFile = keyDirectory.resolve(sha256(source.toAbsolutePath().normalize().toString()
+                .getBytes(StandardCharsets.UTF_8)));
+
+            try {
+                String[] key = Files.readString(keyFile).trim().split(" ");
+                if (key.length == 3 && Long.parseLong(key[0]) == size && Long.parseLong(key[1]) == modified) {
+                    return key[2];
+                }
+            } catch (NoSuchFileException | NumberFormatException e) {
+                // no usable key yet; hash the contents below
+            }
+
+            String hash = hashContents(source);
+            Path temp = Files.createTempFile(keyDirectory, "key", ".tmp");
+            try {
+                Files.writeString(temp, size + " " + modified + " " + hash);
+                moveAtomically(temp, keyFile);
+            } finally {
+                deleteQuietly(temp);
+            }
+            return hash;
+        } catch (IOException ioe) {
+            throw new IllegalArgumentException("could not read '" + source + "'", ioe);
+        }
+    }
+
+    /**
+     * Deletes the least recently used data files until the cache fits its budget.
+     *
+     * @param keep a data file that must not be deleted, is not null.
+     */
+    private void evict(Path keep) {
+        List<Path> entries = new ArrayList<>();
+        List<long[]> stats = new ArrayList<>(); // {last modified, size} of each entry
+        long total = 0;
+        for (Path entry : dataFiles()) {
+            try {
+                long modified = Files.getLastModifiedTime(entry).toMillis();
+                long size = Files.size(entry);
+                entries.add(entry);
+                stats.add(new long[] {modified, size});
+                total += size;
+            } catch (IOException e) {
+                // removed by another process
+            }
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+
+        Integer[] order = new Integer[entries.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> stats.get(i)[0]));
+        for (int i = 0; i < order.length && total > maxBytes; i++) {
+            Path entry = entries.get(order[i]);
+            if (!entry.equals(keep)) {
+                deleteQuietly(entry);
+                total -= stats.get(order[i])[1];
+            }
+        }
+    }
+
+    /**
+     * Lists the complete data files in the cache.
+     *
+     * @return the data files.
+     */
+    private List<Path> dataFiles() {
+        List<Path> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dataDirectory, "*" + DATA_SUFFIX)) {
+            for (Path entry : stream) {
+                entries.add(entry);
+            }
+        } catch (IOException e) {
+            // an unreadable cache directory behaves like an empty cache
+        }
+        return entries;
+    }
+
+    private Path dataFile(String contentHash) {
+        return dataDirectory.resolve(contentHash + DATA_SUFFIX);
+    }
+
+    /**
+     * Renames a file, atomically when the file system supports it.
+     *
+     * @param from the file to move.
+     * @param to   the destination, replaced if it exists.
+     * @throws IOException if the file can not be moved.
+     */
+    private static void moveAtomically(Path from, Path to) throws IOException {
+        try {
+            Files.move(from, to, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // another process may still hold it; eviction will retry later
+        }
+    }
+
+    /**
+     * Computes the SHA-256 of a file's contents.
+     *
+     * @param file the file to hash.
+     * @return the hash, as lowercase hex.
+     * @throws IOException if the file can not be read.
+     */
+    private static String hashContents(Path file) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[HASH_BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(file)) {
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, count);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static String sha256(byte[] data) {
+        return HexFormat.of().formatHex(newDigest().digest(data));
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package cpen221.soundwaves;
+
+/**
+ * <p><strong>Overview.</strong>
+ * The amplitude envelope of a sound wave: RMS level over any window, peak
+ * level per block and an integrated loudness estimate. Obtained from
+ * {@link SoundWave#envelope()}.
+ * </p>
+ *
+ * <p>
+ * The squares of the samples are summed once, in chunks on the
+ * {@link ExecutionContext#current() current execution context}: each chunk
+ * keeps running sums that restart at the chunk, and the chunk totals are
+ * added up in chunk order. The sum of squares of any window, and so its RMS
+ * level, then takes two lookups per channel, whatever the window size.
+ * Restarting the running sums at every chunk also keeps their rounding error
+ * down on long waves.
+ * </p>
+ *
+ * <p>
+ * {@link #integratedLoudness()} follows the gating of ITU-R BS.1770 (400 ms
+ * blocks overlapping by 75%, an absolute gate at -70 and a relative gate
+ * 10 below the ungated level) on the unweighted channels, so it is an
+ * estimate of LUFS rather than a calibrated measurement.
+ * </p>
+ */
+public final class Envelope {
+
+    /**
+     * Length of a loudness gating block, in seconds.
+     */
+    private static final double GATING_BLOCK_SECONDS = 0.4;
+
+    /**
+     * Step between loudness gating blocks, in seconds.
+     */
+    private static final double GATING_STEP_SECONDS = 0.1;
+
+    private static final double ABSOLUTE_GATE = -70.0;
+    private static final double RELATIVE_GATE = -10.0;
+
+    private final double[] left;
+    private final double[] right;
+    private final int offset;
+    private final int length;
+    private final int sampleRate;
+    private final int chunkSize;
+
+    /**
+     * Running sums of squares of each channel, restarting at every chunk.
+     */
+    private final double[][] running = new double[2][];
+
+    /**
+     * Sums of squares of each channel before each chunk.
+     */
+    private final double[][] before = new double[2][];
+
+    // Representation Invariants:
+    //  0 <= offset, offset + length <= left.length == right.length, sampleRate > 0, chunkSize > 0
+    //  left and right are never modified
+    //  for each channel c and t in [0, length): running[c][t] is the sum of x^2 over
+    //  [chunkSize * (t / chunkSize), t], and before[c][k] is the sum of x^2 over [0, k * chunkSize)
+
+    // Abstraction Function:
+    //  represents the envelope of a wave at sampleRate Hz whose samples are
+    //  left[offset + t] and right[offset + t] for t in [0, length)
+
+    private Envelope(double[] left, double[] right, int offset, int length, int sampleRate) {
+        this.left = left;
+        this.right = right;
+        this.offset = offset;
+        this.length = length;
+        this.sampleRate = sampleRate;
+        this.chunkSize = ChunkedParallel.chunkSize();
+        this.running[SpectralPeak.LEFT] = new double[length];
+        this.running[SpectralPeak.RIGHT] = new double[length];
+    }
+
+    /**
+     * Computes the envelope of the samples [offset, offset + length) of two
+     * channels, which are read in place and must never be modified.
+     *
+     * @param left       the array holding the left channel, is not null.
+     * @param right      the array holding the right channel, is not null.
+     * @param offset     the index of the first sample in both arrays, >= 0.
+     * @param length     the number of samples in each channel, >= 0.
+     * @param sampleRate the number of samples per second, > 0.
+     * @return the envelope of the samples.
+     */
+    static Envelope of(double[] left, double[] right, int offset, int length, int sampleRate) {
+        Envelope envelope = new Envelope(left, right, offset, length, sampleRate);
+        double[] runningLeft = envelope.running[SpectralPeak.LEFT];
+        double[] runningRight = envelope.running[SpectralPeak.RIGHT];
+
+        double[][] totals = ChunkedParallel.partials(length, 2, (from, to, partial) -> {
+            double sumLeft = 0.0;
+            double sumRight = 0.0;
+            for (int t = from; t < to; t++) {
+                double l = left[offset + t];
+                double r = right[offset + t];
+                sumLeft += l * l;
+                sumRight += r * r;
+                runningLeft[t] = sumLeft;
+                runningRight[t] = sumRight;
+            }
+            partial[0] = sumLeft;
+            partial[1] = sumRight;
+        });
+
+        for (int c = 0; c < 2; c++) {
+            envelope.before[c] = new double[totals.length];
+            for (int k = 1; k < totals.length; k++) {
+                envelope.before[c][k] = envelope.before[c][k - 1] + totals[k - 1][c];
+            }
+        }
+        return envelope;
+    }
+
+    /**
+     * Gets the number of samples of the wave.
+     *
+     * @return the number of samples in each channel.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Gets the sample rate of the wave.
+     *
+     * @return the number of samples per second in each channel.
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Computes the RMS level of one channel over a window, in O(1).
+     *
+     * @param channel {@link SpectralPeak#LEFT} or {@link SpectralPeak#RIGHT}.
+     * @param from    the first sample of the window, >= 0.
+     * @param to      one past the last sample, with from <= to <= getLength().
+     * @return the root mean square of the samples [from, to), 0 for an empty window.
+     */
+    public double rms(int channel, int from, int to) {
+        checkWindow(from, to);
+        return from == to ? 0.0 : Math.sqrt(Math.max(0.0, sumOfSquares(channel, from, to)) / (to - from));
+    }
+
+    /**
+     * Computes the RMS level of both channels together over a window, in O(1).
+     *
+     * @param from the first sample of the window, >= 0.
+     * @param to   one past the last sample, with from <= to <= getLength().
+     * @return the root mean square of the samples [from, to) of both channels,
+     * 0 for an empty window.
+     */
+    public double rms(int from, int to) {
+        checkWindow(from, to);
+        return from == to ? 0.0 : Math.sqrt(meanSquare(from, to) / 2.0);
+    }
+
+    /**
+     * Computes the RMS level of both channels over consecutive windows,
+     * such as every 10 ms.
+     *
+     * @param windowSeconds the length of a window, in seconds, > 0.
+     * @return the RMS level of every window in order; the last window may be shorter.
+     */
+    public double[] rmsEnvelope(double windowSeconds) {
+        int window = samplesIn(windowSeconds);
+        double[] envelope = new double[(int) (((long) length + window - 1) / window)];
+        for (int i = 0; i < envelope.length; i++) {
+            envelope[i] = rms(i * window, (int) Math.min(length, (i + 1L) * window));
+        }
+        return envelope;
+    }
+
+    /**
+     * Computes the peak level of both channels over consecutive blocks.
+     * Blocks are scanned in parallel, in one pass over the samples.
+     *
+     * @param blockSeconds the length of a block, in seconds, > 0.
+     * @return the largest |x| of either channel in every block in order;
+     * the last block may be shorter.
+     */
+    public double[] peakEnvelope(double blockSeconds) {
+        int block = samplesIn(blockSeconds);
+        double[] envelope = new double[(int) (((long) length + block - 1) / block)];
+        ChunkedParallel.forEach(envelope.length, Math.max(1, chunkSize / block), (from, to) -> {
+            for (int i = from; i < to; i++) {
+                double peak = 0.0;
+                for (int t = offset + i * block; t < offset + Math.min(length, (i + 1L) * block); t++) {
+                    peak = Math.max(peak, Math.max(Math.abs(left[t]), Math.abs(right[t])));
+                }
+                envelope[i] = peak;
+            }
+        });
+        return envelope;
+    }
+
+    /**
+     * Estimates the integrated loudness of the wave, gated as in ITU-R BS.1770
+     * but without its K-weighting filter. A wave shorter than one gating
+     * block is measured as a single block.
+     *
+     * @return the loudness, in LUFS (about -0.7 for a full-scale sine in
+     * both channels), or {@code Double.NEGATIVE_INFINITY} if the wave is silent.
+     */
+    public double integratedLoudness() {
+        if (length == 0) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        int block = Math.min(length, samplesIn(GATING_BLOCK_SECONDS));
+        int step = samplesIn(GATING_STEP_SECONDS);
+        int blocks = 1 + (length - block) / step;
+        double[] power = new double[blocks];
+        for (int j = 0; j < blocks; j++) {
+            power[j] = meanSquare(j * step, j * step + block);
+        }
+
+        double ungated = gatedMean(power, Double.NEGATIVE_INFINITY, ABSOLUTE_GATE);
+        if (Double.isNaN(ungated)) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        double relativeGate = loudness(ungated) + RELATIVE_GATE;
+        return loudness(gatedMean(power, relativeGate, ABSOLUTE_GATE));
+    }
+
+
+    //HELPER FUNCTIONS:
+
+    private void checkWindow(int from, int to) {
+        if (from < 0 || to < from || to > length) {
+            throw new IndexOutOfBoundsException("window [" + from + ", " + to + ") of " + length);
+        }
+    }
+
+    /**
+     * @return the number of samples in the given time, at least 1.
+     */
+    private int samplesIn(double seconds) {
+        if (!(seconds > 0)) {
+            throw new IllegalArgumentException("window must be longer than 0 seconds");
+        }
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, Math.round(seconds * sampleRate)));
+    }
+
+    /**
+     * @return the sum of x^2 over the samples [0, t) of a channel, for t in [0, length].
+     */
+    private double prefix(int channel, int t) {
+        if (t == 0) {
+            return 0.0;
+        }
+        return before[channel][(t - 1) / chunkSize] + running[channel][t - 1];
+    }
+
+    private double sumOfSquares(int channel, int from, int to) {
+        return prefix(channel, to) - prefix(channel, from);
+    }
+
+    /**
+     * @return the sum over both channels of the mean square of the samples [from, to), from < to.
+     */
+    private double meanSquare(int from, int to) {
+        double sum = sumOfSquares(SpectralPeak.LEFT, from, to) + sumOfSquares(SpectralPeak.RIGHT, from, to);
+        return Math.max(0.0, sum) / (to - from);
+    }
+
+    /**
+     * @return the mean of the block powers whose loudness exceeds both gates, or NaN if none does.
+     */
+    private static double gatedMean(double[] power, double relativeGate, double absoluteGate) {
+        double sum = 0.0;
+        int count = 0;
+        for (double p : power) {
+            double l = loudness(p);
+            if (l > absoluteGate && l > relativeGate) {
+                sum += p;
+                count++;
+            }
+        }
+        return count == 0 ? Double.NaN : sum / count;
+    }
+
+    /**
+     * @return the loudness, in LUFS, of a block with the given sum of channel mean squares.
+     */
+    private static double loudness(double power) {
+        return -0.691 + 10.0 * Math.log10(power);
+    }
+}
@@ -0,0 +1,328 @@
+package cpen221.soundwaves;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+/**
+ * <p><strong>Overview.</strong>
+ * Says where and how the heavy operations of this package run: the executor
+ * their chunks are handed to, how many chunks may run at once, how many
+ * samples a chunk holds and the priority of the threads running them.
+ * Similarity, addition, scaling, generation, spectral analysis, filtering
+ * and library decoding all take their context from {@link #current()}.
+ * </p>
+ *
+ * <p>
+ * A context applies to one call with {@link #call(Supplier)} or
+ * {@link #run(Runnable)}, which make it the current context of the calling
+ * thread until the operation returns; otherwise the process-wide default of
+ * {@link #setDefault(ExecutionContext)} is used. For example, batch analysis
+ * can run as
+ * {@code ExecutionContext.common().withParallelism(2).withPriority(Priority.LOW).call(() -> a.similarity(b))}
+ * while latency-sensitive requests keep the default.
+ * </p>
+ *
+ * <p>
+ * The calling thread always works on its own operation, so an operation
+ * finishes even when every thread of the executor is busy. Thread priorities
+ * are a hint to the operating system, and are ignored by virtual threads.
+ * Contexts are immutable and thread safe.
+ * </p>
+ *
+ * <p>
+ * A context does not own its executor and is never closed: whoever creates
+ * an executor for {@link #ExecutionContext(Executor, int, int, Priority)}
+ * shuts it down. The executor of {@link #virtualThreads(int)} is shared by
+ * every such context and lasts as long as the process, which it never keeps
+ * alive.
+ * </p>
+ */
+public final class ExecutionContext {
+
+    /**
+     * Priority of the threads working on an operation. It applies only while
+     * an operation is split into chunks run in parallel, to the executor's
+     * threads and the calling thread alike. Operations run sequentially, because
+     * the context has a parallelism of 1 or the operation is shorter than the
+     * sequential cutoff, leave the priority of the calling thread as it is.
+     */
+    public enum Priority {
+        LOW(Thread.MIN_PRIORITY),
+        NORMAL(Thread.NORM_PRIORITY),
+        HIGH(Thread.MAX_PRIORITY);
+
+        private final int threadPriority;
+
+        Priority(int threadPriority) {
+            this.threadPriority = threadPriority;
+        }
+    }
+
+    /**
+     * Default number of samples per chunk (128 KiB of doubles per channel).
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 14;
+
+    private static final ThreadLocal<ExecutionContext> SCOPED = new ThreadLocal<>();
+
+    private static volatile ExecutionContext defaultContext = common();
+
+    private final Executor executor;
+    private final int parallelism;
+    private final int chunkSize;
+    private final Priority priority;
+
+    // Representation Invariants:
+    //  executor and priority are not null
+    //  parallelism >= 1, chunkSize >= 1
+
+    // Abstraction Function:
+    //  represents the policy "run at most parallelism chunks of chunkSize samples at once,
+    //  on the calling thread and on executor, at the given thread priority"
+
+    /**
+     * Create a context.
+     *
+     * @param executor    runs the chunks that the calling thread does not run itself, is not null.
+     * @param parallelism the largest number of chunks of one operation running at once,
+     *                    counting the calling thread, >= 1.
+     * @param chunkSize   the number of samples per chunk, >= 1.
+     * @param priority    the priority of the threads while they work on an operation, is not null.
+     */
+    public ExecutionContext(Executor executor, int parallelism, int chunkSize, Priority priority) {
+        if (executor == null || priority == null) {
+            throw new IllegalArgumentException("executor and priority must not be null");
+        }
+        if (parallelism < 1 || chunkSize < 1) {
+            throw new IllegalArgumentException("parallelism and chunkSize must be positive");
+        }
+        this.executor = executor;
+        this.parallelism = parallelism;
+        this.chunkSize = chunkSize;
+        this.priority = priority;
+    }
+
+    /**
+     * Gets a context on the common fork-join pool, using every processor.
+     *
+     * @return a new context with the common pool and the default chunk size.
+     */
+    public static ExecutionContext common() {
+        return new ExecutionContext(ForkJoinPool.commonPool(), Runtime.getRuntime().availableProcessors(),
+            DEFAULT_CHUNK_SIZE, Priority.NORMAL);
+    }
+
+    /**
+     * Gets a context that runs everything on the calling thread.
+     *
+     * @return a new sequential context.
+     */
+    public static ExecutionContext sequential() {
+        return new ExecutionContext(Runnable::run, 1, DEFAULT_CHUNK_SIZE, Priority.NORMAL);
+    }
+
+    /**
+     * Gets a context that runs chunks on virtual threads (Java 21+), or on a
+     * cached pool of daemon threads on older JVMs. Every such context shares
+     * one executor, created on first use and never shut down; its threads do
+     * not keep the JVM alive, and idle pool threads end after a minute.
+     *
+     * @param parallelism the largest number of chunks running at once, >= 1.
+     * @return a new context over virtual threads.
+     */
+    public static ExecutionContext virtualThreads(int parallelism) {
+        return new ExecutionContext(VirtualThreads.EXECUTOR, parallelism, DEFAULT_CHUNK_SIZE, Priority.NORMAL);
+    }
+
+    /**
+     * Gets the context of the calling thread: the one of the innermost
+     * {@link #call(Supplier)} or {@link #run(Runnable)} in progress, or the default.
+     *
+     * @return the current context.
+     */
+    public static ExecutionContext current() {
+        ExecutionContext scoped = SCOPED.get();
+        return scoped != null ? scoped : defaultContext;
+    }
+
+    /**
+     * Gets the process-wide default context.
+     *
+     * @return the context used outside of {@link #call(Supplier)} and {@link #run(Runnable)}.
+     */
+    public static ExecutionContext getDefault() {
+        return defaultContext;
+    }
+
+    /**
+     * Sets the process-wide default context.
+     *
+     * @param context the context used outside of {@link #call(Supplier)} and
+     *                {@link #run(Runnable)}, is not null.
+     */
+    public static void setDefault(ExecutionContext context) {
+        if (context == null) {
+            throw new IllegalArgumentException("context must not be null");
+        }
+        defaultContext = context;
+    }
+
+    /**
+     * Runs an operation with this context as the current one.
+     *
+     * @param operation the operation, is not null.
+     * @param <T>       the type of the result.
+     * @return the result of the operation.
+     */
+    public <T> T call(Supplier<T> operation) {
+        ExecutionContext previous = SCOPED.get();
+        SCOPED.set(this);
+        try {
+            return operation.get();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    /**
+     * Runs an operation with this context as the current one.
+     *
+     * @param operation the operation, is not null.
+     */
+    public void run(Runnable operation) {
+        call(() -> {
+            operation.run();
+            return null;
+        });
+    }
+
+    /**
+     * @param newPriority the priority of the new context, is not null.
+     * @return a context like this one with another priority.
+     */
+    public ExecutionContext withPriority(Priority newPriority) {
+        return new ExecutionContext(executor, parallelism, chunkSize, newPriority);
+    }
+
+    /**
+     * @param newParallelism the parallelism of the new context, >= 1.
+     * @return a context like this one with another parallelism cap.
+     */
+    public ExecutionContext withParallelism(int newParallelism) {
+        return new ExecutionContext(executor, newParallelism, chunkSize, priority);
+    }
+
+    /**
+     * @param newChunkSize the chunk size of the new context, >= 1.
+     * @return a context like this one with another chunk size.
+     */
+    public ExecutionContext withChunkSize(int newChunkSize) {
+        return new ExecutionContext(executor, parallelism, newChunkSize, priority);
+    }
+
+    /**
+     * @return the executor running the chunks that the calling thread does not run.
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * @return the largest number of chunks of one operation running at once.
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @return the number of samples per chunk.
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @return the priority of the threads working on an operation.
+     */
+    public Priority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Wraps a task so that, on whichever thread runs it, this context is the
+     * current one and the thread has the priority of this context; both are
+     * restored afterwards.
+     *
+     * @param task the task, is not null.
+     * @return the wrapped task.
+     */
+    Runnable bind(Runnable task) {
+        return () -> {
+            Thread thread = Thread.currentThread();
+            int previousPriority = thread.getPriority();
+            ExecutionContext previous = SCOPED.get();
+            SCOPED.set(this);
+            setPriority(thread, priority.threadPriority);
+            try {
+                task.run();
+            } finally {
+                setPriority(thread, previousPriority);
+                restore(previous);
+            }
+        };
+    }
+
+
+    //HELPER FUNCTIONS:
+
+    /**
+     * Creates an executor that runs every task on a new virtual thread on
+     * JVMs that support them (Java 21+), and otherwise on a cached pool of
+     * daemon threads. Either way, its threads never keep the JVM alive.
+     *
+     * @return a new executor, which the caller shuts down if it needs to.
+     */
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private static void restore(ExecutionContext previous) {
+        if (previous == null) {
+            SCOPED.remove();
+        } else {
+            SCOPED.set(previous);
+        }
+    }
+
+    private static void setPriority(Thread thread, int threadPriority) {
+        if (thread.getPriority() != threadPriority) {
+            try {
+                thread.setPriority(threadPriority);
+            } catch (SecurityException e) {
+                // keep the current priority
+            }
+        }
+    }
+
+
+    //HELPER CLASSES:
+
+    /**
+     * Holds the executor of {@link #virtualThreads(int)}, created when it is first needed.
+     */
+    private static final class VirtualThreads {
+
+        private static final ExecutorService EXECUTOR = newVirtualThreadExecutor();
+    }
+}
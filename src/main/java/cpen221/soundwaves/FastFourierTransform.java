@@ -0,0 +1,120 @@
+package cpen221.soundwaves;
+
+/**
+ * <p><strong>Overview.</strong>
+ * An in-place radix-2 Fast Fourier Transform over separate real and
+ * imaginary arrays. It is the fast transform path shared by the spectral
+ * operations; {@link ConcreteSoundWave#highestAmplitudeFrequencyComponent()}
+ * keeps its direct DFT.
+ * </p>
+ */
+public final class FastFourierTransform {
+
+    private FastFourierTransform() {
+        // can not instantiate
+    }
+
+    /**
+     * Computes the forward transform of (real + i * img) in place.
+     *
+     * @param real the real parts, is not null and its length is a power of two.
+     * @param img  the imaginary parts, is not null and has the same length as real.
+     *             <p>
+     *             Modifies real and img.
+     */
+    public static void transform(double[] real, double[] img) {
+        int n = real.length;
+        if (n != img.length) {
+            throw new IllegalArgumentException("real and imaginary parts must have the same length");
+        }
+        if (n == 0) {
+            return;
+        }
+        if (Integer.bitCount(n) != 1) {
+            throw new IllegalArgumentException("length must be a power of two: " + n);
+        }
+
+        for (int i = 1, j = 0; i < n; i++) {
+            int bit = n >> 1;
+            for (; (j & bit) != 0; bit >>= 1) {
+                j ^= bit;
+            }
+            j ^= bit;
+            if (i < j) {
+                double tmp = real[i];
+                real[i] = real[j];
+                real[j] = tmp;
+                tmp = img[i];
+                img[i] = img[j];
+                img[j] = tmp;
+            }
+        }
+
+        for (int len = 2; len <= n; len <<= 1) {
+            double angle = -2.0 * Math.PI / len;
+            double stepReal = Math.cos(angle);
+            double stepImg = Math.sin(angle);
+            int half = len >> 1;
+            for (int start = 0; start < n; start += len) {
+                double wReal = 1.0;
+                double wImg = 0.0;
+                for (int k = 0; k < half; k++) {
+                    int even = start + k;
+                    int odd = even + half;
+                    double oddReal = real[odd] * wReal - img[odd] * wImg;
+                    double oddImg = real[odd] * wImg + img[odd] * wReal;
+                    real[odd] = real[even] - oddReal;
+                    img[odd] = img[even] - oddImg;
+                    real[even] += oddReal;
+                    img[even] += oddImg;
+                    double nextReal = wReal * stepReal - wImg * stepImg;
+                    wImg = wReal * stepImg + wImg * stepReal;
+                    wReal = nextReal;
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the magnitude of every bin from 0 to n/2 (inclusive).
+     *
+     * @param real the real parts of a transformed signal, is not null.
+     * @param img  the imaginary parts of a transformed signal, is not null.
+     * @param dest the array receiving the magnitudes, has length >= real.length / 2 + 1.
+     *             <p>
+     *             Modifies dest.
+     */
+    public static void magnitudes(double[] real, double[] img, double[] dest) {
+        int bins = real.length / 2 + 1;
+        for (int k = 0; k < bins && k < real.length; k++) {
+            dest[k] = Math.sqrt(real[k] * real[k] + img[k] * img[k]);
+        }
+    }
+
+    /**
+     * Builds a periodic Hann window.
+     *
+     * @param size the window length, > 0.
+     * @return the window coefficients.
+     */
+    public static double[] hannWindow(int size) {
+        double[] window = new double[size];
+        for (int i = 0; i < size; i++) {
+            window[i] = 0.5 - 0.5 * Math.cos(2.0 * Math.PI * i / size);
+        }
+        return window;
+    }
+
+    /**
+     * Finds the smallest power of two that is at least n.
+     *
+     * @param n the requested size, >= 0 and <= 2^30.
+     * @return the smallest power of two >= n (1 when n is 0).
+     */
+    public static int nextPowerOfTwo(int n) {
+        if (n <= 1) {
+            return 1;
+        }
+        return Integer.highestOneBit(n - 1) << 1;
+    }
+}
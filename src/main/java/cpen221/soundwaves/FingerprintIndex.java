@@ -0,0 +1,312 @@
+package cpen221.soundwaves;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p><strong>Overview.</strong>
+ * A library of sound waves indexed by spectral-peak pair hashes, used to
+ * find which stored waves contain a short snippet without running
+ * {@link SoundWave#contains(SoundWave)} against every one of them.
+ * </p>
+ *
+ * <p>
+ * Every stored wave is fingerprinted once when it is added, and each hash is
+ * recorded in an inverted index as a (waveId, frame) posting. A query
+ * fingerprints the snippet, looks up each of its hashes and votes for the
+ * alignment (waveId, storedFrame - queryFrame). True matches collect many votes
+ * for a single alignment, while accidental hash collisions spread their votes
+ * out. The cost of a query depends on the number of postings for the snippet's
+ * hashes, not on the number of stored waves.
+ * </p>
+ *
+ * <p>
+ * The main methods are:
+ * <ul>
+ *     <li>{@link #add(SoundWave)};</li>
+ *     <li>{@link #query(SoundWave, int)}, which ranks candidate alignments; and</li>
+ *     <li>{@link #findContaining(SoundWave, int)}, which verifies the best
+ *     candidates with the exact {@code contains}.</li>
+ * </ul>
+ * </p>
+ */
+public class FingerprintIndex {
+
+    /**
+     * The stored waves, indexed by waveId.
+     */
+    private final List<SoundWave> waves = new ArrayList<>();
+
+    /**
+     * Inverted index from hash to packed (waveId, frame) postings.
+     */
+    private final PostingTable postings = new PostingTable();
+
+    // Representation Invariants:
+    //  every posting refers to a waveId in [0, waves.size())
+    //  every posting of wave w was produced by fingerprinting waves.get(w)
+
+    // Abstraction Function:
+    //  represents the collection of waves in `waves`, where the wave with
+    //  identifier i is waves.get(i), together with a hash-based lookup structure.
+
+    /**
+     * Adds a wave to the index.
+     *
+     * @param wave the wave to store, is not null.
+     * @return the identifier assigned to the wave.
+     *         <p>
+     *         Modifies this.
+     */
+    public int add(SoundWave wave) {
+        int waveId = waves.size();
+        waves.add(wave);
+        for (long fingerprint : Fingerprinter.fingerprint(wave)) {
+            long posting = ((long) waveId << 32) | (Fingerprinter.frameOf(fingerprint) & 0xFFFFFFFFL);
+            postings.add(Fingerprinter.hashOf(fingerprint), posting);
+        }
+        return waveId;
+    }
+
+    /**
+     * Gets a stored wave.
+     *
+     * @param waveId an identifier returned by {@link #add(SoundWave)}.
+     * @return the wave stored under waveId.
+     */
+    public SoundWave getWave(int waveId) {
+        return waves.get(waveId);
+    }
+
+    /**
+     * Gets the number of stored waves.
+     *
+     * @return the number of waves in this index.
+     */
+    public int size() {
+        return waves.size();
+    }
+
+    /**
+     * Ranks the stored waves that may contain the snippet by
+     * offset-consistency voting. At most one alignment is reported per wave.
+     *
+     * @param snippet    the wave to look for, is not null.
+     * @param maxResults the largest number of candidates to return, >= 0.
+     * @return candidate matches ordered by decreasing vote count. The list is
+     * empty if the snippet is too short or too quiet to produce any hashes.
+     */
+    public List<FingerprintMatch> query(SoundWave snippet, int maxResults) {
+        VoteCounter votes = new VoteCounter();
+        for (long fingerprint : Fingerprinter.fingerprint(snippet)) {
+            int queryFrame = Fingerprinter.frameOf(fingerprint);
+            for (int e = postings.head(Fingerprinter.hashOf(fingerprint)); e != -1; e = postings.next(e)) {
+                long posting = postings.value(e);
+                int delta = (int) posting - queryFrame;
+                if (delta >= 0) {
+                    votes.increment((posting & 0xFFFFFFFF00000000L) | delta);
+                }
+            }
+        }
+
+        long[] ranked = votes.rankedEntries();
+        List<FingerprintMatch> matches = new ArrayList<>();
+        boolean[] reported = new boolean[waves.size()];
+        for (int i = 0; i < ranked.length && matches.size() < maxResults; i++) {
+            long key = votes.keyAt((int) ranked[i]);
+            int waveId = (int) (key >>> 32);
+            if (!reported[waveId]) {
+                reported[waveId] = true;
+                int offset = (int) key * Fingerprinter.HOP_SIZE;
+                matches.add(new FingerprintMatch(waveId, offset, votes.countAt((int) ranked[i])));
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Finds the stored waves that contain the pattern. Only the topK
+     * candidates from {@link #query(SoundWave, int)} are checked, and each check
+     * runs the exact {@link SoundWave#contains(SoundWave)} on the region around
+     * the voted offset rather than on the whole stored wave.
+     *
+     * @param pattern the wave to look for, is not null.
+     * @param topK    the number of candidates to verify, >= 0.
+     * @return the identifiers of the verified waves, best candidates first.
+     */
+    public List<Integer> findContaining(SoundWave pattern, int topK) {
+        int patternLength = pattern.getSampleCount();
+        List<Integer> verified = new ArrayList<>();
+        for (FingerprintMatch match : query(pattern, topK)) {
+            SoundWave wave = waves.get(match.getWaveId());
+
+            int from = Math.max(0, match.getOffset() - Fingerprinter.HOP_SIZE);
+            int to = Math.min(wave.getSampleCount(), match.getOffset() + patternLength + Fingerprinter.HOP_SIZE);
+            if (to - from < patternLength) {
+                continue;
+            }
+            SoundWave region = wave.slice(from, to);
+            if (region.contains(pattern)) {
+                verified.add(match.getWaveId());
+            }
+        }
+        return verified;
+    }
+
+
+    //HELPER CLASSES:
+
+    /**
+     * An open-addressing hash table from int keys to singly linked lists of
+     * long values, stored entirely in primitive arrays.
+     */
+    private static final class PostingTable {
+        private static final int EMPTY = -1;
+        private static final double MAX_LOAD = 0.5;
+
+        private int[] keys = new int[1 << 10];
+        private int[] heads = new int[1 << 10];
+        private int numKeys = 0;
+
+        private long[] values = new long[1 << 12];
+        private int[] next = new int[1 << 12];
+        private int numValues = 0;
+
+        PostingTable() {
+            Arrays.fill(keys, EMPTY);
+        }
+
+        // keys are 24-bit hashes, so they are never EMPTY
+        void add(int key, long value) {
+            if (numKeys + 1 > keys.length * MAX_LOAD) {
+                rehash(keys.length * 2);
+            }
+            if (numValues == values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+                next = Arrays.copyOf(next, next.length * 2);
+            }
+
+            int slot = find(keys, key);
+            if (keys[slot] == EMPTY) {
+                keys[slot] = key;
+                heads[slot] = -1;
+                numKeys++;
+            }
+            values[numValues] = value;
+            next[numValues] = heads[slot];
+            heads[slot] = numValues;
+            numValues++;
+        }
+
+        int head(int key) {
+            int slot = find(keys, key);
+            return keys[slot] == EMPTY ? -1 : heads[slot];
+        }
+
+        int next(int entry) {
+            return next[entry];
+        }
+
+        long value(int entry) {
+            return values[entry];
+        }
+
+        private void rehash(int capacity) {
+            int[] oldKeys = keys;
+            int[] oldHeads = heads;
+            keys = new int[capacity];
+            heads = new int[capacity];
+            Arrays.fill(keys, EMPTY);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) {
+                    int slot = find(keys, oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    heads[slot] = oldHeads[i];
+                }
+            }
+        }
+
+        private static int find(int[] table, int key) {
+            int mask = table.length - 1;
+            int slot = (key * 0x9E3779B9) >>> 1 & mask;
+            while (table[slot] != EMPTY && table[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+    }
+
+    /**
+     * An open-addressing counter keyed by long values, stored in primitive arrays.
+     */
+    private static final class VoteCounter {
+        private static final double MAX_LOAD = 0.5;
+
+        private long[] keys = new long[1 << 8];
+        private int[] counts = new int[1 << 8];
+        private int size = 0;
+
+        void increment(long key) {
+            if (size + 1 > keys.length * MAX_LOAD) {
+                rehash(keys.length * 2);
+            }
+            int slot = find(keys, counts, key);
+            if (counts[slot] == 0) {
+                keys[slot] = key;
+                size++;
+            }
+            counts[slot]++;
+        }
+
+        long keyAt(int slot) {
+            return keys[slot];
+        }
+
+        int countAt(int slot) {
+            return counts[slot];
+        }
+
+        /**
+         * @return the occupied slots, ordered by decreasing count.
+         */
+        long[] rankedEntries() {
+            long[] ranked = new long[size];
+            int n = 0;
+            for (int slot = 0; slot < counts.length; slot++) {
+                if (counts[slot] > 0) {
+                    // sort by count (descending) in the high bits, slot in the low bits
+                    ranked[n++] = ((long) (Integer.MAX_VALUE - counts[slot]) << 32) | slot;
+                }
+            }
+            Arrays.sort(ranked);
+            for (int i = 0; i < n; i++) {
+                ranked[i] &= 0xFFFFFFFFL;
+            }
+            return ranked;
+        }
+
+        private void rehash(int capacity) {
+            long[] oldKeys = keys;
+            int[] oldCounts = counts;
+            keys = new long[capacity];
+            counts = new int[capacity];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldCounts[i] > 0) {
+                    int slot = find(keys, counts, oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    counts[slot] = oldCounts[i];
+                }
+            }
+        }
+
+        private static int find(long[] keys, int[] counts, long key) {
+            int mask = keys.length - 1;
+            int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 33) & mask;
+            while (counts[slot] != 0 && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package cpen221.soundwaves;
+
+/**
+ * A candidate returned by a {@link FingerprintIndex} query: a stored wave,
+ * the position in that wave where the query appears to start, and the number
+ * of peak-pair hashes that agree on that position.
+ */
+public class FingerprintMatch {
+
+    /**
+     * Identifier of the stored wave, as returned by {@link FingerprintIndex#add(SoundWave)}.
+     */
+    private final int waveId;
+
+    /**
+     * Estimated start of the query inside the stored wave, in samples.
+     */
+    private final int offset;
+
+    /**
+     * Number of hashes voting for this (waveId, offset) alignment.
+     */
+    private final int votes;
+
+    // Representation Invariants:
+    //  waveId >= 0, offset >= 0, votes > 0
+
+    // Abstraction Function:
+    //  represents the claim "the query starts near sample offset of wave waveId",
+    //  supported by votes consistent peak-pair hashes.
+
+    /**
+     * Create a new match.
+     *
+     * @param waveId the identifier of the stored wave, >= 0.
+     * @param offset the estimated start of the query in the stored wave, in samples, >= 0.
+     * @param votes  the number of agreeing hashes, > 0.
+     */
+    public FingerprintMatch(int waveId, int offset, int votes) {
+        this.waveId = waveId;
+        this.offset = offset;
+        this.votes = votes;
+    }
+
+    /**
+     * Gets the identifier of the stored wave.
+     *
+     * @return the wave identifier.
+     */
+    public int getWaveId() {
+        return waveId;
+    }
+
+    /**
+     * Gets the estimated start of the query inside the stored wave.
+     *
+     * @return the offset, in samples.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Gets the number of hashes that agree on this alignment.
+     *
+     * @return the vote count.
+     */
+    public int getVotes() {
+        return votes;
+    }
+
+    @Override
+    public String toString() {
+        return "FingerprintMatch{waveId=" + waveId + ", offset=" + offset + ", votes=" + votes + "}";
+    }
+}
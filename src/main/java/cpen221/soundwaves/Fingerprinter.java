@@ -0,0 +1,218 @@
+package cpen221.soundwaves;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Extracts spectral-peak pair hashes from a sound wave.
+ * The wave is mixed down to mono, split into Hann-windowed STFT frames,
+ * and the strongest local maxima of every frame are paired with peaks in
+ * the following frames. Each pair becomes a 24-bit hash of
+ * (anchor bin, target bin, frame delta), tagged with the anchor frame.
+ */
+final class Fingerprinter {
+
+    /**
+     * Number of samples per STFT frame.
+     */
+    static final int FRAME_SIZE = 1024;
+
+    /**
+     * Number of samples between the starts of consecutive frames.
+     */
+    static final int HOP_SIZE = 512;
+
+    /**
+     * Largest number of peaks kept from a single frame.
+     */
+    private static final int PEAKS_PER_FRAME = 5;
+
+    /**
+     * A peak must be larger than every bin this close to it.
+     */
+    private static final int NEIGHBOURHOOD = 3;
+
+    /**
+     * Number of target peaks each anchor peak is paired with.
+     */
+    private static final int FAN_OUT = 5;
+
+    /**
+     * Largest frame distance between an anchor and its target (6 bits).
+     */
+    private static final int MAX_FRAME_DELTA = 63;
+
+    /**
+     * Bins are stored in 9 bits, so only the lowest 512 bins are used.
+     */
+    private static final int MAX_BIN = 511;
+
+    /**
+     * Peaks quieter than this are treated as noise.
+     */
+    private static final double MAGNITUDE_FLOOR = 1e-6;
+
+    private static final double[] WINDOW = FastFourierTransform.hannWindow(FRAME_SIZE);
+
+    private Fingerprinter() {
+        // can not instantiate
+    }
+
+    /**
+     * Computes the fingerprint of a wave.
+     *
+     * @param wave the wave to fingerprint, is not null.
+     * @return packed fingerprints, each of the form (hash << 32) | anchorFrame.
+     */
+    static long[] fingerprint(SoundWave wave) {
+        double[] mono = mixDown(wave.getLeftChannel(), wave.getRightChannel());
+        List<int[]> peaks = findPeaks(mono);
+
+        long[] fingerprints = new long[peaks.size() * FAN_OUT];
+        int count = 0;
+        for (int a = 0; a < peaks.size(); a++) {
+            int[] anchor = peaks.get(a);
+            int paired = 0;
+            for (int b = a + 1; b < peaks.size() && paired < FAN_OUT; b++) {
+                int[] target = peaks.get(b);
+                int frameDelta = target[0] - anchor[0];
+                if (frameDelta == 0) {
+                    continue;
+                }
+                if (frameDelta > MAX_FRAME_DELTA) {
+                    break;
+                }
+                long hash = hash(anchor[1], target[1], frameDelta);
+                fingerprints[count++] = (hash << 32) | (anchor[0] & 0xFFFFFFFFL);
+                paired++;
+            }
+        }
+        return Arrays.copyOf(fingerprints, count);
+    }
+
+    /**
+     * Extracts the hash from a packed fingerprint.
+     *
+     * @param fingerprint a value produced by {@link #fingerprint(SoundWave)}.
+     * @return the peak-pair hash.
+     */
+    static int hashOf(long fingerprint) {
+        return (int) (fingerprint >>> 32);
+    }
+
+    /**
+     * Extracts the anchor frame from a packed fingerprint.
+     *
+     * @param fingerprint a value produced by {@link #fingerprint(SoundWave)}.
+     * @return the frame index of the anchor peak.
+     */
+    static int frameOf(long fingerprint) {
+        return (int) fingerprint;
+    }
+
+
+    //HELPER FUNCTIONS:
+
+    /**
+     * Packs a peak pair into a 24-bit hash.
+     *
+     * @param anchorBin  the frequency bin of the anchor, in [0, 511].
+     * @param targetBin  the frequency bin of the target, in [0, 511].
+     * @param frameDelta the frame distance between the peaks, in [1, 63].
+     * @return the hash of the peak pair.
+     */
+    private static int hash(int anchorBin, int targetBin, int frameDelta) {
+        return (anchorBin << 15) | (targetBin << 6) | frameDelta;
+    }
+
+    /**
+     * Averages two channels into one.
+     *
+     * @param left  the left channel, is not null.
+     * @param right the right channel, is not null.
+     * @return the mono mix, as long as the longer channel.
+     */
+    private static double[] mixDown(double[] left, double[] right) {
+        double[] mono = new double[Math.max(left.length, right.length)];
+        for (int t = 0; t < mono.length; t++) {
+            double l = t < left.length ? left[t] : 0.0;
+            double r = t < right.length ? right[t] : 0.0;
+            mono[t] = (l + r) / 2.0;
+        }
+        return mono;
+    }
+
+    /**
+     * Finds the strongest local spectral maxima of every STFT frame.
+     *
+     * @param samples the mono samples, is not null.
+     * @return peaks as {frame, bin} pairs, ordered by frame.
+     */
+    private static List<int[]> findPeaks(double[] samples) {
+        List<int[]> peaks = new ArrayList<>();
+        if (samples.length == 0) {
+            return peaks;
+        }
+
+        int numFrames = samples.length <= FRAME_SIZE ? 1 : 1 + (samples.length - FRAME_SIZE) / HOP_SIZE;
+        double[] real = new double[FRAME_SIZE];
+        double[] img = new double[FRAME_SIZE];
+        double[] magnitudes = new double[FRAME_SIZE / 2 + 1];
+        int[] candidates = new int[PEAKS_PER_FRAME];
+
+        for (int frame = 0; frame < numFrames; frame++) {
+            int start = frame * HOP_SIZE;
+            for (int i = 0; i < FRAME_SIZE; i++) {
+                real[i] = start + i < samples.length ? samples[start + i] * WINDOW[i] : 0.0;
+                img[i] = 0.0;
+            }
+            FastFourierTransform.transform(real, img);
+            FastFourierTransform.magnitudes(real, img, magnitudes);
+
+            int found = 0;
+            for (int bin = 1; bin <= MAX_BIN; bin++) {
+                if (magnitudes[bin] < MAGNITUDE_FLOOR || !isLocalMax(magnitudes, bin)) {
+                    continue;
+                }
+                if (found < PEAKS_PER_FRAME) {
+                    candidates[found++] = bin;
+                } else {
+                    int weakest = 0;
+                    for (int c = 1; c < found; c++) {
+                        if (magnitudes[candidates[c]] < magnitudes[candidates[weakest]]) {
+                            weakest = c;
+                        }
+                    }
+                    if (magnitudes[bin] > magnitudes[candidates[weakest]]) {
+                        candidates[weakest] = bin;
+                    }
+                }
+            }
+
+            Arrays.sort(candidates, 0, found);
+            for (int c = 0; c < found; c++) {
+                peaks.add(new int[] {frame, candidates[c]});
+            }
+        }
+        return peaks;
+    }
+
+    /**
+     * Checks that a bin is strictly larger than its neighbourhood.
+     *
+     * @param magnitudes the magnitude spectrum, is not null.
+     * @param bin        the bin to check.
+     * @return true if no bin within {@link #NEIGHBOURHOOD} is as large.
+     */
+    private static boolean isLocalMax(double[] magnitudes, int bin) {
+        int from = Math.max(0, bin - NEIGHBOURHOOD);
+        int to = Math.min(magnitudes.length - 1, bin + NEIGHBOURHOOD);
+        for (int k = from; k <= to; k++) {
+            if (k != bin && magnitudes[k] >= magnitudes[bin]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,70 @@
+package cpen221.soundwaves;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The outcome of {@link SoundLibraryLoader#load(Path)}: the waves that were
+ * decoded and the files that could not be, both keyed by path.
+ */
+public class LibraryLoadResult {
+
+    /**
+     * Decoded waves, keyed by the file they were read from.
+     */
+    private final Map<Path, SoundWave> waves;
+
+    /**
+     * Files that could not be loaded, with the reason.
+     */
+    private final Map<Path, Exception> failures;
+
+    // Representation Invariants:
+    //  waves and failures are unmodifiable and have disjoint key sets
+
+    // Abstraction Function:
+    //  represents a loaded library in which file p decoded to waves.get(p),
+    //  or failed to load because of failures.get(p).
+
+    /**
+     * Create a result. The maps are copied.
+     *
+     * @param waves    the decoded waves, is not null.
+     * @param failures the failed files, is not null.
+     */
+    LibraryLoadResult(Map<Path, SoundWave> waves, Map<Path, Exception> failures) {
+        this.waves = Collections.unmodifiableMap(new TreeMap<>(waves));
+        this.failures = Collections.unmodifiableMap(new TreeMap<>(failures));
+    }
+
+    /**
+     * Gets the decoded waves.
+     *
+     * @return an unmodifiable map from file to wave, ordered by path.
+     */
+    public Map<Path, SoundWave> getWaves() {
+        return waves;
+    }
+
+    /**
+     * Gets the files that could not be loaded.
+     *
+     * @return an unmodifiable map from file to failure, ordered by path.
+     */
+    public Map<Path, Exception> getFailures() {
+        return failures;
+    }
+
+    /**
+     * Gets the decoded waves as a data set for {@link SoundWaveSimilarity}.
+     *
+     * @return a new set containing every decoded wave.
+     */
+    public Set<SoundWave> toDataset() {
+        return new HashSet<>(waves.values());
+    }
+}
@@ -2,17 +2,24 @@ package cpen221.soundwaves;
 
 import cpen221.soundwaves.soundutils.AudioFile;
 
+import java.nio.file.Path;
 import java.util.ArrayList;
 
 public class MP3Wave extends ConcreteSoundWave {
 
+    /**
+     * Cache used by {@link #getInstance(String)}, or null to always decode.
+     */
+    private static volatile DecodedAudioCache defaultCache = null;
+
     /**
      * A private constructor.
      * @param lchannel the time series of left amplitude values, is not null
      * @param rchannel the time series of right amplitude values, is not null
+     * @param sampleRate the number of samples per second of the file, > 0
      */
-    private MP3Wave(double[] lchannel, double[] rchannel) {
-        super(lchannel, rchannel);
+    private MP3Wave(double[] lchannel, double[] rchannel, int sampleRate) {
+        super(lchannel, rchannel, sampleRate);
     }
 
     /**
@@ -24,6 +31,50 @@ public class MP3Wave extends ConcreteSoundWave {
      * @return an MP3 wave instance from the specified audio file.
      */
     public static MP3Wave getInstance(String fileName) {
+        return getInstance(fileName, defaultCache);
+    }
+
+    /**
+     * Obtain a new MP3Wave instance, reusing previously decoded samples
+     * from a cache when the file's contents have been decoded before.
+     *
+     * @param fileName name of the audio file
+     *                 from which to extract the sound wave.
+     *                 Is a valid audio file name.
+     * @param cache    the cache to read from and add to, or null to always decode.
+     * @return an MP3 wave instance from the specified audio file.
+     */
+    public static MP3Wave getInstance(String fileName, DecodedAudioCache cache) {
+        if (cache == null) {
+            return decode(fileName);
+        }
+
+        Path source = Path.of(fileName);
+        MappedSoundWave cached = cache.get(source);
+        if (cached != null) {
+            return new MP3Wave(cached.getChannel(0), cached.getChannel(1), cached.getSampleRate());
+        }
+        MP3Wave wave = decode(fileName);
+        cache.put(source, wave);
+        return wave;
+    }
+
+    /**
+     * Sets the cache used by {@link #getInstance(String)}.
+     *
+     * @param cache the cache to use, or null to always decode.
+     */
+    public static void setDefaultCache(DecodedAudioCache cache) {
+        defaultCache = cache;
+    }
+
+    /**
+     * Decodes an audio file.
+     *
+     * @param fileName name of the audio file, is a valid audio file name.
+     * @return an MP3 wave instance with the decoded samples, at the sample rate of the file.
+     */
+    private static MP3Wave decode(String fileName) {
         AudioFile af1 = new AudioFile(fileName);
 
         ArrayList<Double> leftSampleList = new ArrayList<>();
@@ -41,6 +92,6 @@ public class MP3Wave extends ConcreteSoundWave {
         }
         double[] rchannel = rightSampleList.stream().mapToDouble(Double::doubleValue).toArray();
         double[] lchannel = leftSampleList.stream().mapToDouble(Double::doubleValue).toArray();
-        return new MP3Wave(lchannel, rchannel);
+        return new MP3Wave(lchannel, rchannel, af1.getSampleRate());
     }
 }
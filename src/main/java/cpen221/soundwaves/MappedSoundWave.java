@@ -0,0 +1,221 @@
+package cpen221.soundwaves;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * <p><strong>Overview.</strong>
+ * A read-only view of a wave file loaded by {@link SoundWaveStore#load(java.nio.file.Path)}.
+ * The channels stay in the memory-mapped file: the accessors read samples
+ * straight from the mapping, and {@link #channelBuffer(int)} exposes a
+ * {@link SoundWaveStore.Encoding#FLOAT64 FLOAT64} channel as a {@link DoubleBuffer}
+ * without copying it.
+ * </p>
+ *
+ * <p>
+ * Use {@link #toSoundWave()} when a mutable {@link ConcreteSoundWave} is needed.
+ * </p>
+ */
+public class MappedSoundWave {
+
+    /**
+     * One mapped block per channel, each holding exactly numSamples samples.
+     */
+    private final MappedByteBuffer[] blocks;
+
+    private final SoundWaveStore.Encoding encoding;
+    private final int numSamples;
+    private final int sampleRate;
+    private final long checksum;
+
+    // Representation Invariants:
+    //  blocks.length >= 1
+    //  every block has numSamples * encoding.getBytesPerSample() bytes and is little endian
+    //  blocks are never written to
+
+    // Abstraction Function:
+    //  represents a wave with blocks.length channels, where sample t of channel c
+    //  is the t-th value of the given encoding in blocks[c], at sampleRate Hz.
+
+    /**
+     * Create a view over mapped channel blocks.
+     *
+     * @param blocks     the mapped channel blocks, is not null.
+     * @param encoding   the encoding of the samples, is not null.
+     * @param numSamples the number of samples per channel, >= 0.
+     * @param sampleRate the sample rate, in Hz.
+     * @param checksum   the CRC32 recorded in the file header.
+     */
+    MappedSoundWave(MappedByteBuffer[] blocks, SoundWaveStore.Encoding encoding, int numSamples,
+                    int sampleRate, long checksum) {
+        this.blocks = blocks;
+        this.encoding = encoding;
+        this.numSamples = numSamples;
+        this.sampleRate = sampleRate;
+        this.checksum = checksum;
+    }
+
+    /**
+     * Gets the number of channels.
+     *
+     * @return the number of channels stored in the file.
+     */
+    public int getChannelCount() {
+        return blocks.length;
+    }
+
+    /**
+     * Gets the number of samples in each channel.
+     *
+     * @return the number of samples per channel.
+     */
+    public int getSampleCount() {
+        return numSamples;
+    }
+
+    /**
+     * Gets the sample rate recorded in the file.
+     *
+     * @return the sample rate, in Hz.
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Gets the encoding of the stored samples.
+     *
+     * @return the sample encoding.
+     */
+    public SoundWaveStore.Encoding getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * Gets the duration of the stored wave.
+     *
+     * @return the duration, in seconds.
+     */
+    public double duration() {
+        return numSamples * (1.0 / sampleRate);
+    }
+
+    /**
+     * Gets a zero-copy view of a channel. Only available when the file is
+     * stored as {@link SoundWaveStore.Encoding#FLOAT64}.
+     *
+     * @param channel the channel index, in [0, getChannelCount()).
+     * @return a read-only buffer over the mapped samples of the channel.
+     * @throws IllegalStateException if the samples are not stored as FLOAT64.
+     */
+    public DoubleBuffer channelBuffer(int channel) {
+        if (encoding != SoundWaveStore.Encoding.FLOAT64) {
+            throw new IllegalStateException("channel buffers require FLOAT64 samples, file uses " + encoding);
+        }
+        return view(channel).asDoubleBuffer().asReadOnlyBuffer();
+    }
+
+    /**
+     * Reads one sample.
+     *
+     * @param channel the channel index, in [0, getChannelCount()).
+     * @param index   the sample index, in [0, getSampleCount()).
+     * @return the sample value.
+     */
+    public double getSample(int channel, int index) {
+        MappedByteBuffer block = blocks[channel];
+        return switch (encoding) {
+            case FLOAT64 -> block.getDouble(index * Double.BYTES);
+            case FLOAT32 -> block.getFloat(index * Float.BYTES);
+            case PCM16 -> block.getShort(index * Short.BYTES) / 32768.0;
+        };
+    }
+
+    /**
+     * Copies a run of samples of one channel into an array.
+     *
+     * @param channel   the channel index, in [0, getChannelCount()).
+     * @param from      the first sample to copy, >= 0.
+     * @param dest      the destination array, is not null.
+     * @param destStart the first index of dest to write.
+     * @param length    the number of samples to copy; from + length <= getSampleCount().
+     *                  <p>
+     *                  Modifies dest.
+     */
+    public void read(int channel, int from, double[] dest, int destStart, int length) {
+        ByteBuffer block = view(channel);
+        switch (encoding) {
+            case FLOAT64 -> block.position(from * Double.BYTES).slice().order(ByteOrder.LITTLE_ENDIAN)
+                .asDoubleBuffer().get(dest, destStart, length);
+            case FLOAT32 -> {
+                block.position(from * Float.BYTES);
+                for (int i = 0; i < length; i++) {
+                    dest[destStart + i] = block.getFloat();
+                }
+            }
+            case PCM16 -> {
+                block.position(from * Short.BYTES);
+                for (int i = 0; i < length; i++) {
+                    dest[destStart + i] = block.getShort() / 32768.0;
+                }
+            }
+            default -> throw new IllegalStateException("unknown sample encoding " + encoding);
+        }
+    }
+
+    /**
+     * Copies a whole channel into a new array.
+     *
+     * @param channel the channel index, in [0, getChannelCount()).
+     * @return the samples of the channel.
+     */
+    public double[] getChannel(int channel) {
+        double[] samples = new double[numSamples];
+        read(channel, 0, samples, 0, numSamples);
+        return samples;
+    }
+
+    /**
+     * Copies the stored wave into a {@link ConcreteSoundWave}. A mono file
+     * is used for both channels; only the first two channels of a file with
+     * more channels are used.
+     *
+     * @return a new wave with the stored samples.
+     */
+    public ConcreteSoundWave toSoundWave() {
+        double[] left = getChannel(0);
+        double[] right = blocks.length > 1 ? getChannel(1) : left.clone();
+        return new ConcreteSoundWave(left, right, sampleRate);
+    }
+
+    /**
+     * Checks the stored samples against the checksum in the file header.
+     * This reads every sample in the file.
+     *
+     * @return true if the samples are intact and false otherwise.
+     */
+    public boolean verifyChecksum() {
+        CRC32 crc = new CRC32();
+        for (int c = 0; c < blocks.length; c++) {
+            crc.update(view(c));
+        }
+        return crc.getValue() == checksum;
+    }
+
+
+    //HELPER FUNCTIONS:
+
+    /**
+     * Creates an independent little endian view of a channel block, so that
+     * concurrent readers do not share a buffer position.
+     *
+     * @param channel the channel index.
+     * @return a view positioned at the start of the block.
+     */
+    private ByteBuffer view(int channel) {
+        return blocks[channel].duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
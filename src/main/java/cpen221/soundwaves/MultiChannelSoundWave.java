@@ -0,0 +1,561 @@
+package cpen221.soundwaves;
+
+import cpen221.soundwaves.soundutils.FilterType;
+import cpen221.soundwaves.soundutils.PolyphaseResampler;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p><strong>Overview.</strong>
+ * A sound wave with any number of channels, stored interleaved: the samples
+ * of one instant (a frame) are next to each other, in the same layout as
+ * PCM data. Operations walk the frames once, front to back, for all channels
+ * together, instead of walking one array per channel side by side.
+ * </p>
+ *
+ * <p>
+ * {@link #channel(int)} gives a strided, zero-copy view of one channel, and
+ * {@link #slice(int, int)} a zero-copy view of a range of frames.
+ * As a {@link SoundWave}, the left channel is channel 0 and the right channel
+ * is channel 1 (channel 0 again for mono waves), which matches the front
+ * left and front right channels of the usual 5.1 order
+ * (FL, FR, C, LFE, SL, SR). Spectral operations and {@link #contains(SoundWave)}
+ * work on those two channels.
+ * </p>
+ */
+public class MultiChannelSoundWave implements SoundWave {
+
+    /**
+     * Interleaved samples: sample t of channel c is frames[t * channelCount + c].
+     */
+    private double[] frames;
+
+    /**
+     * Index in frames of the first sample of this wave.
+     */
+    private int start;
+
+    /**
+     * Number of interleaved samples of this wave.
+     */
+    private int size;
+
+    private final int channelCount;
+    private final int sampleRate;
+
+    // Representation Invariants:
+    //  channelCount >= 1, sampleRate > 0
+    //  start and size are multiples of channelCount, 0 <= start, start + size <= frames.length
+    //  frames is never modified in place once assigned (views may share it)
+
+    // Abstraction Function:
+    //  represents a wave of size / channelCount samples per channel at sampleRate Hz,
+    //  where sample t of channel c is frames[start + t * channelCount + c]
+
+    /**
+     * Create a wave from interleaved samples.
+     *
+     * @param frames       the interleaved samples, is not null and its length is a
+     *                     multiple of channelCount. It is copied.
+     * @param channelCount the number of channels, >= 1.
+     * @param sampleRate   the number of samples per second in each channel, > 0.
+     */
+    public MultiChannelSoundWave(double[] frames, int channelCount, int sampleRate) {
+        if (channelCount < 1 || sampleRate <= 0) {
+            throw new IllegalArgumentException("need channelCount >= 1 and sampleRate > 0");
+        }
+        if (frames.length % channelCount != 0) {
+            throw new IllegalArgumentException(frames.length + " samples do not make whole frames of "
+                + channelCount + " channels");
+        }
+        this.frames = frames.clone();
+        this.start = 0;
+        this.size = frames.length;
+        this.channelCount = channelCount;
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Create a wave from separate channels.
+     *
+     * @param channels   the samples of every channel, all of the same length, is not null
+     *                   and has at least one channel.
+     * @param sampleRate the number of samples per second in each channel, > 0.
+     */
+    public MultiChannelSoundWave(double[][] channels, int sampleRate) {
+        this(interleave(channels), channels.length, sampleRate);
+    }
+
+    /**
+     * Gets the number of channels.
+     *
+     * @return the number of channels of this wave.
+     */
+    public int getChannelCount() {
+        return channelCount;
+    }
+
+    /**
+     * Gets the number of frames (samples per channel).
+     *
+     * @return the length of every channel.
+     */
+    public int getFrameCount() {
+        return size / channelCount;
+    }
+
+    /**
+     * Gets a view of one channel, without copying it.
+     *
+     * @param c the channel, in [0, getChannelCount()).
+     * @return a strided view of channel c.
+     */
+    public ChannelView channel(int c) {
+        if (c < 0 || c >= channelCount) {
+            throw new IndexOutOfBoundsException("channel " + c + " of " + channelCount);
+        }
+        return new ChannelView(frames, start + c, channelCount, getFrameCount());
+    }
+
+    /**
+     * Gets the interleaved samples of this wave.
+     * Changes to the returned array do not affect this wave.
+     *
+     * @return a copy of the interleaved samples.
+     */
+    public double[] getInterleaved() {
+        return Arrays.copyOfRange(frames, start, start + size);
+    }
+
+    /**
+     * Gets the left channel (channel 0) of this wave.
+     *
+     * @return a copy of channel 0.
+     */
+    @Override
+    public double[] getLeftChannel() {
+        return channel(0).toArray();
+    }
+
+    /**
+     * Gets the right channel (channel 1, or channel 0 for a mono wave) of this wave.
+     *
+     * @return a copy of the right channel.
+     */
+    @Override
+    public double[] getRightChannel() {
+        return channel(Math.min(1, channelCount - 1)).toArray();
+    }
+
+    /**
+     * Gets the duration of the sound wave.
+     *
+     * @return duration of the sound wave, in seconds.
+     */
+    @Override
+    public double duration() {
+        return getFrameCount() * (1.0 / sampleRate);
+    }
+
+    /**
+     * Gets the number of samples in each channel.
+     *
+     * @return the number of frames of this wave.
+     */
+    @Override
+    public int getSampleCount() {
+        return getFrameCount();
+    }
+
+    /**
+     * Gets the frames [startSample, endSample) of this wave, sharing its
+     * samples instead of copying them. Changes to either wave are not seen by
+     * the other, since samples are never changed in place.
+     *
+     * @param startSample the first frame of the slice, >= 0.
+     * @param endSample   one past the last frame, with startSample <= endSample <= getFrameCount().
+     * @return a view of the frames [startSample, endSample), with the channels and rate of this wave.
+     */
+    @Override
+    public SoundWave slice(int startSample, int endSample) {
+        if (startSample < 0 || endSample < startSample || endSample > getFrameCount()) {
+            throw new IndexOutOfBoundsException("slice [" + startSample + ", " + endSample + ") of " + getFrameCount());
+        }
+        MultiChannelSoundWave slice = wrap(frames);
+        slice.start = start + startSample * channelCount;
+        slice.size = (endSample - startSample) * channelCount;
+        return slice;
+    }
+
+    /**
+     * Gets the sample rate of the sound wave.
+     *
+     * @return the number of samples per second in each channel.
+     */
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Append stereo samples to this wave. lchannel goes to channel 0 and
+     * rchannel to channel 1; any other channels are silent for the appended part.
+     * A mono wave appends lchannel.
+     *
+     * @param lchannel the left samples, is not null.
+     * @param rchannel the right samples, is not null and as long as lchannel.
+     *                 <p>
+     *                 Modifies this.
+     */
+    @Override
+    public void append(double[] lchannel, double[] rchannel) {
+        if (lchannel.length != rchannel.length) {
+            throw new IllegalArgumentException("channels must have the same length");
+        }
+        double[] grown = new double[size + lchannel.length * channelCount];
+        System.arraycopy(frames, start, grown, 0, size);
+        for (int t = 0, index = size; t < lchannel.length; t++, index += channelCount) {
+            grown[index] = lchannel[t];
+            if (channelCount > 1) {
+                grown[index + 1] = rchannel[t];
+            }
+        }
+        replace(grown);
+    }
+
+    /**
+     * Append a wave to this wave, resampled to the rate of this wave if needed.
+     * A {@code MultiChannelSoundWave} with the same number of channels is
+     * appended channel by channel; any other wave is appended as stereo.
+     *
+     * @param other the wave to append, is not null.
+     *              <p>
+     *              Modifies this.
+     */
+    @Override
+    public void append(SoundWave other) {
+        MultiChannelSoundWave same = sameLayout(other);
+        if (same == null) {
+            other = ConcreteSoundWave.atSampleRate(other, sampleRate);
+            append(other.getLeftChannel(), other.getRightChannel());
+            return;
+        }
+        double[] grown = new double[size + same.size];
+        System.arraycopy(frames, start, grown, 0, size);
+        System.arraycopy(same.frames, same.start, grown, size, same.size);
+        replace(grown);
+    }
+
+    /**
+     * Create a new wave by adding another wave to this wave, frame by frame.
+     * The shorter wave is padded with silence, and each channel of the sum
+     * whose peak exceeds 1 is scaled back to a peak of 1.
+     * A {@code MultiChannelSoundWave} with the same number of channels is added
+     * channel by channel; any other wave is added to channels 0 and 1 as stereo.
+     * The other wave is resampled to the rate of this wave if needed.
+     *
+     * @param other the wave to add, is not null.
+     * @return the sum, with the channel count and sample rate of this wave.
+     */
+    @Override
+    public SoundWave add(SoundWave other) {
+        MultiChannelSoundWave same = sameLayout(other);
+        if (same == null) {
+            same = wrap(stereoFrames(ConcreteSoundWave.atSampleRate(other, sampleRate)));
+        }
+        double[] sum = new double[Math.max(size, same.size)];
+        System.arraycopy(frames, start, sum, 0, size);
+        for (int i = 0; i < same.size; i++) {
+            sum[i] += same.frames[same.start + i];
+        }
+        normalize(sum);
+        return wrap(sum);
+    }
+
+    /**
+     * Create a new wave by adding an echo to this wave: every channel delayed
+     * by delta seconds and scaled by alpha. The result is as long as this wave
+     * plus the delay, and each channel is scaled back to a peak of 1 if it exceeds 1.
+     *
+     * @param delta > 0. delta, in seconds, is the time lag between this wave and
+     *              the echo wave.
+     * @param alpha > 0. alpha is the damping factor applied to the echo wave.
+     * @return a new sound wave with an echo.
+     */
+    @Override
+    public SoundWave addEcho(double delta, double alpha) {
+        if (delta < 0) {
+            throw new IllegalArgumentException("delta must not be negative");
+        }
+        int lag = (int) Math.round(delta * sampleRate) * channelCount;
+        double[] echoed = new double[size + lag];
+        System.arraycopy(frames, start, echoed, 0, size);
+        for (int i = 0; i < size; i++) {
+            echoed[i + lag] += alpha * frames[start + i];
+        }
+        normalize(echoed);
+        return wrap(echoed);
+    }
+
+    /**
+     * Scale the amplitude of this wave by a scaling factor.
+     * After scaling, each channel whose peak exceeds 1 is scaled back to a peak of 1.
+     *
+     * @param scalingFactor is a value > 0.
+     *                      <p>
+     *                      Modifies this.
+     */
+    @Override
+    public void scale(double scalingFactor) {
+        double[] scaled = new double[size];
+        for (int i = 0; i < size; i++) {
+            scaled[i] = frames[start + i] * scalingFactor;
+        }
+        normalize(scaled);
+        replace(scaled);
+    }
+
+    /**
+     * Determine if the left and right channels of this wave contain another wave,
+     * as {@link ConcreteSoundWave#contains(SoundWave)} does.
+     *
+     * @param other is the wave to search for in this wave, is not null.
+     * @return true if other is contained in this after amplitude scaling, and false otherwise.
+     */
+    @Override
+    public boolean contains(SoundWave other) {
+        return toStereo().contains(other);
+    }
+
+    /**
+     * Determine the similarity between this wave and another wave.
+     * Against a {@code MultiChannelSoundWave} with the same number of channels
+     * and sample rate every channel is compared, in one pass over the
+     * interleaved samples; any other wave is compared with channels 0 and 1.
+     *
+     * @param other the wave to be compared for similarity, is not null.
+     * @return the similarity between this wave and other.
+     */
+    @Override
+    public double similarity(SoundWave other) {
+        MultiChannelSoundWave same = sameLayout(other);
+        if (same == null) {
+            return toStereo().similarity(other);
+        }
+        double[] sums = similaritySums(same, Double.NEGATIVE_INFINITY);
+        return SimilarityMath.similarity(sums[0], sums[1], sums[2]);
+    }
+
+    /**
+     * Determine whether the similarity between this wave and another wave
+     * reaches a threshold, stopping early once it can not.
+     *
+     * @param other     the wave to be compared for similarity, is not null.
+     * @param threshold the smallest similarity accepted.
+     * @return true if {@code similarity(other) >= threshold}, and false otherwise.
+     */
+    @Override
+    public boolean similarityAtLeast(SoundWave other, double threshold) {
+        MultiChannelSoundWave same = sameLayout(other);
+        if (same == null) {
+            return toStereo().similarityAtLeast(other, threshold);
+        }
+        double[] sums = similaritySums(same, threshold);
+        return sums != null && SimilarityMath.similarity(sums[0], sums[1], sums[2]) >= threshold;
+    }
+
+    /**
+     * Return the frequency of the component with the greatest amplitude
+     * in the left and right channels of this wave.
+     *
+     * @return the frequency of the wave component of highest amplitude.
+     */
+    @Override
+    public double highestAmplitudeFrequencyComponent() {
+        return toStereo().highestAmplitudeFrequencyComponent();
+    }
+
+    /**
+     * Find the strongest spectral peaks of the left and right channels of this wave.
+     *
+     * @param k the largest number of peaks to return, >= 0.
+     * @return up to k peaks by decreasing magnitude, with their frequencies in Hz.
+     */
+    @Override
+    public List<SpectralPeak> spectralPeaks(int k) {
+        return toStereo().spectralPeaks(k);
+    }
+
+    /**
+     * Measure how strongly a frequency is present in the left and right channels of this wave.
+     *
+     * @param frequency the frequency, in Hz, >= 0.
+     * @return the estimated amplitude of a sinusoid at that frequency.
+     */
+    @Override
+    public double amplitudeAt(double frequency) {
+        return toStereo().amplitudeAt(frequency);
+    }
+
+    /**
+     * Filters the left and right channels of this wave.
+     *
+     * @param type        the type of filter to apply.
+     * @param frequencies the thresholds for filtering.
+     * @return the filtered stereo wave.
+     */
+    @Override
+    public SoundWave filter(FilterType type, Double... frequencies) {
+        return toStereo().filter(type, frequencies);
+    }
+
+    /**
+     * Gets channels 0 and 1 of this wave as a stereo wave.
+     *
+     * @return a new stereo wave with the left and right channels of this wave.
+     */
+    public ConcreteSoundWave toStereo() {
+        return new ConcreteSoundWave(getLeftChannel(), getRightChannel(), sampleRate);
+    }
+
+
+    //HELPER FUNCTIONS:
+
+    /**
+     * @return a wave with the channel count and rate of this wave over the given frames,
+     * which are not copied.
+     */
+    private MultiChannelSoundWave wrap(double[] interleaved) {
+        MultiChannelSoundWave wave = new MultiChannelSoundWave(new double[0], channelCount, sampleRate);
+        wave.replace(interleaved);
+        return wave;
+    }
+
+    /**
+     * Makes this wave all of the given frames.
+     * <p>
+     * Modifies this.
+     */
+    private void replace(double[] interleaved) {
+        this.frames = interleaved;
+        this.start = 0;
+        this.size = interleaved.length;
+    }
+
+    /**
+     * Gets a wave laid out like this one, if there is one.
+     *
+     * @param other the other wave, is not null.
+     * @return other itself if it is a {@code MultiChannelSoundWave} with the
+     * channel count and rate of this wave, a resampled copy if only the rate
+     * differs, and null otherwise.
+     */
+    private MultiChannelSoundWave sameLayout(SoundWave other) {
+        if (!(other instanceof MultiChannelSoundWave)) {
+            return null;
+        }
+        MultiChannelSoundWave wave = (MultiChannelSoundWave) other;
+        if (wave.channelCount != channelCount) {
+            return null;
+        }
+        if (wave.sampleRate == sampleRate) {
+            return wave;
+        }
+        double[][] channels = new double[channelCount][];
+        for (int c = 0; c < channelCount; c++) {
+            channels[c] = PolyphaseResampler.resample(wave.channel(c).toArray(), wave.sampleRate, sampleRate);
+        }
+        return wrap(interleave(channels));
+    }
+
+    /**
+     * @return the left and right channels of a wave in channels 0 and 1 of frames
+     * laid out like this wave, with any other channels silent.
+     */
+    private double[] stereoFrames(SoundWave wave) {
+        double[] left = wave.getLeftChannel();
+        double[] right = wave.getRightChannel();
+        double[] result = new double[left.length * channelCount];
+        for (int t = 0, index = 0; t < left.length; t++, index += channelCount) {
+            result[index] = left[t];
+            if (channelCount > 1) {
+                result[index + 1] = right[t];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Computes {Saa, Sab, Sbb} of this wave and a wave of the same layout,
+     * block by block, giving up once the similarity is known to be below threshold.
+     *
+     * @return the sums, or null if the similarity is below threshold.
+     */
+    private double[] similaritySums(MultiChannelSoundWave other, double threshold) {
+        double[] sums = new double[3];
+        int length = Math.max(size, other.size);
+        int block = SimilarityMath.BLOCK_SIZE * channelCount;
+        for (int from = 0; from < length; from += block) {
+            SimilarityMath.accumulate(frames, start, size, other.frames, other.start, other.size,
+                from, Math.min(length, from + block), sums);
+            if (SimilarityMath.upperBound(sums[0], sums[1], sums[2]) < threshold) {
+                return null;
+            }
+        }
+        return sums;
+    }
+
+    /**
+     * Scales every channel of interleaved frames whose peak exceeds 1 back to a peak of 1.
+     * One pass finds the peaks and a second applies the gains.
+     *
+     * @param interleaved frames laid out like this wave, is not null.
+     *                    <p>
+     *                    Modifies interleaved.
+     */
+    private void normalize(double[] interleaved) {
+        double[] gains = new double[channelCount];
+        for (int i = 0; i < interleaved.length; i += channelCount) {
+            for (int c = 0; c < channelCount; c++) {
+                gains[c] = Math.max(gains[c], Math.abs(interleaved[i + c]));
+            }
+        }
+        boolean clipped = false;
+        for (int c = 0; c < channelCount; c++) {
+            clipped |= gains[c] > 1.0;
+            gains[c] = gains[c] > 1.0 ? 1.0 / gains[c] : 1.0;
+        }
+        if (!clipped) {
+            return;
+        }
+        for (int i = 0; i < interleaved.length; i += channelCount) {
+            for (int c = 0; c < channelCount; c++) {
+                interleaved[i + c] *= gains[c];
+            }
+        }
+    }
+
+    /**
+     * Interleaves separate channels.
+     *
+     * @param channels the channels, all of the same length, is not null and not empty.
+     * @return the frames of the channels.
+     */
+    private static double[] interleave(double[][] channels) {
+        if (channels.length == 0) {
+            throw new IllegalArgumentException("a wave needs at least one channel");
+        }
+        int length = channels[0].length;
+        double[] result = new double[length * channels.length];
+        for (int c = 0; c < channels.length; c++) {
+            if (channels[c].length != length) {
+                throw new IllegalArgumentException("channels must have the same length");
+            }
+            for (int t = 0, index = c; t < length; t++, index += channels.length) {
+                result[index] = channels[c][t];
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,305 @@
+package cpen221.soundwaves;
+
+import java.util.Arrays;
+
+/**
+ * <p><strong>Overview.</strong>
+ * Finds note onsets in a stream of stereo samples fed in blocks of any size,
+ * as the first stage of {@link RhythmAnalysis}. Memory does not depend on the
+ * length of the stream, apart from one value per frame of onset envelope.
+ * </p>
+ *
+ * <p>
+ * The two channels are mixed to mono and cut into Hann-windowed frames of
+ * {@link #FRAME_SIZE} samples every {@link #HOP_SIZE} samples. Frames are
+ * gathered into batches and the spectra of a batch are computed in parallel
+ * as the current {@link ExecutionContext} allows. The onset envelope is the
+ * spectral flux: the sum over bins of the rise in log-compressed magnitude
+ * from one frame to the next. A frame is an onset when its flux is the
+ * largest around it, exceeds the local mean flux by a margin, and comes long
+ * enough after the previous onset. Those checks look a few frames ahead, so
+ * onsets are reported a little after the samples that contain them.
+ * </p>
+ *
+ * <p>
+ * The main methods are:
+ * <ul>
+ *     <li>{@link #process(double[], double[], int, int)}, and</li>
+ *     <li>{@link #finish()}, which returns the analysis of the whole stream.</li>
+ * </ul>
+ * </p>
+ */
+public class OnsetDetector {
+
+    /**
+     * Number of samples per frame, about 23 ms at 44,100 Hz.
+     */
+    public static final int FRAME_SIZE = 1024;
+
+    /**
+     * Number of samples between the starts of consecutive frames.
+     */
+    public static final int HOP_SIZE = FRAME_SIZE / 2;
+
+    /**
+     * Number of frames transformed together, about 3 seconds at 44,100 Hz.
+     */
+    private static final int BATCH_FRAMES = 256;
+
+    private static final int BINS = FRAME_SIZE / 2 + 1;
+
+    private static final double[] WINDOW = FastFourierTransform.hannWindow(FRAME_SIZE);
+
+    /**
+     * Magnitude scale giving 1 for a full-scale sinusoid.
+     */
+    private static final double MAGNITUDE_SCALE = 2.0 / Arrays.stream(WINDOW).sum();
+
+    /**
+     * Compression factor of log(1 + COMPRESSION * magnitude).
+     */
+    private static final double COMPRESSION = 100.0;
+
+    /**
+     * Frames on each side of an onset whose flux must not exceed it.
+     */
+    private static final int MAX_RADIUS = 3;
+
+    /**
+     * Frames before and after an onset over which the mean flux is taken.
+     */
+    private static final int MEAN_BEFORE = 10;
+    private static final int MEAN_AFTER = 3;
+
+    /**
+     * Margin by which the flux of an onset exceeds the local mean.
+     */
+    private static final double THRESHOLD = 1.0;
+
+    /**
+     * Shortest time between two onsets, in seconds.
+     */
+    private static final double MIN_GAP_SECONDS = 0.05;
+
+    private final int sampleRate;
+    private final int minGap;
+
+    /**
+     * Mono samples from the start of the next frame on.
+     */
+    private final double[] pending = new double[(BATCH_FRAMES - 1) * HOP_SIZE + FRAME_SIZE];
+    private int pendingCount = 0;
+
+    /**
+     * Compressed magnitudes of the last frame, or null before the first frame.
+     */
+    private double[] previous;
+
+    private double[] flux = new double[BATCH_FRAMES];
+    private int frames = 0;
+
+    private int[] onsets = new int[16];
+    private int onsetCount = 0;
+
+    /**
+     * Frames before this one have been checked for onsets.
+     */
+    private int picked = 0;
+
+    private long samplesSeen = 0;
+    private boolean finished = false;
+
+    // Representation Invariants:
+    //  sampleRate > 0, minGap >= 1, 0 <= pendingCount < pending.length
+    //  flux[0..frames) is the onset envelope so far, with flux[0] == 0
+    //  onsets[0..onsetCount) are increasing frames < picked <= frames, at least minGap apart
+
+    // Abstraction Function:
+    //  represents the analysis of the first samplesSeen mono samples of a stream:
+    //  the spectral flux of frames [0, frames), the onsets among frames [0, picked),
+    //  and the samples of pending, which start frame `frames`
+
+    /**
+     * Create a detector for a stream.
+     *
+     * @param sampleRate the number of samples per second of the stream, > 0.
+     */
+    public OnsetDetector(int sampleRate) {
+        if (sampleRate <= 0) {
+            throw new IllegalArgumentException("sampleRate must be positive");
+        }
+        this.sampleRate = sampleRate;
+        this.minGap = (int) Math.max(1, Math.round(MIN_GAP_SECONDS * sampleRate / HOP_SIZE));
+    }
+
+    /**
+     * Feeds the next samples of the stream.
+     *
+     * @param left   the left channel samples, is not null.
+     * @param right  the right channel samples, is not null.
+     * @param from   the index of the first sample in both arrays.
+     * @param length the number of samples of each channel, >= 0.
+     *               <p>
+     *               Modifies this.
+     * @throws IllegalStateException if the detector has finished.
+     */
+    public void process(double[] left, double[] right, int from, int length) {
+        if (finished) {
+            throw new IllegalStateException("detector has finished");
+        }
+        for (int done = 0; done < length; ) {
+            int count = Math.min(length - done, pending.length - pendingCount);
+            for (int i = 0; i < count; i++) {
+                pending[pendingCount + i] = 0.5 * (left[from + done + i] + right[from + done + i]);
+            }
+            pendingCount += count;
+            done += count;
+            if (pendingCount == pending.length) {
+                analyse(pending, BATCH_FRAMES);
+                int consumed = BATCH_FRAMES * HOP_SIZE;
+                System.arraycopy(pending, consumed, pending, 0, pendingCount - consumed);
+                pendingCount -= consumed;
+                pickOnsets(frames - Math.max(MAX_RADIUS, MEAN_AFTER));
+            }
+        }
+        samplesSeen += length;
+    }
+
+    /**
+     * Analyses the samples that do not fill a batch, zero-padding the last
+     * frames, and ends the stream.
+     * <p>
+     * Modifies this.
+     *
+     * @return the onsets and tempo of the stream.
+     * @throws IllegalStateException if the detector has already finished.
+     */
+    public RhythmAnalysis finish() {
+        if (finished) {
+            throw new IllegalStateException("detector has finished");
+        }
+        finished = true;
+        int count = (pendingCount + HOP_SIZE - 1) / HOP_SIZE;
+        if (count > 0) {
+            double[] padded = Arrays.copyOf(pending, (count - 1) * HOP_SIZE + FRAME_SIZE);
+            Arrays.fill(padded, pendingCount, padded.length, 0.0);
+            analyse(padded, count);
+        }
+        pickOnsets(frames);
+
+        double[] times = new double[onsetCount];
+        for (int i = 0; i < onsetCount; i++) {
+            times[i] = frameTime(onsets[i]);
+        }
+        return new RhythmAnalysis(Arrays.copyOf(flux, frames), getFrameRate(), times,
+            samplesSeen * (1.0 / sampleRate));
+    }
+
+    /**
+     * Gets the number of onset envelope values per second.
+     *
+     * @return the frame rate, in Hz.
+     */
+    public double getFrameRate() {
+        return (double) sampleRate / HOP_SIZE;
+    }
+
+    /**
+     * Gets the number of onsets found so far.
+     *
+     * @return the number of onsets reported.
+     */
+    public int getOnsetCount() {
+        return onsetCount;
+    }
+
+
+    //HELPER FUNCTIONS:
+
+    /**
+     * Computes the spectral flux of frames starting every HOP_SIZE samples of
+     * samples and appends it to the onset envelope. The spectra are computed
+     * in parallel; the flux then needs each frame and the one before it.
+     * <p>
+     * Modifies this.
+     *
+     * @param samples the mono samples of the frames, at least (count - 1) * HOP_SIZE + FRAME_SIZE long.
+     * @param count   the number of frames, >= 1.
+     */
+    private void analyse(double[] samples, int count) {
+        double[][] spectra = new double[count][BINS];
+        int parallelism = ExecutionContext.current().getParallelism();
+        int grain = Math.max(1, (count + 4 * parallelism - 1) / (4 * parallelism));
+        ChunkedParallel.forEach(count, grain, (from, to) -> {
+            double[] real = new double[FRAME_SIZE];
+            double[] img = new double[FRAME_SIZE];
+            for (int frame = from; frame < to; frame++) {
+                int start = frame * HOP_SIZE;
+                for (int i = 0; i < FRAME_SIZE; i++) {
+                    real[i] = samples[start + i] * WINDOW[i];
+                    img[i] = 0.0;
+                }
+                FastFourierTransform.transform(real, img);
+                FastFourierTransform.magnitudes(real, img, spectra[frame]);
+                for (int bin = 0; bin < BINS; bin++) {
+                    spectra[frame][bin] = Math.log1p(COMPRESSION * MAGNITUDE_SCALE * spectra[frame][bin]);
+                }
+            }
+        });
+
+        if (frames + count > flux.length) {
+            flux = Arrays.copyOf(flux, Math.max(2 * flux.length, frames + count));
+        }
+        for (double[] spectrum : spectra) {
+            double rise = 0.0;
+            if (previous != null) {
+                for (int bin = 0; bin < BINS; bin++) {
+                    rise += Math.max(0.0, spectrum[bin] - previous[bin]);
+                }
+            }
+            flux[frames++] = rise;
+            previous = spectrum;
+        }
+    }
+
+    /**
+     * Checks frames [picked, until) for onsets. Frames whose neighbours past
+     * the end of the envelope are not known yet are left for a later call.
+     * <p>
+     * Modifies this.
+     */
+    private void pickOnsets(int until) {
+        for (; picked < until; picked++) {
+            int i = picked;
+            if (flux[i] <= 0.0 || (onsetCount > 0 && i - onsets[onsetCount - 1] < minGap)) {
+                continue;
+            }
+            boolean largest = true;
+            for (int j = Math.max(0, i - MAX_RADIUS); j <= Math.min(frames - 1, i + MAX_RADIUS) && largest; j++) {
+                largest = flux[j] <= flux[i];
+            }
+            if (!largest) {
+                continue;
+            }
+            int from = Math.max(0, i - MEAN_BEFORE);
+            int to = Math.min(frames, i + MEAN_AFTER + 1);
+            double mean = 0.0;
+            for (int j = from; j < to; j++) {
+                mean += flux[j];
+            }
+            if (flux[i] >= mean / (to - from) + THRESHOLD) {
+                if (onsetCount == onsets.length) {
+                    onsets = Arrays.copyOf(onsets, 2 * onsets.length);
+                }
+                onsets[onsetCount++] = i;
+            }
+        }
+    }
+
+    /**
+     * @return the time of the centre of a frame, in seconds from the start of the stream.
+     */
+    private double frameTime(int frame) {
+        return (frame * (double) HOP_SIZE + FRAME_SIZE / 2.0) / sampleRate;
+    }
+}
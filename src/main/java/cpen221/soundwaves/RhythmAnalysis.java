@@ -0,0 +1,282 @@
+package cpen221.soundwaves;
+
+import cpen221.soundwaves.soundutils.BlockSource;
+
+/**
+ * <p><strong>Overview.</strong>
+ * The rhythm of a sound wave: its note onsets, found by an
+ * {@link OnsetDetector}, and its tempo. The tempo is the beat period that best
+ * matches the autocorrelation of the onset envelope, among periods from
+ * {@link #MIN_TEMPO} to {@link #MAX_TEMPO} beats per minute, weighted towards
+ * {@link #PREFERRED_TEMPO} so that half and double tempos are only picked
+ * when they clearly match better.
+ * </p>
+ *
+ * <p>
+ * {@link #features()} condenses the rhythm into a few numbers that can be
+ * compared far more cheaply than samples, to group waves by rhythm before
+ * any exact comparison.
+ * </p>
+ */
+public final class RhythmAnalysis {
+
+    /**
+     * Slowest tempo considered, in beats per minute.
+     */
+    public static final double MIN_TEMPO = 40.0;
+
+    /**
+     * Fastest tempo considered, in beats per minute.
+     */
+    public static final double MAX_TEMPO = 240.0;
+
+    /**
+     * Tempo favoured by the weighting, in beats per minute.
+     */
+    public static final double PREFERRED_TEMPO = 120.0;
+
+    /**
+     * Width of the tempo weighting, in octaves.
+     */
+    private static final double TEMPO_SPREAD = 1.0;
+
+    /**
+     * Number of stereo samples read from a source at a time.
+     */
+    private static final int STREAM_BLOCK_SIZE = 1 << 16;
+
+    private final double[] envelope;
+    private final double frameRate;
+    private final double[] onsetTimes;
+    private final double duration;
+    private final double tempo;
+    private final double pulseClarity;
+
+    // Representation Invariants:
+    //  frameRate > 0, duration >= 0, onsetTimes is increasing
+    //  tempo is 0 or in [MIN_TEMPO, MAX_TEMPO], pulseClarity in [0, 1]
+
+    // Abstraction Function:
+    //  represents the rhythm of a wave lasting duration seconds, whose onset
+    //  strength is envelope[i] at i / frameRate seconds, with onsets at onsetTimes,
+    //  a beat every 60 / tempo seconds, and a beat as regular as pulseClarity says
+
+    /**
+     * Create the analysis of a finished stream.
+     *
+     * @param envelope   the onset envelope, one value per frame, is not null.
+     * @param frameRate  the number of envelope values per second, > 0.
+     * @param onsetTimes the onsets, in seconds, increasing, is not null.
+     * @param duration   the length of the stream, in seconds, >= 0.
+     */
+    RhythmAnalysis(double[] envelope, double frameRate, double[] onsetTimes, double duration) {
+        this.envelope = envelope;
+        this.frameRate = frameRate;
+        this.onsetTimes = onsetTimes;
+        this.duration = duration;
+
+        double[] beat = estimateTempo(envelope, frameRate);
+        this.tempo = beat[0];
+        this.pulseClarity = beat[1];
+    }
+
+    /**
+     * Analyses a wave, reading it in blocks.
+     *
+     * @param wave the wave, is not null.
+     * @return the rhythm of wave.
+     */
+    public static RhythmAnalysis of(SoundWave wave) {
+        OnsetDetector detector = new OnsetDetector(wave.getSampleRate());
+        int length = wave.getSampleCount();
+        for (int from = 0; from < length; from += STREAM_BLOCK_SIZE) {
+            SoundWave block = wave.slice(from, Math.min(length, from + STREAM_BLOCK_SIZE));
+            detector.process(block.getLeftChannel(), block.getRightChannel(), 0, block.getSampleCount());
+        }
+        return detector.finish();
+    }
+
+    /**
+     * Analyses a stream, such as an audio file adapted by
+     * {@link BlockSource#of(cpen221.soundwaves.soundutils.AudioFile)}, without
+     * holding more than a block of it in memory.
+     *
+     * @param source the stream, at {@link BlockSource#getSampleRate()} samples
+     *               per second, is not null. It is read to the end.
+     * @return the rhythm of the stream.
+     */
+    public static RhythmAnalysis of(BlockSource source) {
+        OnsetDetector detector = new OnsetDetector(source.getSampleRate());
+        double[] left = new double[STREAM_BLOCK_SIZE];
+        double[] right = new double[STREAM_BLOCK_SIZE];
+        int count;
+        do {
+            count = source.read(left, right, 0, STREAM_BLOCK_SIZE);
+            detector.process(left, right, 0, count);
+        } while (count == STREAM_BLOCK_SIZE);
+        return detector.finish();
+    }
+
+    /**
+     * Gets the tempo.
+     *
+     * @return the tempo, in beats per minute, or 0 if the wave is too short
+     * or too steady to have one.
+     */
+    public double getTempo() {
+        return tempo;
+    }
+
+    /**
+     * Gets how regular the beat is.
+     *
+     * @return the autocorrelation of the onset envelope at the beat period,
+     * relative to its value at lag 0, in [0, 1]: near 1 for a steady beat.
+     */
+    public double getPulseClarity() {
+        return pulseClarity;
+    }
+
+    /**
+     * Gets the onsets.
+     *
+     * @return a copy of the onset times, in seconds, in increasing order.
+     */
+    public double[] getOnsetTimes() {
+        return onsetTimes.clone();
+    }
+
+    /**
+     * Gets the number of onsets per second.
+     *
+     * @return the onset rate, 0 for an empty wave.
+     */
+    public double getOnsetRate() {
+        return duration == 0.0 ? 0.0 : onsetTimes.length / duration;
+    }
+
+    /**
+     * Gets the onset envelope (spectral flux).
+     *
+     * @return a copy of the onset strength of every frame.
+     */
+    public double[] getOnsetEnvelope() {
+        return envelope.clone();
+    }
+
+    /**
+     * Gets the number of onset envelope values per second.
+     *
+     * @return the frame rate, in Hz.
+     */
+    public double getFrameRate() {
+        return frameRate;
+    }
+
+    /**
+     * Condenses the rhythm into features for grouping: the tempo in octaves
+     * from {@link #PREFERRED_TEMPO} (0 if there is no tempo), the onset rate
+     * in onsets per second, and the pulse clarity.
+     *
+     * @return a new array of the three features.
+     */
+    public double[] features() {
+        double octaves = tempo == 0.0 ? 0.0 : Math.log(tempo / PREFERRED_TEMPO) / Math.log(2.0);
+        return new double[] {octaves, getOnsetRate(), pulseClarity};
+    }
+
+    /**
+     * Measures how different two rhythms are.
+     *
+     * @param other the other analysis, is not null.
+     * @return the Euclidean distance between the features of both rhythms, >= 0.
+     */
+    public double distance(RhythmAnalysis other) {
+        double[] a = features();
+        double[] b = other.features();
+        double sum = 0.0;
+        for (int i = 0; i < a.length; i++) {
+            sum += (a[i] - b[i]) * (a[i] - b[i]);
+        }
+        return Math.sqrt(sum);
+    }
+
+
+    //HELPER FUNCTIONS:
+
+    /**
+     * Picks the beat period with the largest weighted autocorrelation of the
+     * mean-removed onset envelope, refined by fitting a parabola through its
+     * neighbours. Lags are correlated in parallel.
+     *
+     * @return {tempo, pulse clarity}, or {0, 0} if there is no beat.
+     */
+    private static double[] estimateTempo(double[] envelope, double frameRate) {
+        int minLag = (int) Math.max(1, Math.floor(60.0 * frameRate / MAX_TEMPO));
+        int maxLag = (int) Math.ceil(60.0 * frameRate / MIN_TEMPO);
+        if (envelope.length <= 2 * maxLag) {
+            maxLag = (envelope.length - 1) / 2;
+        }
+        if (maxLag - minLag < 2) {
+            return new double[] {0.0, 0.0};
+        }
+
+        double mean = 0.0;
+        for (double value : envelope) {
+            mean += value;
+        }
+        mean /= envelope.length;
+        double[] centred = new double[envelope.length];
+        for (int i = 0; i < centred.length; i++) {
+            centred[i] = envelope[i] - mean;
+        }
+
+        double energy = correlation(centred, 0);
+        if (energy <= 0.0) {
+            return new double[] {0.0, 0.0};
+        }
+        int lags = maxLag - minLag + 2;
+        double[] correlations = new double[lags];
+        ChunkedParallel.forEach(lags, 8, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                correlations[i] = correlation(centred, minLag - 1 + i);
+            }
+        });
+
+        int best = -1;
+        double bestScore = 0.0;
+        for (int i = 1; i < lags - 1; i++) {
+            int lag = minLag - 1 + i;
+            double bpm = 60.0 * frameRate / lag;
+            double octaves = Math.log(bpm / PREFERRED_TEMPO) / Math.log(2.0) / TEMPO_SPREAD;
+            double score = correlations[i] * Math.exp(-0.5 * octaves * octaves);
+            if (score > bestScore && correlations[i] >= correlations[i - 1] && correlations[i] >= correlations[i + 1]) {
+                best = i;
+                bestScore = score;
+            }
+        }
+        if (best < 0) {
+            return new double[] {0.0, 0.0};
+        }
+
+        double alpha = correlations[best - 1];
+        double beta = correlations[best];
+        double gamma = correlations[best + 1];
+        double denominator = alpha - 2 * beta + gamma;
+        double shift = denominator == 0.0 ? 0.0 : 0.5 * (alpha - gamma) / denominator;
+        double lag = minLag - 1 + best + shift;
+        double tempo = Math.max(MIN_TEMPO, Math.min(MAX_TEMPO, 60.0 * frameRate / lag));
+        return new double[] {tempo, Math.max(0.0, Math.min(1.0, beta / energy))};
+    }
+
+    /**
+     * @return the sum of x[i] * x[i + lag] over every i.
+     */
+    private static double correlation(double[] x, int lag) {
+        double sum = 0.0;
+        for (int i = 0; i + lag < x.length; i++) {
+            sum += x[i] * x[i + lag];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,217 @@
+package cpen221.soundwaves;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p><strong>Overview.</strong>
+ * Finds the silent stretches of a sound wave, such as long lead-ins and
+ * tails, and cuts them off without copying any samples.
+ * </p>
+ *
+ * <p>
+ * The wave is cut into blocks, and a block is silent when the RMS level of
+ * both channels over it does not exceed a threshold. Block levels are found
+ * in one pass over the samples, with blocks scanned in parallel, and the
+ * samples of a {@link ConcreteSoundWave} are read in place, so an analysis
+ * needs one flag per block rather than memory proportional to the wave.
+ * Runs of silent blocks are reported as
+ * {@link SilentInterval}s when they start or end the wave, or when they are
+ * at least as long as a minimum duration; shorter gaps between sounds, such
+ * as the pauses inside a word, are treated as sound.
+ * </p>
+ *
+ * <p>
+ * {@link #trim()} and {@link #strip()} return {@link SoundWave#slice(int, int) slices}
+ * of the wave. Blocks that are exactly zero are also skipped by
+ * {@link ConcreteSoundWave#similarity(SoundWave)} and
+ * {@link ConcreteSoundWave#contains(SoundWave)}, which find them in the
+ * {@link ConcreteSoundWave#summary() summary} of the wave.
+ * </p>
+ */
+public final class SilenceAnalysis {
+
+    /**
+     * RMS level at or below which a block is silent: -60 dB of full scale.
+     */
+    public static final double DEFAULT_THRESHOLD = 0.001;
+
+    /**
+     * Length of a block, in seconds.
+     */
+    public static final double DEFAULT_BLOCK_SECONDS = 0.01;
+
+    /**
+     * Shortest silence reported between two sounds, in seconds.
+     */
+    public static final double DEFAULT_MIN_SILENCE_SECONDS = 0.1;
+
+    private final SoundWave wave;
+    private final List<SilentInterval> intervals;
+
+    // Representation Invariants:
+    //  intervals are in increasing order, do not overlap or touch, and lie within [0, wave.getSampleCount())
+
+    // Abstraction Function:
+    //  represents wave together with its silent stretches, `intervals`
+
+    private SilenceAnalysis(SoundWave wave, List<SilentInterval> intervals) {
+        this.wave = wave;
+        this.intervals = Collections.unmodifiableList(intervals);
+    }
+
+    /**
+     * Analyses a wave with the default threshold, block and minimum silence.
+     *
+     * @param wave the wave, is not null.
+     * @return the silent stretches of wave.
+     */
+    public static SilenceAnalysis of(SoundWave wave) {
+        return of(wave, DEFAULT_THRESHOLD, DEFAULT_BLOCK_SECONDS, DEFAULT_MIN_SILENCE_SECONDS);
+    }
+
+    /**
+     * Analyses a wave.
+     *
+     * @param wave              the wave, is not null. Later changes to the wave
+     *                          do not affect the analysis.
+     * @param threshold         the RMS level at or below which a block is silent, >= 0.
+     * @param blockSeconds      the length of a block, in seconds, > 0.
+     * @param minSilenceSeconds the shortest run of silent blocks reported between
+     *                          two sounds, in seconds, >= 0.
+     * @return the silent stretches of wave.
+     */
+    public static SilenceAnalysis of(SoundWave wave, double threshold, double blockSeconds,
+                                     double minSilenceSeconds) {
+        if (!(threshold >= 0) || !(blockSeconds > 0) || !(minSilenceSeconds >= 0)) {
+            throw new IllegalArgumentException("need threshold >= 0, blockSeconds > 0 and minSilenceSeconds >= 0");
+        }
+        int length = wave.getSampleCount();
+        SoundWave view = wave.slice(0, length);
+        int block = (int) Math.max(1, Math.min(Integer.MAX_VALUE, Math.round(blockSeconds * view.getSampleRate())));
+        double minSilence = minSilenceSeconds * view.getSampleRate();
+        boolean[] silentBlocks = view instanceof ConcreteSoundWave
+            ? ((ConcreteSoundWave) view).silentBlocks(block, threshold)
+            : silentBlocks(view.getLeftChannel(), view.getRightChannel(), 0, length, block, threshold);
+
+        List<SilentInterval> intervals = new ArrayList<>();
+        int runStart = -1;
+        for (long from = 0; from < length; from += block) {
+            boolean silent = silentBlocks[(int) (from / block)];
+            if (silent && runStart < 0) {
+                runStart = (int) from;
+            } else if (!silent && runStart >= 0) {
+                if (runStart == 0 || from - runStart >= minSilence) {
+                    intervals.add(new SilentInterval(runStart, (int) from, view.getSampleRate()));
+                }
+                runStart = -1;
+            }
+        }
+        if (runStart >= 0) {
+            intervals.add(new SilentInterval(runStart, length, view.getSampleRate()));
+        }
+        return new SilenceAnalysis(view, intervals);
+    }
+
+    /**
+     * Gets the silent stretches of the wave.
+     *
+     * @return the silent intervals, in order; the list can not be modified.
+     */
+    public List<SilentInterval> getSilentIntervals() {
+        return intervals;
+    }
+
+    /**
+     * Gets the total length of the silent stretches.
+     *
+     * @return the number of silent samples in each channel.
+     */
+    public int getSilentSampleCount() {
+        int count = 0;
+        for (SilentInterval interval : intervals) {
+            count += interval.getLength();
+        }
+        return count;
+    }
+
+    /**
+     * Cuts off the silence at the start and at the end of the wave.
+     *
+     * @return a slice of the wave without its silent lead-in and tail;
+     * an empty slice if the wave is silent throughout.
+     */
+    public SoundWave trim() {
+        int from = 0;
+        int to = wave.getSampleCount();
+        if (!intervals.isEmpty()) {
+            SilentInterval first = intervals.get(0);
+            SilentInterval last = intervals.get(intervals.size() - 1);
+            if (first.getStart() == 0) {
+                from = first.getEnd();
+            }
+            if (last.getEnd() == to) {
+                to = Math.max(from, last.getStart());
+            }
+        }
+        return wave.slice(from, to);
+    }
+
+    /**
+     * Cuts every silent stretch out of the wave.
+     *
+     * @return slices of the wave between its silent stretches, in order.
+     */
+    public List<SoundWave> strip() {
+        List<SoundWave> sounding = new ArrayList<>();
+        int from = 0;
+        for (SilentInterval interval : intervals) {
+            if (interval.getStart() > from) {
+                sounding.add(wave.slice(from, interval.getStart()));
+            }
+            from = interval.getEnd();
+        }
+        if (from < wave.getSampleCount()) {
+            sounding.add(wave.slice(from, wave.getSampleCount()));
+        }
+        return sounding;
+    }
+
+
+    //HELPER FUNCTIONS:
+
+    /**
+     * Finds the silent blocks of the samples [offset, offset + length) of two
+     * channels, which are read in place, in one pass. Blocks are scanned in
+     * chunks as the current {@link ExecutionContext} allows.
+     *
+     * @param left      the array holding the left channel, is not null.
+     * @param right     the array holding the right channel, is not null.
+     * @param offset    the index of the first sample in both arrays, >= 0.
+     * @param length    the number of samples in each channel, >= 0.
+     * @param block     the number of samples per block, > 0; the last block may be shorter.
+     * @param threshold the RMS level at or below which a block is silent.
+     * @return for every block in order, whether the RMS level of both channels
+     * over it is at most threshold.
+     */
+    static boolean[] silentBlocks(double[] left, double[] right, int offset, int length, int block,
+                                  double threshold) {
+        boolean[] silent = new boolean[(int) (((long) length + block - 1) / block)];
+        ChunkedParallel.forEach(silent.length, Math.max(1, ChunkedParallel.chunkSize() / block), (from, to) -> {
+            for (int i = from; i < to; i++) {
+                long start = offset + (long) i * block;
+                long end = Math.min(offset + (long) length, start + block);
+                double sumLeft = 0.0;
+                double sumRight = 0.0;
+                for (int t = (int) start; t < end; t++) {
+                    sumLeft += left[t] * left[t];
+                    sumRight += right[t] * right[t];
+                }
+                int count = (int) (end - start);
+                silent[i] = Math.sqrt(sumLeft / count) <= threshold && Math.sqrt(sumRight / count) <= threshold;
+            }
+        });
+        return silent;
+    }
+}
@@ -0,0 +1,92 @@
+package cpen221.soundwaves;
+
+/**
+ * A silent stretch of a sound wave, as found by {@link SilenceAnalysis}:
+ * the samples [start, end) of the wave.
+ */
+public class SilentInterval {
+
+    /**
+     * First silent sample.
+     */
+    private final int start;
+
+    /**
+     * One past the last silent sample.
+     */
+    private final int end;
+
+    /**
+     * Number of samples per second of the wave.
+     */
+    private final int sampleRate;
+
+    // Representation Invariants:
+    //  0 <= start < end, sampleRate > 0
+
+    // Abstraction Function:
+    //  represents the claim "the samples [start, end) of the wave are silent"
+
+    /**
+     * Create a new interval.
+     *
+     * @param start      the first silent sample, >= 0.
+     * @param end        one past the last silent sample, > start.
+     * @param sampleRate the number of samples per second of the wave, > 0.
+     */
+    public SilentInterval(int start, int end, int sampleRate) {
+        this.start = start;
+        this.end = end;
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Gets the first silent sample.
+     *
+     * @return the start of the interval, in samples.
+     */
+    public int getStart() {
+        return start;
+    }
+
+    /**
+     * Gets the end of the interval.
+     *
+     * @return one past the last silent sample.
+     */
+    public int getEnd() {
+        return end;
+    }
+
+    /**
+     * Gets the number of silent samples.
+     *
+     * @return the length of the interval, in samples.
+     */
+    public int getLength() {
+        return end - start;
+    }
+
+    /**
+     * Gets the start of the interval in time.
+     *
+     * @return the start of the interval, in seconds.
+     */
+    public double getStartTime() {
+        return start * (1.0 / sampleRate);
+    }
+
+    /**
+     * Gets the end of the interval in time.
+     *
+     * @return the end of the interval, in seconds.
+     */
+    public double getEndTime() {
+        return end * (1.0 / sampleRate);
+    }
+
+    @Override
+    public String toString() {
+        return "SilentInterval{start=" + start + ", end=" + end + "}";
+    }
+}
@@ -0,0 +1,337 @@
+package cpen221.soundwaves;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * <p><strong>Overview.</strong>
+ * A library of sound waves that answers "which stored waves are closest to
+ * this one" without comparing the query with every stored wave.
+ * </p>
+ *
+ * <p>
+ * Every wave is summarized once, when it is inserted, by a fixed-length
+ * spectral embedding (log-mel band statistics of unit length). The embeddings
+ * are indexed with random-hyperplane locality-sensitive hashing: each of
+ * several tables hashes an embedding to the signs of its dot products with a
+ * few random directions, so embeddings with a small angle between them tend to
+ * share a bucket in at least one table. A query only scores the embeddings in
+ * its own buckets (and, if those are too few, in the buckets one sign away),
+ * and {@link #mostSimilar(SoundWave, int, int)} re-ranks that shortlist with the
+ * exact {@link SoundWave#similarity(SoundWave)}.
+ * </p>
+ *
+ * <p>
+ * Embeddings, buckets and bucket chains are stored in primitive arrays, so an
+ * index of 10^5 waves takes about 30 MB besides the waves themselves.
+ * Queries reuse scratch space, so a single instance is not thread safe.
+ * </p>
+ */
+public class SimilarityIndex {
+
+    /**
+     * Default number of hash tables.
+     */
+    public static final int DEFAULT_TABLES = 8;
+
+    /**
+     * Default number of hyperplanes (hash bits) per table.
+     */
+    public static final int DEFAULT_BITS = 12;
+
+    private static final int DIMENSIONS = SpectralEmbedder.DIMENSIONS;
+    private static final int NONE = -1;
+
+    private final int tables;
+    private final int bits;
+
+    /**
+     * planes[(t * bits + b) * DIMENSIONS + d] is coordinate d of hyperplane b of table t.
+     */
+    private final float[] planes;
+
+    /**
+     * heads[(t << bits) | key] is the most recently inserted id in bucket key of table t, or NONE.
+     */
+    private final int[] heads;
+
+    /**
+     * next[id * tables + t] is the next id in the same bucket of table t, or NONE.
+     */
+    private int[] next = new int[0];
+
+    /**
+     * keys[id * tables + t] is the bucket of id in table t.
+     */
+    private int[] keys = new int[0];
+
+    /**
+     * vectors[id * DIMENSIONS + d] is coordinate d of the embedding of id.
+     */
+    private float[] vectors = new float[0];
+
+    /**
+     * The stored waves, indexed by id; null once deleted.
+     */
+    private final List<SoundWave> waves = new ArrayList<>();
+    private int size = 0;
+
+    /**
+     * seen[id] == stamp while id is already a candidate of the current query.
+     */
+    private int[] seen = new int[0];
+    private int stamp = 0;
+
+    /**
+     * Scratch space for the candidates of a query, reused between queries.
+     */
+    private long[] ranked = new long[64];
+
+    // Representation Invariants:
+    //  0 < bits <= 20, tables > 0
+    //  a live id (waves.get(id) != null) is in exactly one bucket of every table, namely keys[id * tables + t]
+    //  a deleted id is in no bucket
+    //  size is the number of live ids
+
+    // Abstraction Function:
+    //  represents the set of live waves, where the wave with identifier id is waves.get(id),
+    //  together with their embeddings and an approximate lookup structure over them.
+
+    /**
+     * Create an empty index with {@link #DEFAULT_TABLES} tables of {@link #DEFAULT_BITS} bits.
+     */
+    public SimilarityIndex() {
+        this(DEFAULT_TABLES, DEFAULT_BITS, 221L);
+    }
+
+    /**
+     * Create an empty index. More tables find more true neighbours at the cost
+     * of memory and query time; more bits make buckets smaller and queries
+     * faster but miss more neighbours.
+     *
+     * @param tables the number of hash tables, > 0.
+     * @param bits   the number of hash bits per table, in [1, 20].
+     * @param seed   the seed of the random hyperplanes.
+     */
+    public SimilarityIndex(int tables, int bits, long seed) {
+        if (tables <= 0 || bits <= 0 || bits > 20) {
+            throw new IllegalArgumentException("need tables > 0 and bits in [1, 20]");
+        }
+        this.tables = tables;
+        this.bits = bits;
+        this.planes = new float[tables * bits * DIMENSIONS];
+        Random random = new Random(seed);
+        for (int i = 0; i < planes.length; i++) {
+            planes[i] = (float) random.nextGaussian();
+        }
+        this.heads = new int[tables << bits];
+        Arrays.fill(heads, NONE);
+    }
+
+    /**
+     * Adds a wave to the index.
+     *
+     * @param wave the wave to store, is not null.
+     * @return the identifier assigned to the wave.
+     *         <p>
+     *         Modifies this.
+     */
+    public int insert(SoundWave wave) {
+        double[] embedding = SpectralEmbedder.embed(wave);
+        int id = waves.size();
+        waves.add(wave);
+        size++;
+
+        if ((id + 1) * DIMENSIONS > vectors.length) {
+            int capacity = Math.max(16, 2 * (id + 1));
+            vectors = Arrays.copyOf(vectors, capacity * DIMENSIONS);
+            next = Arrays.copyOf(next, capacity * tables);
+            keys = Arrays.copyOf(keys, capacity * tables);
+            seen = Arrays.copyOf(seen, capacity);
+        }
+        for (int d = 0; d < DIMENSIONS; d++) {
+            vectors[id * DIMENSIONS + d] = (float) embedding[d];
+        }
+        for (int t = 0; t < tables; t++) {
+            int key = hash(t, vectors, id * DIMENSIONS);
+            keys[id * tables + t] = key;
+            next[id * tables + t] = heads[(t << bits) | key];
+            heads[(t << bits) | key] = id;
+        }
+        return id;
+    }
+
+    /**
+     * Removes a wave from the index. Identifiers are not reused.
+     *
+     * @param id an identifier returned by {@link #insert(SoundWave)}.
+     * @return true if the wave was removed, false if it had already been removed.
+     *         <p>
+     *         Modifies this.
+     */
+    public boolean delete(int id) {
+        if (waves.get(id) == null) {
+            return false;
+        }
+        for (int t = 0; t < tables; t++) {
+            int bucket = (t << bits) | keys[id * tables + t];
+            if (heads[bucket] == id) {
+                heads[bucket] = next[id * tables + t];
+            } else {
+                int previous = heads[bucket];
+                while (next[previous * tables + t] != id) {
+                    previous = next[previous * tables + t];
+                }
+                next[previous * tables + t] = next[id * tables + t];
+            }
+        }
+        waves.set(id, null);
+        size--;
+        return true;
+    }
+
+    /**
+     * Gets a stored wave.
+     *
+     * @param id an identifier returned by {@link #insert(SoundWave)}.
+     * @return the wave stored under id, or null if it has been deleted.
+     */
+    public SoundWave getWave(int id) {
+        return waves.get(id);
+    }
+
+    /**
+     * Gets the number of stored waves.
+     *
+     * @return the number of waves inserted and not deleted.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Finds the stored waves whose embeddings are closest (by cosine) to the
+     * embedding of the query. The search is approximate: a close wave that
+     * shares no bucket with the query may be missed.
+     *
+     * @param query the wave to compare with, is not null.
+     * @param k     the largest number of results, >= 0.
+     * @return identifiers of stored waves, closest first.
+     */
+    public List<Integer> nearest(SoundWave query, int k) {
+        float[] embedding = new float[DIMENSIONS];
+        double[] exact = SpectralEmbedder.embed(query);
+        for (int d = 0; d < DIMENSIONS; d++) {
+            embedding[d] = (float) exact[d];
+        }
+
+        stamp++;
+        int count = 0;
+        int[] queryKeys = new int[tables];
+        for (int t = 0; t < tables; t++) {
+            queryKeys[t] = hash(t, embedding, 0);
+            count = collect(t, queryKeys[t], embedding, count);
+        }
+
+        // multi-probe: look one sign flip away when the exact buckets hold too few waves
+        for (int b = 0; b < bits && count < k; b++) {
+            for (int t = 0; t < tables; t++) {
+                count = collect(t, queryKeys[t] ^ (1 << b), embedding, count);
+            }
+        }
+
+        Arrays.sort(ranked, 0, count);
+        List<Integer> result = new ArrayList<>();
+        for (int i = 0; i < count && i < k; i++) {
+            result.add((int) ranked[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Finds the stored waves most similar to the query: a shortlist is found
+     * with {@link #nearest(SoundWave, int)} and re-ranked with the exact
+     * {@link SoundWave#similarity(SoundWave)}.
+     *
+     * @param query     the wave to compare with, is not null.
+     * @param k         the largest number of results, >= 0.
+     * @param shortlist the number of candidates compared exactly, >= k.
+     * @return identifiers of stored waves, most similar first.
+     */
+    public List<Integer> mostSimilar(SoundWave query, int k, int shortlist) {
+        List<Integer> candidates = nearest(query, shortlist);
+        double[] similarity = new double[candidates.size()];
+        Integer[] order = new Integer[candidates.size()];
+        for (int i = 0; i < order.length; i++) {
+            similarity[i] = query.similarity(waves.get(candidates.get(i)));
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(similarity[b], similarity[a]));
+
+        List<Integer> result = new ArrayList<>();
+        for (int i = 0; i < order.length && i < k; i++) {
+            result.add(candidates.get(order[i]));
+        }
+        return result;
+    }
+
+
+    //HELPER FUNCTIONS:
+
+    /**
+     * Scores the waves of one bucket that are not candidates yet.
+     *
+     * @param table     the table of the bucket.
+     * @param key       the bucket.
+     * @param embedding the embedding of the query.
+     * @param count     the number of entries of ranked in use.
+     * @return the new number of entries of ranked in use.
+     *         <p>
+     *         Modifies ranked: new candidates are added with (2 - cosine) in the
+     *         high bits and their id in the low bits.
+     */
+    private int collect(int table, int key, float[] embedding, int count) {
+        for (int id = heads[(table << bits) | key]; id != NONE; id = next[id * tables + table]) {
+            if (seen[id] == stamp) {
+                continue;
+            }
+            seen[id] = stamp;
+            if (count == ranked.length) {
+                ranked = Arrays.copyOf(ranked, 2 * ranked.length);
+            }
+            float cosine = 0.0f;
+            for (int d = 0; d < DIMENSIONS; d++) {
+                cosine += embedding[d] * vectors[id * DIMENSIONS + d];
+            }
+            // 2 - cosine is positive, so its float bits sort in the same order as its value
+            ranked[count++] = ((long) Float.floatToIntBits(2.0f - cosine) << 32) | id;
+        }
+        return count;
+    }
+
+    /**
+     * Hashes an embedding for one table.
+     *
+     * @param table  the table.
+     * @param vector the array holding the embedding.
+     * @param offset the index of the first coordinate of the embedding in vector.
+     * @return the bits of the bucket: bit b is set when the embedding is on the
+     * positive side of hyperplane b.
+     */
+    private int hash(int table, float[] vector, int offset) {
+        int key = 0;
+        for (int b = 0; b < bits; b++) {
+            int plane = (table * bits + b) * DIMENSIONS;
+            float dot = 0.0f;
+            for (int d = 0; d < DIMENSIONS; d++) {
+                dot += planes[plane + d] * vector[offset + d];
+            }
+            if (dot >= 0.0f) {
+                key |= 1 << b;
+            }
+        }
+        return key;
+    }
+}
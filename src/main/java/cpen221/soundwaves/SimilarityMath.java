@@ -0,0 +1,136 @@
+package cpen221.soundwaves;
+
+/**
+ * Evaluates the similarity metric of {@link SoundWave#similarity(SoundWave)}
+ * from three sums instead of from the samples. For waves a and b (both
+ * channels, the shorter wave padded with silence) and a scaling factor beta,
+ * sum (a - beta * b)^2 = Saa - 2 beta Sab + beta^2 Sbb, where Saa = sum a^2,
+ * Sab = sum a * b and Sbb = sum b^2. Once the sums are known, every beta of
+ * {@link ConcreteSoundWave#getBetaArray()} costs a few arithmetic operations
+ * rather than a pass over the samples.
+ */
+final class SimilarityMath {
+
+    /**
+     * Number of samples accumulated between checks of a running bound.
+     */
+    static final int BLOCK_SIZE = 4096;
+
+    private static final double[] BETAS = ConcreteSoundWave.getBetaArray();
+
+    private SimilarityMath() {
+        // can not instantiate
+    }
+
+    /**
+     * Adds the contribution of samples [from, to) of two channels to the sums.
+     * Samples past the end of a channel count as silence.
+     *
+     * @param a    a channel of the first wave, is not null.
+     * @param b    the same channel of the second wave, is not null.
+     * @param from the first sample.
+     * @param to   one past the last sample.
+     * @param sums {Saa, Sab, Sbb}, is not null.
+     *             <p>
+     *             Modifies sums.
+     */
+    static void accumulate(double[] a, double[] b, int from, int to, double[] sums) {
+        accumulate(a, 0, a.length, b, 0, b.length, from, to, sums);
+    }
+
+    /**
+     * Adds the contribution of samples [from, to) of two channels held in
+     * ranges of larger arrays to the sums. Samples past the end of a channel
+     * count as silence.
+     *
+     * @param a       the array holding a channel of the first wave, is not null.
+     * @param aOffset the index in a of the first sample of the channel.
+     * @param aLength the number of samples in the channel.
+     * @param b       the array holding the same channel of the second wave, is not null.
+     * @param bOffset the index in b of the first sample of the channel.
+     * @param bLength the number of samples in the channel.
+     * @param from    the first sample.
+     * @param to      one past the last sample.
+     * @param sums    {Saa, Sab, Sbb}, is not null.
+     *                <p>
+     *                Modifies sums.
+     */
+    static void accumulate(double[] a, int aOffset, int aLength, double[] b, int bOffset, int bLength,
+                           int from, int to, double[] sums) {
+        double saa = 0.0;
+        double sab = 0.0;
+        double sbb = 0.0;
+        int common = Math.min(to, Math.min(aLength, bLength));
+        for (int t = from; t < common; t++) {
+            double x = a[aOffset + t];
+            double y = b[bOffset + t];
+            saa += x * x;
+            sab += x * y;
+            sbb += y * y;
+        }
+        for (int t = Math.max(from, common); t < Math.min(to, aLength); t++) {
+            saa += a[aOffset + t] * a[aOffset + t];
+        }
+        for (int t = Math.max(from, common); t < Math.min(to, bLength); t++) {
+            sbb += b[bOffset + t] * b[bOffset + t];
+        }
+        sums[0] += saa;
+        sums[1] += sab;
+        sums[2] += sbb;
+    }
+
+    /**
+     * Computes the similarity of two waves from their sums.
+     *
+     * @param saa the sum of squares of the first wave.
+     * @param sab the sum of products of the two waves.
+     * @param sbb the sum of squares of the second wave.
+     * @return the similarity, in (0, 1].
+     */
+    static double similarity(double saa, double sab, double sbb) {
+        double bestGamma1 = 0.0;
+        double bestGamma2 = 0.0;
+        for (double beta : BETAS) {
+            bestGamma1 = Math.max(bestGamma1, 1.0 / (1 + distance(saa, sab, sbb, beta)));
+            bestGamma2 = Math.max(bestGamma2, 1.0 / (1 + distance(sbb, sab, saa, beta)));
+        }
+        return (bestGamma1 + bestGamma2) / 2.0;
+    }
+
+    /**
+     * Bounds the similarity of two waves of which only a prefix has been summed.
+     * The rest of the samples can only add squared differences, so the distance
+     * for every beta can only grow and the similarity can only shrink.
+     *
+     * @param saa the sum of squares of the first wave so far.
+     * @param sab the sum of products of the two waves so far.
+     * @param sbb the sum of squares of the second wave so far.
+     * @return a value at least as large as the similarity of the whole waves.
+     */
+    static double upperBound(double saa, double sab, double sbb) {
+        return (1.0 / (1 + minimumDistance(saa, sab, sbb)) + 1.0 / (1 + minimumDistance(sbb, sab, saa))) / 2.0;
+    }
+
+
+    //HELPER FUNCTIONS:
+
+    /**
+     * @return sum (a - beta * b)^2, given the sums of a and b.
+     */
+    private static double distance(double saa, double sab, double sbb, double beta) {
+        return saa - 2 * beta * sab + beta * beta * sbb;
+    }
+
+    /**
+     * Minimizes the distance over every beta between the smallest and the largest
+     * beta of the grid, which is no larger than its minimum over the grid itself.
+     *
+     * @return a lower bound on the smallest distance for any beta of the grid, >= 0.
+     */
+    private static double minimumDistance(double saa, double sab, double sbb) {
+        double low = BETAS[0];
+        double high = BETAS[BETAS.length - 1];
+        double beta = sbb > 0 ? Math.max(low, Math.min(high, sab / sbb)) : (sab > 0 ? high : low);
+        return Math.max(0.0, distance(saa, sab, sbb, beta));
+    }
+}
@@ -35,11 +35,13 @@ public class SinusoidalWave extends ConcreteSoundWave {
 
         double[] channel = new double[numSamples];
 
-        for (int i = 0; i < numSamples; i++) {
-            double time = i * timeStep;
-            double amplitudeValue = amplitude * Math.sin(angularFreq * time + phase);
-            channel[i] = amplitudeValue;
-        }
+        ChunkedParallel.forEach(numSamples, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                double time = i * timeStep;
+                double amplitudeValue = amplitude * Math.sin(angularFreq * time + phase);
+                channel[i] = amplitudeValue;
+            }
+        });
 
         return new SinusoidalWave(channel);
     }
@@ -0,0 +1,302 @@
+package cpen221.soundwaves;
+
+import cpen221.soundwaves.soundutils.Audio;
+import cpen221.soundwaves.soundutils.MP3Decoder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * <p><strong>Overview.</strong>
+ * Loads every {@code .mp3} and {@code .wav} file in a directory tree into
+ * {@link SoundWave}s concurrently.
+ * </p>
+ *
+ * <p>
+ * Each file is read on its own I/O thread (a virtual thread when the JVM
+ * supports them, otherwise a cached daemon thread) and then decoded on the
+ * executor of an {@link ExecutionContext}, with at most as many files decoding
+ * at once as there are decoding slots and as the context's parallelism allows.
+ * Unless a context is given, the one current when {@link #load(Path)} is
+ * called is used. A byte budget bounds the
+ * memory held by files that have been read but not yet decoded: before a
+ * file is read, its estimated footprint (file size plus decoded size) is
+ * reserved from the budget, and the reservation is released once the file has
+ * been decoded. Readers wait for budget instead of reading ahead without limit.
+ * At most {@link #IO_TASKS_PER_DECODER} files per decoding slot are handed to
+ * I/O threads at a time, so a library of any size starts a bounded number of
+ * threads, even where the I/O threads are platform threads.
+ * </p>
+ *
+ * <p>
+ * A file that can not be read or decoded is reported in
+ * {@link LibraryLoadResult#getFailures()} and does not stop the rest of the batch.
+ * As with {@link cpen221.soundwaves.soundutils.AudioFile}, WAV files are read
+ * as mono and the samples are used for both channels.
+ * </p>
+ */
+public class SoundLibraryLoader {
+
+    /**
+     * Estimated ratio of decoded bytes to encoded bytes for MP3 files
+     * (128 kbit/s stereo decoded into two channels of doubles).
+     */
+    private static final int MP3_EXPANSION = 48;
+
+    /**
+     * Estimated ratio of decoded bytes to encoded bytes for WAV files
+     * (16-bit samples decoded into doubles).
+     */
+    private static final int WAV_EXPANSION = 4;
+
+    /**
+     * The budget is counted in blocks of this many bytes so it fits in a {@link Semaphore}.
+     */
+    private static final int BUDGET_UNIT = 1024;
+
+    /**
+     * Number of files per decoding slot that may be waiting for budget, being
+     * read or waiting to be decoded at once.
+     */
+    static final int IO_TASKS_PER_DECODER = 4;
+
+    private final int decodeThreads;
+    private final long maxBytesInFlight;
+
+    /**
+     * The context decoding runs in, or null for the context current at load time.
+     */
+    private final ExecutionContext context;
+
+    // Representation Invariants:
+    //  decodeThreads > 0
+    //  maxBytesInFlight >= BUDGET_UNIT
+
+    // Abstraction Function:
+    //  represents a loading policy that decodes at most decodeThreads files at
+    //  once and keeps about maxBytesInFlight bytes of undecoded and in-progress data.
+
+    /**
+     * Create a loader with one decoding thread per processor and a 256 MiB budget.
+     */
+    public SoundLibraryLoader() {
+        this(Runtime.getRuntime().availableProcessors(), 256L << 20);
+    }
+
+    /**
+     * Create a loader.
+     *
+     * @param decodeThreads    the number of files decoded at once, > 0.
+     * @param maxBytesInFlight the memory budget for files being read or decoded, in bytes, >= 1024.
+     */
+    public SoundLibraryLoader(int decodeThreads, long maxBytesInFlight) {
+        if (decodeThreads <= 0) {
+            throw new IllegalArgumentException("decodeThreads must be positive");
+        }
+        if (maxBytesInFlight < BUDGET_UNIT) {
+            throw new IllegalArgumentException("maxBytesInFlight must be at least " + BUDGET_UNIT);
+        }
+        this.decodeThreads = decodeThreads;
+        this.maxBytesInFlight = maxBytesInFlight;
+        this.context = null;
+    }
+
+    /**
+     * Create a loader that decodes in a given context, as many files at once
+     * as the parallelism of the context.
+     *
+     * @param context          the context decoding runs in, is not null.
+     * @param maxBytesInFlight the memory budget for files being read or decoded, in bytes, >= 1024.
+     */
+    public SoundLibraryLoader(ExecutionContext context, long maxBytesInFlight) {
+        if (context == null) {
+            throw new IllegalArgumentException("context must not be null");
+        }
+        if (maxBytesInFlight < BUDGET_UNIT) {
+            throw new IllegalArgumentException("maxBytesInFlight must be at least " + BUDGET_UNIT);
+        }
+        this.decodeThreads = context.getParallelism();
+        this.maxBytesInFlight = maxBytesInFlight;
+        this.context = context;
+    }
+
+    /**
+     * Loads every {@code .mp3} and {@code .wav} file under a directory.
+     *
+     * @param directory the root of the library, is not null.
+     * @return the decoded waves and the per-file failures, keyed by path.
+     * @throws IllegalArgumentException if the directory can not be listed.
+     */
+    public LibraryLoadResult load(Path directory) {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(directory)) {
+            files = walk.filter(Files::isRegularFile)
+                .filter(path -> isMP3(path) || isWAV(path))
+                .sorted()
+                .collect(Collectors.toList());
+        } catch (IOException ioe) {
+            throw new IllegalArgumentException("could not list '" + directory + "'", ioe);
+        }
+
+        Map<Path, SoundWave> waves = new ConcurrentHashMap<>();
+        Map<Path, Exception> failures = new ConcurrentHashMap<>();
+        int totalPermits = (int) Math.min(Integer.MAX_VALUE, maxBytesInFlight / BUDGET_UNIT);
+        Semaphore budget = new Semaphore(totalPermits);
+        ExecutionContext decoders = context != null ? context : ExecutionContext.current();
+        int slots = Math.min(decodeThreads, decoders.getParallelism());
+        Semaphore decodeSlots = new Semaphore(slots);
+        // a file is handed to an I/O thread only when one of these is free, which bounds the threads
+        Semaphore ioSlots = new Semaphore(IO_TASKS_PER_DECODER * slots);
+
+        ExecutorService ioThreads = ExecutionContext.newVirtualThreadExecutor();
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (Path file : files) {
+                ioSlots.acquire();
+                try {
+                    tasks.add(ioThreads.submit(() -> {
+                        try {
+                            loadFile(file, budget, totalPermits, decoders, decodeSlots, waves, failures);
+                        } finally {
+                            ioSlots.release();
+                        }
+                    }));
+                } catch (RuntimeException e) {
+                    ioSlots.release();
+                    throw e;
+                }
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("library loading was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("library loading failed", e.getCause());
+        } finally {
+            ioThreads.shutdownNow();
+        }
+        return new LibraryLoadResult(waves, failures);
+    }
+
+
+    //HELPER FUNCTIONS:
+
+    /**
+     * Reads one file, decodes it in the decoding context and records the outcome.
+     * Runs on an I/O thread.
+     *
+     * @param file         the file to load.
+     * @param budget       the shared memory budget, in units of {@link #BUDGET_UNIT}.
+     * @param totalPermits the size of the whole budget.
+     * @param decoders     the context decoding runs in.
+     * @param decodeSlots  the files allowed to decode at once.
+     * @param waves        receives the decoded wave.
+     * @param failures     receives the failure, if any.
+     *                     <p>
+     *                     Modifies waves and failures.
+     */
+    private void loadFile(Path file, Semaphore budget, int totalPermits, ExecutionContext decoders,
+                          Semaphore decodeSlots, Map<Path, SoundWave> waves, Map<Path, Exception> failures) {
+        int permits = 0;
+        boolean acquired = false;
+        try {
+            long size = Files.size(file);
+            long estimate = size * (1 + (isMP3(file) ? MP3_EXPANSION : WAV_EXPANSION));
+            // a file larger than the whole budget waits for the whole budget instead of never running
+            permits = (int) Math.max(1, Math.min(totalPermits, estimate / BUDGET_UNIT));
+            budget.acquire(permits);
+            acquired = true;
+
+            byte[] contents = Files.readAllBytes(file);
+            decodeSlots.acquire();
+            try {
+                CompletableFuture<SoundWave> decoded = new CompletableFuture<>();
+                decoders.getExecutor().execute(decoders.bind(() -> {
+                    try {
+                        decoded.complete(decode(file, contents));
+                    } catch (RuntimeException | Error e) {
+                        decoded.completeExceptionally(e);
+                    }
+                }));
+                waves.put(file, decoded.get());
+            } finally {
+                decodeSlots.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failures.put(file, e);
+        } catch (ExecutionException e) {
+            failures.put(file, e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+        } catch (IOException | RuntimeException e) {
+            failures.put(file, e);
+        } finally {
+            if (acquired) {
+                budget.release(permits);
+            }
+        }
+    }
+
+    /**
+     * Decodes the contents of an audio file.
+     *
+     * @param file     the file the contents were read from.
+     * @param contents the contents of the file, is not null.
+     * @return the decoded wave.
+     * @throws IllegalArgumentException if an MP3 file holds no frames.
+     */
+    private static SoundWave decode(Path file, byte[] contents) {
+        if (isWAV(file)) {
+            double[] samples = Audio.read(new ByteArrayInputStream(contents), file.toString());
+            return new ConcreteSoundWave(samples, samples.clone());
+        }
+
+        try (MP3Decoder decoder = new MP3Decoder(new ByteArrayInputStream(contents), file.toString())) {
+            double[] left = new double[0];
+            double[] right = new double[0];
+            int length = 0;
+            while (decoder.decodeNextFrame()) {
+                double[] frameLeft = decoder.getLeftChannel();
+                double[] frameRight = decoder.getRightChannel();
+                if (length + frameLeft.length > left.length) {
+                    int capacity = Math.max(length + frameLeft.length, 2 * left.length);
+                    left = Arrays.copyOf(left, capacity);
+                    right = Arrays.copyOf(right, capacity);
+                }
+                System.arraycopy(frameLeft, 0, left, length, frameLeft.length);
+                System.arraycopy(frameRight, 0, right, length, frameRight.length);
+                length += frameLeft.length;
+            }
+            if (length == 0) {
+                throw new IllegalArgumentException(file + " has no MP3 frames");
+            }
+            // keep the native rate; operations resample only when they meet a wave of another rate
+            int sampleRate = decoder.getSampleRate() > 0 ? decoder.getSampleRate() : SoundWave.SAMPLES_PER_SECOND;
+            return new ConcreteSoundWave(Arrays.copyOf(left, length), Arrays.copyOf(right, length), sampleRate);
+        }
+    }
+
+    private static boolean isMP3(Path file) {
+        return file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".mp3");
+    }
+
+    private static boolean isWAV(Path file) {
+        return file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".wav");
+    }
+}
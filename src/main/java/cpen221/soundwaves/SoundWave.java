@@ -2,6 +2,8 @@ package cpen221.soundwaves;
 
 import cpen221.soundwaves.soundutils.FilterType;
 
+import java.util.List;
+
 public interface SoundWave {
 
     public static final int SAMPLES_PER_SECOND = 44100;
@@ -31,6 +33,49 @@ public interface SoundWave {
      */
     public double duration();
 
+    /**
+     * Obtain the sample rate of this wave.
+     *
+     * @return the number of samples per second in each channel.
+     */
+    public default int getSampleRate() {
+        return SAMPLES_PER_SECOND;
+    }
+
+    /**
+     * Obtain the number of samples in each channel of this wave.
+     *
+     * @return the length of this wave, in samples.
+     */
+    public default int getSampleCount() {
+        return getLeftChannel().length;
+    }
+
+    /**
+     * Obtain part of this wave without copying its samples.
+     * Later changes to this wave, through {@link #append(double[], double[])}
+     * or {@link #scale(double)}, do not affect the slice, and changes to the
+     * slice do not affect this wave.
+     *
+     * @param startSample the first sample of the slice, >= 0.
+     * @param endSample   one past the last sample of the slice,
+     *                    with startSample <= endSample <= getSampleCount().
+     * @return the samples [startSample, endSample) of this wave, at its sample rate.
+     * @throws IndexOutOfBoundsException if the range is not within this wave.
+     */
+    public SoundWave slice(int startSample, int endSample);
+
+    /**
+     * Obtain the amplitude envelope of this wave: RMS level over any window,
+     * peak level per block and integrated loudness.
+     *
+     * @return the envelope of this wave, which does not change if this wave does.
+     */
+    public default Envelope envelope() {
+        double[] left = getLeftChannel();
+        return Envelope.of(left, getRightChannel(), 0, left.length, getSampleRate());
+    }
+
     /* ===== TASK 2 ==== */
 
     /**
@@ -95,6 +140,17 @@ public interface SoundWave {
      */
     public double similarity(SoundWave other);
 
+    /**
+     * Determine whether the similarity between this wave and another wave
+     * reaches a threshold. This can be much faster than computing the
+     * similarity when most pairs are far apart.
+     *
+     * @param other     is not null.
+     * @param threshold the smallest similarity accepted.
+     * @return true if {@code similarity(other) >= threshold}, and false otherwise.
+     */
+    public boolean similarityAtLeast(SoundWave other, double threshold);
+
     /* ===== TASK 4 ==== */
 
     /**
@@ -107,6 +163,24 @@ public interface SoundWave {
      */
     public double highestAmplitudeFrequencyComponent();
 
+    /**
+     * Find the strongest peaks of the spectrum of this wave.
+     *
+     * @param k the largest number of peaks to return, >= 0.
+     * @return up to k peaks from either channel, by decreasing magnitude,
+     * with their frequencies in Hz.
+     */
+    public List<SpectralPeak> spectralPeaks(int k);
+
+    /**
+     * Measure how strongly a single frequency is present in this wave.
+     *
+     * @param frequency the frequency, in Hz, >= 0.
+     * @return the estimated amplitude of a sinusoid at that frequency,
+     * the larger of the two channels.
+     */
+    public double amplitudeAt(double frequency);
+
     /**
      * Filter this {@code SoundWave} based on the filter type and the
      * provided frequency parameters.
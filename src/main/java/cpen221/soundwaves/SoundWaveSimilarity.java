@@ -14,4 +14,17 @@ public class SoundWaveSimilarity {
         return null;
     }
 
+    /**
+     * Measures how different the rhythms of two waves are, from their tempo,
+     * onset rate and pulse clarity. This is far cheaper than comparing
+     * samples and can be used to group waves before any exact comparison.
+     *
+     * @param a is not null.
+     * @param b is not null.
+     * @return the distance between the rhythm features of a and b, >= 0.
+     */
+    public double rhythmDistance(SoundWave a, SoundWave b) {
+        return RhythmAnalysis.of(a).distance(RhythmAnalysis.of(b));
+    }
+
 }
@@ -0,0 +1,298 @@
+package cpen221.soundwaves;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * <p><strong>Overview.</strong>
+ * Reads and writes decoded sound waves in a compact binary format, so that
+ * audio decoded once (for example by {@link MP3Wave}) can be reloaded
+ * without decoding it again.
+ * </p>
+ *
+ * <p><strong>File layout.</strong>
+ * All values are little endian.
+ * <pre>
+ *  offset  size  field
+ *   0      4     magic, "SWAV"
+ *   4      2     format version
+ *   6      2     encoding ({@link Encoding#getId()})
+ *   8      4     channel count
+ *  12      4     sample rate, in Hz
+ *  16      8     samples per channel
+ *  24      8     channel stride, in bytes
+ *  32      4     data offset, in bytes
+ *  40      8     CRC32 of the samples, excluding block padding
+ *  64      ...   channel blocks, each starting at dataOffset + c * stride
+ * </pre>
+ * Each channel block is padded to a multiple of {@link #ALIGNMENT} bytes, so
+ * every block can be mapped and viewed as a typed buffer directly.
+ * </p>
+ *
+ * <p>
+ * Files are written through a {@link FileChannel} with a single reusable
+ * direct buffer, and {@link #load(Path)} memory-maps them so that the samples
+ * are paged in on demand instead of being read up front.
+ * </p>
+ */
+public final class SoundWaveStore {
+
+    /**
+     * Alignment, in bytes, of the header and of every channel block.
+     */
+    public static final int ALIGNMENT = 64;
+
+    /**
+     * Size of the file header, in bytes.
+     */
+    static final int HEADER_SIZE = 64;
+
+    private static final int MAGIC = 0x56415753; // "SWAV" read as a little endian int
+    private static final short VERSION = 1;
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The ways samples can be stored on disk.
+     */
+    public enum Encoding {
+        /** 64-bit IEEE floating point; lossless. */
+        FLOAT64(1, 8),
+        /** 32-bit IEEE floating point. */
+        FLOAT32(2, 4),
+        /** 16-bit signed PCM, as produced by MP3 and WAV decoders. */
+        PCM16(3, 2);
+
+        private final int id;
+        private final int bytesPerSample;
+
+        Encoding(int id, int bytesPerSample) {
+            this.id = id;
+            this.bytesPerSample = bytesPerSample;
+        }
+
+        /**
+         * @return the identifier stored in the file header.
+         */
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * @return the number of bytes used by one sample.
+         */
+        public int getBytesPerSample() {
+            return bytesPerSample;
+        }
+
+        static Encoding fromId(int id) {
+            for (Encoding encoding : values()) {
+                if (encoding.id == id) {
+                    return encoding;
+                }
+            }
+            throw new IllegalArgumentException("unknown sample encoding " + id);
+        }
+    }
+
+    private SoundWaveStore() {
+        // can not instantiate
+    }
+
+    /**
+     * Saves a wave losslessly, as {@link Encoding#FLOAT64}.
+     *
+     * @param wave the wave to save, is not null.
+     * @param path the file to write, is not null. An existing file is replaced.
+     * @throws IllegalArgumentException if the file can not be written.
+     */
+    public static void write(SoundWave wave, Path path) {
+        write(wave, path, Encoding.FLOAT64);
+    }
+
+    /**
+     * Saves a wave with the given sample encoding.
+     *
+     * @param wave     the wave to save, is not null.
+     * @param path     the file to write, is not null. An existing file is replaced.
+     * @param encoding the sample encoding, is not null.
+     * @throws IllegalArgumentException if the file can not be written.
+     */
+    public static void write(SoundWave wave, Path path, Encoding encoding) {
+        write(new double[][] {wave.getLeftChannel(), wave.getRightChannel()}, wave.getSampleRate(), path, encoding);
+    }
+
+    /**
+     * Saves channels of samples with the given sample encoding.
+     *
+     * @param channels   the channels to save, is not null, not empty, and
+     *                   every channel has the same length.
+     * @param sampleRate the sample rate of the channels, in Hz, > 0.
+     * @param path       the file to write, is not null. An existing file is replaced.
+     * @param encoding   the sample encoding, is not null.
+     * @throws IllegalArgumentException if the file can not be written.
+     */
+    public static void write(double[][] channels, int sampleRate, Path path, Encoding encoding) {
+        if (channels.length == 0) {
+            throw new IllegalArgumentException("at least one channel is required");
+        }
+        int numSamples = channels[0].length;
+        for (double[] channel : channels) {
+            if (channel.length != numSamples) {
+                throw new IllegalArgumentException("all channels must have the same length");
+            }
+        }
+        long stride = alignUp((long) numSamples * encoding.getBytesPerSample());
+
+        try (FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            CRC32 checksum = new CRC32();
+            out.position(HEADER_SIZE);
+
+            ByteBuffer padding = ByteBuffer.allocate((int) (stride - (long) numSamples * encoding.getBytesPerSample()));
+            for (double[] channel : channels) {
+                for (double sample : channel) {
+                    if (buffer.remaining() < Long.BYTES) {
+                        flush(buffer, out, checksum);
+                    }
+                    putSample(buffer, encoding, sample);
+                }
+                flush(buffer, out, checksum);
+                padding.clear();
+                while (padding.hasRemaining()) {
+                    out.write(padding);
+                }
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC);
+            header.putShort(VERSION);
+            header.putShort((short) encoding.getId());
+            header.putInt(channels.length);
+            header.putInt(sampleRate);
+            header.putLong(numSamples);
+            header.putLong(stride);
+            header.putInt(HEADER_SIZE);
+            header.putInt(0);
+            header.putLong(checksum.getValue());
+            header.clear();
+            out.write(header, 0);
+        } catch (IOException ioe) {
+            throw new IllegalArgumentException("unable to save file '" + path + "'", ioe);
+        }
+    }
+
+    /**
+     * Memory-maps a wave file written by this class. No samples are read
+     * until they are accessed through the returned object, and the
+     * checksum is only checked by {@link MappedSoundWave#verifyChecksum()}.
+     *
+     * @param path the file to load, is not null.
+     * @return a read-only view of the stored wave.
+     * @throws IllegalArgumentException if the file can not be read or is not a wave file.
+     */
+    public static MappedSoundWave load(Path path) {
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (in.size() < HEADER_SIZE) {
+                throw new IllegalArgumentException("'" + path + "' is not a wave file");
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && in.read(header, header.position()) > 0) {
+                // keep reading until the header is complete
+            }
+            header.flip();
+
+            if (header.getInt() != MAGIC) {
+                throw new IllegalArgumentException("'" + path + "' is not a wave file");
+            }
+            short version = header.getShort();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("unsupported wave file version " + version);
+            }
+            Encoding encoding = Encoding.fromId(header.getShort());
+            int numChannels = header.getInt();
+            int sampleRate = header.getInt();
+            long numSamples = header.getLong();
+            long stride = header.getLong();
+            int dataOffset = header.getInt();
+            header.getInt();
+            long checksum = header.getLong();
+
+            if (numSamples > Integer.MAX_VALUE || numChannels <= 0
+                || dataOffset + stride * numChannels > in.size()) {
+                throw new IllegalArgumentException("'" + path + "' is truncated or corrupt");
+            }
+
+            MappedByteBuffer[] blocks = new MappedByteBuffer[numChannels];
+            long blockSize = numSamples * encoding.getBytesPerSample();
+            for (int c = 0; c < numChannels; c++) {
+                blocks[c] = in.map(FileChannel.MapMode.READ_ONLY, dataOffset + c * stride, blockSize);
+                blocks[c].order(ByteOrder.LITTLE_ENDIAN);
+            }
+            return new MappedSoundWave(blocks, encoding, (int) numSamples, sampleRate, checksum);
+        } catch (IOException ioe) {
+            throw new IllegalArgumentException("could not read '" + path + "'", ioe);
+        }
+    }
+
+
+    //HELPER FUNCTIONS:
+
+    /**
+     * Rounds a size up to the next multiple of {@link #ALIGNMENT}.
+     *
+     * @param size the size in bytes, >= 0.
+     * @return the aligned size.
+     */
+    static long alignUp(long size) {
+        return (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    /**
+     * Encodes one sample into a buffer.
+     *
+     * @param buffer   the buffer to write into, has room for one sample.
+     * @param encoding the sample encoding.
+     * @param sample   the sample value.
+     *                 <p>
+     *                 Modifies buffer.
+     */
+    private static void putSample(ByteBuffer buffer, Encoding encoding, double sample) {
+        switch (encoding) {
+            case FLOAT64 -> buffer.putDouble(sample);
+            case FLOAT32 -> buffer.putFloat((float) sample);
+            case PCM16 -> {
+                double clipped = Math.max(-1.0, Math.min(1.0, sample));
+                short s = clipped == 1.0 ? Short.MAX_VALUE : (short) (clipped * 32768);
+                buffer.putShort(s);
+            }
+            default -> throw new IllegalArgumentException("unknown sample encoding " + encoding);
+        }
+    }
+
+    /**
+     * Writes the contents of a buffer to a channel and adds them to a checksum.
+     *
+     * @param buffer   the buffer to drain.
+     * @param out      the channel to write to.
+     * @param checksum the running checksum.
+     * @throws IOException if writing fails.
+     *                     <p>
+     *                     Modifies buffer, out, and checksum.
+     */
+    private static void flush(ByteBuffer buffer, FileChannel out, CRC32 checksum) throws IOException {
+        buffer.flip();
+        checksum.update(buffer.duplicate());
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,192 @@
+package cpen221.soundwaves;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Spectral measurements on the fast transform path.
+ * Peaks come from a Welch estimate of the spectrum: Hann-windowed frames of at
+ * most {@link #MAX_FRAME_SIZE} samples, overlapping by half, are transformed with
+ * {@link FastFourierTransform} and their magnitudes averaged, so memory stays
+ * bounded and a long track costs a pass of FFTs over its samples. Peak
+ * frequencies are refined by fitting a parabola to the log magnitudes of the
+ * peak bin and its neighbours. Single frequencies are measured with the
+ * Goertzel recurrence, which needs one pass and no transform at all.
+ * Frames are transformed in parallel as the current {@link ExecutionContext} allows.
+ */
+final class SpectralAnalysis {
+
+    /**
+     * Largest frame, giving a resolution of about 0.7 Hz at 44,100 Hz.
+     */
+    static final int MAX_FRAME_SIZE = 1 << 16;
+
+    private SpectralAnalysis() {
+        // can not instantiate
+    }
+
+    /**
+     * Finds the strongest spectral peaks of both channels of a wave.
+     *
+     * @param left       the left channel, is not null.
+     * @param right      the right channel, is not null.
+     * @param sampleRate the sample rate, in Hz.
+     * @param k          the largest number of peaks, >= 0.
+     * @return up to k peaks by decreasing magnitude.
+     */
+    static List<SpectralPeak> peaks(double[] left, double[] right, int sampleRate, int k) {
+        return peaks(left, right, 0, left.length, sampleRate, k);
+    }
+
+    /**
+     * Finds the strongest spectral peaks of both channels of a wave whose
+     * samples are a range of larger arrays.
+     *
+     * @param left       the array holding the left channel, is not null.
+     * @param right      the array holding the right channel, is not null.
+     * @param offset     the index of the first sample of the wave in both arrays.
+     * @param length     the number of samples of the wave.
+     * @param sampleRate the sample rate, in Hz.
+     * @param k          the largest number of peaks, >= 0.
+     * @return up to k peaks by decreasing magnitude.
+     */
+    static List<SpectralPeak> peaks(double[] left, double[] right, int offset, int length, int sampleRate, int k) {
+        List<SpectralPeak> peaks = new ArrayList<>();
+        collectPeaks(left, offset, length, sampleRate, SpectralPeak.LEFT, peaks);
+        collectPeaks(right, offset, length, sampleRate, SpectralPeak.RIGHT, peaks);
+        peaks.sort((a, b) -> Double.compare(b.getMagnitude(), a.getMagnitude()));
+        return new ArrayList<>(peaks.subList(0, Math.min(k, peaks.size())));
+    }
+
+    /**
+     * Measures the amplitude of one frequency with the Goertzel algorithm.
+     *
+     * @param samples    the samples, is not null.
+     * @param frequency  the frequency, in Hz, >= 0.
+     * @param sampleRate the sample rate, in Hz.
+     * @return the estimated amplitude of a sinusoid at frequency, 0 for no samples.
+     */
+    static double goertzel(double[] samples, double frequency, int sampleRate) {
+        return goertzel(samples, 0, samples.length, frequency, sampleRate);
+    }
+
+    /**
+     * Measures the amplitude of one frequency in the samples [offset, offset + n) of an array.
+     *
+     * @param samples    the array holding the samples, is not null.
+     * @param offset     the index of the first sample.
+     * @param n          the number of samples.
+     * @param frequency  the frequency, in Hz, >= 0.
+     * @param sampleRate the sample rate, in Hz.
+     * @return the estimated amplitude of a sinusoid at frequency, 0 for no samples.
+     */
+    static double goertzel(double[] samples, int offset, int n, double frequency, int sampleRate) {
+        if (n == 0) {
+            return 0.0;
+        }
+        double omega = 2.0 * Math.PI * frequency / sampleRate;
+        double coefficient = 2.0 * Math.cos(omega);
+        double previous = 0.0;
+        double beforePrevious = 0.0;
+        for (int t = offset; t < offset + n; t++) {
+            double current = samples[t] + coefficient * previous - beforePrevious;
+            beforePrevious = previous;
+            previous = current;
+        }
+        double real = previous - beforePrevious * Math.cos(omega);
+        double img = beforePrevious * Math.sin(omega);
+        double amplitude = Math.sqrt(real * real + img * img) / n;
+        // the energy of a sinusoid is split between +f and -f, except at DC and Nyquist
+        return omega == 0.0 || omega == Math.PI ? amplitude : 2.0 * amplitude;
+    }
+
+
+    //HELPER FUNCTIONS:
+
+    /**
+     * Adds every local maximum of the spectrum of a channel to peaks.
+     *
+     * @param samples    the array holding the samples of the channel, is not null.
+     * @param offset     the index of the first sample of the channel.
+     * @param length     the number of samples of the channel.
+     * @param sampleRate the sample rate, in Hz.
+     * @param channel    the channel index.
+     * @param peaks      receives the peaks.
+     *                   <p>
+     *                   Modifies peaks.
+     */
+    private static void collectPeaks(double[] samples, int offset, int length, int sampleRate, int channel,
+                                     List<SpectralPeak> peaks) {
+        if (length < 3) {
+            return;
+        }
+        int frameSize = Math.min(MAX_FRAME_SIZE, FastFourierTransform.nextPowerOfTwo(length));
+        // a wave shorter than a frame is windowed over its own length and then zero-padded
+        double[] window = FastFourierTransform.hannWindow(Math.min(frameSize, length));
+        double[] magnitudes = averageMagnitudes(samples, offset, length, frameSize, window);
+        double windowSum = Arrays.stream(window).sum();
+        for (int bin = 1; bin < magnitudes.length - 1; bin++) {
+            double m = magnitudes[bin];
+            if (m <= 0.0 || m <= magnitudes[bin - 1] || m < magnitudes[bin + 1]) {
+                continue;
+            }
+            double alpha = Math.log(Math.max(magnitudes[bin - 1], Double.MIN_NORMAL));
+            double beta = Math.log(m);
+            double gamma = Math.log(Math.max(magnitudes[bin + 1], Double.MIN_NORMAL));
+            double denominator = alpha - 2 * beta + gamma;
+            double shift = denominator == 0.0 ? 0.0 : 0.5 * (alpha - gamma) / denominator;
+            double peak = Math.exp(beta - 0.25 * (alpha - gamma) * shift);
+
+            double frequency = (bin + shift) * sampleRate / frameSize;
+            peaks.add(new SpectralPeak(frequency, 2.0 * peak / windowSum, channel));
+        }
+    }
+
+    /**
+     * Averages the magnitude spectra of windowed frames overlapping by half.
+     * Samples after the last whole frame are ignored. Groups of frames are
+     * summed in parallel, each into its own spectrum, and the group sums are
+     * then added in order.
+     *
+     * @param samples   the array holding the samples, is not null.
+     * @param offset    the index of the first sample.
+     * @param length    the number of samples.
+     * @param frameSize the frame size, a power of two.
+     * @param window    the window applied to the start of every frame, at most frameSize long.
+     * @return the average magnitude of every bin from 0 to frameSize / 2.
+     */
+    private static double[] averageMagnitudes(double[] samples, int offset, int length, int frameSize,
+                                              double[] window) {
+        int hop = frameSize / 2;
+        int numFrames = length <= frameSize ? 1 : 1 + (length - frameSize) / hop;
+
+        // at least a chunk of samples per group, and few enough groups that their spectra stay small
+        ExecutionContext context = ExecutionContext.current();
+        int grain = Math.max(Math.max(1, context.getChunkSize() / frameSize),
+            (numFrames + 4 * context.getParallelism() - 1) / (4 * context.getParallelism()));
+
+        double[] sum = ChunkedParallel.sum(ChunkedParallel.partials(numFrames, grain, frameSize / 2 + 1,
+            (from, to, partial) -> {
+                double[] real = new double[frameSize];
+                double[] img = new double[frameSize];
+                double[] magnitudes = new double[frameSize / 2 + 1];
+                for (int frame = from; frame < to; frame++) {
+                    int start = offset + frame * hop;
+                    for (int i = 0; i < frameSize; i++) {
+                        real[i] = i < window.length ? samples[start + i] * window[i] : 0.0;
+                        img[i] = 0.0;
+                    }
+                    FastFourierTransform.transform(real, img);
+                    FastFourierTransform.magnitudes(real, img, magnitudes);
+                    for (int bin = 0; bin < partial.length; bin++) {
+                        partial[bin] += magnitudes[bin];
+                    }
+                }
+            }));
+        for (int bin = 0; bin < sum.length; bin++) {
+            sum[bin] /= numFrames;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,153 @@
+package cpen221.soundwaves;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Summarizes a sound wave as a fixed-length vector for nearest-neighbour search.
+ * The wave is mixed down to mono and split into Hann-windowed STFT frames, and
+ * the power spectrum of every frame is reduced to {@link #MEL_BANDS} log-mel band
+ * energies. The embedding is the mean of each band over all frames followed by
+ * its standard deviation. The means are centred, which cancels any overall gain
+ * (as {@link SoundWave#similarity(SoundWave)} ignores scaling), and the vector is
+ * scaled to unit length so that the dot product of two embeddings is their cosine.
+ */
+final class SpectralEmbedder {
+
+    /**
+     * Number of mel bands.
+     */
+    static final int MEL_BANDS = 32;
+
+    /**
+     * Length of an embedding.
+     */
+    static final int DIMENSIONS = 2 * MEL_BANDS;
+
+    private static final int FRAME_SIZE = 2048;
+    private static final int HOP_SIZE = 1024;
+
+    /**
+     * Added to band energies before taking logarithms, so silence has a finite value.
+     */
+    private static final double ENERGY_FLOOR = 1e-10;
+
+    private static final double[] WINDOW = FastFourierTransform.hannWindow(FRAME_SIZE);
+
+    /**
+     * Mel filter banks by sample rate; bank[b] holds the weights of band b for every FFT bin.
+     */
+    private static final Map<Integer, double[][]> FILTER_BANKS = new ConcurrentHashMap<>();
+
+    private SpectralEmbedder() {
+        // can not instantiate
+    }
+
+    /**
+     * Computes the embedding of a wave.
+     *
+     * @param wave the wave to summarize, is not null.
+     * @return a vector of {@link #DIMENSIONS} values with unit length,
+     * or all zeros for a wave without any variation (such as silence).
+     */
+    static double[] embed(SoundWave wave) {
+        double[] left = wave.getLeftChannel();
+        double[] right = wave.getRightChannel();
+        double[][] bank = FILTER_BANKS.computeIfAbsent(wave.getSampleRate(), SpectralEmbedder::melFilterBank);
+
+        int numFrames = left.length <= FRAME_SIZE ? 1 : 1 + (left.length - FRAME_SIZE) / HOP_SIZE;
+        double[] real = new double[FRAME_SIZE];
+        double[] img = new double[FRAME_SIZE];
+        double[] power = new double[FRAME_SIZE / 2 + 1];
+        double[] sum = new double[MEL_BANDS];
+        double[] sumOfSquares = new double[MEL_BANDS];
+
+        for (int frame = 0; frame < numFrames; frame++) {
+            int start = frame * HOP_SIZE;
+            for (int i = 0; i < FRAME_SIZE; i++) {
+                int t = start + i;
+                real[i] = t < left.length ? (left[t] + right[t]) / 2.0 * WINDOW[i] : 0.0;
+                img[i] = 0.0;
+            }
+            FastFourierTransform.transform(real, img);
+            for (int k = 0; k < power.length; k++) {
+                power[k] = real[k] * real[k] + img[k] * img[k];
+            }
+
+            for (int b = 0; b < MEL_BANDS; b++) {
+                double energy = ENERGY_FLOOR;
+                for (int k = 0; k < power.length; k++) {
+                    energy += bank[b][k] * power[k];
+                }
+                double logEnergy = Math.log(energy);
+                sum[b] += logEnergy;
+                sumOfSquares[b] += logEnergy * logEnergy;
+            }
+        }
+
+        double[] embedding = new double[DIMENSIONS];
+        double overallMean = 0.0;
+        for (int b = 0; b < MEL_BANDS; b++) {
+            double mean = sum[b] / numFrames;
+            embedding[b] = mean;
+            embedding[MEL_BANDS + b] = Math.sqrt(Math.max(0.0, sumOfSquares[b] / numFrames - mean * mean));
+            overallMean += mean / MEL_BANDS;
+        }
+        double norm = 0.0;
+        for (int d = 0; d < DIMENSIONS; d++) {
+            if (d < MEL_BANDS) {
+                embedding[d] -= overallMean;
+            }
+            norm += embedding[d] * embedding[d];
+        }
+        norm = Math.sqrt(norm);
+        if (norm > 0.0) {
+            for (int d = 0; d < DIMENSIONS; d++) {
+                embedding[d] /= norm;
+            }
+        }
+        return embedding;
+    }
+
+
+    //HELPER FUNCTIONS:
+
+    /**
+     * Builds triangular filters spaced evenly on the mel scale between 0 Hz and
+     * the Nyquist frequency.
+     *
+     * @param sampleRate the sample rate of the waves to embed, > 0.
+     * @return the weights of every band for every FFT bin.
+     */
+    private static double[][] melFilterBank(int sampleRate) {
+        int bins = FRAME_SIZE / 2 + 1;
+        double maxMel = toMel(sampleRate / 2.0);
+        double[] edges = new double[MEL_BANDS + 2];
+        for (int i = 0; i < edges.length; i++) {
+            edges[i] = fromMel(maxMel * i / (MEL_BANDS + 1)) * FRAME_SIZE / sampleRate;
+        }
+
+        double[][] bank = new double[MEL_BANDS][bins];
+        for (int b = 0; b < MEL_BANDS; b++) {
+            double low = edges[b];
+            double centre = edges[b + 1];
+            double high = edges[b + 2];
+            for (int k = 0; k < bins; k++) {
+                if (k > low && k <= centre) {
+                    bank[b][k] = (k - low) / (centre - low);
+                } else if (k > centre && k < high) {
+                    bank[b][k] = (high - k) / (high - centre);
+                }
+            }
+        }
+        return bank;
+    }
+
+    private static double toMel(double frequency) {
+        return 2595.0 * Math.log10(1.0 + frequency / 700.0);
+    }
+
+    private static double fromMel(double mel) {
+        return 700.0 * (Math.pow(10.0, mel / 2595.0) - 1.0);
+    }
+}
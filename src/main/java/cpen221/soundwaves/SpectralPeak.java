@@ -0,0 +1,86 @@
+package cpen221.soundwaves;
+
+/**
+ * A peak of the spectrum of a sound wave, as returned by
+ * {@link SoundWave#spectralPeaks(int)}: a frequency in Hz, the amplitude of
+ * the sinusoid at that frequency and the channel it was found in.
+ */
+public class SpectralPeak {
+
+    /**
+     * Channel index of the left channel.
+     */
+    public static final int LEFT = 0;
+
+    /**
+     * Channel index of the right channel.
+     */
+    public static final int RIGHT = 1;
+
+    /**
+     * Frequency of the peak, in Hz.
+     */
+    private final double frequency;
+
+    /**
+     * Estimated amplitude of the sinusoid at the peak, in sample units.
+     */
+    private final double magnitude;
+
+    /**
+     * The channel of the peak, LEFT or RIGHT.
+     */
+    private final int channel;
+
+    // Representation Invariants:
+    //  frequency >= 0, magnitude >= 0, channel is LEFT or RIGHT
+
+    // Abstraction Function:
+    //  represents a sinusoid of amplitude magnitude at frequency Hz in the given channel
+
+    /**
+     * Create a new peak.
+     *
+     * @param frequency the frequency, in Hz, >= 0.
+     * @param magnitude the estimated amplitude, >= 0.
+     * @param channel   {@link #LEFT} or {@link #RIGHT}.
+     */
+    public SpectralPeak(double frequency, double magnitude, int channel) {
+        this.frequency = frequency;
+        this.magnitude = magnitude;
+        this.channel = channel;
+    }
+
+    /**
+     * Gets the frequency of the peak.
+     *
+     * @return the frequency, in Hz.
+     */
+    public double getFrequency() {
+        return frequency;
+    }
+
+    /**
+     * Gets the estimated amplitude of the sinusoid at the peak.
+     * A full-scale sine wave has a magnitude close to 1.
+     *
+     * @return the magnitude.
+     */
+    public double getMagnitude() {
+        return magnitude;
+    }
+
+    /**
+     * Gets the channel the peak was found in.
+     *
+     * @return {@link #LEFT} or {@link #RIGHT}.
+     */
+    public int getChannel() {
+        return channel;
+    }
+
+    @Override
+    public String toString() {
+        return "SpectralPeak{frequency=" + frequency + ", magnitude=" + magnitude + ", channel=" + channel + "}";
+    }
+}
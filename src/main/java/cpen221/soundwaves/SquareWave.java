@@ -32,11 +32,13 @@ public class SquareWave extends ConcreteSoundWave {
 
         double[] channel = new double[numSamples];
 
-        for (int i = 0; i < numSamples; i++) {
-            double time = i * timeStep;
-            double instantaneousValue = amplitude * Math.signum(Math.sin(angularFreq * time + phase));
-            channel[i] = instantaneousValue;
-        }
+        ChunkedParallel.forEach(numSamples, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                double time = i * timeStep;
+                double instantaneousValue = amplitude * Math.signum(Math.sin(angularFreq * time + phase));
+                channel[i] = instantaneousValue;
+            }
+        });
         return new SquareWave(channel);
     }
 
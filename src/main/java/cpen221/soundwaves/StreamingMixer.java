@@ -0,0 +1,398 @@
+package cpen221.soundwaves;
+
+import cpen221.soundwaves.soundutils.AudioFile;
+import cpen221.soundwaves.soundutils.BlockSink;
+import cpen221.soundwaves.soundutils.BlockSource;
+import cpen221.soundwaves.soundutils.WavWriter;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * <p><strong>Overview.</strong>
+ * Mixes tracks that are too long to decode into memory, such as the stems
+ * of an hour-long session, and streams the mix to a {@link BlockSink} such as
+ * a {@link WavWriter}, or to a WAV file with {@link #render(Path)}. Unlike {@link WaveMixer},
+ * which needs every input as a whole wave, this mixer pulls one fixed-size
+ * block at a time from every track and sums them into a reusable block, so
+ * its memory depends on the block size and the number of tracks, not on the
+ * duration of the mix.
+ * </p>
+ *
+ * <p>
+ * The tracks of a block are read in parallel by the
+ * {@link ExecutionContext#current() current execution context}, one task per
+ * track, since decoding dominates the cost; they are then summed in the order
+ * they were added. The mix has one sample rate, {@link SoundWave#SAMPLES_PER_SECOND}
+ * Hz unless another is given; a track whose source has another
+ * {@link BlockSource#getSampleRate() rate} is
+ * {@link BlockSource#resample(BlockSource, int) resampled} block by block as it is read.
+ * </p>
+ *
+ * <p>
+ * A streamed mix can not be normalized by its peak before the peak is known,
+ * so the mixer offers three {@link Normalization} modes:
+ * <ul>
+ *     <li>{@link Normalization#NONE} writes the sum as is;</li>
+ *     <li>{@link Normalization#TWO_PASS} mixes once to find the peak of each
+ *     channel and again to write it, scaled as {@link SoundWave#add(SoundWave)}
+ *     would; and</li>
+ *     <li>{@link Normalization#LIMITER} writes in one pass, turning the gain
+ *     down as soon as a sample would exceed 1 and easing it back afterwards.</li>
+ * </ul>
+ * </p>
+ */
+public class StreamingMixer {
+
+    /**
+     * How a mix whose samples exceed [-1.0, +1.0] is brought back into range.
+     */
+    public enum Normalization {
+        /**
+         * The sum is written as is, and a sink may clip it.
+         */
+        NONE,
+        /**
+         * Each channel whose peak exceeds 1 is scaled back to a peak of 1.
+         * The tracks are read twice.
+         */
+        TWO_PASS,
+        /**
+         * A limiter with instant attack, linked across both channels.
+         * The tracks are read once.
+         */
+        LIMITER
+    }
+
+    /**
+     * Number of samples per channel mixed at a time, unless another size is given.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 4096;
+
+    /**
+     * Time for the limiter gain to recover most of the way back to 1, in seconds.
+     */
+    private static final double LIMITER_RELEASE_SECONDS = 0.05;
+
+    private final int blockSize;
+    private final Normalization normalization;
+    private final int sampleRate;
+    private final List<Track> tracks = new ArrayList<>();
+
+    // Representation Invariants:
+    //  blockSize > 0, normalization is not null, sampleRate > 0
+    //  every track starts at a sample >= 0
+
+    // Abstraction Function:
+    //  represents the sum, sample by sample, of gain * (samples of the track's source)
+    //  at sampleRate Hz delayed by the track's start, brought into range by normalization
+
+    /**
+     * Create a mixer with no tracks.
+     *
+     * @param blockSize     the number of samples per channel mixed at a time, > 0.
+     * @param normalization how the mix is brought into range, is not null.
+     * @param sampleRate    the sample rate of the mix, in Hz, > 0.
+     */
+    public StreamingMixer(int blockSize, Normalization normalization, int sampleRate) {
+        if (blockSize <= 0 || sampleRate <= 0) {
+            throw new IllegalArgumentException("blockSize and sampleRate must be positive");
+        }
+        this.blockSize = blockSize;
+        this.normalization = normalization;
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Create a mixer with no tracks, mixing at {@link SoundWave#SAMPLES_PER_SECOND} Hz.
+     *
+     * @param blockSize     the number of samples per channel mixed at a time, > 0.
+     * @param normalization how the mix is brought into range, is not null.
+     */
+    public StreamingMixer(int blockSize, Normalization normalization) {
+        this(blockSize, normalization, SoundWave.SAMPLES_PER_SECOND);
+    }
+
+    /**
+     * Create a mixer with no tracks, mixing {@link #DEFAULT_BLOCK_SIZE} samples
+     * at a time at {@link SoundWave#SAMPLES_PER_SECOND} Hz.
+     *
+     * @param normalization how the mix is brought into range, is not null.
+     */
+    public StreamingMixer(Normalization normalization) {
+        this(DEFAULT_BLOCK_SIZE, normalization);
+    }
+
+    /**
+     * Adds an audio file as a track. The file is opened when the mix reaches
+     * the start of the track, once per pass.
+     *
+     * @param fileName the name of a WAV, MIDI or MP3 file, is not null.
+     * @param gain     the factor applied to every sample of the track.
+     * @param start    the time in the mix at which the track starts, in seconds, >= 0.
+     *                 <p>
+     *                 Modifies this.
+     */
+    public void addTrack(String fileName, double gain, double start) {
+        addTrack(() -> BlockSource.of(new AudioFile(fileName)), gain, start);
+    }
+
+    /**
+     * Adds a track read from any source.
+     *
+     * @param opener gives a new source positioned at the beginning of the
+     *               track every time it is called, is not null. Sources at
+     *               another rate than the mix are resampled.
+     * @param gain   the factor applied to every sample of the track.
+     * @param start  the time in the mix at which the track starts, in seconds, >= 0.
+     *               <p>
+     *               Modifies this.
+     */
+    public void addTrack(Supplier<? extends BlockSource> opener, double gain, double start) {
+        if (start < 0 || Double.isNaN(start) || Double.isInfinite(gain) || Double.isNaN(gain)) {
+            throw new IllegalArgumentException("need start >= 0 and a finite gain");
+        }
+        tracks.add(new Track(opener, gain, Math.round(start * sampleRate)));
+    }
+
+    /**
+     * Gets the sample rate of the mix.
+     *
+     * @return the number of samples per second written to each channel.
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Gets the number of tracks added so far.
+     *
+     * @return the number of tracks of this mixer.
+     */
+    public int getTrackCount() {
+        return tracks.size();
+    }
+
+    /**
+     * Mixes the tracks into a WAV file at the sample rate of this mixer.
+     *
+     * @param file the file to create or replace, is not null.
+     * @return the number of samples written to each channel.
+     * @throws IllegalArgumentException if the file can not be written.
+     */
+    public long render(Path file) {
+        try (WavWriter writer = new WavWriter(file, sampleRate)) {
+            return render(writer);
+        }
+    }
+
+    /**
+     * Mixes the tracks and writes the mix to a sink, block by block.
+     * The mix lasts until the latest-ending track ends.
+     *
+     * @param sink where the mix goes, is not null.
+     * @return the number of samples written to each channel.
+     */
+    public long render(BlockSink sink) {
+        switch (normalization) {
+            case TWO_PASS:
+                double[] peaks = new double[2];
+                mixAll((left, right, from, length) -> {
+                    for (int t = from; t < from + length; t++) {
+                        peaks[0] = Math.max(peaks[0], Math.abs(left[t]));
+                        peaks[1] = Math.max(peaks[1], Math.abs(right[t]));
+                    }
+                });
+                double leftGain = peaks[0] > 1.0 ? 1.0 / peaks[0] : 1.0;
+                double rightGain = peaks[1] > 1.0 ? 1.0 / peaks[1] : 1.0;
+                return mixAll((left, right, from, length) -> {
+                    for (int t = from; t < from + length; t++) {
+                        left[t] *= leftGain;
+                        right[t] *= rightGain;
+                    }
+                    sink.write(left, right, from, length);
+                });
+            case LIMITER:
+                Limiter limiter = new Limiter(sampleRate);
+                return mixAll((left, right, from, length) -> {
+                    limiter.apply(left, right, from, length);
+                    sink.write(left, right, from, length);
+                });
+            default:
+                return mixAll(sink);
+        }
+    }
+
+
+    //HELPER FUNCTIONS:
+
+    /**
+     * Makes one pass over the tracks, writing the raw sum block by block.
+     *
+     * @param out where the sum goes, is not null. It may change the samples
+     *            it is given, which are not used afterwards.
+     * @return the number of samples written to each channel.
+     */
+    private long mixAll(BlockSink out) {
+        TrackReader[] readers = new TrackReader[tracks.size()];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new TrackReader(tracks.get(i), blockSize, sampleRate);
+        }
+        double[] left = new double[blockSize];
+        double[] right = new double[blockSize];
+
+        long written = 0;
+        while (Arrays.stream(readers).anyMatch(reader -> !reader.finished)) {
+            long position = written;
+            ChunkedParallel.forEach(readers.length, 1, (from, to) -> {
+                for (int i = from; i < to; i++) {
+                    readers[i].fill(position);
+                }
+            });
+
+            Arrays.fill(left, 0.0);
+            Arrays.fill(right, 0.0);
+            int extent = 0;
+            for (TrackReader reader : readers) {
+                reader.addTo(left, right);
+                extent = Math.max(extent, reader.extent());
+            }
+            out.write(left, right, 0, extent);
+            written += extent;
+        }
+        return written;
+    }
+
+
+    //HELPER CLASSES:
+
+    /**
+     * A track of the mix: where its samples come from, its gain and its start.
+     */
+    private static final class Track {
+
+        private final Supplier<? extends BlockSource> opener;
+        private final double gain;
+        private final long start;
+
+        Track(Supplier<? extends BlockSource> opener, double gain, long start) {
+            this.opener = opener;
+            this.gain = gain;
+            this.start = start;
+        }
+    }
+
+    /**
+     * Reads one track during a pass, a block at a time, into its own buffers.
+     */
+    private static final class TrackReader {
+
+        private final Track track;
+        private final int sampleRate;
+        private final double[] left;
+        private final double[] right;
+        private BlockSource source;
+
+        /**
+         * Index in the mix block of the first sample read by the last fill.
+         */
+        private int offset;
+
+        /**
+         * Number of samples read by the last fill.
+         */
+        private int count;
+
+        private boolean finished;
+
+        TrackReader(Track track, int blockSize, int sampleRate) {
+            this.track = track;
+            this.sampleRate = sampleRate;
+            this.left = new double[blockSize];
+            this.right = new double[blockSize];
+        }
+
+        /**
+         * Reads the part of the track that falls in the mix block starting at position.
+         * <p>
+         * Modifies this.
+         */
+        void fill(long position) {
+            offset = 0;
+            count = 0;
+            if (finished || track.start >= position + left.length) {
+                return;
+            }
+            if (source == null) {
+                source = BlockSource.resample(track.opener.get(), sampleRate);
+            }
+            offset = (int) Math.max(0, track.start - position);
+            int wanted = left.length - offset;
+            count = source.read(left, right, 0, wanted);
+            if (count < wanted) {
+                finished = true;
+                source = null;
+            }
+        }
+
+        /**
+         * Adds the samples read by the last fill to the mix block.
+         *
+         * @param mixLeft  the left channel of the block, is not null.
+         * @param mixRight the right channel of the block, is not null.
+         *                 <p>
+         *                 Modifies mixLeft and mixRight.
+         */
+        void addTo(double[] mixLeft, double[] mixRight) {
+            for (int t = 0; t < count; t++) {
+                mixLeft[offset + t] += track.gain * left[t];
+                mixRight[offset + t] += track.gain * right[t];
+            }
+        }
+
+        /**
+         * @return the number of samples of the mix block this track needs:
+         * the whole block until it has ended.
+         */
+        int extent() {
+            if (!finished) {
+                return left.length;
+            }
+            return count > 0 || offset > 0 ? offset + count : 0;
+        }
+    }
+
+    /**
+     * A peak limiter linked across both channels: the gain drops at once to
+     * keep every sample within [-1.0, +1.0] and recovers exponentially.
+     */
+    private static final class Limiter {
+
+        private final double release;
+        private double gain = 1.0;
+
+        Limiter(int sampleRate) {
+            this.release = 1.0 - Math.exp(-1.0 / (LIMITER_RELEASE_SECONDS * sampleRate));
+        }
+
+        /**
+         * Limits the samples [from, from + length) of both channels.
+         * <p>
+         * Modifies left and right.
+         */
+        void apply(double[] left, double[] right, int from, int length) {
+            for (int t = from; t < from + length; t++) {
+                gain += (1.0 - gain) * release;
+                double peak = Math.max(Math.abs(left[t]), Math.abs(right[t]));
+                if (peak * gain > 1.0) {
+                    gain = 1.0 / peak;
+                }
+                left[t] *= gain;
+                right[t] *= gain;
+            }
+        }
+    }
+}
@@ -30,16 +30,17 @@ public class TriangleWave extends ConcreteSoundWave {
 
         int numSamples = (int) (duration * SAMPLES_PER_SECOND);
         double timeStep = duration / numSamples;
-        double instantaneousValue;
         double angularFreq = 2.0 * Math.PI * freq;
 
         double[] channel = new double[numSamples];
 
-        for (int i = 0; i < numSamples; i++) {
-            double time = i * timeStep;
-            instantaneousValue = amplitude * 2 / (Math.PI) * Math.asin(Math.sin(Math.PI * (angularFreq * time + phase)));
-            channel[i] = instantaneousValue;
-        }
+        ChunkedParallel.forEach(numSamples, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                double time = i * timeStep;
+                double instantaneousValue = amplitude * 2 / (Math.PI) * Math.asin(Math.sin(Math.PI * (angularFreq * time + phase)));
+                channel[i] = instantaneousValue;
+            }
+        });
         return new TriangleWave(channel);
     }
 }
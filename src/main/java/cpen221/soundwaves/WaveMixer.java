@@ -0,0 +1,203 @@
+package cpen221.soundwaves;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p><strong>Overview.</strong>
+ * Mixes any number of sound waves into one, each with its own gain and start
+ * time. Chaining {@link SoundWave#add(SoundWave)} makes one full pass and one
+ * normalization per input, and the intermediate normalizations change the
+ * balance between inputs. A mixer instead sums every input into a single
+ * output buffer and normalizes it once, so mixing costs one pass over the
+ * samples of all inputs.
+ * </p>
+ *
+ * <p>
+ * The output is filled in blocks of {@link ExecutionContext#getChunkSize()}
+ * samples, and blocks are mixed in parallel by the
+ * {@link ExecutionContext#current() current execution context}. Within a
+ * block the inputs are added in the order they were given, so the mix is the
+ * same from run to run. The samples of a {@link ConcreteSoundWave} at the
+ * rate of the mix are read in place rather than copied.
+ * </p>
+ *
+ * <p>
+ * The main methods are:
+ * <ul>
+ *     <li>{@link #add(SoundWave, double, double)}, and</li>
+ *     <li>{@link #mix()}.</li>
+ * </ul>
+ * </p>
+ */
+public class WaveMixer {
+
+    /**
+     * Number of samples per second of the mix.
+     */
+    private final int sampleRate;
+
+    /**
+     * The inputs, in the order they were added.
+     */
+    private final List<Input> inputs = new ArrayList<>();
+
+    /**
+     * Number of samples per channel of the mix.
+     */
+    private int length;
+
+    // Representation Invariants:
+    //  sampleRate > 0
+    //  every input is at sampleRate and starts at a sample >= 0
+    //  length is the largest start + input length over all inputs, 0 if there are none
+
+    // Abstraction Function:
+    //  represents the sum, sample by sample, of gain * wave delayed by start
+    //  samples over every input, before normalization
+
+    /**
+     * Create an empty mixer.
+     *
+     * @param sampleRate the number of samples per second of the mix, > 0.
+     *                   Inputs at other rates are resampled.
+     */
+    public WaveMixer(int sampleRate) {
+        if (sampleRate <= 0) {
+            throw new IllegalArgumentException("sampleRate must be positive");
+        }
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Create an empty mixer at the default sample rate.
+     */
+    public WaveMixer() {
+        this(SoundWave.SAMPLES_PER_SECOND);
+    }
+
+    /**
+     * Mixes waves at unit gain, all starting together.
+     *
+     * @param waves the waves to mix, is not null and holds no nulls.
+     * @return the normalized sum of the waves, at the sample rate of the first
+     * wave (the default sample rate if there are none).
+     */
+    public static SoundWave mix(List<? extends SoundWave> waves) {
+        WaveMixer mixer = waves.isEmpty() ? new WaveMixer() : new WaveMixer(waves.get(0).getSampleRate());
+        for (SoundWave wave : waves) {
+            mixer.add(wave);
+        }
+        return mixer.mix();
+    }
+
+    /**
+     * Adds a wave to the mix at unit gain, starting at the beginning.
+     *
+     * @param wave the wave to add, is not null.
+     *             <p>
+     *             Modifies this.
+     */
+    public void add(SoundWave wave) {
+        add(wave, 1.0, 0.0);
+    }
+
+    /**
+     * Adds a wave to the mix.
+     *
+     * @param wave  the wave to add, is not null. Later changes to the wave
+     *              do not affect the mix.
+     * @param gain  the factor applied to every sample of the wave.
+     * @param start the time in the mix at which the wave starts, in seconds, >= 0.
+     *              <p>
+     *              Modifies this.
+     */
+    public void add(SoundWave wave, double gain, double start) {
+        if (start < 0 || Double.isNaN(start) || Double.isInfinite(gain) || Double.isNaN(gain)) {
+            throw new IllegalArgumentException("need start >= 0 and a finite gain");
+        }
+        SoundWave resampled = ConcreteSoundWave.atSampleRate(wave, sampleRate);
+        // a slice shares the samples of the wave, but not its later changes
+        ConcreteSoundWave samples = resampled instanceof ConcreteSoundWave
+            ? (ConcreteSoundWave) resampled.slice(0, resampled.getSampleCount())
+            : new ConcreteSoundWave(resampled.getLeftChannel(), resampled.getRightChannel(), sampleRate);
+        Input input = new Input(samples, (int) Math.round(start * sampleRate), gain);
+        inputs.add(input);
+        length = Math.max(length, input.end());
+    }
+
+    /**
+     * Gets the number of waves added so far.
+     *
+     * @return the number of inputs of this mixer.
+     */
+    public int getInputCount() {
+        return inputs.size();
+    }
+
+    /**
+     * Gets the sample rate of the mix.
+     *
+     * @return the number of samples per second of the mix.
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Mixes the inputs. Each channel of the sum whose peak exceeds 1 is scaled
+     * back to a peak of 1, once, after all inputs have been added.
+     *
+     * @return a new wave holding the mix, as long as the latest-ending input,
+     * at the sample rate of this mixer.
+     */
+    public SoundWave mix() {
+        double[] left = new double[length];
+        double[] right = new double[length];
+        ChunkedParallel.forEach(length, (from, to) -> {
+            for (Input input : inputs) {
+                input.addTo(left, right, from, to);
+            }
+        });
+        ConcreteSoundWave.normalize(left, right);
+        return new ConcreteSoundWave(left, right, sampleRate);
+    }
+
+
+    //HELPER CLASSES:
+
+    /**
+     * One wave of the mix, with its placement and gain.
+     */
+    private static final class Input {
+
+        private final ConcreteSoundWave samples;
+        private final int start;
+        private final double gain;
+
+        Input(ConcreteSoundWave samples, int start, double gain) {
+            this.samples = samples;
+            this.start = start;
+            this.gain = gain;
+        }
+
+        /**
+         * @return one past the last sample of the mix this input covers.
+         */
+        int end() {
+            return start + samples.getSampleCount();
+        }
+
+        /**
+         * Adds the part of this input that falls in [from, to) of the mix.
+         *
+         * @param mixLeft  the left channel of the mix, is not null.
+         * @param mixRight the right channel of the mix, as long as mixLeft, is not null.
+         *                 <p>
+         *                 Modifies mixLeft and mixRight.
+         */
+        void addTo(double[] mixLeft, double[] mixRight, int from, int to) {
+            samples.addTo(mixLeft, mixRight, start, gain, from, to);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package cpen221.soundwaves;
+
+import cpen221.soundwaves.soundutils.PolyphaseResampler;
+
+/**
+ * Low-resolution copies of a sound wave for coarse-to-fine comparisons.
+ * Level k holds both channels low-pass filtered and decimated by
+ * {@link #FACTOR}^k (1/4, 1/16 and 1/64 of the samples for levels 1 to 3),
+ * so a comparison at level 3 reads 64 times fewer samples than one at full
+ * resolution. The filtering removes the content that decimation would alias.
+ * Pyramids of {@link ConcreteSoundWave}s are built once and cached by the wave.
+ */
+final class WavePyramid {
+
+    /**
+     * Decimation factor between consecutive levels.
+     */
+    static final int FACTOR = 4;
+
+    /**
+     * Number of decimated levels.
+     */
+    static final int LEVELS = 3;
+
+    private final int length;
+    private final double[][] left = new double[LEVELS + 1][];
+    private final double[][] right = new double[LEVELS + 1][];
+
+    // Representation Invariants:
+    //  left[0] and right[0] are null (full resolution is read from the wave itself)
+    //  for 1 <= k <= LEVELS, left[k] and right[k] are left[k - 1] and right[k - 1]
+    //  (or the wave's channels, for k == 1) filtered and decimated by FACTOR
+
+    // Abstraction Function:
+    //  represents a wave of `length` samples per channel,
+    //  seen at resolutions 1 / FACTOR^k for k in [1, LEVELS]
+
+    private WavePyramid(SoundWave wave) {
+        double[] l = wave.getLeftChannel();
+        double[] r = wave.getRightChannel();
+        this.length = l.length;
+        for (int k = 1; k <= LEVELS; k++) {
+            l = PolyphaseResampler.resample(l, FACTOR, 1);
+            r = PolyphaseResampler.resample(r, FACTOR, 1);
+            left[k] = l;
+            right[k] = r;
+        }
+    }
+
+    /**
+     * Gets the pyramid of a wave, reusing the cached one when the wave keeps one.
+     *
+     * @param wave the wave, is not null.
+     * @return the pyramid of wave.
+     */
+    static WavePyramid of(SoundWave wave) {
+        if (wave instanceof ConcreteSoundWave) {
+            return ((ConcreteSoundWave) wave).pyramid();
+        }
+        return build(wave);
+    }
+
+    /**
+     * Builds the pyramid of a wave, without caching it.
+     *
+     * @param wave the wave, is not null.
+     * @return a new pyramid of wave.
+     */
+    static WavePyramid build(SoundWave wave) {
+        return new WavePyramid(wave);
+    }
+
+    /**
+     * @return the number of samples per channel of the wave at full resolution.
+     */
+    int length() {
+        return length;
+    }
+
+    /**
+     * @param level a level in [1, LEVELS].
+     * @return the left channel at that level; not a copy, must not be modified.
+     */
+    double[] left(int level) {
+        return left[level];
+    }
+
+    /**
+     * @param level a level in [1, LEVELS].
+     * @return the right channel at that level; not a copy, must not be modified.
+     */
+    double[] right(int level) {
+        return right[level];
+    }
+}
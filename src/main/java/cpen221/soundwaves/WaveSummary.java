@@ -0,0 +1,176 @@
+package cpen221.soundwaves;
+
+/**
+ * Summary statistics of the two channels of a sound wave: peak absolute
+ * value, energy (sum of squares), RMS level, DC offset (mean) and the peak of
+ * every block of {@link #BLOCK_SIZE} samples. A summary is computed in a
+ * single pass over the samples and is immutable; {@link ConcreteSoundWave}
+ * computes it on first use and keeps it until the wave changes.
+ * Channels are indexed by {@link SpectralPeak#LEFT} and {@link SpectralPeak#RIGHT}.
+ */
+public final class WaveSummary {
+
+    /**
+     * Number of samples per block of {@link #getBlockPeaks(int)}.
+     */
+    public static final int BLOCK_SIZE = SimilarityMath.BLOCK_SIZE;
+
+    private final int length;
+    private final double[] peak = new double[2];
+    private final double[] energy = new double[2];
+    private final double[] sum = new double[2];
+    private final double[][] blockPeaks = new double[2][];
+
+    // Representation Invariants:
+    //  length >= 0
+    //  for each channel c: peak[c] >= 0, energy[c] >= 0,
+    //  blockPeaks[c].length == ceil(length / BLOCK_SIZE) and peak[c] is the largest of blockPeaks[c] (or 0)
+
+    // Abstraction Function:
+    //  represents the statistics of a wave of `length` samples per channel where, for channel c,
+    //  peak[c] = max |x|, energy[c] = sum x^2, sum[c] = sum x and blockPeaks[c][i] = max |x| over block i
+
+    private WaveSummary(int length) {
+        this.length = length;
+    }
+
+    /**
+     * Summarizes the samples [offset, offset + length) of two channels. Blocks
+     * of samples are summarized in chunks as the current {@link ExecutionContext}
+     * allows, and combined in block order.
+     *
+     * @param left   the array holding the left channel, is not null.
+     * @param right  the array holding the right channel, is not null.
+     * @param offset the index of the first sample in both arrays, >= 0.
+     * @param length the number of samples in each channel, >= 0.
+     * @return the summary of the samples.
+     */
+    static WaveSummary of(double[] left, double[] right, int offset, int length) {
+        WaveSummary summary = new WaveSummary(length);
+        int blocks = (length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        summary.blockPeaks[SpectralPeak.LEFT] = new double[blocks];
+        summary.blockPeaks[SpectralPeak.RIGHT] = new double[blocks];
+        int grain = Math.max(1, ChunkedParallel.chunkSize() / BLOCK_SIZE);
+
+        double[][] partials = ChunkedParallel.partials(blocks, grain, 4, (from, to, partial) -> {
+            for (int block = from; block < to; block++) {
+                int start = offset + block * BLOCK_SIZE;
+                int end = Math.min(offset + length, start + BLOCK_SIZE);
+                double peakLeft = 0.0;
+                double peakRight = 0.0;
+                for (int t = start; t < end; t++) {
+                    double l = left[t];
+                    double r = right[t];
+                    peakLeft = Math.max(peakLeft, Math.abs(l));
+                    peakRight = Math.max(peakRight, Math.abs(r));
+                    partial[0] += l;
+                    partial[1] += r;
+                    partial[2] += l * l;
+                    partial[3] += r * r;
+                }
+                summary.blockPeaks[SpectralPeak.LEFT][block] = peakLeft;
+                summary.blockPeaks[SpectralPeak.RIGHT][block] = peakRight;
+            }
+        });
+
+        double[] totals = ChunkedParallel.sum(partials);
+        for (int c = 0; c < 2; c++) {
+            summary.sum[c] = totals[c];
+            summary.energy[c] = totals[2 + c];
+            for (double blockPeak : summary.blockPeaks[c]) {
+                summary.peak[c] = Math.max(summary.peak[c], blockPeak);
+            }
+        }
+        return summary;
+    }
+
+    /**
+     * Gets the number of samples summarized.
+     *
+     * @return the number of samples in each channel.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Gets the peak absolute value of a channel.
+     *
+     * @param channel {@link SpectralPeak#LEFT} or {@link SpectralPeak#RIGHT}.
+     * @return the largest |x| over the channel, 0 for an empty wave.
+     */
+    public double getPeak(int channel) {
+        return peak[channel];
+    }
+
+    /**
+     * Gets the peak absolute value of both channels.
+     *
+     * @return the largest |x| over both channels, 0 for an empty wave.
+     */
+    public double getPeak() {
+        return Math.max(peak[SpectralPeak.LEFT], peak[SpectralPeak.RIGHT]);
+    }
+
+    /**
+     * Gets the energy of a channel.
+     *
+     * @param channel {@link SpectralPeak#LEFT} or {@link SpectralPeak#RIGHT}.
+     * @return the sum of the squares of the samples of the channel.
+     */
+    public double getEnergy(int channel) {
+        return energy[channel];
+    }
+
+    /**
+     * Gets the energy of both channels.
+     *
+     * @return the sum of the squares of the samples of both channels.
+     */
+    public double getEnergy() {
+        return energy[SpectralPeak.LEFT] + energy[SpectralPeak.RIGHT];
+    }
+
+    /**
+     * Gets the root mean square level of a channel.
+     *
+     * @param channel {@link SpectralPeak#LEFT} or {@link SpectralPeak#RIGHT}.
+     * @return sqrt(energy / length), 0 for an empty wave.
+     */
+    public double getRms(int channel) {
+        return length == 0 ? 0.0 : Math.sqrt(energy[channel] / length);
+    }
+
+    /**
+     * Gets the DC offset of a channel.
+     *
+     * @param channel {@link SpectralPeak#LEFT} or {@link SpectralPeak#RIGHT}.
+     * @return the mean of the samples of the channel, 0 for an empty wave.
+     */
+    public double getDcOffset(int channel) {
+        return length == 0 ? 0.0 : sum[channel] / length;
+    }
+
+    /**
+     * Gets the peak absolute value of every block of {@link #BLOCK_SIZE} samples
+     * of a channel; the last block may be shorter.
+     *
+     * @param channel {@link SpectralPeak#LEFT} or {@link SpectralPeak#RIGHT}.
+     * @return a copy of the block peaks, in order.
+     */
+    public double[] getBlockPeaks(int channel) {
+        return blockPeaks[channel].clone();
+    }
+
+    /**
+     * Checks whether a block is exactly zero in both channels.
+     *
+     * @param block the block, >= 0.
+     * @return true if every sample of the block is 0 in both channels, or the
+     * block is past the end of the wave, and false otherwise.
+     */
+    boolean isSilentBlock(int block) {
+        return block >= blockPeaks[SpectralPeak.LEFT].length
+            || (blockPeaks[SpectralPeak.LEFT][block] == 0.0 && blockPeaks[SpectralPeak.RIGHT][block] == 0.0);
+    }
+}
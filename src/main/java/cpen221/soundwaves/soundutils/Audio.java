@@ -3,6 +3,7 @@ package cpen221.soundwaves.soundutils;
 import javax.sound.sampled.Clip;
 
 import java.io.File;
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.io.IOException;
@@ -367,16 +368,50 @@ public final class Audio {
      * @return the array of samples
      */
     public static double[] read(String filename) {
+        return read(getAudioInputStreamFromFile(filename), filename);
+    }
+
+    /**
+     * Reads audio samples from a stream holding the contents of an audio file
+     * (in WAVE, AU, AIFF, or MIDI format) and returns them as a double array
+     * with values between -1.0 and +1.0. The same format restrictions as
+     * {@link #read(String filename)} apply.
+     *
+     * @param  in the contents of the audio file, is not null. It is closed
+     *            once all samples have been read.
+     * @param  name a name for the stream, used in error messages
+     * @return the array of samples
+     * @throws IllegalArgumentException if the stream can not be read
+     */
+    public static double[] read(InputStream in, String name) {
+        try {
+            InputStream buffered = in.markSupported() ? in : new BufferedInputStream(in);
+            return read(AudioSystem.getAudioInputStream(buffered), name);
+        }
+        catch (IOException e) {
+            throw new IllegalArgumentException("could not read '" + name + "'", e);
+        }
+        catch (UnsupportedAudioFileException e) {
+            throw new IllegalArgumentException("file of unsupported audio file format: '" + name + "'", e);
+        }
+    }
+
+    // convert an audio stream to 44,100 Hz, 16-bit, mono samples between -1 and +1
+    private static double[] read(AudioInputStream fromAudioInputStream, String filename) {
         // 4K buffer (must be a multiple of 2 for mono or 4 for stereo)
         int READ_BUFFER_SIZE = 4096;
 
-        // create AudioInputStream from file
-        AudioInputStream fromAudioInputStream = getAudioInputStreamFromFile(filename);
         AudioFormat fromAudioFormat = fromAudioInputStream.getFormat();
 
-        // normalize AudioInputStream to 44,100 Hz, 16-bit audio, mono, signed PCM, little endian
+        // AudioSystem only converts the encoding and channels; the sample rate is
+        // converted here, block by block, with a polyphase resampler
+        float fromSampleRate = fromAudioFormat.getSampleRate();
+        int decodeRate = fromSampleRate > 0 ? Math.round(fromSampleRate) : SAMPLE_RATE;
+        PolyphaseResampler resampler = decodeRate == SAMPLE_RATE ? null : new PolyphaseResampler(decodeRate, SAMPLE_RATE);
+
+        // normalize AudioInputStream to 16-bit audio, mono, signed PCM, little endian at the source rate
         // https://docs.oracle.com/javase/tutorial/sound/converters.html
-        AudioFormat toAudioFormat = new AudioFormat((float) SAMPLE_RATE, BITS_PER_SAMPLE, MONO, SIGNED, LITTLE_ENDIAN);
+        AudioFormat toAudioFormat = new AudioFormat((float) decodeRate, BITS_PER_SAMPLE, MONO, SIGNED, LITTLE_ENDIAN);
         if (!AudioSystem.isConversionSupported(toAudioFormat, fromAudioFormat)) {
             throw new IllegalArgumentException("system cannot convert from " + fromAudioFormat + " to " + toAudioFormat);
         }
@@ -386,13 +421,22 @@ public final class Audio {
         try {
             QueueOfDoubles queue = new QueueOfDoubles();
             byte[] bytes = new byte[READ_BUFFER_SIZE];
+            double[] block = new double[READ_BUFFER_SIZE / 2];
             int count;
             while ((count = toAudioInputStream.read(bytes, 0, READ_BUFFER_SIZE)) != -1) {
 
                 // little endian, monoaural
                 for (int i = 0; i < count/2; i++) {
-                    double sample = ((short) (((bytes[2*i+1] & 0xFF) << 8) | (bytes[2*i] & 0xFF))) / ((double) MAX_16_BIT);
-                    queue.enqueue(sample);
+                    block[i] = ((short) (((bytes[2*i+1] & 0xFF) << 8) | (bytes[2*i] & 0xFF))) / ((double) MAX_16_BIT);
+                }
+                if (resampler == null) {
+                    for (int i = 0; i < count/2; i++) {
+                        queue.enqueue(block[i]);
+                    }
+                } else {
+                    for (double sample : resampler.process(block, 0, count/2)) {
+                        queue.enqueue(sample);
+                    }
                 }
 
                 // little endian, stereo (perhaps, for a future version that supports stereo)
@@ -405,6 +449,11 @@ public final class Audio {
                 }
                 */
             }
+            if (resampler != null) {
+                for (double sample : resampler.flush()) {
+                    queue.enqueue(sample);
+                }
+            }
             toAudioInputStream.close();
             fromAudioInputStream.close();
             return queue.toArray();
@@ -480,6 +529,38 @@ public final class Audio {
         }
     }
 
+    /**
+     * Saves stereo samples as a 16-bit, 44,100 Hz {@code .wav} file.
+     * The samples are streamed to disk by a {@link WavWriter} instead of being
+     * copied into an in-memory byte array first.
+     *
+     * @param  filename the name of the audio file, ending in {@code .wav}
+     * @param  left the left channel samples to save
+     * @param  right the right channel samples to save, as many as {@code left}
+     * @throws IllegalArgumentException if unable to save {@code filename}
+     * @throws IllegalArgumentException if {@code filename}, {@code left} or {@code right} is {@code null}
+     * @throws IllegalArgumentException if the channels differ in length
+     * @throws IllegalArgumentException if {@code filename} extension is not {@code .wav}
+     */
+    public static void save(String filename, double[] left, double[] right) {
+        if (filename == null) {
+            throw new IllegalArgumentException("filename is null");
+        }
+        if (left == null || right == null) {
+            throw new IllegalArgumentException("samples[] is null");
+        }
+        if (!filename.endsWith(".wav") && !filename.endsWith(".WAV")) {
+            throw new IllegalArgumentException("file extension for saving stereo must be .wav");
+        }
+        if (left.length != right.length) {
+            throw new IllegalArgumentException("channels must have the same length");
+        }
+
+        try (WavWriter writer = new WavWriter(filename)) {
+            writer.write(left, right);
+        }
+    }
+
     /**
      * Stops the playing of all audio files in background threads.
      */
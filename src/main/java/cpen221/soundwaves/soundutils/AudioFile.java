@@ -1,7 +1,5 @@
 package cpen221.soundwaves.soundutils;
 
-import ca.ubc.ece.cpen221.mp1.utils.MP3Player;
-
 /**
  * <p><strong>Overview.</strong>
  * This utility type allows one to work with simple audio files
@@ -17,20 +15,39 @@ import ca.ubc.ece.cpen221.mp1.utils.MP3Player;
  *     <li>{@link #readRightNext()}</li>.
  * </ul>
  * </p>
+ *
+ * <p>
+ * MP3 files are decoded by an {@link MP3Decoder} owned by this instance, so
+ * several {@code AudioFile}s can be read at the same time from different threads.
+ * A single {@code AudioFile} is not thread safe.
+ * </p>
+ *
+ * <p>
+ * WAV and MIDI files are read as a single block of mono samples: each channel
+ * returns the whole file once, as the same array, after which the file is empty.
+ * {@link BlockSource#of(AudioFile)} streams them in blocks instead.
+ * </p>
  * @author Sathish Gopalakrishnan
  */
 public class AudioFile {
     private final String fileType;
     private final String fileName;
-    private MP3Player mp3;
+    private MP3Decoder mp3;
+    private double[] samples;
+    private boolean leftRead = true;
+    private boolean rightRead = true;
     private boolean isEmpty;
 
     /**
      * Create a new AudioFile instance for a file with the provided filename.
-     * The existence of the file is often <strong>not verified</strong> until a
-     * {@link #readLeftNext()} or {@link #readRightNext()} invocation.
+     * An MP3 file is opened at once and its first frame decoded, so a missing
+     * or corrupt MP3 file is reported here. WAV and MIDI files are
+     * <strong>not verified</strong> until a {@link #readLeftNext()} or
+     * {@link #readRightNext()} invocation.
      *
      * @param fileName is not null.
+     * @throws IllegalArgumentException if the file type is not supported, or if
+     *                                  an MP3 file can not be opened or decoded.
      */
     public AudioFile(String fileName) {
         this.fileType = fileName.substring(fileName.lastIndexOf(".") + 1).toLowerCase();
@@ -40,9 +57,12 @@ public class AudioFile {
         switch (fileType) {
             case "wav":
             case "midi":
+                leftRead = false;
+                rightRead = false;
                 break;
             case "mp3":
-                MP3Player.open(fileName);
+                mp3 = new MP3Decoder(fileName);
+                updateEmpty();
                 break;
             default:
                 throw new IllegalArgumentException("Invalid file type");
@@ -59,6 +79,37 @@ public class AudioFile {
         return isEmpty;
     }
 
+    /**
+     * Gets the sample rate of the samples this file hands out.
+     *
+     * @return the sample rate of an MP3 file in Hz, as found in its first frame;
+     * {@link Audio#SAMPLE_RATE} for WAV and MIDI files, which are read at that rate.
+     */
+    public int getSampleRate() {
+        if (mp3 != null && mp3.getSampleRate() > 0) {
+            return mp3.getSampleRate();
+        }
+        return Audio.SAMPLE_RATE;
+    }
+
+    /**
+     * Checks whether this is an MP3 file, which is decoded frame by frame.
+     *
+     * @return true for an MP3 file and false for a WAV or MIDI file.
+     */
+    boolean isMP3() {
+        return mp3 != null;
+    }
+
+    /**
+     * Gets the name of the file.
+     *
+     * @return the name this file was opened with.
+     */
+    String getFileName() {
+        return fileName;
+    }
+
     /**
      * Obtain the next set of left channel audio samples. If the file does not exist then one may
      * see an <code>RuntimeException</code>.
@@ -69,19 +120,21 @@ public class AudioFile {
         switch (fileType) {
             case "wav":
             case "midi":
-                if (isEmpty()) {
+                if (isEmpty() || leftRead) {
                     throw new RuntimeException("End of file reached");
                 }
-                return Audio.read(fileName);
+                leftRead = true;
+                return readWhole();
             case "mp3":
-                if (MP3Player.isEmpty()) {
+                if (isEmpty()) {
                     throw new RuntimeException("End of file reached");
                 }
-                double[] lchannel = MP3Player.getLeftChannel();
-                if (MP3Player.isEmpty()) {
-                    isEmpty = true;
-                    MP3Player.close();
+                if (leftRead) {
+                    nextFrame();
                 }
+                leftRead = true;
+                double[] lchannel = mp3.getLeftChannel();
+                updateEmpty();
                 return lchannel;
             default:
                 return null;
@@ -98,22 +151,70 @@ public class AudioFile {
         switch (fileType) {
             case "wav":
             case "midi":
-                if (isEmpty()) {
+                if (isEmpty() || rightRead) {
                     throw new RuntimeException("End of file reached");
                 }
-                return Audio.read(fileName);
+                rightRead = true;
+                return readWhole();
             case "mp3":
-                if (MP3Player.isEmpty()) {
+                if (isEmpty()) {
                     throw new RuntimeException("End of file reached");
                 }
-                double[] lchannel = MP3Player.getRightChannel();
-                if (MP3Player.isEmpty()) {
-                    isEmpty = true;
-                    MP3Player.close();
+                if (rightRead) {
+                    nextFrame();
                 }
-                return lchannel;
+                rightRead = true;
+                double[] rchannel = mp3.getRightChannel();
+                updateEmpty();
+                return rchannel;
             default:
                 return null;
         }
     }
+
+    /**
+     * Reads a WAV or MIDI file on the first call and hands out its samples,
+     * marking this file as empty once both channels have been read.
+     * <p>
+     * Modifies this.
+     *
+     * @return the samples of the whole file, the same array for both channels.
+     */
+    private double[] readWhole() {
+        if (samples == null) {
+            samples = Audio.read(fileName);
+        }
+        double[] whole = samples;
+        if (leftRead && rightRead) {
+            isEmpty = true;
+            samples = null;
+        }
+        return whole;
+    }
+
+    /**
+     * Moves the MP3 decoder to the next frame.
+     * <p>
+     * Modifies this.
+     */
+    private void nextFrame() {
+        if (!mp3.decodeNextFrame()) {
+            throw new RuntimeException("End of file reached");
+        }
+        leftRead = false;
+        rightRead = false;
+    }
+
+    /**
+     * Marks this file as empty, and releases the MP3 decoder, once both channels
+     * of the current frame have been read and no frames are left.
+     * <p>
+     * Modifies this.
+     */
+    private void updateEmpty() {
+        if (leftRead && rightRead && !mp3.hasNextFrame()) {
+            isEmpty = true;
+            mp3.close();
+        }
+    }
 }
@@ -0,0 +1,57 @@
+package cpen221.soundwaves.soundutils;
+
+/**
+ * Reads an {@link AudioFile} in blocks of any size, keeping what is left of
+ * the block last read from the file for the next call.
+ */
+final class AudioFileBlocks implements BlockSource {
+
+    private final AudioFile file;
+    private double[] left = new double[0];
+    private double[] right = new double[0];
+    private int position = 0;
+
+    // Representation Invariants:
+    //  0 <= position <= min(left.length, right.length)
+
+    // Abstraction Function:
+    //  represents the samples [position, ...) of the block last read from file,
+    //  followed by the samples of file not read yet
+
+    /**
+     * Create a source reading a file.
+     *
+     * @param file a file that has not been read yet, is not null.
+     */
+    AudioFileBlocks(AudioFile file) {
+        this.file = file;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return file.getSampleRate();
+    }
+
+    @Override
+    public int read(double[] left, double[] right, int from, int length) {
+        int done = 0;
+        while (done < length) {
+            int available = Math.min(this.left.length, this.right.length) - position;
+            if (available == 0) {
+                if (file.isEmpty()) {
+                    break;
+                }
+                this.left = file.readLeftNext();
+                this.right = file.readRightNext();
+                position = 0;
+                continue;
+            }
+            int count = Math.min(length - done, available);
+            System.arraycopy(this.left, position, left, from + done, count);
+            System.arraycopy(this.right, position, right, from + done, count);
+            position += count;
+            done += count;
+        }
+        return done;
+    }
+}
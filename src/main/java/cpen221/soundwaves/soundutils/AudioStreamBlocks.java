@@ -0,0 +1,93 @@
+package cpen221.soundwaves.soundutils;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Streams a WAV (or other {@link AudioSystem}-readable) file from disk in
+ * blocks. As in {@link Audio#read(String)}, the file is converted to 16-bit
+ * mono and the samples are used for both channels; unlike it, the file is
+ * kept at its own sample rate, reported by {@link #getSampleRate()}, and
+ * only one block of it is in memory at a time.
+ */
+final class AudioStreamBlocks implements BlockSource {
+
+    private static final double MAX_16_BIT = 32768.0;
+
+    /**
+     * Number of bytes (two per mono sample) read from the file at a time.
+     */
+    private static final int BYTES_PER_READ = 8192;
+
+    private final String fileName;
+    private final int sampleRate;
+    private final byte[] bytes = new byte[BYTES_PER_READ];
+    private AudioInputStream stream;
+
+    // Representation Invariants:
+    //  sampleRate > 0
+    //  stream is null once the end of the file has been reached, and is
+    //  otherwise positioned at a sample boundary of 16-bit mono little endian PCM
+
+    // Abstraction Function:
+    //  represents the samples of fileName not read yet, from the position of stream on
+
+    /**
+     * Opens a file for streaming.
+     *
+     * @param fileName the name of the file, is not null.
+     * @throws IllegalArgumentException if the file can not be opened or converted.
+     */
+    AudioStreamBlocks(String fileName) {
+        this.fileName = fileName;
+        try {
+            AudioInputStream from = AudioSystem.getAudioInputStream(new File(fileName));
+            AudioFormat fromFormat = from.getFormat();
+            float rate = fromFormat.getSampleRate();
+            this.sampleRate = rate > 0 ? Math.round(rate) : Audio.SAMPLE_RATE;
+            AudioFormat toFormat = new AudioFormat(sampleRate, 16, 1, true, false);
+            if (!AudioSystem.isConversionSupported(toFormat, fromFormat)) {
+                from.close();
+                throw new IllegalArgumentException("system cannot convert from " + fromFormat + " to " + toFormat);
+            }
+            this.stream = AudioSystem.getAudioInputStream(toFormat, from);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("could not read '" + fileName + "'", e);
+        } catch (UnsupportedAudioFileException e) {
+            throw new IllegalArgumentException("file of unsupported audio file format: '" + fileName + "'", e);
+        }
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public int read(double[] left, double[] right, int from, int length) {
+        int done = 0;
+        try {
+            while (done < length && stream != null) {
+                // AudioInputStream reads whole frames, so count is even
+                int count = stream.read(bytes, 0, Math.min(bytes.length, 2 * (length - done)));
+                if (count == -1) {
+                    stream.close();
+                    stream = null;
+                    break;
+                }
+                for (int i = 0; i < count / 2; i++) {
+                    left[from + done + i] = (short) (((bytes[2 * i + 1] & 0xFF) << 8) | (bytes[2 * i] & 0xFF)) / MAX_16_BIT;
+                }
+                System.arraycopy(left, from + done, right, from + done, count / 2);
+                done += count / 2;
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("could not read '" + fileName + "'", e);
+        }
+        return done;
+    }
+}
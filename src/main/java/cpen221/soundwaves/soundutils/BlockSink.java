@@ -0,0 +1,22 @@
+package cpen221.soundwaves.soundutils;
+
+/**
+ * <p><strong>Overview.</strong>
+ * A destination for stereo samples written one block at a time, such as a
+ * {@link WavWriter}. Streaming producers write to this interface so that
+ * their output never has to be held in memory as a whole.
+ * </p>
+ */
+@FunctionalInterface
+public interface BlockSink {
+
+    /**
+     * Appends a run of stereo samples.
+     *
+     * @param left   the left channel samples, is not null.
+     * @param right  the right channel samples, is not null.
+     * @param from   the index of the first sample to write in both channels.
+     * @param length the number of samples to write from each channel.
+     */
+    void write(double[] left, double[] right, int from, int length);
+}
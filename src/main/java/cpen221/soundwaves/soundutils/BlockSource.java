@@ -0,0 +1,71 @@
+package cpen221.soundwaves.soundutils;
+
+/**
+ * <p><strong>Overview.</strong>
+ * A source of stereo samples read in blocks of any size chosen by the
+ * reader, such as an {@link AudioFile} adapted by {@link #of(AudioFile)}.
+ * Audio files hand out samples in blocks of their own size (an MP3 frame,
+ * or a whole WAV file); a {@code BlockSource} hides those boundaries.
+ * {@link #resample(BlockSource, int)} converts a source to another sample rate.
+ * </p>
+ */
+@FunctionalInterface
+public interface BlockSource {
+
+    /**
+     * Reads the next samples of both channels.
+     *
+     * @param left   where the left channel samples go, is not null.
+     * @param right  where the right channel samples go, is not null.
+     * @param from   the index of the first sample to fill in both arrays.
+     * @param length the number of samples wanted, >= 0.
+     * @return the number of samples read, which is less than length
+     * only once the source has run out.
+     *         <p>
+     *         Modifies left and right.
+     */
+    int read(double[] left, double[] right, int from, int length);
+
+    /**
+     * Gets the sample rate of the samples this source reads.
+     *
+     * @return the number of samples per second, {@link Audio#SAMPLE_RATE} unless
+     * the source says otherwise.
+     */
+    default int getSampleRate() {
+        return Audio.SAMPLE_RATE;
+    }
+
+    /**
+     * Adapts an {@link AudioFile} to this interface. The file is read as the
+     * source is, so only the current block of the file is held in memory: an
+     * MP3 frame, or a block of a WAV or MIDI file, which is streamed from disk
+     * at its own sample rate rather than read whole.
+     *
+     * @param file a file that has not been read yet, is not null.
+     * @return a source of the samples of file.
+     * @throws IllegalArgumentException if a WAV or MIDI file can not be opened.
+     */
+    static BlockSource of(AudioFile file) {
+        if (file.isMP3()) {
+            return new AudioFileBlocks(file);
+        }
+        return new AudioStreamBlocks(file.getFileName());
+    }
+
+    /**
+     * Converts a source to another sample rate as it is read, with a
+     * {@link PolyphaseResampler} per channel, one block at a time.
+     *
+     * @param source     the source, is not null. It is read by the returned source.
+     * @param sampleRate the sample rate wanted, in Hz, > 0.
+     * @return source itself if it already has that rate, and otherwise a source
+     * of its samples at sampleRate.
+     */
+    static BlockSource resample(BlockSource source, int sampleRate) {
+        if (source.getSampleRate() == sampleRate) {
+            return source;
+        }
+        return new ResampledBlocks(source, sampleRate);
+    }
+}
@@ -0,0 +1,50 @@
+package cpen221.soundwaves.soundutils;
+
+/**
+ * The points of a decimated series, ready to be handed to a chart.
+ * The arrays are shared with the caller, not copied.
+ */
+public class DecimatedSeries {
+
+    private final double[] x;
+    private final double[] y;
+
+    // Representation Invariants:
+    //  x.length == y.length
+    //  x is non-decreasing
+
+    // Abstraction Function:
+    //  represents the polyline (x[0], y[0]), (x[1], y[1]), ..., (x[n-1], y[n-1])
+
+    /**
+     * Create a series.
+     *
+     * @param x the x values, is not null and non-decreasing.
+     * @param y the y values, is not null and as long as x.
+     */
+    public DecimatedSeries(double[] x, double[] y) {
+        this.x = x;
+        this.y = y;
+    }
+
+    /**
+     * @return the x values of the points.
+     */
+    public double[] getX() {
+        return x;
+    }
+
+    /**
+     * @return the y values of the points.
+     */
+    public double[] getY() {
+        return y;
+    }
+
+    /**
+     * @return the number of points.
+     */
+    public int size() {
+        return x.length;
+    }
+}
@@ -0,0 +1,69 @@
+package cpen221.soundwaves.soundutils;
+
+/**
+ * An estimate of the dominant frequency of a stream around a point in time,
+ * as produced by {@link SlidingDftTracker}.
+ */
+public class FrequencyEstimate {
+
+    /**
+     * Time of the centre of the analysed window, in seconds from the start of the stream.
+     */
+    private final double time;
+
+    /**
+     * Dominant frequency, in Hz.
+     */
+    private final double frequency;
+
+    /**
+     * Estimated amplitude of the dominant sinusoid.
+     */
+    private final double magnitude;
+
+    // Representation Invariants:
+    //  time >= 0, frequency >= 0, magnitude >= 0
+
+    // Abstraction Function:
+    //  represents the claim "around time seconds, the strongest component
+    //  is a sinusoid of amplitude magnitude at frequency Hz"
+
+    /**
+     * Create a new estimate.
+     *
+     * @param time      the time of the estimate, in seconds, >= 0.
+     * @param frequency the dominant frequency, in Hz, >= 0.
+     * @param magnitude the estimated amplitude, >= 0.
+     */
+    public FrequencyEstimate(double time, double frequency, double magnitude) {
+        this.time = time;
+        this.frequency = frequency;
+        this.magnitude = magnitude;
+    }
+
+    /**
+     * @return the time of the centre of the analysed window, in seconds.
+     */
+    public double getTime() {
+        return time;
+    }
+
+    /**
+     * @return the dominant frequency, in Hz.
+     */
+    public double getFrequency() {
+        return frequency;
+    }
+
+    /**
+     * @return the estimated amplitude of the dominant sinusoid.
+     */
+    public double getMagnitude() {
+        return magnitude;
+    }
+
+    @Override
+    public String toString() {
+        return "FrequencyEstimate{time=" + time + ", frequency=" + frequency + ", magnitude=" + magnitude + "}";
+    }
+}
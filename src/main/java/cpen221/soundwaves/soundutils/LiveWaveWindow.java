@@ -0,0 +1,134 @@
+package cpen221.soundwaves.soundutils;
+
+/**
+ * <p><strong>Overview.</strong>
+ * The most recent stretch of a live stream of samples, kept as a fixed number
+ * of min/max columns for charting. Samples are folded into the current column
+ * as they arrive, and every completed column replaces the oldest one in a ring
+ * buffer, so the memory used does not grow with the length of the stream.
+ * </p>
+ *
+ * <p>
+ * Every column contributes two points, its maximum at its first sample index
+ * and its minimum at its middle, as in {@link MinMaxPyramid#render(int, int, int)}.
+ * Before enough samples have arrived the window is padded with silence at
+ * negative sample indices, so the number of points is always {@link #size()}.
+ * </p>
+ *
+ * <p>
+ * Samples may be appended on one thread while another copies the window out;
+ * both operations lock this window for the duration of a single call.
+ * </p>
+ */
+public class LiveWaveWindow {
+
+    private final int samplesPerColumn;
+    private final double[] x;
+    private final double[] y;
+
+    /**
+     * Index in x and y of the oldest point.
+     */
+    private int oldest = 0;
+
+    private long nextSample = 0;
+    private int columnFill = 0;
+    private double columnMin;
+    private double columnMax;
+
+    // Representation Invariants:
+    //  samplesPerColumn > 0
+    //  x.length == y.length, x.length is even and > 0, and oldest is even and in [0, x.length)
+    //  reading x from oldest around the ring gives increasing sample indices
+    //  0 <= columnFill < samplesPerColumn; columnMin and columnMax are the extremes of the
+    //  columnFill samples ending at nextSample - 1 when columnFill > 0
+
+    // Abstraction Function:
+    //  represents the last x.length / 2 completed columns of samplesPerColumn samples of a stream
+    //  of nextSample samples, as the points (x[i], y[i]) read in ring order from oldest.
+
+    /**
+     * Create a window padded with silence.
+     *
+     * @param windowSamples the number of samples in the window, > 0.
+     * @param columns       the number of columns the window is split into, > 0.
+     */
+    public LiveWaveWindow(int windowSamples, int columns) {
+        if (windowSamples <= 0 || columns <= 0) {
+            throw new IllegalArgumentException("windowSamples and columns must be positive");
+        }
+        this.samplesPerColumn = Math.max(1, windowSamples / columns);
+        this.x = new double[2 * columns];
+        this.y = new double[2 * columns];
+        for (int c = 0; c < columns; c++) {
+            long start = (long) (c - columns) * samplesPerColumn;
+            x[2 * c] = start;
+            x[2 * c + 1] = start + samplesPerColumn / 2;
+        }
+    }
+
+    /**
+     * Appends samples to the stream.
+     *
+     * @param samples the new samples, is not null.
+     *                <p>
+     *                Modifies this.
+     */
+    public synchronized void append(double[] samples) {
+        for (double sample : samples) {
+            if (columnFill == 0) {
+                columnMin = sample;
+                columnMax = sample;
+            } else {
+                columnMin = Math.min(columnMin, sample);
+                columnMax = Math.max(columnMax, sample);
+            }
+            columnFill++;
+            nextSample++;
+
+            if (columnFill == samplesPerColumn) {
+                long start = nextSample - samplesPerColumn;
+                x[oldest] = start;
+                y[oldest] = columnMax;
+                x[oldest + 1] = start + samplesPerColumn / 2;
+                y[oldest + 1] = columnMin;
+                oldest = (oldest + 2) % x.length;
+                columnFill = 0;
+            }
+        }
+    }
+
+    /**
+     * Copies the points of the window, oldest first, into preallocated arrays.
+     *
+     * @param destX receives the x values (sample indices), has room for {@link #size()} values.
+     * @param destY receives the y values, has room for {@link #size()} values.
+     *              <p>
+     *              Modifies destX and destY.
+     */
+    public synchronized void copyTo(double[] destX, double[] destY) {
+        int first = x.length - oldest;
+        System.arraycopy(x, oldest, destX, 0, first);
+        System.arraycopy(x, 0, destX, first, oldest);
+        System.arraycopy(y, oldest, destY, 0, first);
+        System.arraycopy(y, 0, destY, first, oldest);
+    }
+
+    /**
+     * Gets the number of points in the window.
+     *
+     * @return twice the number of columns.
+     */
+    public int size() {
+        return x.length;
+    }
+
+    /**
+     * Gets the number of samples appended so far.
+     *
+     * @return the length of the stream.
+     */
+    public synchronized long getSampleCount() {
+        return nextSample;
+    }
+}
@@ -0,0 +1,204 @@
+package cpen221.soundwaves.soundutils;
+
+import javazoom.jl.decoder.Bitstream;
+import javazoom.jl.decoder.BitstreamException;
+import javazoom.jl.decoder.Decoder;
+import javazoom.jl.decoder.Header;
+import javazoom.jl.decoder.JavaLayerException;
+import javazoom.jl.decoder.SampleBuffer;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+
+/**
+ * <p><strong>Overview.</strong>
+ * Decodes an MP3 stream frame by frame. Unlike {@code MP3Player}, which keeps a
+ * single global player, every {@code MP3Decoder} owns its own JLayer
+ * {@link Bitstream} and {@link Decoder}, so several files can be decoded at the
+ * same time on different threads. A single instance is not thread safe.
+ * </p>
+ *
+ * <p>
+ * Samples are returned as doubles between -1.0 and +1.0, scaled the same way
+ * as {@code MP3Player} does. Mono streams report the same samples for both
+ * channels.
+ * </p>
+ *
+ * <p>
+ * The main methods are:
+ * <ul>
+ *     <li>{@link #hasNextFrame()};</li>
+ *     <li>{@link #decodeNextFrame()}; and</li>
+ *     <li>{@link #getLeftChannel()} and {@link #getRightChannel()}, which return
+ *     the samples of the current frame.</li>
+ * </ul>
+ * </p>
+ */
+public class MP3Decoder implements AutoCloseable {
+
+    private static final double MAX_16_BIT = 32768.0;
+
+    private final String name;
+    private final Bitstream bitstream;
+    private final Decoder decoder;
+
+    private double[] leftChannel = new double[0];
+    private double[] rightChannel = new double[0];
+    private double[] nextLeft;
+    private double[] nextRight;
+    private int sampleRate;
+    private int channelCount;
+
+    // Representation Invariants:
+    //  nextLeft and nextRight are both null (end of stream) or both hold the frame after the current one
+    //  leftChannel and rightChannel have the same length
+
+    // Abstraction Function:
+    //  represents the position of a reader in an MP3 stream: leftChannel and rightChannel are the
+    //  samples of the current frame, and nextLeft/nextRight are the samples of the frame after it.
+
+    /**
+     * Opens an MP3 file for decoding.
+     *
+     * @param fileName the name of the MP3 file, is not null.
+     * @throws IllegalArgumentException if the file can not be opened or decoded.
+     */
+    public MP3Decoder(String fileName) {
+        this(open(fileName), fileName);
+    }
+
+    /**
+     * Decodes an MP3 stream.
+     *
+     * @param in   the MP3 data, is not null. It is closed by {@link #close()}.
+     * @param name a name for the stream, used in error messages.
+     * @throws IllegalArgumentException if the stream can not be decoded.
+     */
+    public MP3Decoder(InputStream in, String name) {
+        this.name = name;
+        this.bitstream = new Bitstream(in);
+        this.decoder = new Decoder();
+        readAhead();
+    }
+
+    /**
+     * Checks whether another frame can be decoded.
+     *
+     * @return true if {@link #decodeNextFrame()} will succeed and false at the end of the stream.
+     */
+    public boolean hasNextFrame() {
+        return nextLeft != null;
+    }
+
+    /**
+     * Moves to the next frame of the stream.
+     *
+     * @return true if a frame was decoded and false at the end of the stream.
+     * @throws IllegalArgumentException if the stream is corrupt.
+     */
+    public boolean decodeNextFrame() {
+        if (nextLeft == null) {
+            return false;
+        }
+        leftChannel = nextLeft;
+        rightChannel = nextRight;
+        readAhead();
+        return true;
+    }
+
+    /**
+     * Gets the left channel samples of the current frame.
+     * The returned array is not used by this decoder again.
+     *
+     * @return the left samples of the current frame, empty before the first frame.
+     */
+    public double[] getLeftChannel() {
+        return leftChannel;
+    }
+
+    /**
+     * Gets the right channel samples of the current frame.
+     * The returned array is not used by this decoder again.
+     *
+     * @return the right samples of the current frame, empty before the first frame.
+     */
+    public double[] getRightChannel() {
+        return rightChannel;
+    }
+
+    /**
+     * Gets the sample rate of the stream.
+     *
+     * @return the sample rate in Hz, or 0 if the stream has no frames.
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Gets the number of channels encoded in the stream.
+     *
+     * @return 1 for mono, 2 for stereo, or 0 if the stream has no frames.
+     */
+    public int getChannelCount() {
+        return channelCount;
+    }
+
+    /**
+     * Closes the underlying stream.
+     */
+    @Override
+    public void close() {
+        try {
+            bitstream.close();
+        } catch (BitstreamException e) {
+            // nothing more can be read either way
+        }
+    }
+
+
+    //HELPER FUNCTIONS:
+
+    private static InputStream open(String fileName) {
+        try {
+            return new BufferedInputStream(new FileInputStream(fileName));
+        } catch (FileNotFoundException e) {
+            throw new IllegalArgumentException("could not read '" + fileName + "'", e);
+        }
+    }
+
+    /**
+     * Decodes the frame after the current one into nextLeft and nextRight,
+     * or sets both to null at the end of the stream.
+     *
+     * @throws IllegalArgumentException if the stream is corrupt.
+     */
+    private void readAhead() {
+        try {
+            Header header = bitstream.readFrame();
+            if (header == null) {
+                nextLeft = null;
+                nextRight = null;
+                return;
+            }
+            SampleBuffer output = (SampleBuffer) decoder.decodeFrame(header, bitstream);
+            bitstream.closeFrame();
+
+            channelCount = output.getChannelCount();
+            sampleRate = output.getSampleFrequency();
+            short[] buffer = output.getBuffer();
+            int frames = output.getBufferLength() / channelCount;
+
+            nextLeft = new double[frames];
+            nextRight = new double[frames];
+            for (int i = 0; i < frames; i++) {
+                nextLeft[i] = buffer[i * channelCount] / MAX_16_BIT;
+                nextRight[i] = buffer[i * channelCount + channelCount - 1] / MAX_16_BIT;
+            }
+        } catch (JavaLayerException e) {
+            throw new IllegalArgumentException("could not decode '" + name + "'", e);
+        }
+    }
+}
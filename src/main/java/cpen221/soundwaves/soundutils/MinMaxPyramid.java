@@ -0,0 +1,221 @@
+package cpen221.soundwaves.soundutils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p><strong>Overview.</strong>
+ * A multi-resolution summary of a series of samples for drawing it at any zoom
+ * level. Level 0 holds the minimum and maximum of every block of
+ * {@link #BASE_BLOCK} samples, and every further level summarizes
+ * {@link #FANOUT} blocks of the level below. Building the pyramid reads every
+ * sample once and it takes about 1/24 of the memory of the samples.
+ * </p>
+ *
+ * <p>
+ * {@link #render(int, int, int)} produces a min/max envelope of any range with
+ * a fixed number of columns. The extremes of a column are combined from the
+ * coarsest blocks that fit inside it, so the cost of rendering depends on the
+ * number of columns, not on the number of samples in the range. This makes
+ * zooming and panning over very long waves cheap.
+ * </p>
+ */
+public class MinMaxPyramid {
+
+    /**
+     * Number of samples summarized by a block of level 0.
+     */
+    public static final int BASE_BLOCK = 64;
+
+    /**
+     * Number of blocks of a level summarized by one block of the next level.
+     */
+    public static final int FANOUT = 4;
+
+    private final double[] samples;
+
+    /**
+     * mins.get(k) and maxes.get(k) summarize blocks of BASE_BLOCK * FANOUT^k samples.
+     */
+    private final List<double[]> mins = new ArrayList<>();
+    private final List<double[]> maxes = new ArrayList<>();
+
+    // Representation Invariants:
+    //  mins.size() == maxes.size() and mins.get(k).length == maxes.get(k).length
+    //  mins.get(k)[j] is the minimum of the samples in block j of level k
+    //  (a partial block at the end summarizes the samples it has), and similarly for maxes
+    //  the last level, if any, has a single block
+    //  the samples are not modified after the pyramid is built
+
+    // Abstraction Function:
+    //  represents the series `samples` together with min/max summaries of
+    //  aligned blocks of BASE_BLOCK * FANOUT^k samples, for k >= 0
+
+    /**
+     * Builds the pyramid of a series. The samples are not copied
+     * and must not be modified while the pyramid is in use.
+     *
+     * @param samples the series to summarize, is not null.
+     */
+    public MinMaxPyramid(double[] samples) {
+        this.samples = samples;
+
+        int blocks = (samples.length + BASE_BLOCK - 1) / BASE_BLOCK;
+        if (blocks == 0) {
+            return;
+        }
+        double[] min = new double[blocks];
+        double[] max = new double[blocks];
+        for (int j = 0; j < blocks; j++) {
+            int from = j * BASE_BLOCK;
+            int to = Math.min(samples.length, from + BASE_BLOCK);
+            double lo = samples[from];
+            double hi = samples[from];
+            for (int i = from + 1; i < to; i++) {
+                lo = Math.min(lo, samples[i]);
+                hi = Math.max(hi, samples[i]);
+            }
+            min[j] = lo;
+            max[j] = hi;
+        }
+        mins.add(min);
+        maxes.add(max);
+
+        while (min.length > 1) {
+            int parents = (min.length + FANOUT - 1) / FANOUT;
+            double[] parentMin = new double[parents];
+            double[] parentMax = new double[parents];
+            for (int p = 0; p < parents; p++) {
+                int from = p * FANOUT;
+                int to = Math.min(min.length, from + FANOUT);
+                double lo = min[from];
+                double hi = max[from];
+                for (int c = from + 1; c < to; c++) {
+                    lo = Math.min(lo, min[c]);
+                    hi = Math.max(hi, max[c]);
+                }
+                parentMin[p] = lo;
+                parentMax[p] = hi;
+            }
+            min = parentMin;
+            max = parentMax;
+            mins.add(min);
+            maxes.add(max);
+        }
+    }
+
+    /**
+     * Gets the number of samples summarized.
+     *
+     * @return the length of the series.
+     */
+    public int length() {
+        return samples.length;
+    }
+
+    /**
+     * Finds the smallest and the largest sample in a range.
+     *
+     * @param from the first sample of the range, >= 0.
+     * @param to   one past the last sample of the range, from < to <= length().
+     * @return {minimum, maximum} of the samples in [from, to).
+     */
+    public double[] minMax(int from, int to) {
+        double[] extremes = {Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        accumulate(from, to, extremes);
+        return extremes;
+    }
+
+    /**
+     * Renders a range as a min/max envelope. Each column contributes its
+     * maximum at its first x value and its minimum at its middle, or the
+     * samples themselves when the range has at most two samples per column.
+     *
+     * @param from    the first sample of the range, >= 0.
+     * @param to      one past the last sample of the range, from <= to <= length().
+     * @param columns the number of columns (typically the width of the chart in pixels), > 0.
+     * @return at most 2 * columns points, with sample indices as x values.
+     */
+    public DecimatedSeries render(int from, int to, int columns) {
+        int span = to - from;
+        if (span <= 2 * columns) {
+            double[] y = new double[span];
+            System.arraycopy(samples, from, y, 0, span);
+            return new DecimatedSeries(WaveDecimator.sampleIndices(from, span), y);
+        }
+
+        double[] x = new double[2 * columns];
+        double[] y = new double[2 * columns];
+        double[] extremes = new double[2];
+        for (int c = 0; c < columns; c++) {
+            int start = from + (int) ((long) c * span / columns);
+            int end = from + (int) ((long) (c + 1) * span / columns);
+            extremes[0] = Double.POSITIVE_INFINITY;
+            extremes[1] = Double.NEGATIVE_INFINITY;
+            accumulate(start, end, extremes);
+            x[2 * c] = start;
+            y[2 * c] = extremes[1];
+            x[2 * c + 1] = start + (end - start) / 2;
+            y[2 * c + 1] = extremes[0];
+        }
+        return new DecimatedSeries(x, y);
+    }
+
+
+    //HELPER FUNCTIONS:
+
+    /**
+     * Folds the extremes of [from, to) into extremes, reading raw samples only
+     * at the unaligned ends and the coarsest whole blocks in between.
+     *
+     * @param from     the first sample of the range.
+     * @param to       one past the last sample of the range.
+     * @param extremes {minimum, maximum} so far, is not null.
+     *                 <p>
+     *                 Modifies extremes.
+     */
+    private void accumulate(int from, int to, double[] extremes) {
+        int lo = from;
+        int hi = to;
+
+        // raw samples up to the first and after the last block boundary
+        while (lo < hi && lo % BASE_BLOCK != 0) {
+            include(extremes, samples[lo], samples[lo]);
+            lo++;
+        }
+        while (hi > lo && hi % BASE_BLOCK != 0 && hi != samples.length) {
+            hi--;
+            include(extremes, samples[hi], samples[hi]);
+        }
+        if (lo >= hi) {
+            return;
+        }
+
+        // whole blocks, climbing a level whenever both ends are aligned to a parent
+        int blockLo = lo / BASE_BLOCK;
+        int blockHi = (hi + BASE_BLOCK - 1) / BASE_BLOCK;
+        for (int level = 0; level < mins.size(); level++) {
+            double[] min = mins.get(level);
+            double[] max = maxes.get(level);
+            boolean top = level == mins.size() - 1;
+            while (blockLo < blockHi && (top || blockLo % FANOUT != 0)) {
+                include(extremes, min[blockLo], max[blockLo]);
+                blockLo++;
+            }
+            while (blockLo < blockHi && blockHi % FANOUT != 0 && blockHi != min.length) {
+                blockHi--;
+                include(extremes, min[blockHi], max[blockHi]);
+            }
+            if (blockLo >= blockHi) {
+                return;
+            }
+            blockLo /= FANOUT;
+            blockHi = (blockHi + FANOUT - 1) / FANOUT;
+        }
+    }
+
+    private static void include(double[] extremes, double min, double max) {
+        extremes[0] = Math.min(extremes[0], min);
+        extremes[1] = Math.max(extremes[1], max);
+    }
+}
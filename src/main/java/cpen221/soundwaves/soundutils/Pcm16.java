@@ -0,0 +1,84 @@
+package cpen221.soundwaves.soundutils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Bulk conversion between samples in [-1.0, +1.0] and 16-bit, signed,
+ * little endian PCM. Values outside the range are clipped, and +1.0 maps to
+ * {@link Short#MAX_VALUE} since 32768 is not a short, exactly as in
+ * {@link Audio#play(double)}. The loops are branch-light and array-based so
+ * the JIT can vectorize them.
+ */
+final class Pcm16 {
+
+    static final int MAX_16_BIT = 32768;
+    static final int BYTES_PER_SAMPLE = 2;
+
+    private Pcm16() {
+        // can not instantiate
+    }
+
+    /**
+     * Converts samples to PCM bytes.
+     *
+     * @param src    the samples, is not null.
+     * @param srcPos the first sample to convert.
+     * @param dst    the destination, has room for 2 * length bytes from dstPos.
+     * @param dstPos the first byte to write.
+     * @param length the number of samples to convert.
+     *               <p>
+     *               Modifies dst.
+     */
+    static void encode(double[] src, int srcPos, byte[] dst, int dstPos, int length) {
+        for (int i = 0; i < length; i++) {
+            int s = toShort(src[srcPos + i]);
+            dst[dstPos + 2 * i] = (byte) s;
+            dst[dstPos + 2 * i + 1] = (byte) (s >> 8);
+        }
+    }
+
+    /**
+     * Converts stereo samples to interleaved PCM frames.
+     *
+     * @param left   the left channel samples, is not null.
+     * @param right  the right channel samples, is not null.
+     * @param srcPos the first sample to convert in both channels.
+     * @param dst    a little endian buffer with room for 4 * length bytes.
+     * @param length the number of frames to convert.
+     *               <p>
+     *               Modifies dst.
+     */
+    static void encodeStereo(double[] left, double[] right, int srcPos, ByteBuffer dst, int length) {
+        for (int i = srcPos; i < srcPos + length; i++) {
+            dst.putShort((short) toShort(left[i]));
+            dst.putShort((short) toShort(right[i]));
+        }
+    }
+
+    /**
+     * Checks a run of samples for NaN.
+     *
+     * @param samples the samples, is not null.
+     * @param from    the first sample to check.
+     * @param length  the number of samples to check.
+     * @throws IllegalArgumentException if any sample is {@code Double.NaN}
+     */
+    static void requireNoNaN(double[] samples, int from, int length) {
+        for (int i = from; i < from + length; i++) {
+            if (Double.isNaN(samples[i])) {
+                throw new IllegalArgumentException("sample is NaN");
+            }
+        }
+    }
+
+    /**
+     * Clips and scales one sample.
+     *
+     * @param sample the sample.
+     * @return the sample as a 16-bit value.
+     */
+    static int toShort(double sample) {
+        double clipped = Math.max(-1.0, Math.min(1.0, sample));
+        return Math.min(Short.MAX_VALUE, (int) (clipped * MAX_16_BIT));
+    }
+}
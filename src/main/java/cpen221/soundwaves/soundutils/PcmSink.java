@@ -0,0 +1,62 @@
+package cpen221.soundwaves.soundutils;
+
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * <p><strong>Overview.</strong>
+ * A destination for 16-bit, little endian, signed PCM bytes, such as a
+ * sound card line. {@link PlaybackPipeline} writes to this interface rather
+ * than to a {@link SourceDataLine} directly so that it can be exercised with
+ * a fake line in tests.
+ * </p>
+ */
+public interface PcmSink extends AutoCloseable {
+
+    /**
+     * Writes PCM bytes, blocking until the sink has accepted all of them.
+     *
+     * @param data   the bytes to write, is not null.
+     * @param offset the index of the first byte to write.
+     * @param length the number of bytes to write, a multiple of the frame size.
+     */
+    void write(byte[] data, int offset, int length);
+
+    /**
+     * Blocks until every byte written so far has been played.
+     */
+    void drain();
+
+    /**
+     * Releases the sink.
+     */
+    @Override
+    void close();
+
+    /**
+     * Adapts a {@link SourceDataLine} to this interface.
+     *
+     * @param line an open line, is not null.
+     * @return a sink writing to line.
+     */
+    static PcmSink of(SourceDataLine line) {
+        return new PcmSink() {
+            @Override
+            public void write(byte[] data, int offset, int length) {
+                int written = 0;
+                while (written < length) {
+                    written += line.write(data, offset + written, length - written);
+                }
+            }
+
+            @Override
+            public void drain() {
+                line.drain();
+            }
+
+            @Override
+            public void close() {
+                line.close();
+            }
+        };
+    }
+}
@@ -0,0 +1,239 @@
+package cpen221.soundwaves.soundutils;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p><strong>Overview.</strong>
+ * Plays mono samples (between -1.0 and +1.0, at {@link Audio#SAMPLE_RATE} Hz)
+ * without blocking the caller. Callers enqueue whole blocks into a
+ * single-producer/single-consumer lock-free ring buffer, and a dedicated writer
+ * thread converts them to 16-bit PCM in bulk and feeds a {@link PcmSink}.
+ * </p>
+ *
+ * <p>
+ * Only one thread may enqueue samples. If the ring buffer is full, the samples
+ * that do not fit are rejected rather than waited for; the caller can retry
+ * them. Counters for enqueued, rejected and written samples, underruns and the
+ * current queueing latency are available at any time.
+ * </p>
+ *
+ * <p>
+ * Unlike {@link Audio#play(double[])}, samples played through a pipeline are
+ * not captured by {@link Audio#startRecording()}.
+ * </p>
+ */
+public class PlaybackPipeline implements AutoCloseable {
+
+    /**
+     * Number of samples converted and written to the sink at a time.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 1024;
+
+    /**
+     * How long the writer sleeps when there is nothing to play.
+     */
+    private static final long IDLE_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final PcmSink sink;
+    private final SampleRingBuffer ring;
+    private final Thread writer;
+    private final int blockSize;
+
+    private volatile boolean running = true;
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong underruns = new AtomicLong();
+
+    // Representation Invariants:
+    //  blockSize > 0
+    //  enqueued - written == ring.size() (up to the block currently being written)
+    //  only the writer thread polls ring
+
+    // Abstraction Function:
+    //  represents a stream of samples being played: `written` samples have been handed to
+    //  the sink and the samples in `ring` are waiting to be played, in order.
+
+    /**
+     * Create a pipeline writing to a sink and start its writer thread.
+     *
+     * @param sink      the destination of the PCM bytes, is not null.
+     * @param capacity  the number of samples that can be queued, > 0.
+     * @param blockSize the number of samples written to the sink at a time, > 0.
+     */
+    public PlaybackPipeline(PcmSink sink, int capacity, int blockSize) {
+        if (capacity <= 0 || blockSize <= 0) {
+            throw new IllegalArgumentException("capacity and blockSize must be positive");
+        }
+        this.sink = sink;
+        this.ring = new SampleRingBuffer(capacity);
+        this.blockSize = blockSize;
+        this.writer = new Thread(this::writeLoop, "playback-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Create a pipeline that plays through the sound card, using a
+     * 44,100 Hz, 16-bit, mono, signed PCM, little endian line.
+     *
+     * @param capacity the number of samples that can be queued, > 0.
+     * @return a started pipeline.
+     * @throws IllegalStateException if no audio line is available.
+     */
+    public static PlaybackPipeline open(int capacity) {
+        try {
+            AudioFormat format = new AudioFormat((float) Audio.SAMPLE_RATE, 16, 1, true, false);
+            SourceDataLine line = (SourceDataLine) AudioSystem.getLine(new DataLine.Info(SourceDataLine.class, format));
+            line.open(format, DEFAULT_BLOCK_SIZE * 4 * Pcm16.BYTES_PER_SAMPLE);
+            line.start();
+            return new PlaybackPipeline(PcmSink.of(line), capacity, DEFAULT_BLOCK_SIZE);
+        } catch (LineUnavailableException e) {
+            throw new IllegalStateException("no audio line is available", e);
+        }
+    }
+
+    /**
+     * Queues samples for playback without blocking.
+     *
+     * @param samples the samples to play, is not null.
+     * @return the number of samples queued; the rest did not fit and were rejected.
+     * @throws IllegalArgumentException if any sample is {@code Double.NaN}
+     */
+    public int enqueue(double[] samples) {
+        return enqueue(samples, 0, samples.length);
+    }
+
+    /**
+     * Queues a run of samples for playback without blocking.
+     *
+     * @param samples the samples to play, is not null.
+     * @param from    the index of the first sample to queue.
+     * @param length  the number of samples to queue.
+     * @return the number of samples queued; the rest did not fit and were rejected.
+     * @throws IllegalArgumentException if any sample is {@code Double.NaN}
+     * @throws IllegalStateException if the pipeline has been closed.
+     */
+    public int enqueue(double[] samples, int from, int length) {
+        if (!running) {
+            throw new IllegalStateException("pipeline is closed");
+        }
+        Pcm16.requireNoNaN(samples, from, length);
+        int accepted = ring.offer(samples, from, length);
+        enqueued.addAndGet(accepted);
+        rejected.addAndGet(length - accepted);
+        LockSupport.unpark(writer);
+        return accepted;
+    }
+
+    /**
+     * Blocks until every queued sample has been written and played.
+     */
+    public void drain() {
+        while (running && (ring.size() > 0 || written.get() < enqueued.get())) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(IDLE_WAIT_NANOS);
+        }
+        sink.drain();
+    }
+
+    /**
+     * Stops the writer thread, discarding queued samples, and closes the sink.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        sink.close();
+    }
+
+    /**
+     * @return the number of samples accepted by {@link #enqueue(double[], int, int)}.
+     */
+    public long getEnqueuedSampleCount() {
+        return enqueued.get();
+    }
+
+    /**
+     * @return the number of samples rejected because the queue was full.
+     */
+    public long getRejectedSampleCount() {
+        return rejected.get();
+    }
+
+    /**
+     * @return the number of samples handed to the sink.
+     */
+    public long getWrittenSampleCount() {
+        return written.get();
+    }
+
+    /**
+     * Gets the number of underruns: the times the writer ran out of samples
+     * after having played some, that is, the times playback starved. The end
+     * of a stream that is not followed by more samples counts as one underrun.
+     *
+     * @return the number of underruns so far.
+     */
+    public long getUnderrunCount() {
+        return underruns.get();
+    }
+
+    /**
+     * @return the number of samples waiting to be written.
+     */
+    public int getQueuedSampleCount() {
+        return ring.size();
+    }
+
+    /**
+     * Gets the time a newly enqueued sample waits before it is written to the sink.
+     *
+     * @return the current queueing latency, in seconds.
+     */
+    public double getLatencySeconds() {
+        return ring.size() / (double) Audio.SAMPLE_RATE;
+    }
+
+
+    //HELPER FUNCTIONS:
+
+    /**
+     * Body of the writer thread: moves blocks from the ring buffer to the sink.
+     */
+    private void writeLoop() {
+        double[] block = new double[blockSize];
+        byte[] bytes = new byte[blockSize * Pcm16.BYTES_PER_SAMPLE];
+        boolean playing = false;
+
+        while (running) {
+            int count = ring.poll(block, 0, blockSize);
+            if (count == 0) {
+                if (playing) {
+                    underruns.incrementAndGet();
+                    playing = false;
+                }
+                LockSupport.parkNanos(IDLE_WAIT_NANOS);
+                continue;
+            }
+            playing = true;
+            Pcm16.encode(block, 0, bytes, 0, count);
+            sink.write(bytes, 0, count * Pcm16.BYTES_PER_SAMPLE);
+            written.addAndGet(count);
+        }
+    }
+}
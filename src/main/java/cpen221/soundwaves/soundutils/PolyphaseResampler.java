@@ -0,0 +1,247 @@
+package cpen221.soundwaves.soundutils;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p><strong>Overview.</strong>
+ * Converts a stream of samples from one sample rate to another with a
+ * polyphase FIR filter. The rate ratio is reduced to L/M (for example
+ * 44,100/48,000 = 147/160), the input is conceptually upsampled by L,
+ * low-pass filtered and downsampled by M, but only the L filter phases that
+ * are actually needed are ever evaluated.
+ * </p>
+ *
+ * <p>
+ * The filter bank of a ratio is designed once (a Blackman-windowed sinc, with
+ * its cutoff below the lower of the two Nyquist frequencies) and shared by
+ * every resampler with that ratio. A resampler is fed in blocks of any size
+ * with {@link #process(double[], int, int)} and finished with {@link #flush()},
+ * so streams of any length can be converted in constant memory. The filter is
+ * centred, so the output is not delayed: output sample k corresponds to time
+ * k / toRate of the input. A single instance is not thread safe.
+ * </p>
+ */
+public class PolyphaseResampler {
+
+    /**
+     * Number of zero crossings of the sinc on each side of its centre, at the output cutoff.
+     */
+    private static final int ZERO_CROSSINGS = 16;
+
+    /**
+     * Fraction of the lower Nyquist frequency kept, leaving room for the transition band.
+     */
+    private static final double ROLLOFF = 0.95;
+
+    /**
+     * Filter banks shared by all resamplers, keyed by (L << 32) | M.
+     */
+    private static final Map<Long, double[][]> BANKS = new ConcurrentHashMap<>();
+
+    private final int upFactor;
+    private final int downFactor;
+    private final double[][] bank;
+    private final int halfTaps;
+
+    /**
+     * Input samples not yet consumed; history[0] is input sample historyStart.
+     */
+    private double[] history = new double[0];
+    private int historyLength = 0;
+    private long historyStart;
+
+    private long inputCount = 0;
+    private long outputCount = 0;
+    private boolean flushed = false;
+
+    // Representation Invariants:
+    //  upFactor > 0, downFactor > 0 and gcd(upFactor, downFactor) == 1
+    //  bank.length == upFactor and every bank[phase].length == 2 * halfTaps
+    //  historyStart + historyLength == inputCount
+    //  history holds every input sample from historyStart that output sample outputCount may need
+
+    // Abstraction Function:
+    //  represents the conversion of a stream of inputCount samples at fromRate Hz, of which
+    //  the first outputCount samples at toRate = fromRate * upFactor / downFactor Hz have been produced.
+
+    /**
+     * Create a resampler.
+     *
+     * @param fromRate the sample rate of the input, in Hz, > 0.
+     * @param toRate   the sample rate of the output, in Hz, > 0.
+     */
+    public PolyphaseResampler(int fromRate, int toRate) {
+        if (fromRate <= 0 || toRate <= 0) {
+            throw new IllegalArgumentException("sample rates must be positive");
+        }
+        int gcd = gcd(fromRate, toRate);
+        this.upFactor = toRate / gcd;
+        this.downFactor = fromRate / gcd;
+        this.bank = BANKS.computeIfAbsent(((long) upFactor << 32) | downFactor,
+            key -> designBank(upFactor, downFactor));
+        this.halfTaps = bank[0].length / 2;
+        this.historyStart = 0;
+    }
+
+    /**
+     * Converts a whole signal.
+     *
+     * @param samples  the input, is not null.
+     * @param fromRate the sample rate of the input, in Hz, > 0.
+     * @param toRate   the sample rate of the output, in Hz, > 0.
+     * @return the signal at toRate, with {@link #outputLength(long, int, int)} samples.
+     */
+    public static double[] resample(double[] samples, int fromRate, int toRate) {
+        if (fromRate == toRate) {
+            return samples.clone();
+        }
+        PolyphaseResampler resampler = new PolyphaseResampler(fromRate, toRate);
+        double[] head = resampler.process(samples, 0, samples.length);
+        double[] tail = resampler.flush();
+        double[] all = Arrays.copyOf(head, head.length + tail.length);
+        System.arraycopy(tail, 0, all, head.length, tail.length);
+        return all;
+    }
+
+    /**
+     * Gets the number of output samples for an input of a given length.
+     *
+     * @param inputLength the number of input samples, >= 0.
+     * @param fromRate    the sample rate of the input, in Hz, > 0.
+     * @param toRate      the sample rate of the output, in Hz, > 0.
+     * @return ceil(inputLength * toRate / fromRate).
+     */
+    public static long outputLength(long inputLength, int fromRate, int toRate) {
+        int gcd = gcd(fromRate, toRate);
+        long up = toRate / gcd;
+        long down = fromRate / gcd;
+        return (inputLength * up + down - 1) / down;
+    }
+
+    /**
+     * Feeds a block of input and returns every output sample that can be
+     * computed from the input seen so far.
+     *
+     * @param samples the input, is not null.
+     * @param from    the index of the first input sample.
+     * @param length  the number of input samples.
+     * @return the next output samples, possibly none.
+     * @throws IllegalStateException if the resampler has been flushed.
+     */
+    public double[] process(double[] samples, int from, int length) {
+        if (flushed) {
+            throw new IllegalStateException("resampler has been flushed");
+        }
+        if (historyLength + length > history.length) {
+            history = Arrays.copyOf(history, Math.max(historyLength + length, 2 * history.length));
+        }
+        System.arraycopy(samples, from, history, historyLength, length);
+        historyLength += length;
+        inputCount += length;
+
+        // output k needs the input up to floor(k * M / L) + halfTaps
+        long available = Math.max(0, inputCount - halfTaps);
+        return produce(outputLength(available, downFactor, upFactor));
+    }
+
+    /**
+     * Ends the stream, treating the input after its end as silence.
+     *
+     * @return the remaining output samples.
+     */
+    public double[] flush() {
+        flushed = true;
+        return produce(outputLength(inputCount, downFactor, upFactor));
+    }
+
+
+    //HELPER FUNCTIONS:
+
+    /**
+     * Computes output samples up to, but not including, output sample end.
+     *
+     * @param end the number of output samples that will have been produced.
+     * @return the new output samples.
+     */
+    private double[] produce(long end) {
+        int count = (int) Math.max(0, end - outputCount);
+        double[] out = new double[count];
+        for (int i = 0; i < count; i++) {
+            long position = outputCount * downFactor;
+            long center = position / upFactor;
+            double[] taps = bank[(int) (position % upFactor)];
+
+            long first = center - halfTaps + 1;
+            double sum = 0.0;
+            for (int j = 0; j < taps.length; j++) {
+                long index = first + j - historyStart;
+                if (index >= 0 && index < historyLength) {
+                    sum += taps[j] * history[(int) index];
+                }
+            }
+            out[i] = sum;
+            outputCount++;
+        }
+
+        // drop input that no future output can reach
+        long needed = Math.max(historyStart, (outputCount * downFactor) / upFactor - halfTaps + 1);
+        int drop = (int) Math.min(historyLength, needed - historyStart);
+        if (drop > 0) {
+            System.arraycopy(history, drop, history, 0, historyLength - drop);
+            historyLength -= drop;
+            historyStart += drop;
+        }
+        return out;
+    }
+
+    /**
+     * Designs the polyphase bank of a windowed-sinc low-pass filter.
+     *
+     * @param up   the upsampling factor L.
+     * @param down the downsampling factor M.
+     * @return L phases; tap j of phase p weighs the input sample
+     * j - halfTaps + 1 samples after the one just before the output instant.
+     */
+    private static double[][] designBank(int up, int down) {
+        double cutoff = ROLLOFF * Math.min(1.0, (double) up / down);
+        int halfTaps = (int) Math.ceil(ZERO_CROSSINGS / cutoff);
+        double[][] bank = new double[up][2 * halfTaps];
+
+        for (int phase = 0; phase < up; phase++) {
+            double fraction = (double) phase / up;
+            double sum = 0.0;
+            for (int j = 0; j < 2 * halfTaps; j++) {
+                double distance = j - halfTaps + 1 - fraction;
+                double tap = cutoff * sinc(cutoff * distance) * blackman(distance / halfTaps);
+                bank[phase][j] = tap;
+                sum += tap;
+            }
+            // unity gain at DC for every phase
+            for (int j = 0; j < 2 * halfTaps; j++) {
+                bank[phase][j] /= sum;
+            }
+        }
+        return bank;
+    }
+
+    private static double sinc(double x) {
+        return x == 0.0 ? 1.0 : Math.sin(Math.PI * x) / (Math.PI * x);
+    }
+
+    /**
+     * @param x the position in the window, in [-1, 1].
+     * @return the Blackman window at x, 0 outside [-1, 1].
+     */
+    private static double blackman(double x) {
+        if (Math.abs(x) >= 1.0) {
+            return 0.0;
+        }
+        return 0.42 + 0.5 * Math.cos(Math.PI * x) + 0.08 * Math.cos(2 * Math.PI * x);
+    }
+
+    private static int gcd(int a, int b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+}
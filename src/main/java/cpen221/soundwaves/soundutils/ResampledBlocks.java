@@ -0,0 +1,102 @@
+package cpen221.soundwaves.soundutils;
+
+import java.util.Arrays;
+
+/**
+ * Reads a {@link BlockSource} at another sample rate. The source is read a
+ * block at a time and each channel is converted by its own
+ * {@link PolyphaseResampler}; converted samples that do not fit the current
+ * call are kept for the next one.
+ */
+final class ResampledBlocks implements BlockSource {
+
+    /**
+     * Number of samples per channel read from the source at a time.
+     */
+    private static final int BLOCK_SIZE = 4096;
+
+    private final BlockSource source;
+    private final int sampleRate;
+    private final PolyphaseResampler leftResampler;
+    private final PolyphaseResampler rightResampler;
+    private final double[] sourceLeft = new double[BLOCK_SIZE];
+    private final double[] sourceRight = new double[BLOCK_SIZE];
+    private double[] left = new double[0];
+    private double[] right = new double[0];
+    private int position = 0;
+    private boolean drained = false;
+
+    // Representation Invariants:
+    //  sampleRate > 0, left.length == right.length, 0 <= position <= left.length
+    //  once drained, both resamplers have been flushed
+
+    // Abstraction Function:
+    //  represents the samples [position, ...) of left and right, followed by the samples
+    //  of source not read yet, converted to sampleRate Hz
+
+    /**
+     * Create a source converting another one.
+     *
+     * @param source     the source, is not null.
+     * @param sampleRate the sample rate wanted, in Hz, > 0.
+     */
+    ResampledBlocks(BlockSource source, int sampleRate) {
+        this.source = source;
+        this.sampleRate = sampleRate;
+        this.leftResampler = new PolyphaseResampler(source.getSampleRate(), sampleRate);
+        this.rightResampler = new PolyphaseResampler(source.getSampleRate(), sampleRate);
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public int read(double[] left, double[] right, int from, int length) {
+        int done = 0;
+        while (done < length) {
+            int available = this.left.length - position;
+            if (available == 0) {
+                if (drained) {
+                    break;
+                }
+                convertNext();
+                continue;
+            }
+            int count = Math.min(length - done, available);
+            System.arraycopy(this.left, position, left, from + done, count);
+            System.arraycopy(this.right, position, right, from + done, count);
+            position += count;
+            done += count;
+        }
+        return done;
+    }
+
+
+    //HELPER FUNCTIONS:
+
+    /**
+     * Reads the next block of the source and converts it, flushing the
+     * resamplers once the source runs out.
+     * <p>
+     * Modifies this.
+     */
+    private void convertNext() {
+        int count = source.read(sourceLeft, sourceRight, 0, BLOCK_SIZE);
+        left = leftResampler.process(sourceLeft, 0, count);
+        right = rightResampler.process(sourceRight, 0, count);
+        if (count < BLOCK_SIZE) {
+            left = append(left, leftResampler.flush());
+            right = append(right, rightResampler.flush());
+            drained = true;
+        }
+        position = 0;
+    }
+
+    private static double[] append(double[] head, double[] tail) {
+        double[] all = Arrays.copyOf(head, head.length + tail.length);
+        System.arraycopy(tail, 0, all, head.length, tail.length);
+        return all;
+    }
+}
@@ -0,0 +1,101 @@
+package cpen221.soundwaves.soundutils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, lock-free queue of samples for exactly one producer thread and
+ * one consumer thread. The producer only advances the tail and the consumer
+ * only advances the head, so neither ever waits for the other; a full (or empty)
+ * buffer is reported by transferring fewer samples than requested.
+ */
+final class SampleRingBuffer {
+
+    private final double[] buffer;
+    private final int mask;
+
+    /**
+     * Total number of samples ever removed; written only by the consumer.
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * Total number of samples ever added; written only by the producer.
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    // Representation Invariants:
+    //  buffer.length is a power of two and mask == buffer.length - 1
+    //  0 <= tail - head <= buffer.length
+
+    // Abstraction Function:
+    //  represents the queue buffer[head & mask], buffer[(head + 1) & mask], ..., buffer[(tail - 1) & mask]
+
+    /**
+     * Create an empty ring buffer.
+     *
+     * @param capacity the minimum number of samples the buffer can hold, > 0.
+     */
+    SampleRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        buffer = new double[size];
+        mask = buffer.length - 1;
+    }
+
+    /**
+     * Adds as many samples as fit. Producer thread only.
+     *
+     * @param src    the samples, is not null.
+     * @param from   the index of the first sample to add.
+     * @param length the number of samples to add.
+     * @return the number of samples added, in [0, length].
+     */
+    int offer(double[] src, int from, int length) {
+        long t = tail.get();
+        int count = (int) Math.min(length, buffer.length - (t - head.getAcquire()));
+        copy(src, from, t, count, true);
+        tail.setRelease(t + count);
+        return count;
+    }
+
+    /**
+     * Removes up to max samples. Consumer thread only.
+     *
+     * @param dst  the destination, is not null.
+     * @param from the first index of dst to fill.
+     * @param max  the largest number of samples to remove.
+     * @return the number of samples removed, in [0, max].
+     */
+    int poll(double[] dst, int from, int max) {
+        long h = head.get();
+        int count = (int) Math.min(max, tail.getAcquire() - h);
+        copy(dst, from, h, count, false);
+        head.setRelease(h + count);
+        return count;
+    }
+
+    /**
+     * @return the number of queued samples; exact only on the producer or consumer thread.
+     */
+    int size() {
+        return (int) (tail.getAcquire() - head.getAcquire());
+    }
+
+    /**
+     * @return the number of samples the buffer can hold.
+     */
+    int capacity() {
+        return buffer.length;
+    }
+
+    private void copy(double[] array, int from, long position, int count, boolean intoBuffer) {
+        int start = (int) (position & mask);
+        int first = Math.min(count, buffer.length - start);
+        if (intoBuffer) {
+            System.arraycopy(array, from, buffer, start, first);
+            System.arraycopy(array, from + first, buffer, 0, count - first);
+        } else {
+            System.arraycopy(buffer, start, array, from, first);
+            System.arraycopy(buffer, 0, array, from + first, count - first);
+        }
+    }
+}
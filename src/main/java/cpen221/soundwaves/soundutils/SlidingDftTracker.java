@@ -0,0 +1,210 @@
+package cpen221.soundwaves.soundutils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * <p><strong>Overview.</strong>
+ * Tracks the dominant frequency of a stream of samples over time with a
+ * sliding DFT. Only the bins of a frequency band of interest are kept, and
+ * each of them is updated in O(1) per sample from the sample entering the
+ * window and the one leaving it, so no transform is ever recomputed. Memory
+ * is one window of samples plus a few values per tracked bin.
+ * </p>
+ *
+ * <p>
+ * Every hop samples, once the first window is full, the tracked bins are
+ * Hann-windowed in the frequency domain (which needs only the two
+ * neighbouring bins), the strongest one is picked and its frequency is
+ * refined by parabolic interpolation. The recurrence is slightly damped so
+ * rounding errors fade out instead of accumulating over long streams.
+ * </p>
+ *
+ * <p>
+ * A tracker can be fed blocks of any size with {@link #process(double[])} or
+ * drain an {@link AudioFile} with {@link #track(AudioFile, Consumer)}.
+ * A single instance is not thread safe.
+ * </p>
+ */
+public class SlidingDftTracker {
+
+    /**
+     * Damping of the recurrence per sample.
+     */
+    private static final double DAMPING = 0.999999;
+
+    private final int windowSize;
+    private final int hopSize;
+    private final int sampleRate;
+    private final int firstBin;
+
+    /**
+     * The last windowSize samples, oldest at position.
+     */
+    private final double[] window;
+    private int position = 0;
+    private long samplesSeen = 0;
+
+    /**
+     * Real and imaginary parts of the tracked bins firstBin - 1 ... lastBin + 1.
+     */
+    private final double[] real;
+    private final double[] img;
+    private final double[] rotationReal;
+    private final double[] rotationImg;
+    private final double dampingOverWindow;
+
+    // Representation Invariants:
+    //  0 < hopSize, 3 <= windowSize
+    //  1 <= firstBin and firstBin + real.length - 2 <= windowSize / 2
+    //  real[b] + i img[b] is the (damped) DFT bin firstBin - 1 + b of the last windowSize samples
+
+    // Abstraction Function:
+    //  represents a tracker that has consumed samplesSeen samples at sampleRate Hz and
+    //  reports the dominant frequency every hopSize samples over windows of windowSize samples
+
+    /**
+     * Create a tracker.
+     *
+     * @param sampleRate   the sample rate of the stream, in Hz, > 0.
+     * @param windowSize   the number of samples analysed at a time, >= 4; the
+     *                     frequency resolution is sampleRate / windowSize.
+     * @param hopSize      the number of samples between estimates, > 0.
+     * @param minFrequency the lowest frequency tracked, in Hz.
+     * @param maxFrequency the highest frequency tracked, in Hz, below sampleRate / 2.
+     */
+    public SlidingDftTracker(int sampleRate, int windowSize, int hopSize, double minFrequency, double maxFrequency) {
+        if (sampleRate <= 0 || windowSize < 4 || hopSize <= 0) {
+            throw new IllegalArgumentException("need sampleRate > 0, windowSize >= 4 and hopSize > 0");
+        }
+        int first = Math.max(1, (int) Math.ceil(minFrequency * windowSize / sampleRate));
+        int last = Math.min(windowSize / 2 - 1, (int) Math.floor(maxFrequency * windowSize / sampleRate));
+        if (first > last) {
+            throw new IllegalArgumentException("no bin between " + minFrequency + " Hz and " + maxFrequency + " Hz");
+        }
+        this.sampleRate = sampleRate;
+        this.windowSize = windowSize;
+        this.hopSize = hopSize;
+        this.firstBin = first;
+        this.window = new double[windowSize];
+
+        int bins = last - first + 3;
+        this.real = new double[bins];
+        this.img = new double[bins];
+        this.rotationReal = new double[bins];
+        this.rotationImg = new double[bins];
+        for (int b = 0; b < bins; b++) {
+            double omega = 2.0 * Math.PI * (first - 1 + b) / windowSize;
+            rotationReal[b] = Math.cos(omega);
+            rotationImg[b] = Math.sin(omega);
+        }
+        this.dampingOverWindow = Math.pow(DAMPING, windowSize);
+    }
+
+    /**
+     * Consumes a block of samples.
+     *
+     * @param samples the next samples of the stream, is not null.
+     * @return the estimates that became available during the block, oldest first.
+     *         <p>
+     *         Modifies this.
+     */
+    public List<FrequencyEstimate> process(double[] samples) {
+        List<FrequencyEstimate> estimates = new ArrayList<>();
+        for (double sample : samples) {
+            double leaving = window[position];
+            window[position] = sample;
+            position = position + 1 == windowSize ? 0 : position + 1;
+            samplesSeen++;
+
+            // S <- e^(i omega) * (DAMPING * S + entering - DAMPING^N * leaving)
+            double delta = sample - dampingOverWindow * leaving;
+            for (int b = 0; b < real.length; b++) {
+                double re = DAMPING * real[b] + delta;
+                double im = DAMPING * img[b];
+                real[b] = re * rotationReal[b] - im * rotationImg[b];
+                img[b] = re * rotationImg[b] + im * rotationReal[b];
+            }
+
+            if (samplesSeen >= windowSize && (samplesSeen - windowSize) % hopSize == 0) {
+                estimates.add(estimate());
+            }
+        }
+        return estimates;
+    }
+
+    /**
+     * Reads an audio file to its end, tracking the average of its two channels.
+     *
+     * @param file the file to read, is not null.
+     * @param sink receives every estimate, in order.
+     */
+    public void track(AudioFile file, Consumer<FrequencyEstimate> sink) {
+        while (!file.isEmpty()) {
+            double[] left = file.readLeftNext();
+            double[] right = file.isEmpty() ? left : file.readRightNext();
+            double[] mono = new double[left.length];
+            for (int t = 0; t < mono.length; t++) {
+                mono[t] = t < right.length ? (left[t] + right[t]) / 2.0 : left[t];
+            }
+            process(mono).forEach(sink);
+        }
+    }
+
+    /**
+     * Gets the number of samples consumed so far.
+     *
+     * @return the length of the stream so far.
+     */
+    public long getSampleCount() {
+        return samplesSeen;
+    }
+
+
+    //HELPER FUNCTIONS:
+
+    /**
+     * Estimates the dominant frequency of the current window.
+     *
+     * @return the strongest Hann-windowed bin, with interpolated frequency.
+     */
+    private FrequencyEstimate estimate() {
+        int bins = real.length - 2;
+        double[] magnitudes = new double[bins];
+        int best = 0;
+        for (int b = 0; b < bins; b++) {
+            magnitudes[b] = hannMagnitude(b + 1);
+            if (magnitudes[b] > magnitudes[best]) {
+                best = b;
+            }
+        }
+
+        double shift = 0.0;
+        double peak = magnitudes[best];
+        if (best > 0 && best < bins - 1 && peak > 0.0) {
+            double alpha = magnitudes[best - 1];
+            double gamma = magnitudes[best + 1];
+            double denominator = alpha - 2 * peak + gamma;
+            if (denominator < 0.0) {
+                shift = 0.5 * (alpha - gamma) / denominator;
+                peak -= 0.25 * (alpha - gamma) * shift;
+            }
+        }
+
+        double frequency = (firstBin + best + shift) * sampleRate / windowSize;
+        double time = (samplesSeen - windowSize / 2.0) / sampleRate;
+        // a Hann window halves the gain, and the energy of a sinusoid is split between +f and -f
+        return new FrequencyEstimate(time, frequency, 4.0 * peak / windowSize);
+    }
+
+    /**
+     * @param b the index of a tracked bin, in [1, real.length - 2].
+     * @return the magnitude of that bin with a Hann window applied: X[k] / 2 - (X[k - 1] + X[k + 1]) / 4.
+     */
+    private double hannMagnitude(int b) {
+        double re = 0.5 * real[b] - 0.25 * (real[b - 1] + real[b + 1]);
+        double im = 0.5 * img[b] - 0.25 * (img[b - 1] + img[b + 1]);
+        return Math.sqrt(re * re + im * im);
+    }
+}
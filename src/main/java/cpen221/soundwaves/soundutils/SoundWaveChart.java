@@ -4,7 +4,10 @@ import org.knowm.xchart.QuickChart;
 import org.knowm.xchart.SwingWrapper;
 import org.knowm.xchart.XYChart;
 
-import java.util.stream.IntStream;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * <p><strong>Overview.</strong>
@@ -26,44 +29,178 @@ import java.util.stream.IntStream;
  * drawn.
  * </p>
  *
+ * <p><strong>Long waves.</strong>
+ * A chart never hands more than a fixed number of points to XChart, so the
+ * UI stays responsive however long the wave is. Series drawn with
+ * {@link #drawWave(double[], double[])} are reduced with
+ * {@link WaveDecimator#lttb(double[], double[], int)}, and updates with
+ * min/max buckets. {@link #drawWave(double[])} also builds a
+ * {@link MinMaxPyramid}, so {@link #showRange(int, int)} can zoom into or pan
+ * over the wave at a cost that depends on the number of points drawn only.
+ * </p>
+ *
+ * <p><strong>Live mode.</strong>
+ * After {@link #startLive(int)}, {@link #updateDrawing(double[])} shows a
+ * sliding window of the most recent samples instead of only the newest block.
+ * The window is a {@link LiveWaveWindow} of fixed size copied into the same
+ * preallocated arrays on every repaint, and repaints are coalesced on the
+ * event dispatch thread to at most {@link #MAX_FRAMES_PER_SECOND} per second,
+ * so memory use and frame times stay constant in long monitoring sessions.
+ * </p>
+ *
  * @author Sathish Gopalakrishnan
  */
 public class SoundWaveChart {
 
+    /**
+     * The default largest number of points drawn, about two per pixel column.
+     */
+    public static final int DEFAULT_MAX_POINTS = 2000;
+
+    /**
+     * The largest number of repaints per second in live mode.
+     */
+    public static final int MAX_FRAMES_PER_SECOND = 30;
+
+    private static final long FRAME_NANOS = TimeUnit.SECONDS.toNanos(1) / MAX_FRAMES_PER_SECOND;
+
     SwingWrapper<XYChart> swing;
     private XYChart chart;
     private int offset = 0;
     private boolean initialized = false;
 
-    public void drawWave(double[] time, double[] amplitudes) {
-        chart = QuickChart.getChart("Sound Wave", "X", "Y", "Sound Wave", time, amplitudes);
-        swing = new SwingWrapper<XYChart>(chart);
-        if (!initialized) {
-            initialized = true;
+    private final int maxPoints;
+    private MinMaxPyramid pyramid;
+    private int pyramidOffset;
+
+    private LiveWaveWindow live;
+    private double[] liveX;
+    private double[] liveY;
+    private final AtomicBoolean repaintPending = new AtomicBoolean();
+    private long lastRepaint = System.nanoTime() - FRAME_NANOS;
+
+    /**
+     * Create a chart that draws at most {@link #DEFAULT_MAX_POINTS} points.
+     */
+    public SoundWaveChart() {
+        this(DEFAULT_MAX_POINTS);
+    }
+
+    /**
+     * Create a chart.
+     *
+     * @param maxPoints the largest number of points drawn at once, >= 4.
+     */
+    public SoundWaveChart(int maxPoints) {
+        if (maxPoints < 4) {
+            throw new IllegalArgumentException("maxPoints must be at least 4");
         }
-        swing.displayChart();
+        this.maxPoints = maxPoints;
+    }
+
+    public void drawWave(double[] time, double[] amplitudes) {
+        show(WaveDecimator.lttb(time, amplitudes, maxPoints));
     }
 
     public void drawWave(double[] amplitudes) {
-        double[] time = getXTime(amplitudes);
+        pyramid = new MinMaxPyramid(amplitudes);
+        pyramidOffset = offset;
         offset += amplitudes.length;
-        this.drawWave(time, amplitudes);
+        show(renderRange(0, amplitudes.length));
     }
 
-    private double[] getXTime(double[] amplitudes) {
-        int oldOffset = offset;
-        offset += amplitudes.length;
-        return IntStream.range(oldOffset, oldOffset + amplitudes.length)
-            .mapToDouble(t -> (double) t).toArray();
+    /**
+     * Redraws part of the wave last drawn with {@link #drawWave(double[])}.
+     *
+     * @param from the index of the first sample to show, >= 0.
+     * @param to   one past the index of the last sample to show, from < to <= the length of the wave.
+     * @throws IllegalStateException if no wave has been drawn with {@link #drawWave(double[])}.
+     */
+    public void showRange(int from, int to) {
+        if (pyramid == null) {
+            throw new IllegalStateException("no wave to zoom into");
+        }
+        if (from < 0 || to > pyramid.length() || from >= to) {
+            throw new IllegalArgumentException("invalid range");
+        }
+        DecimatedSeries series = renderRange(from, to);
+        chart.updateXYSeries("Sound Wave", series.getX(), series.getY(), null);
+        swing.repaintChart();
+    }
+
+    /**
+     * Switches {@link #updateDrawing(double[])} to live mode, showing the
+     * latest windowSamples samples. Must be called before the first update.
+     *
+     * @param windowSamples the number of recent samples shown, > 0.
+     * @throws IllegalStateException if the chart has already been drawn.
+     */
+    public void startLive(int windowSamples) {
+        if (initialized) {
+            throw new IllegalStateException("live mode must start before the chart is drawn");
+        }
+        live = new LiveWaveWindow(windowSamples, maxPoints / 2);
+        liveX = new double[live.size()];
+        liveY = new double[live.size()];
     }
 
     public void updateDrawing(double[] amplitudes) {
-        if (!initialized) {
+        if (live != null) {
+            live.append(amplitudes);
+            if (!initialized) {
+                live.copyTo(liveX, liveY);
+                show(new DecimatedSeries(liveX, liveY));
+            } else if (repaintPending.compareAndSet(false, true)) {
+                SwingUtilities.invokeLater(this::repaintLive);
+            }
+        } else if (!initialized) {
             this.drawWave(amplitudes);
         } else {
-            double[] time = getXTime(amplitudes);
-            chart.updateXYSeries("Sound Wave", time, amplitudes, null);
+            double[] time = WaveDecimator.sampleIndices(offset, amplitudes.length);
+            offset += amplitudes.length;
+            DecimatedSeries series = WaveDecimator.minMax(time, amplitudes, maxPoints / 2);
+            chart.updateXYSeries("Sound Wave", series.getX(), series.getY(), null);
             swing.repaintChart();
         }
     }
+
+
+    //HELPER FUNCTIONS:
+
+    private void show(DecimatedSeries series) {
+        chart = QuickChart.getChart("Sound Wave", "X", "Y", "Sound Wave", series.getX(), series.getY());
+        swing = new SwingWrapper<XYChart>(chart);
+        if (!initialized) {
+            initialized = true;
+        }
+        swing.displayChart();
+    }
+
+    /**
+     * Redraws the live window, at most once per frame. Runs on the event dispatch thread.
+     */
+    private void repaintLive() {
+        long wait = lastRepaint + FRAME_NANOS - System.nanoTime();
+        if (wait > 0) {
+            Timer timer = new Timer((int) Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait)), e -> repaintLive());
+            timer.setRepeats(false);
+            timer.start();
+            return;
+        }
+        // samples appended from now on need another repaint
+        repaintPending.set(false);
+        lastRepaint = System.nanoTime();
+        live.copyTo(liveX, liveY);
+        chart.updateXYSeries("Sound Wave", liveX, liveY, null);
+        swing.repaintChart();
+    }
+
+    private DecimatedSeries renderRange(int from, int to) {
+        DecimatedSeries series = pyramid.render(from, to, maxPoints / 2);
+        double[] x = series.getX();
+        for (int i = 0; i < x.length; i++) {
+            x[i] += pyramidOffset;
+        }
+        return series;
+    }
 }
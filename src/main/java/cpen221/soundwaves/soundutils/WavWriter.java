@@ -0,0 +1,226 @@
+package cpen221.soundwaves.soundutils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * <p><strong>Overview.</strong>
+ * Writes a stereo, 16-bit, signed PCM {@code .wav} file, at
+ * {@link Audio#SAMPLE_RATE} Hz unless another rate is given, one block at a
+ * time, so files of any length can be exported with constant memory.
+ * </p>
+ *
+ * <p>
+ * Samples are converted into a reusable direct buffer and written through a
+ * {@link FileChannel}. The header is written with placeholder sizes when the
+ * file is opened and the RIFF and data chunk sizes are patched in by
+ * {@link #close()}; a file that is not closed is therefore not a valid WAV file.
+ * Samples outside [-1.0, +1.0] are clipped, as in {@link Audio#play(double)}.
+ * </p>
+ */
+public class WavWriter implements BlockSink, AutoCloseable {
+
+    private static final int CHANNELS = 2;
+    private static final int BYTES_PER_FRAME = CHANNELS * Pcm16.BYTES_PER_SAMPLE;
+    private static final int HEADER_SIZE = 44;
+
+    /**
+     * Number of stereo frames converted per write to the channel.
+     */
+    private static final int FRAMES_PER_BLOCK = 4096;
+
+    /**
+     * The largest data chunk that fits the 32-bit RIFF size field.
+     */
+    private static final long MAX_DATA_BYTES = 0xFFFFFFFFL - (HEADER_SIZE - 8);
+
+    private final String fileName;
+    private final int sampleRate;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private long framesWritten = 0;
+    private boolean closed = false;
+
+    // Representation Invariants:
+    //  sampleRate > 0
+    //  buffer is a direct, little endian buffer of FRAMES_PER_BLOCK * BYTES_PER_FRAME bytes
+    //  channel.position() == HEADER_SIZE + framesWritten * BYTES_PER_FRAME while not closed
+
+    // Abstraction Function:
+    //  represents a WAV file at sampleRate Hz being written: the file holds a header
+    //  followed by the first framesWritten stereo frames.
+
+    /**
+     * Creates (or replaces) a WAV file at {@link Audio#SAMPLE_RATE} Hz and writes its header.
+     *
+     * @param fileName the name of the file, is not null.
+     * @throws IllegalArgumentException if the file can not be created.
+     */
+    public WavWriter(String fileName) {
+        this(Paths.get(fileName));
+    }
+
+    /**
+     * Creates (or replaces) a WAV file at {@link Audio#SAMPLE_RATE} Hz and writes its header.
+     *
+     * @param path the file, is not null.
+     * @throws IllegalArgumentException if the file can not be created.
+     */
+    public WavWriter(Path path) {
+        this(path, Audio.SAMPLE_RATE);
+    }
+
+    /**
+     * Creates (or replaces) a WAV file and writes its header.
+     *
+     * @param path       the file, is not null.
+     * @param sampleRate the number of samples per second written in the header, > 0.
+     * @throws IllegalArgumentException if the file can not be created.
+     */
+    public WavWriter(Path path, int sampleRate) {
+        if (sampleRate <= 0) {
+            throw new IllegalArgumentException("sampleRate must be positive");
+        }
+        this.fileName = path.toString();
+        this.sampleRate = sampleRate;
+        this.buffer = ByteBuffer.allocateDirect(FRAMES_PER_BLOCK * BYTES_PER_FRAME).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException ioe) {
+            throw new IllegalArgumentException("unable to save file '" + fileName + "'", ioe);
+        }
+        writeHeader(0);
+    }
+
+    /**
+     * Appends stereo samples.
+     *
+     * @param left  the left channel samples, is not null.
+     * @param right the right channel samples, is not null and as long as left.
+     * @throws IllegalArgumentException if the channels differ in length or the file can not be written.
+     */
+    public void write(double[] left, double[] right) {
+        if (left.length != right.length) {
+            throw new IllegalArgumentException("channels must have the same length");
+        }
+        write(left, right, 0, left.length);
+    }
+
+    /**
+     * Appends a run of stereo samples.
+     *
+     * @param left   the left channel samples, is not null.
+     * @param right  the right channel samples, is not null.
+     * @param from   the index of the first sample to write in both channels.
+     * @param length the number of samples to write from each channel.
+     * @throws IllegalArgumentException if the file can not be written or would exceed 4 GiB.
+     * @throws IllegalStateException if the writer has been closed.
+     */
+    @Override
+    public void write(double[] left, double[] right, int from, int length) {
+        if (closed) {
+            throw new IllegalStateException("writer is closed");
+        }
+        if ((framesWritten + length) * BYTES_PER_FRAME > MAX_DATA_BYTES) {
+            throw new IllegalArgumentException("a WAV file can not hold more than 4 GiB of samples");
+        }
+        try {
+            for (int done = 0; done < length; ) {
+                int count = Math.min(FRAMES_PER_BLOCK, length - done);
+                buffer.clear();
+                Pcm16.encodeStereo(left, right, from + done, buffer, count);
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                done += count;
+            }
+        } catch (IOException ioe) {
+            throw new IllegalArgumentException("unable to save file '" + fileName + "'", ioe);
+        }
+        framesWritten += length;
+    }
+
+    /**
+     * Gets the number of stereo frames written so far.
+     *
+     * @return the number of samples written to each channel.
+     */
+    public long getFramesWritten() {
+        return framesWritten;
+    }
+
+    /**
+     * Gets the sample rate of the file.
+     *
+     * @return the number of samples per second written in the header.
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Patches the header with the final sizes and closes the file.
+     * Closing a closed writer has no effect.
+     *
+     * @throws IllegalArgumentException if the file can not be written.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try (channel) {
+            writeHeader(framesWritten * BYTES_PER_FRAME);
+        } catch (IOException ioe) {
+            throw new IllegalArgumentException("unable to save file '" + fileName + "'", ioe);
+        }
+    }
+
+
+    //HELPER FUNCTIONS:
+
+    /**
+     * Writes the 44-byte canonical WAV header at the start of the file.
+     *
+     * @param dataBytes the size of the data chunk.
+     * @throws IllegalArgumentException if the file can not be written.
+     */
+    private void writeHeader(long dataBytes) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(new byte[] {'R', 'I', 'F', 'F'});
+        header.putInt((int) (dataBytes + HEADER_SIZE - 8));
+        header.put(new byte[] {'W', 'A', 'V', 'E', 'f', 'm', 't', ' '});
+        header.putInt(16);                                      // fmt chunk size
+        header.putShort((short) 1);                             // PCM
+        header.putShort((short) CHANNELS);
+        header.putInt(sampleRate);
+        header.putInt(sampleRate * BYTES_PER_FRAME);            // byte rate
+        header.putShort((short) BYTES_PER_FRAME);               // block align
+        header.putShort((short) (8 * Pcm16.BYTES_PER_SAMPLE));  // bits per sample
+        header.put(new byte[] {'d', 'a', 't', 'a'});
+        header.putInt((int) dataBytes);
+        header.flip();
+        try {
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        } catch (IOException ioe) {
+            throw new IllegalArgumentException("unable to save file '" + fileName + "'", ioe);
+        }
+        if (dataBytes == 0) {
+            try {
+                channel.position(HEADER_SIZE);
+            } catch (IOException ioe) {
+                throw new IllegalArgumentException("unable to save file '" + fileName + "'", ioe);
+            }
+        }
+    }
+}
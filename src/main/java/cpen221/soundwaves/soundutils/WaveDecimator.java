@@ -0,0 +1,151 @@
+package cpen221.soundwaves.soundutils;
+
+import java.util.Arrays;
+
+/**
+ * <p><strong>Overview.</strong>
+ * Reduces a long series to a number of points a chart can draw quickly,
+ * while keeping the shape a viewer would see at full resolution.
+ * </p>
+ *
+ * <p>
+ * <ul>
+ *     <li>{@link #minMax(double[], double[], int)} splits the series into buckets,
+ *     one per pixel column, and keeps the smallest and the largest point of each,
+ *     so no peak is ever hidden. It is the right choice for audio.</li>
+ *     <li>{@link #lttb(double[], double[], int)} (Largest-Triangle-Three-Buckets)
+ *     keeps one point per bucket, the one forming the largest triangle with its
+ *     neighbours, which keeps the visual shape of smooth or irregularly spaced series.</li>
+ * </ul>
+ * A series that is already small enough is returned as is.
+ * </p>
+ */
+public final class WaveDecimator {
+
+    private WaveDecimator() {
+        // can not instantiate
+    }
+
+    /**
+     * Keeps the minimum and maximum of every bucket, in the order they occur.
+     *
+     * @param x       the x values, is not null and non-decreasing.
+     * @param y       the y values, is not null and as long as x.
+     * @param buckets the number of buckets, > 0; at most 2 * buckets points are kept.
+     * @return the decimated series.
+     */
+    public static DecimatedSeries minMax(double[] x, double[] y, int buckets) {
+        int n = y.length;
+        if (n <= 2 * buckets) {
+            return new DecimatedSeries(x, y);
+        }
+
+        int[] kept = new int[2 * buckets];
+        int count = 0;
+        for (int b = 0; b < buckets; b++) {
+            int from = (int) ((long) b * n / buckets);
+            int to = (int) ((long) (b + 1) * n / buckets);
+            int min = from;
+            int max = from;
+            for (int i = from + 1; i < to; i++) {
+                if (y[i] < y[min]) {
+                    min = i;
+                } else if (y[i] > y[max]) {
+                    max = i;
+                }
+            }
+            kept[count++] = Math.min(min, max);
+            if (min != max) {
+                kept[count++] = Math.max(min, max);
+            }
+        }
+        return select(x, y, kept, count);
+    }
+
+    /**
+     * Decimates a series with Largest-Triangle-Three-Buckets.
+     * The first and last points are always kept.
+     *
+     * @param x         the x values, is not null and non-decreasing.
+     * @param y         the y values, is not null and as long as x.
+     * @param threshold the number of points to keep, >= 3.
+     * @return the decimated series.
+     */
+    public static DecimatedSeries lttb(double[] x, double[] y, int threshold) {
+        int n = y.length;
+        if (n <= threshold) {
+            return new DecimatedSeries(x, y);
+        }
+        if (threshold < 3) {
+            throw new IllegalArgumentException("threshold must be at least 3");
+        }
+
+        int[] kept = new int[threshold];
+        int count = 0;
+        kept[count++] = 0;
+
+        // the points between the first and the last are split into threshold - 2 buckets
+        double bucketSize = (double) (n - 2) / (threshold - 2);
+        int previous = 0;
+        for (int b = 0; b < threshold - 2; b++) {
+            int from = 1 + (int) (b * bucketSize);
+            int to = 1 + (int) ((b + 1) * bucketSize);
+
+            // the third vertex is the average of the next bucket (or the last point)
+            int nextFrom = to;
+            int nextTo = Math.min(n, 1 + (int) ((b + 2) * bucketSize));
+            if (b == threshold - 3) {
+                nextFrom = n - 1;
+                nextTo = n;
+            }
+            double avgX = 0.0;
+            double avgY = 0.0;
+            for (int i = nextFrom; i < nextTo; i++) {
+                avgX += x[i];
+                avgY += y[i];
+            }
+            avgX /= nextTo - nextFrom;
+            avgY /= nextTo - nextFrom;
+
+            double bestArea = -1.0;
+            int best = from;
+            for (int i = from; i < to; i++) {
+                double area = Math.abs((x[previous] - avgX) * (y[i] - y[previous])
+                    - (x[previous] - x[i]) * (avgY - y[previous]));
+                if (area > bestArea) {
+                    bestArea = area;
+                    best = i;
+                }
+            }
+            kept[count++] = best;
+            previous = best;
+        }
+
+        kept[count++] = n - 1;
+        return select(x, y, kept, count);
+    }
+
+
+    //HELPER FUNCTIONS:
+
+    private static DecimatedSeries select(double[] x, double[] y, int[] indices, int count) {
+        double[] keptX = new double[count];
+        double[] keptY = new double[count];
+        for (int i = 0; i < count; i++) {
+            keptX[i] = x[indices[i]];
+            keptY[i] = y[indices[i]];
+        }
+        return new DecimatedSeries(keptX, keptY);
+    }
+
+    /**
+     * @param from the first x value.
+     * @param n    the number of values.
+     * @return the x values from, from + 1, ..., from + n - 1.
+     */
+    static double[] sampleIndices(long from, int n) {
+        double[] x = new double[n];
+        Arrays.setAll(x, i -> from + i);
+        return x;
+    }
+}
@@ -3,7 +3,42 @@ package cpen221.soundwaves;
 
 import org.junit.jupiter.api.Test;
 
+import cpen221.soundwaves.soundutils.Audio;
+import cpen221.soundwaves.soundutils.AudioFile;
+import cpen221.soundwaves.soundutils.BlockSource;
+import cpen221.soundwaves.soundutils.DecimatedSeries;
 import cpen221.soundwaves.soundutils.FilterType;
+import cpen221.soundwaves.soundutils.FrequencyEstimate;
+import cpen221.soundwaves.soundutils.LiveWaveWindow;
+import cpen221.soundwaves.soundutils.MP3Decoder;
+import cpen221.soundwaves.soundutils.MinMaxPyramid;
+import cpen221.soundwaves.soundutils.PcmSink;
+import cpen221.soundwaves.soundutils.PlaybackPipeline;
+import cpen221.soundwaves.soundutils.PolyphaseResampler;
+import cpen221.soundwaves.soundutils.SlidingDftTracker;
+import cpen221.soundwaves.soundutils.WavWriter;
+import cpen221.soundwaves.soundutils.WaveDecimator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class ComprehensiveTests {
@@ -412,6 +447,1268 @@ public class ComprehensiveTests {
         assertTrue(mp3Wave.getRightChannel().length > 0);
     }
 
+    @Test
+    public void testFingerprintIndexFindsSnippet() {
+        Random random = new Random(221);
+        FingerprintIndex index = new FingerprintIndex();
+        double[][] channels = new double[5][];
+        for (int w = 0; w < channels.length; w++) {
+            channels[w] = new double[44100];
+            for (int t = 0; t < channels[w].length; t++) {
+                channels[w][t] = random.nextDouble() - 0.5;
+            }
+            assertEquals(w, index.add(new ConcreteSoundWave(channels[w], channels[w])));
+        }
+
+        int start = 20 * 512;
+        double[] part = Arrays.copyOfRange(channels[3], start, start + 8192);
+        SoundWave snippet = new ConcreteSoundWave(part, part);
+
+        List<FingerprintMatch> matches = index.query(snippet, 2);
+        assertEquals(3, matches.get(0).getWaveId());
+        assertEquals(start, matches.get(0).getOffset());
+        assertEquals(List.of(3), index.findContaining(snippet, 3));
+    }
+
+    @Test
+    public void testSoundWaveStoreRoundTrip() throws IOException {
+        double[] left = {0.5, -0.25, 1.0, -1.0, 0.125};
+        double[] right = {0.1, 0.2, 0.3, 0.4, 0.5};
+        Path file = Files.createTempFile("wave", ".swv");
+        try {
+            SoundWaveStore.write(new ConcreteSoundWave(left, right), file);
+            MappedSoundWave mapped = SoundWaveStore.load(file);
+            assertEquals(2, mapped.getChannelCount());
+            assertEquals(5, mapped.getSampleCount());
+            assertTrue(mapped.verifyChecksum());
+            assertEquals(-0.25, mapped.channelBuffer(0).get(1), 0.0);
+            assertArrayEquals(left, mapped.toSoundWave().getLeftChannel(), 0.0);
+            assertArrayEquals(right, mapped.toSoundWave().getRightChannel(), 0.0);
+
+            SoundWaveStore.write(new ConcreteSoundWave(left, right), file, SoundWaveStore.Encoding.PCM16);
+            mapped = SoundWaveStore.load(file);
+            assertTrue(mapped.verifyChecksum());
+            assertArrayEquals(right, mapped.getChannel(1), 1.0 / 32768);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testDecodedAudioCacheHitAndEviction() throws IOException {
+        Path directory = Files.createTempDirectory("cache");
+        try {
+            Path first = Files.write(directory.resolve("first.mp3"), new byte[] {1, 2, 3});
+            Path second = Files.write(directory.resolve("second.mp3"), new byte[] {4, 5, 6});
+            SoundWave wave = new ConcreteSoundWave(new double[] {0.5, -0.5, 0.25}, new double[] {0.0, 0.125, -1.0});
+
+            DecodedAudioCache cache = new DecodedAudioCache(directory.resolve("cache"), 300);
+            assertNull(cache.get(first));
+            cache.put(first, wave);
+            MappedSoundWave hit = cache.get(first);
+            assertNotNull(hit);
+            assertArrayEquals(wave.getLeftChannel(), hit.getChannel(0), 0.0);
+            assertArrayEquals(wave.getRightChannel(), hit.getChannel(1), 0.0);
+
+            cache.put(second, wave);
+            assertNotNull(cache.get(second));
+            assertNull(cache.get(first));
+            assertTrue(cache.sizeInBytes() <= 300);
+        } finally {
+            deleteRecursively(directory);
+        }
+    }
+
+    @Test
+    public void testLibraryLoaderReportsFailuresPerFile() throws IOException {
+        Path directory = Files.createTempDirectory("library");
+        try {
+            Files.createDirectories(directory.resolve("drums"));
+            Path broken = Files.write(directory.resolve("drums/broken.wav"), new byte[] {1, 2, 3});
+            Path empty = Files.write(directory.resolve("empty.mp3"), new byte[] {0, 0, 0, 0});
+            Files.write(directory.resolve("notes.txt"), new byte[] {1});
+
+            LibraryLoadResult result = new SoundLibraryLoader(2, 4096).load(directory);
+            assertTrue(result.getWaves().isEmpty());
+            assertEquals(2, result.getFailures().size());
+            assertTrue(result.getFailures().containsKey(broken));
+            assertTrue(result.getFailures().containsKey(empty));
+        } finally {
+            deleteRecursively(directory);
+        }
+    }
+
+    @Test
+    public void testPlaybackPipelineWritesPcm() {
+        ByteArrayOutputStream played = new ByteArrayOutputStream();
+        PcmSink sink = new PcmSink() {
+            @Override
+            public synchronized void write(byte[] data, int offset, int length) {
+                played.write(data, offset, length);
+            }
+
+            @Override
+            public void drain() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        try (PlaybackPipeline pipeline = new PlaybackPipeline(sink, 8, 2)) {
+            assertEquals(5, pipeline.enqueue(new double[] {0.5, -1.0, 1.0, 0.0, 2.0}));
+            assertThrows(IllegalArgumentException.class, () -> pipeline.enqueue(new double[] {Double.NaN}));
+            pipeline.drain();
+
+            assertEquals(5, pipeline.getWrittenSampleCount());
+            assertEquals(0, pipeline.getQueuedSampleCount());
+            int accepted = pipeline.enqueue(new double[100]);
+            assertEquals(100, accepted + pipeline.getRejectedSampleCount());
+        }
+
+        byte[] bytes = played.toByteArray();
+        short[] expected = {16384, -32768, 32767, 0, 32767};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], (short) ((bytes[2 * i] & 0xFF) | (bytes[2 * i + 1] << 8)));
+        }
+    }
+
+    @Test
+    public void testWavWriterStreamsStereoBlocks() throws IOException {
+        Path file = Files.createTempFile("stereo", ".wav");
+        try (WavWriter writer = new WavWriter(file)) {
+            writer.write(new double[] {0.5, -1.0}, new double[] {1.0, 0.0});
+            writer.write(new double[] {9.0, 0.25, 0.0}, new double[] {-0.5, -0.25, 0.0}, 1, 1);
+            assertEquals(3, writer.getFramesWritten());
+        }
+
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(44 + 12, bytes.limit());
+        assertEquals(bytes.limit() - 8, bytes.getInt(4));
+        assertEquals(2, bytes.getShort(22));
+        assertEquals(44100, bytes.getInt(24));
+        assertEquals(12, bytes.getInt(40));
+        short[] expected = {16384, 32767, -32768, 0, 8192, -8192};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], bytes.getShort(44 + 2 * i));
+        }
+        Files.delete(file);
+    }
+
+    @Test
+    public void testMinMaxPyramidMatchesBruteForce() {
+        Random random = new Random(33);
+        double[] samples = new double[100_003];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = random.nextGaussian();
+        }
+        MinMaxPyramid pyramid = new MinMaxPyramid(samples);
+
+        for (int trial = 0; trial < 200; trial++) {
+            int from = random.nextInt(samples.length);
+            int to = from + 1 + random.nextInt(samples.length - from);
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int i = from; i < to; i++) {
+                min = Math.min(min, samples[i]);
+                max = Math.max(max, samples[i]);
+            }
+            assertArrayEquals(new double[] {min, max}, pyramid.minMax(from, to), 0.0);
+        }
+
+        DecimatedSeries envelope = pyramid.render(0, samples.length, 500);
+        assertEquals(1000, envelope.size());
+        assertEquals(Arrays.stream(samples).max().getAsDouble(), Arrays.stream(envelope.getY()).max().getAsDouble(), 0.0);
+        assertEquals(Arrays.stream(samples).min().getAsDouble(), Arrays.stream(envelope.getY()).min().getAsDouble(), 0.0);
+    }
+
+    @Test
+    public void testLttbKeepsEndpointsAndThreshold() {
+        double[] x = new double[10_000];
+        double[] y = new double[10_000];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = i;
+            y[i] = Math.sin(i / 100.0);
+        }
+        y[5000] = 10.0;
+
+        DecimatedSeries series = WaveDecimator.lttb(x, y, 100);
+        assertEquals(100, series.size());
+        assertEquals(0.0, series.getX()[0], 0.0);
+        assertEquals(9999.0, series.getX()[99], 0.0);
+        assertEquals(10.0, Arrays.stream(series.getY()).max().getAsDouble(), 0.0);
+        assertSame(y, WaveDecimator.lttb(x, y, 20_000).getY());
+    }
+
+    @Test
+    public void testLiveWaveWindowKeepsRecentColumns() {
+        LiveWaveWindow window = new LiveWaveWindow(6, 3);
+        double[] x = new double[window.size()];
+        double[] y = new double[window.size()];
+
+        window.copyTo(x, y);
+        assertArrayEquals(new double[] {-6, -5, -4, -3, -2, -1}, x, 0.0);
+        assertArrayEquals(new double[6], y, 0.0);
+
+        window.append(new double[] {1, -1, 2, -2, 3});
+        window.append(new double[] {-3, 4, -4, 5});
+        assertEquals(9, window.getSampleCount());
+        window.copyTo(x, y);
+        assertArrayEquals(new double[] {2, 3, 4, 5, 6, 7}, x, 0.0);
+        assertArrayEquals(new double[] {2, -2, 3, -3, 4, -4}, y, 0.0);
+    }
+
+    @Test
+    public void testPolyphaseResamplerPreservesTone() {
+        int n = 48_000;
+        double[] tone = new double[n];
+        for (int t = 0; t < n; t++) {
+            tone[t] = 0.5 * Math.sin(2 * Math.PI * 1000.0 * t / 48_000);
+        }
+
+        double[] whole = PolyphaseResampler.resample(tone, 48_000, 44_100);
+        assertEquals(44_100, whole.length);
+        for (int t = 1000; t < 43_000; t += 997) {
+            assertEquals(0.5 * Math.sin(2 * Math.PI * 1000.0 * t / 44_100), whole[t], 1e-3);
+        }
+
+        PolyphaseResampler streaming = new PolyphaseResampler(48_000, 44_100);
+        double[] blocks = new double[0];
+        for (int from = 0; from < n; from += 1234) {
+            double[] out = streaming.process(tone, from, Math.min(1234, n - from));
+            int length = blocks.length;
+            blocks = Arrays.copyOf(blocks, length + out.length);
+            System.arraycopy(out, 0, blocks, length, out.length);
+        }
+        double[] tail = streaming.flush();
+        int length = blocks.length;
+        blocks = Arrays.copyOf(blocks, length + tail.length);
+        System.arraycopy(tail, 0, blocks, length, tail.length);
+        assertArrayEquals(whole, blocks, 1e-12);
+    }
+
+    @Test
+    public void testAddResamplesOnlyWhenRatesDiffer() {
+        double[] left = new double[22_050];
+        double[] right = new double[22_050];
+        Arrays.fill(left, 0.25);
+        Arrays.fill(right, -0.25);
+        SoundWave halfRate = new ConcreteSoundWave(left, right, 22_050);
+        SoundWave fullRate = new ConcreteSoundWave(new double[44_100], new double[44_100]);
+
+        assertEquals(1.0, halfRate.duration(), 1e-9);
+        SoundWave sum = fullRate.add(halfRate);
+        assertEquals(44_100, sum.getSampleRate());
+        assertEquals(44_100, sum.getLeftChannel().length);
+        assertEquals(0.25, sum.getLeftChannel()[22_050], 1e-6);
+        assertEquals(-0.25, sum.getRightChannel()[22_050], 1e-6);
+        assertEquals(SoundWave.SAMPLES_PER_SECOND, fullRate.getSampleRate());
+    }
+
+    @Test
+    public void testSimilarityIndexFindsClosestTone() {
+        SimilarityIndex index = new SimilarityIndex();
+        double[] frequencies = {110, 220, 440, 880, 1760, 3520, 7040};
+        for (double frequency : frequencies) {
+            index.insert(SinusoidalWave.getInstance(frequency, 0, 0.5, 4096.0 / SoundWave.SAMPLES_PER_SECOND));
+        }
+        assertEquals(7, index.size());
+
+        SoundWave query = SinusoidalWave.getInstance(900, 0.3, 0.9, 4096.0 / SoundWave.SAMPLES_PER_SECOND);
+        List<Integer> nearest = index.nearest(query, 3);
+        assertFalse(nearest.isEmpty());
+        assertEquals(3, (int) nearest.get(0));
+
+        SoundWave quieter = SinusoidalWave.getInstance(880, 0, 0.25, 4096.0 / SoundWave.SAMPLES_PER_SECOND);
+        assertEquals(List.of(3), index.mostSimilar(quieter, 1, 3));
+
+
+        assertTrue(index.delete(3));
+        assertFalse(index.delete(3));
+        assertNull(index.getWave(3));
+        assertEquals(6, index.size());
+        assertFalse(index.nearest(query, 7).contains(3));
+    }
+
+    @Test
+    public void testSimilarityAtLeastAgreesWithSimilarity() {
+        Random random = new Random(37);
+        double[] left = new double[20_000];
+        double[] right = new double[20_000];
+        for (int t = 0; t < left.length; t++) {
+            left[t] = random.nextDouble() - 0.5;
+            right[t] = random.nextDouble() - 0.5;
+        }
+        SoundWave wave = new ConcreteSoundWave(left, right);
+        SoundWave scaled = new ConcreteSoundWave(
+            Arrays.stream(left).map(x -> x / 2).toArray(), Arrays.stream(right).map(x -> x / 2).toArray());
+        SoundWave noise = new ConcreteSoundWave(
+            random.doubles(15_000, -0.5, 0.5).toArray(), random.doubles(15_000, -0.5, 0.5).toArray());
+
+        for (SoundWave other : List.of(scaled, noise)) {
+            double similarity = wave.similarity(other);
+            assertTrue(wave.similarityAtLeast(other, similarity));
+            assertTrue(wave.similarityAtLeast(other, similarity - 1e-6));
+            assertFalse(wave.similarityAtLeast(other, similarity + 1e-6));
+        }
+        assertEquals(1.0, wave.similarity(scaled), 1e-9);
+    }
+
+    @Test
+    public void testCoarseToFineSimilarityRejectsEarly() {
+        Random random = new Random(38);
+        double[] left = new double[44_100];
+        double[] right = new double[44_100];
+        for (int t = 0; t < left.length; t++) {
+            left[t] = 0.5 * Math.sin(2 * Math.PI * 60 * t / 44_100.0) + 0.05 * random.nextGaussian();
+            right[t] = 0.5 * Math.cos(2 * Math.PI * 90 * t / 44_100.0) + 0.05 * random.nextGaussian();
+        }
+        ConcreteSoundWave wave = new ConcreteSoundWave(left, right);
+        SoundWave quieter = new ConcreteSoundWave(
+            Arrays.stream(left).map(x -> 0.8 * x).toArray(), Arrays.stream(right).map(x -> 0.8 * x).toArray());
+        SoundWave shifted = new ConcreteSoundWave(
+            Arrays.stream(left).map(x -> -x).toArray(), right.clone());
+
+        CoarseToFineSimilarity engine = new CoarseToFineSimilarity();
+        assertTrue(engine.atLeast(wave, quieter, 0.9));
+        assertFalse(engine.atLeast(wave, shifted, 0.5));
+        assertTrue(CoarseToFineSimilarity.estimate(wave.pyramid(), WavePyramid.of(shifted), WavePyramid.LEVELS) < 0.5);
+        assertEquals(List.of(0), engine.findSimilar(wave, List.of(quieter, shifted), 0.9));
+
+        WavePyramid before = wave.pyramid();
+        assertSame(before, wave.pyramid());
+        assertEquals(44_100 / 64, before.left(WavePyramid.LEVELS).length, 1);
+        wave.append(new double[10], new double[10]);
+        assertNotSame(before, wave.pyramid());
+    }
+
+    @Test
+    public void testSpectralPeaksInHertz() {
+        int n = 3 * SoundWave.SAMPLES_PER_SECOND;
+        double[] left = new double[n];
+        double[] right = new double[n];
+        for (int t = 0; t < n; t++) {
+            double time = (double) t / SoundWave.SAMPLES_PER_SECOND;
+            left[t] = 0.6 * Math.sin(2 * Math.PI * 440.3 * time) + 0.2 * Math.sin(2 * Math.PI * 1234.5 * time);
+            right[t] = 0.3 * Math.sin(2 * Math.PI * 97.25 * time);
+        }
+        SoundWave wave = new ConcreteSoundWave(left, right);
+
+        List<SpectralPeak> peaks = wave.spectralPeaks(3);
+        assertEquals(3, peaks.size());
+        assertEquals(440.3, peaks.get(0).getFrequency(), 0.1);
+        assertEquals(0.6, peaks.get(0).getMagnitude(), 0.05);
+        assertEquals(SpectralPeak.LEFT, peaks.get(0).getChannel());
+        assertEquals(97.25, peaks.get(1).getFrequency(), 0.1);
+        assertEquals(SpectralPeak.RIGHT, peaks.get(1).getChannel());
+        assertEquals(1234.5, peaks.get(2).getFrequency(), 0.1);
+
+        assertEquals(0.6, wave.amplitudeAt(440.3), 0.01);
+        assertEquals(0.3, wave.amplitudeAt(97.25), 0.01);
+        assertTrue(wave.amplitudeAt(3000) < 0.01);
+    }
+
+    @Test
+    public void testSlidingDftTrackerFollowsFrequencyChange() {
+        int rate = SoundWave.SAMPLES_PER_SECOND;
+        double[] samples = new double[2 * rate];
+        for (int t = 0; t < samples.length; t++) {
+            double frequency = t < rate ? 440.0 : 987.0;
+            samples[t] = 0.5 * Math.sin(2 * Math.PI * frequency * t / rate);
+        }
+        SlidingDftTracker tracker = new SlidingDftTracker(rate, 4096, 1024, 50, 4000);
+
+        List<FrequencyEstimate> estimates = new ArrayList<>();
+        for (int from = 0; from < samples.length; from += 1000) {
+            estimates.addAll(tracker.process(Arrays.copyOfRange(samples, from, Math.min(samples.length, from + 1000))));
+        }
+        assertEquals(samples.length, tracker.getSampleCount());
+        assertEquals(1 + (samples.length - 4096) / 1024, estimates.size());
+
+        for (FrequencyEstimate estimate : estimates) {
+            double halfWindow = 2048.0 / rate;
+            if (estimate.getTime() + halfWindow < 1.0) {
+                assertEquals(440.0, estimate.getFrequency(), 2.0);
+                assertEquals(0.5, estimate.getMagnitude(), 0.05);
+            } else if (estimate.getTime() - halfWindow > 1.0) {
+                assertEquals(987.0, estimate.getFrequency(), 2.0);
+                assertEquals(0.5, estimate.getMagnitude(), 0.05);
+            }
+        }
+    }
+
+    @Test
+    public void testMultiChannelInterleavedViews() {
+        double[][] channels = new double[6][100];
+        for (int c = 0; c < 6; c++) {
+            for (int t = 0; t < 100; t++) {
+                channels[c][t] = 0.1 * c + 0.001 * t;
+            }
+        }
+        MultiChannelSoundWave wave = new MultiChannelSoundWave(channels, SoundWave.SAMPLES_PER_SECOND);
+        assertEquals(6, wave.getChannelCount());
+        assertEquals(100, wave.getFrameCount());
+        assertEquals(0.2 + 0.005, wave.channel(2).get(5), 1e-12);
+        assertArrayEquals(channels[4], wave.channel(4).toArray());
+        assertArrayEquals(channels[0], wave.getLeftChannel());
+        assertArrayEquals(channels[1], wave.getRightChannel());
+        assertEquals(0.5, wave.getInterleaved()[5], 1e-12);
+
+        ChannelView before = wave.channel(5);
+        wave.scale(4.0);
+        assertEquals(0.5, before.get(0), 1e-12);
+        assertEquals(1.0, Arrays.stream(wave.channel(5).toArray()).max().getAsDouble(), 1e-12);
+        assertEquals(0.0, wave.channel(0).get(0), 1e-12);
+
+        wave.append(new double[]{0.1, 0.2}, new double[]{0.3, 0.4});
+        assertEquals(102, wave.getFrameCount());
+        assertEquals(0.4, wave.channel(1).get(101), 1e-12);
+        assertEquals(0.0, wave.channel(3).get(101), 1e-12);
+
+        SoundWave sum = wave.add(wave);
+        assertTrue(sum instanceof MultiChannelSoundWave);
+        assertEquals(6, ((MultiChannelSoundWave) sum).getChannelCount());
+    }
+
+    @Test
+    public void testMultiChannelStereoMatchesConcrete() {
+        Random random = new Random(41);
+        double[] l1 = new double[5000];
+        double[] r1 = new double[5000];
+        double[] l2 = new double[4000];
+        double[] r2 = new double[4000];
+        for (int t = 0; t < l1.length; t++) {
+            l1[t] = random.nextDouble() - 0.5;
+            r1[t] = random.nextDouble() - 0.5;
+        }
+        for (int t = 0; t < l2.length; t++) {
+            l2[t] = 0.5 * l1[t] + 0.1 * (random.nextDouble() - 0.5);
+            r2[t] = 0.5 * r1[t];
+        }
+        int rate = SoundWave.SAMPLES_PER_SECOND;
+        SoundWave a = new MultiChannelSoundWave(new double[][]{l1, r1}, rate);
+        SoundWave b = new MultiChannelSoundWave(new double[][]{l2, r2}, rate);
+        ConcreteSoundWave ca = new ConcreteSoundWave(l1.clone(), r1.clone());
+        ConcreteSoundWave cb = new ConcreteSoundWave(l2.clone(), r2.clone());
+
+        assertEquals(ca.similarity(cb), a.similarity(b), 1e-9);
+        assertEquals(ca.similarity(cb), a.similarity(cb), 1e-9);
+        assertTrue(a.similarityAtLeast(b, a.similarity(b)));
+
+        SoundWave sum = a.add(b);
+        SoundWave concreteSum = ca.add(cb);
+        assertArrayEquals(concreteSum.getLeftChannel(), sum.getLeftChannel(), 1e-12);
+        assertArrayEquals(concreteSum.getRightChannel(), sum.getRightChannel(), 1e-12);
+    }
 
+    @Test
+    public void testChunkedOperationsMatchSequential() {
+        int n = 3 * ChunkedParallel.SEQUENTIAL_CUTOFF + 123;
+        Random random = new Random(42);
+        double[] l1 = new double[n];
+        double[] r1 = new double[n];
+        double[] l2 = new double[n / 2];
+        double[] r2 = new double[n / 2];
+        for (int t = 0; t < n; t++) {
+            l1[t] = random.nextDouble() * 2 - 1;
+            r1[t] = 0.25 * (random.nextDouble() * 2 - 1);
+        }
+        for (int t = 0; t < n / 2; t++) {
+            l2[t] = random.nextDouble() * 2 - 1;
+            r2[t] = 0.25 * (random.nextDouble() * 2 - 1);
+        }
+
+        double peak = 0.0;
+        double[] expectedLeft = new double[n];
+        for (int t = 0; t < n; t++) {
+            expectedLeft[t] = l1[t] + (t < l2.length ? l2[t] : 0.0);
+            peak = Math.max(peak, Math.abs(expectedLeft[t]));
+        }
+        for (int t = 0; t < n; t++) {
+            expectedLeft[t] *= 1.0 / peak;
+        }
+        SoundWave a = new ConcreteSoundWave(l1, r1);
+        SoundWave b = new ConcreteSoundWave(l2, r2);
+        SoundWave sum = a.add(b);
+        assertArrayEquals(expectedLeft, sum.getLeftChannel(), 1e-12);
+        assertEquals(r1[n - 1], sum.getRightChannel()[n - 1], 1e-12);
+
+        a.scale(2.0);
+        assertEquals(1.0, Arrays.stream(a.getLeftChannel()).map(Math::abs).max().getAsDouble(), 1e-12);
+        assertEquals(2.0 * r1[7], a.getRightChannel()[7], 1e-12);
+
+        double similarity = a.similarity(b);
+        assertTrue(a.similarityAtLeast(b, similarity));
+        assertFalse(a.similarityAtLeast(b, Math.nextUp(similarity)));
+    }
 
+    @Test
+    public void testExecutionContextIsScopedAndHonored() {
+        int n = 2 * ChunkedParallel.SEQUENTIAL_CUTOFF;
+        double[] left = new double[n];
+        double[] right = new double[n];
+        for (int t = 0; t < n; t++) {
+            left[t] = Math.sin(t * 0.01);
+            right[t] = Math.cos(t * 0.02);
+        }
+        SoundWave a = new ConcreteSoundWave(left, right);
+        SoundWave b = new ConcreteSoundWave(right, left);
+        // summarized up front, so only the similarity sums are counted below
+        ((ConcreteSoundWave) a).summary();
+        ((ConcreteSoundWave) b).summary();
+
+        AtomicInteger tasks = new AtomicInteger();
+        ExecutionContext counting = new ExecutionContext(task -> {
+            tasks.incrementAndGet();
+            new Thread(task).start();
+        }, 3, 1 << 12, ExecutionContext.Priority.LOW);
+
+        ExecutionContext outside = ExecutionContext.current();
+        double parallel = counting.call(() -> {
+            assertSame(counting, ExecutionContext.current());
+            return a.similarity(b);
+        });
+        assertSame(outside, ExecutionContext.current());
+        assertEquals(2, tasks.get());
+
+        double sequential = ExecutionContext.sequential().withChunkSize(1 << 12).call(() -> a.similarity(b));
+        assertEquals(sequential, parallel, 0.0);
+        assertTrue(counting.call(() -> a.similarityAtLeast(b, parallel)));
+
+        SoundWave sum = counting.call(() -> a.add(b));
+        assertArrayEquals(a.add(b).getLeftChannel(), sum.getLeftChannel(), 0.0);
+    }
+
+    @Test
+    public void testSliceSharesSamplesUntilMutation() {
+        double[] left = new double[1000];
+        double[] right = new double[1000];
+        for (int t = 0; t < left.length; t++) {
+            left[t] = 0.5 * Math.sin(t * 0.1);
+            right[t] = 0.25 * Math.cos(t * 0.3);
+        }
+        ConcreteSoundWave wave = new ConcreteSoundWave(left, right);
+        SoundWave slice = wave.slice(100, 600);
+        SoundWave copy = new ConcreteSoundWave(Arrays.copyOfRange(left, 100, 600), Arrays.copyOfRange(right, 100, 600));
+
+        assertEquals(500, slice.getSampleCount());
+        assertArrayEquals(copy.getLeftChannel(), slice.getLeftChannel(), 0.0);
+        assertArrayEquals(copy.getRightChannel(), slice.getRightChannel(), 0.0);
+        assertEquals(copy.similarity(wave), slice.similarity(wave), 1e-12);
+        assertEquals(wave.similarity(copy), wave.similarity(slice), 1e-12);
+        assertEquals(copy.amplitudeAt(441), slice.amplitudeAt(441), 1e-12);
+        assertEquals(copy.spectralPeaks(3).get(0).getFrequency(), slice.spectralPeaks(3).get(0).getFrequency(), 1e-9);
+        assertTrue(wave.contains(slice));
+
+        SoundWave inner = slice.slice(50, 60);
+        assertArrayEquals(Arrays.copyOfRange(left, 150, 160), inner.getLeftChannel(), 0.0);
+
+        wave.scale(2.0);
+        wave.append(new double[] {1.0}, new double[] {1.0});
+        slice.scale(0.5);
+        assertArrayEquals(Arrays.copyOfRange(left, 150, 160), inner.getLeftChannel(), 0.0);
+        assertEquals(left[300] * 0.5, slice.getLeftChannel()[200], 1e-12);
+        assertEquals(1001, wave.getSampleCount());
+
+        assertThrows(IndexOutOfBoundsException.class, () -> inner.slice(5, 11));
+        assertThrows(IndexOutOfBoundsException.class, () -> inner.slice(-1, 3));
+
+        MultiChannelSoundWave frames = new MultiChannelSoundWave(new double[][] {left, right, left}, 44100);
+        SoundWave framesSlice = frames.slice(100, 600);
+        assertEquals(500, framesSlice.getSampleCount());
+        assertArrayEquals(copy.getRightChannel(), framesSlice.getRightChannel(), 0.0);
+        assertArrayEquals(Arrays.copyOfRange(left, 100, 600),
+            ((MultiChannelSoundWave) framesSlice).channel(2).toArray(), 0.0);
+        assertEquals(1.0, framesSlice.similarity(frames.slice(100, 600)), 1e-12);
+    }
+
+    @Test
+    public void testWaveMixerNormalizesOnce() {
+        SoundWave a = new ConcreteSoundWave(new double[] {0.5, 0.5, 0.5}, new double[] {0.1, 0.1, 0.1});
+        SoundWave b = new ConcreteSoundWave(new double[] {0.5, 0.5}, new double[] {0.1, 0.1});
+        SoundWave c = new ConcreteSoundWave(new double[] {-0.5}, new double[] {0.2});
+
+        WaveMixer mixer = new WaveMixer();
+        mixer.add(a);
+        mixer.add(b, 2.0, 1.0 / SoundWave.SAMPLES_PER_SECOND);
+        mixer.add(c, 1.0, 4.0 / SoundWave.SAMPLES_PER_SECOND);
+        SoundWave mix = mixer.mix();
+
+        assertEquals(3, mixer.getInputCount());
+        assertArrayEquals(new double[] {0.5 / 1.5, 1.0, 1.0, 0.0, -0.5 / 1.5}, mix.getLeftChannel(), 1e-12);
+        assertArrayEquals(new double[] {0.1, 0.3, 0.3, 0.0, 0.2}, mix.getRightChannel(), 1e-12);
+
+        SoundWave chained = a.add(b);
+        assertArrayEquals(chained.getLeftChannel(), WaveMixer.mix(List.of(a, b)).getLeftChannel(), 1e-12);
+        assertArrayEquals(chained.getRightChannel(), WaveMixer.mix(List.of(a, b)).getRightChannel(), 1e-12);
+
+        int n = 3 * ChunkedParallel.SEQUENTIAL_CUTOFF;
+        List<SoundWave> stems = new ArrayList<>();
+        for (int s = 1; s <= 8; s++) {
+            double[] samples = new double[n / s];
+            Arrays.fill(samples, 0.01 * s);
+            stems.add(new ConcreteSoundWave(samples, samples));
+        }
+        double[] big = WaveMixer.mix(stems).getLeftChannel();
+        assertEquals(n, big.length);
+        assertEquals(0.36, big[0], 1e-12);
+        assertEquals(0.01, big[n - 1], 1e-12);
+    }
+
+    @Test
+    public void testStreamingMixerMatchesInMemoryMix() {
+        double[][] stems = new double[3][];
+        for (int s = 0; s < stems.length; s++) {
+            stems[s] = new double[100 + 37 * s];
+            for (int t = 0; t < stems[s].length; t++) {
+                stems[s][t] = 0.6 * Math.sin(t * 0.05 * (s + 1));
+            }
+        }
+        double[] gains = {1.0, 0.5, 2.0};
+        double[] starts = {0.0, 10.0 / SoundWave.SAMPLES_PER_SECOND, 53.0 / SoundWave.SAMPLES_PER_SECOND};
+
+        WaveMixer inMemory = new WaveMixer();
+        StreamingMixer twoPass = new StreamingMixer(16, StreamingMixer.Normalization.TWO_PASS);
+        StreamingMixer limited = new StreamingMixer(16, StreamingMixer.Normalization.LIMITER);
+        AtomicInteger opened = new AtomicInteger();
+        for (int s = 0; s < stems.length; s++) {
+            double[] stem = stems[s];
+            inMemory.add(new ConcreteSoundWave(stem, stem), gains[s], starts[s]);
+            twoPass.addTrack(() -> {
+                opened.incrementAndGet();
+                return arraySource(stem);
+            }, gains[s], starts[s]);
+            limited.addTrack(() -> arraySource(stem), gains[s], starts[s]);
+        }
+        SoundWave expected = inMemory.mix();
+
+        List<Double> left = new ArrayList<>();
+        long written = twoPass.render((l, r, from, length) -> {
+            for (int t = from; t < from + length; t++) {
+                left.add(l[t]);
+            }
+        });
+        assertEquals(6, opened.get());
+        assertEquals(expected.getSampleCount(), written);
+        assertEquals(expected.getSampleCount(), left.size());
+        for (int t = 0; t < left.size(); t++) {
+            assertEquals(expected.getLeftChannel()[t], left.get(t), 1e-12);
+        }
+
+        double[] peak = new double[1];
+        assertEquals(written, limited.render((l, r, from, length) -> {
+            for (int t = from; t < from + length; t++) {
+                peak[0] = Math.max(peak[0], Math.max(Math.abs(l[t]), Math.abs(r[t])));
+            }
+        }));
+        assertTrue(peak[0] <= 1.0 && peak[0] > 0.9);
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toArray(Path[]::new)) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    private static BlockSource arraySource(double[] samples) {
+        int[] position = new int[1];
+        return (left, right, from, length) -> {
+            int count = Math.min(length, samples.length - position[0]);
+            System.arraycopy(samples, position[0], left, from, count);
+            System.arraycopy(samples, position[0], right, from, count);
+            position[0] += count;
+            return count;
+        };
+    }
+
+    @Test
+    public void testWaveSummaryIsCachedAndInvalidated() {
+        int n = WaveSummary.BLOCK_SIZE + 10;
+        double[] left = new double[n];
+        double[] right = new double[n];
+        for (int t = 0; t < n; t++) {
+            left[t] = 0.25 + 0.5 * Math.sin(t * 0.01);
+            right[t] = t < WaveSummary.BLOCK_SIZE ? 0.1 : -0.8;
+        }
+        ConcreteSoundWave wave = new ConcreteSoundWave(left, right);
+        WaveSummary summary = wave.summary();
+        assertSame(summary, wave.summary());
+
+        double energy = 0.0;
+        double sum = 0.0;
+        double peak = 0.0;
+        for (double x : left) {
+            energy += x * x;
+            sum += x;
+            peak = Math.max(peak, Math.abs(x));
+        }
+        assertEquals(n, summary.getLength());
+        assertEquals(peak, summary.getPeak(SpectralPeak.LEFT), 0.0);
+        assertEquals(0.8, summary.getPeak(SpectralPeak.RIGHT), 0.0);
+        assertEquals(0.8, summary.getPeak(), 0.0);
+        assertEquals(energy, summary.getEnergy(SpectralPeak.LEFT), 1e-9);
+        assertEquals(Math.sqrt(energy / n), summary.getRms(SpectralPeak.LEFT), 1e-12);
+        assertEquals(sum / n, summary.getDcOffset(SpectralPeak.LEFT), 1e-12);
+        assertArrayEquals(new double[] {0.1, 0.8}, summary.getBlockPeaks(SpectralPeak.RIGHT), 0.0);
+
+        wave.scale(2.0);
+        WaveSummary scaled = wave.summary();
+        assertNotSame(summary, scaled);
+        assertEquals(1.0, scaled.getPeak(SpectralPeak.LEFT), 1e-12);
+        assertEquals(1.0, scaled.getPeak(SpectralPeak.RIGHT), 1e-12);
+        assertEquals(0.125, scaled.getBlockPeaks(SpectralPeak.RIGHT)[0], 1e-12);
+
+        SoundWave quiet = new ConcreteSoundWave(new double[n], new double[n]);
+        SoundWave other = new ConcreteSoundWave(right, left);
+        double similarity = wave.similarity(other);
+        assertTrue(wave.similarityAtLeast(other, similarity));
+        assertFalse(wave.similarityAtLeast(other, Math.nextUp(similarity)));
+        assertEquals(wave.similarity(quiet) >= 0.5, wave.similarityAtLeast(quiet, 0.5));
+    }
+
+    @Test
+    public void testEnvelopeWindowsAndLoudness() {
+        int n = 44100;
+        double[] left = new double[n];
+        double[] right = new double[n];
+        for (int t = 0; t < n; t++) {
+            left[t] = Math.sin(2 * Math.PI * 441 * t / 44100.0);
+            right[t] = t < n / 2 ? 0.5 : 0.0;
+        }
+        ConcreteSoundWave wave = new ConcreteSoundWave(left, right);
+        Envelope envelope = ExecutionContext.sequential().withChunkSize(1000).call(wave::envelope);
+
+        assertEquals(n, envelope.getLength());
+        assertEquals(Math.sqrt(0.5), envelope.rms(SpectralPeak.LEFT, 0, n), 1e-9);
+        assertEquals(0.5, envelope.rms(SpectralPeak.RIGHT, 1234, 20000), 1e-12);
+        assertEquals(0.0, envelope.rms(SpectralPeak.RIGHT, n / 2, n), 1e-12);
+        assertEquals(Math.sqrt((0.5 + 0.25) / 2), envelope.rms(0, 100), 1e-9);
+
+        double[] rms = envelope.rmsEnvelope(0.010);
+        assertEquals(100, rms.length);
+        assertEquals(envelope.rms(441, 882), rms[1], 0.0);
+
+        double[] peaks = envelope.peakEnvelope(0.3);
+        assertEquals(4, peaks.length);
+        assertEquals(1.0, peaks[0], 1e-9);
+        assertArrayEquals(peaks, wave.slice(0, n).envelope().peakEnvelope(0.3), 0.0);
+
+        SoundWave sine = new ConcreteSoundWave(left, left);
+        assertEquals(-0.691, sine.envelope().integratedLoudness(), 1e-3);
+        SoundWave silence = new ConcreteSoundWave(new double[n], new double[n]);
+        assertEquals(Double.NEGATIVE_INFINITY, silence.envelope().integratedLoudness());
+
+        assertThrows(IndexOutOfBoundsException.class, () -> envelope.rms(10, n + 1));
+        SoundWave frames = new MultiChannelSoundWave(new double[][] {left, right}, 44100);
+        assertEquals(envelope.rms(0, n), frames.envelope().rms(0, n), 1e-9);
+    }
+
+    @Test
+    public void testSilenceAnalysisTrimsAndSkipsSilentBlocks() {
+        int n = 10 * 44100;
+        double[] left = new double[n];
+        double[] right = new double[n];
+        for (int t = 44100; t < 3 * 44100; t++) {
+            left[t] = 0.5 * Math.sin(t * 0.05);
+        }
+        for (int t = 3 * 44100 + 2205; t < 4 * 44100; t++) {
+            right[t] = 0.25 * Math.cos(t * 0.07);
+        }
+        for (int t = 6 * 44100; t < 7 * 44100; t++) {
+            right[t] = 0.25 * Math.cos(t * 0.07);
+        }
+        ConcreteSoundWave wave = new ConcreteSoundWave(left, right);
+        SoundWave other = new ConcreteSoundWave(right.clone(), left.clone());
+        double before = wave.similarity(other);
+
+        SilenceAnalysis analysis = SilenceAnalysis.of(wave);
+        List<SilentInterval> silences = analysis.getSilentIntervals();
+        assertEquals(3, silences.size());
+        assertEquals(0, silences.get(0).getStart());
+        assertEquals(44100, silences.get(0).getEnd());
+        assertEquals(4 * 44100, silences.get(1).getStart());
+        assertEquals(6 * 44100, silences.get(1).getEnd());
+        assertEquals(10.0, silences.get(2).getEndTime(), 1e-12);
+        assertEquals(6 * 44100, analysis.getSilentSampleCount());
+
+        SoundWave trimmed = analysis.trim();
+        assertEquals(6 * 44100, trimmed.getSampleCount());
+        assertEquals(left[44100 + 5], trimmed.getLeftChannel()[5], 0.0);
+        List<SoundWave> sounding = analysis.strip();
+        assertEquals(2, sounding.size());
+        assertEquals(3 * 44100, sounding.get(0).getSampleCount());
+        assertArrayEquals(Arrays.copyOfRange(right, 6 * 44100, 7 * 44100), sounding.get(1).getRightChannel(), 0.0);
+
+        ((ConcreteSoundWave) other).summary();
+        double skipping = wave.similarity(other);
+        assertEquals(before, skipping, 1e-12);
+        assertTrue(wave.similarityAtLeast(other, skipping));
+        assertFalse(wave.similarityAtLeast(other, Math.nextUp(skipping)));
+
+        SoundWave silent = new ConcreteSoundWave(new double[100], new double[100]);
+        assertEquals(0, SilenceAnalysis.of(silent).trim().getSampleCount());
+        assertTrue(SilenceAnalysis.of(silent).strip().isEmpty());
+    }
+
+    @Test
+    public void testOnsetsAndTempoOfClickTrack() {
+        int n = 8 * 44100;
+        double[] clicks = new double[n];
+        for (int beat = 0; beat < 16; beat++) {
+            int start = beat * 22050 + 3000;
+            for (int t = 0; t < 882; t++) {
+                clicks[start + t] = 0.8 * Math.exp(-t / 200.0) * Math.sin(2 * Math.PI * 1000 * t / 44100.0);
+            }
+        }
+        SoundWave wave = new ConcreteSoundWave(clicks, clicks);
+        RhythmAnalysis rhythm = RhythmAnalysis.of(wave);
+
+        double[] onsets = rhythm.getOnsetTimes();
+        assertEquals(16, onsets.length);
+        for (int beat = 0; beat < onsets.length; beat++) {
+            assertEquals(beat * 0.5 + 3000 / 44100.0, onsets[beat], 0.03);
+        }
+        assertEquals(120.0, rhythm.getTempo(), 2.0);
+        assertTrue(rhythm.getPulseClarity() > 0.5);
+        assertEquals(2.0, rhythm.getOnsetRate(), 1e-9);
+
+        OnsetDetector detector = new OnsetDetector(44100);
+        for (int from = 0; from < n; from += 1000) {
+            int length = Math.min(1000, n - from);
+            detector.process(clicks, clicks, from, length);
+        }
+        RhythmAnalysis streamed = detector.finish();
+        assertArrayEquals(rhythm.getOnsetEnvelope(), streamed.getOnsetEnvelope(), 0.0);
+        assertArrayEquals(onsets, RhythmAnalysis.of(arraySource(clicks)).getOnsetTimes(), 0.0);
+        RhythmAnalysis halfRate = RhythmAnalysis.of(new BlockSource() {
+            private final BlockSource samples = arraySource(clicks);
+
+            @Override
+            public int read(double[] left, double[] right, int from, int length) {
+                return samples.read(left, right, from, length);
+            }
+
+            @Override
+            public int getSampleRate() {
+                return 22050;
+            }
+        });
+        assertEquals(22050.0 / OnsetDetector.HOP_SIZE, halfRate.getFrameRate(), 0.0);
+        assertEquals(2 * onsets[1], halfRate.getOnsetTimes()[1], 1e-9);
+        assertThrows(IllegalStateException.class, detector::finish);
+
+        SoundWave silence = new ConcreteSoundWave(new double[n], new double[n]);
+        RhythmAnalysis none = RhythmAnalysis.of(silence);
+        assertEquals(0, none.getOnsetTimes().length);
+        assertEquals(0.0, none.getTempo(), 0.0);
+        assertEquals(0.0, new SoundWaveSimilarity().rhythmDistance(wave, wave), 0.0);
+        assertTrue(rhythm.distance(none) > 1.0);
+    }
+
+    @Test
+    public void testEchoAndFilterKeepSampleRate() {
+        double[] left = new double[480];
+        double[] right = new double[480];
+        for (int t = 0; t < left.length; t++) {
+            left[t] = 0.5 * Math.sin(2 * Math.PI * 1000 * t / 48000.0);
+            right[t] = 0.25 * Math.sin(2 * Math.PI * 3000 * t / 48000.0);
+        }
+        SoundWave wave = new ConcreteSoundWave(left, right, 48000);
+
+        SoundWave echo = wave.addEcho(10, 0.5);
+        assertEquals(48000, echo.getSampleRate());
+        assertEquals(490, echo.getSampleCount());
+        assertEquals(490 / 48000.0, echo.duration(), 1e-12);
+
+        for (FilterType type : FilterType.values()) {
+            Double[] cutoffs = type == FilterType.BANDPASS ? new Double[] {500.0, 2000.0} : new Double[] {2000.0};
+            SoundWave filtered = wave.filter(type, cutoffs);
+            assertEquals(48000, filtered.getSampleRate());
+            assertEquals(filtered.getSampleCount() / 48000.0, filtered.duration(), 1e-12);
+        }
+        SoundWave unfiltered = wave.filter(FilterType.LOWPASS);
+        assertEquals(48000, unfiltered.getSampleRate());
+        assertEquals(wave.duration(), unfiltered.duration(), 1e-12);
+    }
+
+    @Test
+    public void testStreamingMixerResamplesTracksToItsRate() {
+        double[] constant = new double[2400];
+        Arrays.fill(constant, 0.5);
+        StreamingMixer mixer = new StreamingMixer(1000, StreamingMixer.Normalization.NONE, 48000);
+        assertEquals(48000, mixer.getSampleRate());
+        mixer.addTrack(() -> new BlockSource() {
+            private final BlockSource samples = arraySource(constant);
+
+            @Override
+            public int read(double[] left, double[] right, int from, int length) {
+                return samples.read(left, right, from, length);
+            }
+
+            @Override
+            public int getSampleRate() {
+                return 24000;
+            }
+        }, 1.0, 0.5);
+
+        double[] mix = new double[30000];
+        int[] position = new int[1];
+        long written = mixer.render((left, right, from, length) -> {
+            System.arraycopy(left, from, mix, position[0], length);
+            position[0] += length;
+        });
+        assertEquals(24000 + 4800, written);
+        assertEquals(0.0, mix[23990], 1e-12);
+        assertEquals(0.5, mix[24000 + 2400], 1e-3);
+
+        BlockSource same = arraySource(constant);
+        assertSame(same, BlockSource.resample(same, Audio.SAMPLE_RATE));
+    }
+
+    @Test
+    public void testSilencePaddedWavesSkipZeroBlocks() {
+        int block = WaveSummary.BLOCK_SIZE;
+        int n = 40 * block;
+        double[] left = new double[n];
+        double[] right = new double[n];
+        double[] otherLeft = new double[n];
+        double[] otherRight = new double[n];
+        for (int t = 16 * block; t < 24 * block; t++) {
+            left[t] = 0.5 * Math.sin(t * 0.01);
+            right[t] = 0.25 * Math.cos(t * 0.02);
+            otherLeft[t] = 0.4 * Math.sin(t * 0.01 + 0.1);
+            otherRight[t] = 0.3 * Math.cos(t * 0.02);
+        }
+        ConcreteSoundWave wave = new ConcreteSoundWave(left, right);
+        ConcreteSoundWave other = new ConcreteSoundWave(otherLeft, otherRight);
+        double expected = wave.similarity(other);
+
+        // poison the silent padding behind the summaries' backs: a skipped block is never read
+        left[block + 7] = Double.NaN;
+        otherRight[30 * block + 3] = Double.NaN;
+        assertEquals(expected, wave.similarity(other), 0.0);
+        assertTrue(wave.similarityAtLeast(other, expected));
+
+        double[] pattern = new double[3 * block];
+        Arrays.fill(pattern, 1.0);
+        assertTrue(wave.contains(new ConcreteSoundWave(pattern, pattern)));
+        assertTrue(new ConcreteSoundWave(left, right).slice(16 * block, 24 * block)
+            .contains(wave.slice(16 * block + 5, 18 * block)));
+    }
+
+    @Test
+    public void testMP3DecoderReadsFramesFromStream() {
+        boolean[] closed = new boolean[1];
+        ByteArrayInputStream in = new ByteArrayInputStream(silentMp3(3, 48000, true)) {
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+        try (MP3Decoder decoder = new MP3Decoder(in, "stereo.mp3")) {
+            assertEquals(0, decoder.getLeftChannel().length);
+            assertEquals(48000, decoder.getSampleRate());
+            assertEquals(2, decoder.getChannelCount());
+            for (int frame = 0; frame < 3; frame++) {
+                assertTrue(decoder.hasNextFrame());
+                assertTrue(decoder.decodeNextFrame());
+                assertEquals(1152, decoder.getLeftChannel().length);
+                assertEquals(1152, decoder.getRightChannel().length);
+                assertEquals(0.0, decoder.getRightChannel()[100], 0.0);
+            }
+            assertFalse(decoder.hasNextFrame());
+            assertFalse(decoder.decodeNextFrame());
+            assertEquals(1152, decoder.getLeftChannel().length);
+            assertFalse(closed[0]);
+        }
+        assertTrue(closed[0]);
+
+        assertThrows(IllegalArgumentException.class, () -> new MP3Decoder("missing.mp3"));
+    }
+
+    @Test
+    public void testMP3DecodersRunConcurrently() throws Exception {
+        byte[] mono = silentMp3(40, 44100, false);
+        byte[] stereo = silentMp3(30, 48000, true);
+        CyclicBarrier start = new CyclicBarrier(2);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<int[]> first = pool.submit(() -> decodeAll(mono, start));
+            Future<int[]> second = pool.submit(() -> decodeAll(stereo, start));
+            assertArrayEquals(new int[] {40, 40 * 1152, 44100, 1}, first.get());
+            assertArrayEquals(new int[] {30, 30 * 1152, 48000, 2}, second.get());
+        } finally {
+            pool.shutdownNow();
+        }
+
+        try (MP3Decoder a = new MP3Decoder(new ByteArrayInputStream(mono), "a");
+             MP3Decoder b = new MP3Decoder(new ByteArrayInputStream(stereo), "b")) {
+            int framesA = 0;
+            int framesB = 0;
+            while (a.hasNextFrame() || b.hasNextFrame()) {
+                framesA += a.decodeNextFrame() ? 1 : 0;
+                framesB += b.decodeNextFrame() ? 1 : 0;
+            }
+            assertEquals(40, framesA);
+            assertEquals(30, framesB);
+        }
+    }
+
+    @Test
+    public void testAudioFileReadsMP3FramesEagerly() throws IOException {
+        Path file = Files.createTempFile("frames", ".mp3");
+        try {
+            Files.write(file, silentMp3(2, 48000, true));
+            AudioFile audio = new AudioFile(file.toString());
+            assertFalse(audio.isEmpty());
+            assertEquals(48000, audio.getSampleRate());
+            for (int frame = 0; frame < 2; frame++) {
+                assertEquals(1152, audio.readLeftNext().length);
+                assertEquals(1152, audio.readRightNext().length);
+            }
+            assertTrue(audio.isEmpty());
+            assertThrows(RuntimeException.class, audio::readLeftNext);
+
+            double[] left = new double[3000];
+            double[] right = new double[3000];
+            BlockSource source = BlockSource.of(new AudioFile(file.toString()));
+            assertEquals(48000, source.getSampleRate());
+            assertEquals(2 * 1152, source.read(left, right, 0, 3000));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> new AudioFile(file.toString()));
+        assertThrows(IllegalArgumentException.class, () -> new AudioFile("notes.txt"));
+    }
+
+    private static int[] decodeAll(byte[] mp3, CyclicBarrier start) throws Exception {
+        start.await();
+        try (MP3Decoder decoder = new MP3Decoder(new ByteArrayInputStream(mp3), "concurrent")) {
+            int frames = 0;
+            int samples = 0;
+            while (decoder.decodeNextFrame()) {
+                frames++;
+                samples += decoder.getLeftChannel().length;
+            }
+            return new int[] {frames, samples, decoder.getSampleRate(), decoder.getChannelCount()};
+        }
+    }
+
+    /**
+     * @return MPEG-1 Layer III frames at 128 kbit/s whose side information and
+     * main data are all zero, which decode to 1152 samples of silence each.
+     */
+    private static byte[] silentMp3(int frames, int sampleRate, boolean stereo) {
+        int frameLength = 144 * 128000 / sampleRate;
+        byte[] data = new byte[frames * frameLength];
+        for (int f = 0; f < frames; f++) {
+            data[f * frameLength] = (byte) 0xFF;
+            data[f * frameLength + 1] = (byte) 0xFB;
+            data[f * frameLength + 2] = (byte) (sampleRate == 48000 ? 0x94 : 0x90);
+            data[f * frameLength + 3] = (byte) (stereo ? 0x04 : 0xC4);
+        }
+        return data;
+    }
+
+    @Test
+    public void testVirtualThreadContextsShareOneExecutor() {
+        ExecutionContext first = ExecutionContext.virtualThreads(2);
+        ExecutionContext second = ExecutionContext.virtualThreads(4);
+        assertSame(first.getExecutor(), second.getExecutor());
+        ExecutorService own = ExecutionContext.newVirtualThreadExecutor();
+        assertNotSame(own, first.getExecutor());
+        own.shutdown();
+
+        int n = 2 * ChunkedParallel.SEQUENTIAL_CUTOFF;
+        double[] left = new double[n];
+        double[] right = new double[n];
+        for (int t = 0; t < n; t++) {
+            left[t] = Math.sin(t * 0.01);
+            right[t] = Math.cos(t * 0.03);
+        }
+        SoundWave a = new ConcreteSoundWave(left, right);
+        SoundWave b = new ConcreteSoundWave(right, left);
+        double expected = ExecutionContext.sequential().call(() -> a.similarity(b));
+        assertEquals(expected, second.withChunkSize(1 << 12).call(() -> a.similarity(b)), 1e-9);
+
+        int priority = Thread.currentThread().getPriority();
+        ExecutionContext.sequential().withPriority(ExecutionContext.Priority.LOW).run(() ->
+            assertEquals(priority, Thread.currentThread().getPriority()));
+    }
+
+    @Test
+    public void testWaveMixerKeepsRateAndReadsSlicesInPlace() {
+        double[] left = {0.1, 0.2, 0.3, 0.4, 0.5, 0.6};
+        double[] right = {-0.1, -0.2, -0.3, -0.4, -0.5, -0.6};
+        ConcreteSoundWave wave = new ConcreteSoundWave(left, right, 48000);
+        SoundWave middle = wave.slice(2, 5);
+        SoundWave other = new ConcreteSoundWave(new double[] {0.25, 0.25}, new double[] {0.0, 0.5}, 48000);
+
+        SoundWave mixed = WaveMixer.mix(List.of(middle, other));
+        assertEquals(48000, mixed.getSampleRate());
+        assertEquals(3 / 48000.0, mixed.duration(), 1e-12);
+        assertArrayEquals(new double[] {0.55, 0.65, 0.5}, mixed.getLeftChannel(), 1e-12);
+        assertArrayEquals(new double[] {-0.3, 0.1, -0.5}, mixed.getRightChannel(), 1e-12);
+
+        WaveMixer mixer = new WaveMixer(48000);
+        mixer.add(wave, 0.5, 1 / 48000.0);
+        wave.scale(0.0);
+        SoundWave delayed = mixer.mix();
+        assertArrayEquals(new double[] {0.0, 0.05, 0.1, 0.15, 0.2, 0.25, 0.3}, delayed.getLeftChannel(), 1e-12);
+        assertEquals(44100, WaveMixer.mix(List.of()).getSampleRate());
+    }
+
+    @Test
+    public void testLibraryLoaderBoundsIOThreads() throws Exception {
+        Path directory = Files.createTempDirectory("many");
+        try {
+            int files = 300;
+            for (int i = 0; i < files; i++) {
+                Files.write(directory.resolve("empty" + i + ".mp3"), new byte[] {0, 0, 0, 0});
+            }
+            int before = Thread.activeCount();
+            AtomicInteger peak = new AtomicInteger(before);
+            AtomicBoolean loading = new AtomicBoolean(true);
+            Thread sampler = new Thread(() -> {
+                while (loading.get()) {
+                    peak.accumulateAndGet(Thread.activeCount(), Math::max);
+                    Thread.onSpinWait();
+                }
+            });
+            sampler.start();
+            LibraryLoadResult result;
+            try {
+                // a budget of one file at a time: without a bound, every other file would park a thread
+                result = ExecutionContext.sequential().call(() -> new SoundLibraryLoader(2, 1024).load(directory));
+            } finally {
+                loading.set(false);
+                sampler.join();
+            }
+            assertEquals(files, result.getFailures().size());
+            // a few I/O threads plus whatever else the JVM runs, far fewer than one per file
+            assertTrue(peak.get() - before < files / 10);
+        } finally {
+            deleteRecursively(directory);
+        }
+    }
+
+    @Test
+    public void testMp3WaveKeepsNativeSampleRate() throws IOException {
+        Path directory = Files.createTempDirectory("mp3wave");
+        try {
+            Path file = Files.write(directory.resolve("stereo.mp3"), silentMp3(4, 48000, true));
+            MP3Wave decoded = MP3Wave.getInstance(file.toString(), null);
+            assertEquals(48000, decoded.getSampleRate());
+            assertEquals(4 * 1152 / 48000.0, decoded.duration(), 1e-12);
+
+            DecodedAudioCache cache = new DecodedAudioCache(directory.resolve("cache"), 1 << 20);
+            MP3Wave stored = MP3Wave.getInstance(file.toString(), cache);
+            assertEquals(48000, cache.get(file).getSampleRate());
+            MP3Wave hit = MP3Wave.getInstance(file.toString(), cache);
+            assertEquals(48000, stored.getSampleRate());
+            assertEquals(48000, hit.getSampleRate());
+            assertEquals(decoded.duration(), hit.duration(), 1e-12);
+        } finally {
+            deleteRecursively(directory);
+        }
+    }
+
+    @Test
+    public void testWavTracksAreStreamedInBlocks() throws IOException {
+        Path file = Files.createTempFile("stem", ".wav");
+        try {
+            double[] left = new double[10000];
+            double[] right = new double[10000];
+            for (int t = 0; t < left.length; t++) {
+                left[t] = t < 5000 ? 0.5 : -0.5;
+                right[t] = 0.25;
+            }
+            try (WavWriter writer = new WavWriter(file)) {
+                writer.write(left, right);
+            }
+
+            BlockSource source = BlockSource.of(new AudioFile(file.toString()));
+            assertEquals(Audio.SAMPLE_RATE, source.getSampleRate());
+            double[] blockLeft = new double[3000];
+            double[] blockRight = new double[3000];
+            assertEquals(3000, source.read(blockLeft, blockRight, 0, 3000));
+            assertEquals(0.375, blockLeft[10], 1e-4);
+            assertArrayEquals(blockLeft, blockRight, 0.0);
+
+            StreamingMixer mixer = new StreamingMixer(1024, StreamingMixer.Normalization.TWO_PASS);
+            mixer.addTrack(file.toString(), 2.0, 0.0);
+            double[] mix = new double[left.length];
+            int[] position = new int[1];
+            assertEquals(left.length, mixer.render((l, r, from, length) -> {
+                System.arraycopy(l, from, mix, position[0], length);
+                position[0] += length;
+            }));
+            assertEquals(0.75, mix[100], 2e-4);
+            assertEquals(-0.25, mix[9000], 2e-4);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testStreamingMixerWritesWavAtItsRate() throws IOException {
+        Path file = Files.createTempFile("mix48k", ".wav");
+        try {
+            double[] tone = new double[4800];
+            Arrays.fill(tone, 0.5);
+            StreamingMixer mixer = new StreamingMixer(1024, StreamingMixer.Normalization.NONE, 48000);
+            mixer.addTrack(() -> new BlockSource() {
+                private final BlockSource samples = arraySource(tone);
+
+                @Override
+                public int read(double[] left, double[] right, int from, int length) {
+                    return samples.read(left, right, from, length);
+                }
+
+                @Override
+                public int getSampleRate() {
+                    return 48000;
+                }
+            }, 1.0, 0.0);
+            assertEquals(4800, mixer.render(file));
+
+            ByteBuffer header = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+            assertEquals(2, header.getShort(22));
+            assertEquals(48000, header.getInt(24));
+            assertEquals(48000 * 4, header.getInt(28));
+            assertEquals(4800 * 4, header.getInt(40));
+
+            BlockSource reread = BlockSource.of(new AudioFile(file.toString()));
+            assertEquals(48000, reread.getSampleRate());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testSilenceAnalysisOfSlicesAndOtherWaves() {
+        int n = 4 * 44100;
+        double[] left = new double[n];
+        double[] right = new double[n];
+        for (int t = 2 * 44100; t < 3 * 44100; t++) {
+            left[t] = 0.5 * Math.sin(t * 0.05);
+            right[t] = 0.5 * Math.sin(t * 0.05);
+        }
+        SoundWave slice = new ConcreteSoundWave(left, right).slice(44100, n);
+        SoundWave frames = new MultiChannelSoundWave(new double[][] {
+            Arrays.copyOfRange(left, 44100, n), Arrays.copyOfRange(right, 44100, n)}, 44100);
+
+        for (SoundWave wave : List.of(slice, frames)) {
+            List<SilentInterval> silences = SilenceAnalysis.of(wave).getSilentIntervals();
+            assertEquals(2, silences.size());
+            assertEquals(0, silences.get(0).getStart());
+            assertEquals(44100, silences.get(0).getEnd());
+            assertEquals(2 * 44100, silences.get(1).getStart());
+            assertEquals(3 * 44100, silences.get(1).getEnd());
+        }
+    }
 }